@@ -0,0 +1,396 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser;
+
+import static java.lang.String.format;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import net.sourceforge.nrl.parser.ast.IRuleFile;
+import net.sourceforge.nrl.parser.ast.action.impl.ActionAstResolver;
+import net.sourceforge.nrl.parser.model.ModelCollection;
+import net.sourceforge.nrl.parser.model.TypeHierarchyIndex;
+import net.sourceforge.nrl.parser.model.loader.IModelLoader;
+import net.sourceforge.nrl.parser.model.loader.OperatorLoadingException;
+import net.sourceforge.nrl.parser.operators.IOperators;
+import net.sourceforge.nrl.parser.preprocessing.ReferencePreprocessor;
+import net.sourceforge.nrl.parser.resolver.IResolverFactory;
+import net.sourceforge.nrl.parser.resolver.IURIResolver;
+import net.sourceforge.nrl.parser.type.ActionTypeChecker;
+import net.sourceforge.nrl.parser.type.DefaultTypeMappingFactory;
+import net.sourceforge.nrl.parser.type.ITypeMapping;
+import net.sourceforge.nrl.parser.util.ThreadUtilities;
+
+/**
+ * Compiles a batch of NRL files on a thread pool. Every file is parsed, resolved against its
+ * operators and models, and type checked, and the results are returned in the order of the
+ * input.
+ * <p>
+ * Files in a batch share their operator and model files: each operator file is loaded, resolved
+ * against its models and type checked once per batch, however many files reference it. Models
+ * are shared through the model loader of the resolver factory, which must cache them, as
+ * {@link net.sourceforge.nrl.parser.resolver.StandaloneResolverFactory} does. The resolver
+ * factory must also be safe for concurrent use.
+ * <p>
+ * Type mappings must be added before the first call to {@link #compile(List)}. If none are
+ * added, the {@link DefaultTypeMappingFactory default mapping} is used. Rule files are type
+ * checked with a {@link TypeHierarchyIndex} over their models, built once per batch for every
+ * distinct set of models.
+ * <p>
+ * A compiler keeps its thread pools between batches. Their threads are daemon threads and end
+ * once idle, so a compiler does not need to be shut down.
+ *
+ * @since 1.4.18
+ */
+public class NRLBatchCompiler {
+
+	private final IResolverFactory resolverFactory;
+
+	private final int threads;
+
+	private final List<ITypeMapping> typeMappings = new ArrayList<ITypeMapping>();
+
+	// The pool that files are compiled on
+	private final ExecutorService executor;
+
+	private int resolutionThreads = 1;
+
+	// The pool shared by the model resolvers of all files, null if resolving sequentially
+	private ExecutorService resolutionExecutor = null;
+
+	private int checkThreads = 1;
+
+	// The pool shared by the type checkers of all files, null if checking sequentially
+	private ExecutorService checkExecutor = null;
+
+	/**
+	 * Create a compiler that uses one thread per available processor.
+	 *
+	 * @param resolverFactory the factory used to load files, models and operators
+	 */
+	public NRLBatchCompiler(IResolverFactory resolverFactory) {
+		this(resolverFactory, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a compiler.
+	 *
+	 * @param resolverFactory the factory used to load files, models and operators
+	 * @param threads the number of files to compile in parallel, at least 1
+	 */
+	public NRLBatchCompiler(IResolverFactory resolverFactory, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is required");
+		}
+		this.resolverFactory = resolverFactory;
+		this.threads = threads;
+		this.executor = ThreadUtilities.newSharedPool(threads, "nrl-batch-compiler");
+	}
+
+	/**
+	 * Add a type mapping used when type checking rules and operators.
+	 *
+	 * @param mapping the mapping
+	 */
+	public void addTypeMapping(ITypeMapping mapping) {
+		typeMappings.add(mapping);
+	}
+
+	/**
+	 * Return the number of files compiled in parallel.
+	 *
+	 * @return the number of threads
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Return the number of threads that the model references of each file are resolved on.
+	 *
+	 * @return the number of threads, 1 by default
+	 */
+	public int getResolutionThreads() {
+		return resolutionThreads;
+	}
+
+	/**
+	 * Resolve the model references of each file on several threads, see
+	 * {@link net.sourceforge.nrl.parser.ast.impl.AntlrModelResolver#setResolutionThreads(int)}.
+	 * This helps batches of a few very large files; for many small files, compiling files in
+	 * parallel is enough. The threads are shared by all files of a batch.
+	 *
+	 * @param resolutionThreads the number of threads, 1 to resolve on the thread compiling the
+	 *            file
+	 */
+	public void setResolutionThreads(int resolutionThreads) {
+		resolutionThreads = Math.max(1, resolutionThreads);
+		if (resolutionThreads != this.resolutionThreads) {
+			// The threads of a replaced pool end once idle
+			resolutionExecutor = resolutionThreads > 1 ? ThreadUtilities.newSharedPool(
+					resolutionThreads, "nrl-model-resolver") : null;
+		}
+		this.resolutionThreads = resolutionThreads;
+	}
+
+	/**
+	 * Return the number of threads that the declarations of each file are type checked on.
+	 *
+	 * @return the number of threads, 1 by default
+	 */
+	public int getCheckThreads() {
+		return checkThreads;
+	}
+
+	/**
+	 * Type check the declarations of each file on several threads, see
+	 * {@link net.sourceforge.nrl.parser.type.ConstraintTypeChecker#setCheckThreads(int)}. Like
+	 * resolution threads, this helps batches of a few very large files, and the threads are
+	 * shared by all files of a batch.
+	 *
+	 * @param checkThreads the number of threads, 1 to type check on the thread compiling the
+	 *            file
+	 */
+	public void setCheckThreads(int checkThreads) {
+		checkThreads = Math.max(1, checkThreads);
+		if (checkThreads != this.checkThreads) {
+			// The threads of a replaced pool end once idle
+			checkExecutor = checkThreads > 1 ? ThreadUtilities.newSharedPool(checkThreads,
+					"nrl-type-checker") : null;
+		}
+		this.checkThreads = checkThreads;
+	}
+
+	/**
+	 * Compile a list of NRL files. Errors and exceptions are reported per file in the results,
+	 * so a file that cannot be read or parsed does not affect the rest of the batch.
+	 *
+	 * @param uris the absolute URIs of the files
+	 * @return the results, one per URI and in the same order
+	 * @throws InterruptedException if interrupted while waiting for the batch to complete
+	 */
+	public List<NRLCompilationResult> compile(List<URI> uris) throws InterruptedException {
+		final BatchParsingService service = new BatchParsingService();
+
+		List<Future<NRLCompilationResult>> futures = new ArrayList<Future<NRLCompilationResult>>();
+		for (final URI uri : uris) {
+			futures.add(executor.submit(new Callable<NRLCompilationResult>() {
+				public NRLCompilationResult call() {
+					return service.compile(uri);
+				}
+			}));
+		}
+
+		List<NRLCompilationResult> results = new ArrayList<NRLCompilationResult>();
+		for (Future<NRLCompilationResult> future : futures) {
+			results.add(getResult(future));
+		}
+		return results;
+	}
+
+	/*
+	 * Create a type checker for a batch, with an optional type hierarchy index and the pool of
+	 * the batch to check on, null to check on the calling thread. Checkers keep state during a
+	 * check, so every file needs its own.
+	 */
+	private ActionTypeChecker createTypeChecker(TypeHierarchyIndex typeHierarchy,
+			ExecutorService checkExecutor) {
+		ActionTypeChecker typeChecker = new ActionTypeChecker();
+		if (typeMappings.isEmpty()) {
+			typeChecker.addTypeMapping(DefaultTypeMappingFactory.getDefaultTypeMapping());
+		}
+		for (ITypeMapping mapping : typeMappings) {
+			typeChecker.addTypeMapping(mapping);
+		}
+		typeChecker.setTypeHierarchy(typeHierarchy);
+		if (checkExecutor != null) {
+			typeChecker.setCheckThreads(checkThreads);
+			typeChecker.setExecutor(checkExecutor);
+		}
+		return typeChecker;
+	}
+
+	/*
+	 * Unwrap the result of a task. The compile task reports checked exceptions in its result, so
+	 * anything thrown here is an unexpected runtime exception or error.
+	 */
+	private static <T> T getResult(Future<T> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/*
+	 * An operator file loaded for a batch, with the errors found while loading and checking it.
+	 */
+	private static class LoadedOperators {
+
+		private final IOperators operators;
+
+		private final List<NRLError> errors;
+
+		private final OperatorLoadingException exception;
+
+		LoadedOperators(IOperators operators, List<NRLError> errors,
+				OperatorLoadingException exception) {
+			this.operators = operators;
+			this.errors = errors;
+			this.exception = exception;
+		}
+	}
+
+	/*
+	 * A parsing service for one batch, which loads every operator file once.
+	 */
+	private class BatchParsingService extends NRLParsingService {
+
+		private final ConcurrentMap<URI, FutureTask<LoadedOperators>> operators =
+				new ConcurrentHashMap<URI, FutureTask<LoadedOperators>>();
+
+		// The pool that declarations are type checked on, null to check on the compiling thread
+		private final ExecutorService checkExecutor;
+
+		BatchParsingService() {
+			super(resolverFactory);
+			setResolutionThreads(resolutionThreads, resolutionExecutor);
+			checkExecutor = NRLBatchCompiler.this.checkExecutor;
+		}
+
+		NRLCompilationResult compile(URI uri) {
+			List<NRLError> errors = new ArrayList<NRLError>();
+			long[] times = new long[4];
+			IRuleFile ruleFile = null;
+			ModelCollection models = null;
+			List<IOperators> operatorFiles = null;
+			TypeHierarchyIndex typeHierarchy = null;
+
+			try {
+				long start = System.nanoTime();
+				IURIResolver uriResolver = getResolverFactory().createURIResolver();
+				CharSequence content = getNRLFileContent(uri, uriResolver);
+				content = new ReferencePreprocessor().process(content);
+				ActionAstResolver astResolver = createAstResolver();
+				ruleFile = parse(content, astResolver, errors);
+				times[0] = System.nanoTime() - start;
+				if (ruleFile == null) {
+					return new NRLCompilationResult(uri, null, null, null, errors, null, null,
+							times);
+				}
+
+				start = System.nanoTime();
+				IModelLoader modelLoader = getResolverFactory().createModelLoader();
+				operatorFiles = resolveOperators(uri, uriResolver, modelLoader, ruleFile,
+						astResolver, errors);
+				times[1] = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				models = resolveModels(uri, modelLoader, ruleFile, errors);
+				times[2] = System.nanoTime() - start;
+
+				// Type check only if all references resolved
+				if (errors.isEmpty()) {
+					start = System.nanoTime();
+					typeHierarchy = getTypeHierarchy(models);
+					errors.addAll(createTypeChecker(typeHierarchy, checkExecutor).check(ruleFile));
+					times[3] = System.nanoTime() - start;
+				}
+			} catch (Exception e) {
+				return new NRLCompilationResult(uri, ruleFile, models, operatorFiles, errors,
+						typeHierarchy, e, times);
+			}
+			return new NRLCompilationResult(uri, ruleFile, models, operatorFiles, errors,
+					typeHierarchy, null, times);
+		}
+
+		/*
+		 * Return a shared operator file, loading and type checking it on first use. Concurrent
+		 * requests for the same file wait for a single load.
+		 */
+		@Override
+		IOperators loadOperators(final URI uri, final String operatorFileName,
+				final IURIResolver uriResolver, final IModelLoader modelLoader,
+				List<NRLError> errors) throws OperatorLoadingException {
+			URI operatorFileUri;
+			try {
+				operatorFileUri = uri.resolve(getOperatorFileURI(operatorFileName));
+			} catch (Exception e) {
+				throw new OperatorLoadingException(format("Failed to load operators from : %s",
+						operatorFileName));
+			}
+
+			FutureTask<LoadedOperators> load = operators.get(operatorFileUri);
+			if (load == null) {
+				FutureTask<LoadedOperators> newLoad = new FutureTask<LoadedOperators>(
+						new Callable<LoadedOperators>() {
+							public LoadedOperators call() {
+								return load(uri, operatorFileName, uriResolver, modelLoader);
+							}
+						});
+				load = operators.putIfAbsent(operatorFileUri, newLoad);
+				if (load == null) {
+					load = newLoad;
+					load.run();
+				}
+			}
+
+			LoadedOperators loaded;
+			try {
+				loaded = getResult(load);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OperatorLoadingException(format("Interrupted while loading operators "
+						+ "from : %s", operatorFileName));
+			}
+			if (loaded.exception != null) {
+				throw loaded.exception;
+			}
+			errors.addAll(loaded.errors);
+			return loaded.operators;
+		}
+
+		private LoadedOperators load(URI uri, String operatorFileName, IURIResolver uriResolver,
+				IModelLoader modelLoader) {
+			List<NRLError> errors = new ArrayList<NRLError>();
+			try {
+				IOperators loaded = super.loadOperators(uri, operatorFileName, uriResolver,
+						modelLoader, errors);
+				if (errors.isEmpty()) {
+					errors.addAll(createTypeChecker(null, checkExecutor).check(loaded));
+				}
+				return new LoadedOperators(loaded, errors, null);
+			} catch (OperatorLoadingException e) {
+				return new LoadedOperators(null, errors, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser;
+
+import java.net.URI;
+import java.util.List;
+
+import net.sourceforge.nrl.parser.ast.IRuleFile;
+import net.sourceforge.nrl.parser.model.ModelCollection;
+import net.sourceforge.nrl.parser.model.TypeHierarchyIndex;
+import net.sourceforge.nrl.parser.operators.IOperators;
+
+/**
+ * The result of compiling one NRL file with a {@link NRLBatchCompiler}. In addition to a parse
+ * result, this holds the URI of the file, the time spent in each phase of the compilation, and
+ * the exception that stopped the compilation, if any.
+ * <p>
+ * Times are in nanoseconds, and are zero for phases that did not run. Operator and model files
+ * shared with other files in the batch are only loaded once, so the time of loading them is
+ * attributed to whichever file needed them first.
+ *
+ * @since 1.4.18
+ */
+public class NRLCompilationResult extends NRLParseResult {
+
+	private final URI uri;
+
+	private final Exception exception;
+
+	private final long parseTime;
+
+	private final long operatorResolutionTime;
+
+	private final long modelResolutionTime;
+
+	private final long typeCheckTime;
+
+	/**
+	 * Create a result.
+	 *
+	 * @param uri the URI of the NRL file
+	 * @param ruleFile the rule file, may be null
+	 * @param models the models, may be null
+	 * @param operators the operators, may be null
+	 * @param errors the errors
+	 * @param typeHierarchy the index over the models, may be null
+	 * @param exception the exception that stopped the compilation, or null
+	 * @param times the parse, operator resolution, model resolution and type check times
+	 */
+	NRLCompilationResult(URI uri, IRuleFile ruleFile, ModelCollection models,
+			List<IOperators> operators, List<NRLError> errors, TypeHierarchyIndex typeHierarchy,
+			Exception exception, long[] times) {
+		super(ruleFile, models, operators, errors, typeHierarchy);
+		this.uri = uri;
+		this.exception = exception;
+		this.parseTime = times[0];
+		this.operatorResolutionTime = times[1];
+		this.modelResolutionTime = times[2];
+		this.typeCheckTime = times[3];
+	}
+
+	/**
+	 * Return the URI of the compiled file.
+	 *
+	 * @return the URI
+	 */
+	public URI getURI() {
+		return uri;
+	}
+
+	/**
+	 * Return the exception that stopped the compilation, for example because the file or one of
+	 * the files it references could not be read.
+	 *
+	 * @return the exception, or null if the compilation ran to completion
+	 */
+	public Exception getException() {
+		return exception;
+	}
+
+	/**
+	 * Return true if the compilation ran to completion, and found no errors.
+	 *
+	 * @return true if successful
+	 */
+	@Override
+	public boolean isSuccessful() {
+		return exception == null && super.isSuccessful();
+	}
+
+	/**
+	 * Return the time spent reading, parsing and resolving the structure of the file.
+	 *
+	 * @return the time in nanoseconds
+	 */
+	public long getParseTime() {
+		return parseTime;
+	}
+
+	/**
+	 * Return the time spent loading operator files and resolving operator invocations.
+	 *
+	 * @return the time in nanoseconds
+	 */
+	public long getOperatorResolutionTime() {
+		return operatorResolutionTime;
+	}
+
+	/**
+	 * Return the time spent loading models and resolving model references.
+	 *
+	 * @return the time in nanoseconds
+	 */
+	public long getModelResolutionTime() {
+		return modelResolutionTime;
+	}
+
+	/**
+	 * Return the time spent type checking the file.
+	 *
+	 * @return the time in nanoseconds
+	 */
+	public long getTypeCheckTime() {
+		return typeCheckTime;
+	}
+
+	/**
+	 * Return the sum of the times of all phases.
+	 *
+	 * @return the time in nanoseconds
+	 */
+	public long getTotalTime() {
+		return parseTime + operatorResolutionTime + modelResolutionTime + typeCheckTime;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d errors, parse %d us, operators %d us, models %d us, "
+				+ "type check %d us", uri, getErrors().size(), parseTime / 1000,
+				operatorResolutionTime / 1000, modelResolutionTime / 1000, typeCheckTime / 1000);
+	}
+}
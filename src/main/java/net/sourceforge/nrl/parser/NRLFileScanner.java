@@ -0,0 +1,174 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.nrl.parser.NRLFileSummary.Entry;
+import net.sourceforge.nrl.parser.NRLFileSummary.Kind;
+import net.sourceforge.nrl.parser.ast.impl.CompactTokenStream;
+import net.sourceforge.nrl.parser.ast.impl.NRLActionParser;
+import net.sourceforge.nrl.parser.preprocessing.ReferencePreprocessor;
+import net.sourceforge.nrl.parser.resolver.IResolverFactory;
+import net.sourceforge.nrl.parser.resolver.ResolverException;
+import net.sourceforge.nrl.parser.util.StreamUtilities;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+
+/**
+ * Finds the model and operator file references and the declaration ids of NRL files, using only
+ * the lexer. No parse tree is built and nothing is resolved, so this is much faster than
+ * {@link NRLParser} when only the outline of a file is needed, for example to compute
+ * dependencies between files.
+ * <p>
+ * A reference or declaration is recognised by its keyword followed by a quoted name. Fragment
+ * references are bracketed by the {@link ReferencePreprocessor} first, as for a parse. Files with
+ * syntax errors are scanned without complaint, so a summary does not prove that a file is valid.
+ * Unexpected characters are reported as errors in the summary and skipped.
+ * Scanners keep no state, and can be shared between threads.
+ *
+ * @since 1.4.18
+ */
+public class NRLFileScanner {
+
+	private final Charset charset;
+
+	/**
+	 * Create a scanner that reads UTF-8 files.
+	 */
+	public NRLFileScanner() {
+		this(StreamUtilities.DEFAULT_CHARSET);
+	}
+
+	/**
+	 * Create a scanner.
+	 *
+	 * @param charset the character set of NRL files, null for UTF-8
+	 */
+	public NRLFileScanner(Charset charset) {
+		this.charset = charset == null ? StreamUtilities.DEFAULT_CHARSET : charset;
+	}
+
+	/**
+	 * Scan an NRL file.
+	 *
+	 * @param uri the absolute URI of the file
+	 * @param resolverFactory the factory used to open the file
+	 * @return the summary
+	 */
+	public NRLFileSummary scan(URI uri, IResolverFactory resolverFactory) throws IOException,
+			ResolverException {
+		InputStream stream = resolverFactory.createURIResolver().openStream(uri);
+		try {
+			return scan(StreamUtilities.read(stream, charset));
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Scan the source of an NRL file.
+	 *
+	 * @param content the source
+	 * @return the summary
+	 */
+	public NRLFileSummary scan(CharSequence content) {
+		List<Entry> models = new ArrayList<Entry>();
+		List<Entry> operators = new ArrayList<Entry>();
+		List<Entry> declarations = new ArrayList<Entry>();
+		List<NRLError> errors = new ArrayList<NRLError>();
+
+		// Offsets in the processed text include the brackets, so map them back by line
+		CharSequence processed = new ReferencePreprocessor().process(content);
+		int[] lineStarts = processed == content ? null : getLineStarts(content);
+
+		CompactTokenStream tokens = new CompactTokenStream(processed, errors);
+		for (int type = tokens.LA(1); type != Token.EOF; type = tokens.LA(1)) {
+			switch (type) {
+			case NRLActionParser.MODEL:
+				addEntry(tokens, lineStarts, Kind.MODEL_FILE, models);
+				break;
+			case NRLActionParser.OPERATORS:
+				addEntry(tokens, lineStarts, Kind.OPERATOR_FILE, operators);
+				break;
+			case NRLActionParser.VALIDATION_RULE:
+				addEntry(tokens, lineStarts, Kind.VALIDATION_RULE, declarations);
+				break;
+			case NRLActionParser.VALIDATION_FRAGMENT:
+				addEntry(tokens, lineStarts, Kind.VALIDATION_FRAGMENT, declarations);
+				break;
+			case NRLActionParser.ACTION_RULE:
+				addEntry(tokens, lineStarts, Kind.ACTION_RULE, declarations);
+				break;
+			case NRLActionParser.ACTION_FRAGMENT:
+				addEntry(tokens, lineStarts, Kind.ACTION_FRAGMENT, declarations);
+				break;
+			case NRLActionParser.RULESET:
+				addEntry(tokens, lineStarts, Kind.RULE_SET, declarations);
+				break;
+			}
+			tokens.consume();
+		}
+
+		return new NRLFileSummary(models, operators, declarations, errors);
+	}
+
+	/*
+	 * Add an entry for the keyword at the current position, if a name follows it. Only the two
+	 * tokens involved are created, and only the name's text. The lexer's columns already leave
+	 * out inserted brackets, so with line starts the offset in the original text is known.
+	 */
+	private void addEntry(CompactTokenStream tokens, int[] lineStarts, Kind kind,
+			List<Entry> entries) {
+		if (tokens.LA(2) != NRLActionParser.DOUBLE_QUOTED_STRING)
+			return;
+
+		CommonToken keyword = (CommonToken) tokens.LT(1);
+		int offset = keyword.getStartIndex();
+		if (lineStarts != null)
+			offset = lineStarts[keyword.getLine() - 1] + keyword.getCharPositionInLine();
+		entries.add(new Entry(kind, tokens.LT(2).getText(), offset, keyword.getLine(), keyword
+				.getCharPositionInLine()));
+	}
+
+	/*
+	 * Return the offset of every line, counting line breaks like the JFlex lexer.
+	 */
+	private int[] getLineStarts(CharSequence content) {
+		int[] starts = new int[16];
+		int lines = 1;
+		for (int i = 0; i < content.length(); i++) {
+			char c = content.charAt(i);
+			if (c != '\r' && c != '\n' && c != '\u000B' && c != '\u000C' && c != '\u0085'
+					&& c != '\u2028' && c != '\u2029')
+				continue;
+			if (c == '\r' && i + 1 < content.length() && content.charAt(i + 1) == '\n')
+				i++;
+			if (lines == starts.length) {
+				int[] grown = new int[lines * 2];
+				System.arraycopy(starts, 0, grown, 0, lines);
+				starts = grown;
+			}
+			starts[lines++] = i + 1;
+		}
+		return starts;
+	}
+}
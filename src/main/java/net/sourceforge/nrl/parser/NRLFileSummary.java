@@ -0,0 +1,169 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The model and operator file references and the declaration ids of an NRL file, found by a
+ * {@link NRLFileScanner} without parsing the file. Summaries are immutable.
+ *
+ * @since 1.4.18
+ */
+public class NRLFileSummary {
+
+	/**
+	 * The kind of a scanned entry.
+	 */
+	public enum Kind {
+		MODEL_FILE, OPERATOR_FILE, VALIDATION_RULE, VALIDATION_FRAGMENT, ACTION_RULE,
+		ACTION_FRAGMENT, RULE_SET
+	}
+
+	/**
+	 * A file reference or declaration. The position is that of its keyword, for example
+	 * <i>Model</i> or <i>Validation Rule</i>, which is also the position of the corresponding
+	 * AST node after a full parse.
+	 */
+	public static class Entry {
+
+		private final Kind kind;
+
+		private final String name;
+
+		private final int offset;
+
+		private final int line;
+
+		private final int column;
+
+		Entry(Kind kind, String name, int offset, int line, int column) {
+			this.kind = kind;
+			this.name = name;
+			this.offset = offset;
+			this.line = line;
+			this.column = column;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * Return the file name of a reference, or the id of a declaration, without quotes.
+		 *
+		 * @return the name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Return the character offset of the keyword in the file.
+		 *
+		 * @return the offset, starting at 0
+		 */
+		public int getOffset() {
+			return offset;
+		}
+
+		public int getLine() {
+			return line;
+		}
+
+		public int getColumn() {
+			return column;
+		}
+
+		@Override
+		public String toString() {
+			return kind + " \"" + name + "\" (" + line + ":" + column + ")";
+		}
+	}
+
+	private final List<Entry> modelFileReferences;
+
+	private final List<Entry> operatorFileReferences;
+
+	private final List<Entry> declarations;
+
+	private final List<NRLError> errors;
+
+	NRLFileSummary(List<Entry> modelFileReferences, List<Entry> operatorFileReferences,
+			List<Entry> declarations, List<NRLError> errors) {
+		this.modelFileReferences = unmodifiable(modelFileReferences);
+		this.operatorFileReferences = unmodifiable(operatorFileReferences);
+		this.declarations = unmodifiable(declarations);
+		this.errors = unmodifiable(errors);
+	}
+
+	/**
+	 * Return the model file references, in file order.
+	 *
+	 * @return the references
+	 */
+	public List<Entry> getModelFileReferences() {
+		return modelFileReferences;
+	}
+
+	/**
+	 * Return the operator file references, in file order.
+	 *
+	 * @return the references
+	 */
+	public List<Entry> getOperatorFileReferences() {
+		return operatorFileReferences;
+	}
+
+	/**
+	 * Return the rule, fragment and rule set declarations, in file order. Global variables are
+	 * not included.
+	 *
+	 * @return the declarations
+	 */
+	public List<Entry> getDeclarations() {
+		return declarations;
+	}
+
+	/**
+	 * Return the declaration ids, in file order.
+	 *
+	 * @return the ids
+	 */
+	public List<String> getDeclarationIds() {
+		List<String> result = new ArrayList<String>(declarations.size());
+		for (Entry entry : declarations) {
+			result.add(entry.getName());
+		}
+		return result;
+	}
+
+	/**
+	 * Return lexical errors, for example illegal characters. The scanner skips the offending
+	 * characters, so the summary still lists what was found in the rest of the file. Syntax
+	 * errors are not detected.
+	 *
+	 * @return the errors, empty if there were none
+	 */
+	public List<NRLError> getErrors() {
+		return errors;
+	}
+
+	private static <T> List<T> unmodifiable(List<T> list) {
+		return Collections.unmodifiableList(new ArrayList<T>(list));
+	}
+}
@@ -1,5 +1,6 @@
 package net.sourceforge.nrl.parser;
 
+import java.util.Collections;
 import java.util.List;
 
 import net.sourceforge.nrl.parser.ast.IRuleFile;
@@ -8,14 +9,15 @@ import net.sourceforge.nrl.parser.operators.IOperators;
 
 public class NRLModel {
 
-	private IRuleFile ruleFile;
-	private ModelCollection models;
-	private List<IOperators> operators;
+	private final IRuleFile ruleFile;
+	private final ModelCollection models;
+	private final List<IOperators> operators;
 	
 	public NRLModel(IRuleFile ruleFile, ModelCollection models, List<IOperators> operators) {
 		this.ruleFile = ruleFile;
 		this.models = models;
-		this.operators = operators;
+		this.operators = operators == null ? Collections.<IOperators> emptyList() : Collections
+				.unmodifiableList(operators);
 	}
 
 	public IRuleFile getRuleFile() {
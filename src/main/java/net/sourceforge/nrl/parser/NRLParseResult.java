@@ -0,0 +1,103 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.sourceforge.nrl.parser.ast.IRuleFile;
+import net.sourceforge.nrl.parser.model.ModelCollection;
+import net.sourceforge.nrl.parser.model.TypeHierarchyIndex;
+import net.sourceforge.nrl.parser.operators.IOperators;
+
+/**
+ * The result of parsing an NRL file with a {@link NRLParsingService}: the rule file, the models
+ * and operators it was resolved against, and all syntax and semantic errors. Results are
+ * immutable and can be passed between threads.
+ * <p>
+ * If there were syntax errors, or errors in the structure of the rules, the rule file is null and
+ * no models or operators are loaded. Otherwise, the rule file is present even if model or
+ * operator references could not be resolved, in which case it must not be processed further.
+ * <p>
+ * Results that resolved without errors carry a {@link TypeHierarchyIndex} over their models, shared with other
+ * results over the same models, for type checkers to use.
+ *
+ * @since 1.4.18
+ */
+public class NRLParseResult extends NRLModel {
+
+	private final List<NRLError> errors;
+
+	private final TypeHierarchyIndex typeHierarchy;
+
+	/**
+	 * Create a result.
+	 *
+	 * @param ruleFile the rule file, may be null
+	 * @param models the models, may be null
+	 * @param operators the operators, may be null
+	 * @param errors the errors
+	 */
+	public NRLParseResult(IRuleFile ruleFile, ModelCollection models, List<IOperators> operators,
+			List<NRLError> errors) {
+		this(ruleFile, models, operators, errors, null);
+	}
+
+	/**
+	 * Create a result with a type hierarchy index.
+	 *
+	 * @param ruleFile the rule file, may be null
+	 * @param models the models, may be null
+	 * @param operators the operators, may be null
+	 * @param errors the errors
+	 * @param typeHierarchy the index over the models, may be null
+	 */
+	public NRLParseResult(IRuleFile ruleFile, ModelCollection models, List<IOperators> operators,
+			List<NRLError> errors, TypeHierarchyIndex typeHierarchy) {
+		super(ruleFile, models, operators == null ? null : new ArrayList<IOperators>(operators));
+		this.errors = Collections.unmodifiableList(new ArrayList<NRLError>(errors));
+		this.typeHierarchy = typeHierarchy;
+	}
+
+	/**
+	 * Return the syntax and semantic errors, in the order they were found.
+	 *
+	 * @return the errors, empty if there were none
+	 */
+	public List<NRLError> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Return true if there were no errors, and the rule file can be processed.
+	 *
+	 * @return true if successful
+	 */
+	public boolean isSuccessful() {
+		return errors.isEmpty() && getRuleFile() != null;
+	}
+
+	/**
+	 * Return the type hierarchy index over the models, to pass to
+	 * {@link net.sourceforge.nrl.parser.type.ConstraintTypeChecker#setTypeHierarchy(TypeHierarchyIndex)}.
+	 *
+	 * @return the index, or null if the rule file was not resolved against its models without
+	 *         errors
+	 */
+	public TypeHierarchyIndex getTypeHierarchy() {
+		return typeHierarchy;
+	}
+}
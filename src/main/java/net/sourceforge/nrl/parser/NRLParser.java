@@ -14,46 +14,47 @@
  */
 package net.sourceforge.nrl.parser;
 
-import static java.lang.String.format;
-
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringReader;
 import java.net.URI;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 
-import net.sourceforge.nrl.parser.ast.IModelFileReference;
-import net.sourceforge.nrl.parser.ast.IOperatorFileReference;
 import net.sourceforge.nrl.parser.ast.IRuleFile;
 import net.sourceforge.nrl.parser.ast.action.impl.ActionAstResolver;
 import net.sourceforge.nrl.parser.ast.impl.Antlr3NRLTreeAdaptor;
 import net.sourceforge.nrl.parser.ast.impl.AntlrModelResolver;
 import net.sourceforge.nrl.parser.ast.impl.AntlrOperatorResolverVisitor;
+import net.sourceforge.nrl.parser.ast.impl.BacktrackingStatistics;
+import net.sourceforge.nrl.parser.ast.impl.CompactTokenStream;
 import net.sourceforge.nrl.parser.ast.impl.NRLActionParser;
-import net.sourceforge.nrl.parser.ast.impl.NRLJFlexer;
 import net.sourceforge.nrl.parser.ast.impl.RuleFileImpl;
 import net.sourceforge.nrl.parser.model.IModelCollection;
 import net.sourceforge.nrl.parser.model.IPackage;
-import net.sourceforge.nrl.parser.model.ModelCollection;
-import net.sourceforge.nrl.parser.model.loader.IModelLoader;
+import net.sourceforge.nrl.parser.model.TypeHierarchyIndex;
 import net.sourceforge.nrl.parser.model.loader.ModelLoadingException;
 import net.sourceforge.nrl.parser.model.loader.OperatorLoadingException;
 import net.sourceforge.nrl.parser.operators.IOperators;
-import net.sourceforge.nrl.parser.operators.XmlOperatorLoader;
 import net.sourceforge.nrl.parser.preprocessing.ReferencePreprocessor;
 import net.sourceforge.nrl.parser.resolver.IResolverFactory;
-import net.sourceforge.nrl.parser.resolver.IURIResolver;
 import net.sourceforge.nrl.parser.resolver.ResolverException;
+import net.sourceforge.nrl.parser.util.StreamUtilities;
+import net.sourceforge.nrl.parser.util.ThreadUtilities;
 
-import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.TokenStream;
 
 /**
  * The main parser interface for creating an NRL AST. This supports both the action and constraint
  * language, and is based on ANTLR.
+ * <p>
+ * A parser keeps the errors of the last parse, so it must not be shared between threads. Use a
+ * {@link NRLParsingService} for concurrent parsing.
  * 
  * @see net.sourceforge.nrl.parser.INRLParser
  */
@@ -61,6 +62,30 @@ public class NRLParser implements INRLParser {
 
 	private List<NRLError> errors = new ArrayList<NRLError>();
 
+	private Charset charset = StreamUtilities.DEFAULT_CHARSET;
+
+	private boolean memoizing = false;
+
+	private BacktrackingStatistics backtrackingStatistics = null;
+
+	private int parseThreads = 1;
+
+	// Kept between parses, null if parsing on the calling thread
+	private ExecutorService parseExecutor = null;
+
+	private boolean fusingPasses = false;
+
+	private int resolutionThreads = 1;
+
+	// Kept between parses, null if resolving on the calling thread
+	private ExecutorService resolutionExecutor = null;
+
+	// Kept between parses, by the packages of the models they index
+	private final ConcurrentMap<List<IPackage>, TypeHierarchyIndex> typeHierarchies =
+			new ConcurrentHashMap<List<IPackage>, TypeHierarchyIndex>();
+
+	private TypeHierarchyIndex typeHierarchy = null;
+
 	/**
 	 * After any call to the parse or resolve methods, this method returns a list of errors, if any.
 	 */
@@ -68,6 +93,19 @@ public class NRLParser implements INRLParser {
 		return errors;
 	}
 
+	/**
+	 * Return the type hierarchy index over the models of the last call to
+	 * {@link #parse(URI, IResolverFactory)}, to pass to
+	 * {@link net.sourceforge.nrl.parser.type.ConstraintTypeChecker#setTypeHierarchy(TypeHierarchyIndex)}.
+	 * Parses of files that reference the same models share the index.
+	 * 
+	 * @return the index, or null if the last parse had errors
+	 * @since 1.4.18
+	 */
+	public TypeHierarchyIndex getTypeHierarchy() {
+		return typeHierarchy;
+	}
+
 	/**
 	 * Uses a reader to read a stream and returns the content as a string.
 	 * 
@@ -76,17 +114,150 @@ public class NRLParser implements INRLParser {
 	 * @throws IOException
 	 */
 	protected String getStreamAsString(Reader reader) throws IOException {
-		StringBuffer result = new StringBuffer();
-
-		char[] buffer = new char[10000];
-		while (reader.ready()) {
-			int size = reader.read(buffer);
-			result.append(new String(buffer, 0, size));
-			if (size != 10000)
-				break;
+		return StreamUtilities.read(reader).toString();
+	}
+
+	/**
+	 * Return the character set used to decode NRL files read from byte streams.
+	 * 
+	 * @return the character set, UTF-8 by default
+	 * @since 1.4.18
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Set the character set used to decode NRL files read from byte streams.
+	 * 
+	 * @param charset the character set, null for UTF-8
+	 * @since 1.4.18
+	 */
+	public void setCharset(Charset charset) {
+		this.charset = charset == null ? StreamUtilities.DEFAULT_CHARSET : charset;
+	}
+
+	/**
+	 * Return true if the parser memoizes speculative parses.
+	 * 
+	 * @return true if memoizing
+	 * @since 1.4.18
+	 */
+	public boolean isMemoizing() {
+		return memoizing;
+	}
+
+	/**
+	 * Switch memoization of speculative parses on or off. This can speed up parsing of deeply
+	 * nested conditions, at the cost of memory. Off by default.
+	 * 
+	 * @param memoizing true to memoize
+	 * @since 1.4.18
+	 */
+	public void setMemoizing(boolean memoizing) {
+		this.memoizing = memoizing;
+	}
+
+	/**
+	 * Return the statistics that speculative rule invocations are counted in.
+	 * 
+	 * @return the statistics, or null if not counting
+	 * @since 1.4.18
+	 */
+	public BacktrackingStatistics getBacktrackingStatistics() {
+		return backtrackingStatistics;
+	}
+
+	/**
+	 * Count the speculative rule invocations of subsequent parses in a statistics object. This
+	 * slows down parsing and is meant for profiling the grammar.
+	 * 
+	 * @param statistics the statistics, or null to stop counting
+	 * @since 1.4.18
+	 */
+	public void setBacktrackingStatistics(BacktrackingStatistics statistics) {
+		this.backtrackingStatistics = statistics;
+	}
+
+	/**
+	 * Return the number of threads that the declarations of a file are parsed on.
+	 * 
+	 * @return the number of threads, 1 by default
+	 * @since 1.4.18
+	 */
+	public int getParseThreads() {
+		return parseThreads;
+	}
+
+	/**
+	 * Parse the declarations of files on several threads in subsequent calls to
+	 * {@link #parse(URI, IResolverFactory)}. This speeds up parsing of files with thousands of
+	 * declarations, and has no effect while backtracking statistics are collected. Errors are
+	 * reported exactly as when parsing on one thread.
+	 * 
+	 * @param parseThreads the number of threads, 1 to parse on the calling thread
+	 * @since 1.4.18
+	 */
+	public void setParseThreads(int parseThreads) {
+		parseThreads = Math.max(1, parseThreads);
+		if (parseThreads != this.parseThreads) {
+			// The threads of a replaced pool end once idle
+			parseExecutor = parseThreads > 1 ? ThreadUtilities.newSharedPool(parseThreads,
+					"nrl-declaration-parser") : null;
 		}
+		this.parseThreads = parseThreads;
+	}
 
-		return result.toString();
+	/**
+	 * Return true if {@link #parse(URI, IResolverFactory)} resolves identifiers, fragment
+	 * references and operator references in a single walk over the AST.
+	 * 
+	 * @return true if fusing the resolution passes
+	 * @since 1.4.18
+	 */
+	public boolean isFusingPasses() {
+		return fusingPasses;
+	}
+
+	/**
+	 * Resolve identifiers, fragment references and operator references in a single walk over the
+	 * AST, see {@link net.sourceforge.nrl.parser.ast.action.impl.FusedAstResolver}. The errors
+	 * are the same either way. Off by default.
+	 * 
+	 * @param fusingPasses true to resolve in a single walk
+	 * @since 1.4.18
+	 */
+	public void setFusingPasses(boolean fusingPasses) {
+		this.fusingPasses = fusingPasses;
+	}
+
+	/**
+	 * Return the number of threads that the model references of a file are resolved on.
+	 * 
+	 * @return the number of threads, 1 by default
+	 * @since 1.4.18
+	 */
+	public int getResolutionThreads() {
+		return resolutionThreads;
+	}
+
+	/**
+	 * Resolve the model references in the bodies of rules and fragments on several threads in
+	 * subsequent calls to {@link #parse(URI, IResolverFactory)}, see
+	 * {@link net.sourceforge.nrl.parser.ast.impl.AntlrModelResolver#setResolutionThreads(int)}.
+	 * Errors are reported exactly as when resolving on one thread.
+	 * 
+	 * @param resolutionThreads the number of threads, 1 to resolve on the calling thread
+	 * @since 1.4.18
+	 */
+	public void setResolutionThreads(int resolutionThreads) {
+		resolutionThreads = Math.max(1, resolutionThreads);
+		if (resolutionThreads != this.resolutionThreads) {
+			// The threads of a replaced pool end once idle
+			resolutionExecutor = resolutionThreads > 1 ? ThreadUtilities.newSharedPool(
+					resolutionThreads, "nrl-model-resolver") : null;
+		}
+		this.resolutionThreads = resolutionThreads;
 	}
 
 	/**
@@ -94,7 +265,8 @@ public class NRLParser implements INRLParser {
 	 */
 	@Deprecated
 	public IRuleFile parse(InputStream stream) throws Exception {
-		return parse(new InputStreamReader(stream));
+		errors = new ArrayList<NRLError>();
+		return parseContent(StreamUtilities.read(stream, charset));
 	}
 
 	/**
@@ -103,19 +275,17 @@ public class NRLParser implements INRLParser {
 	@Deprecated
 	public IRuleFile parse(Reader reader) throws Exception {
 		errors = new ArrayList<NRLError>();
+		return parseContent(StreamUtilities.read(reader));
+	}
 
-		String content = getStreamAsString(reader);
-
+	private IRuleFile parseContent(CharSequence content) throws RecognitionException {
 		// Pre-process
-		ReferencePreprocessor processor = new ReferencePreprocessor();
-		content = processor.process(content);
+		content = preprocess(content);
 
 		// Parse
-		NRLJFlexer lexer = new NRLJFlexer(new StringReader(content));
-		CommonTokenStream tokenStream = new CommonTokenStream(lexer);
+		TokenStream tokenStream = new CompactTokenStream(content);
 
-		NRLActionParser parser = new NRLActionParser(tokenStream);
-		parser.setTreeAdaptor(new Antlr3NRLTreeAdaptor());
+		NRLActionParser parser = createParser(tokenStream);
 		RuleFileImpl ruleFile = (RuleFileImpl) parser.fileBody().getTree();
 
 		// Syntax errors? Get out now
@@ -145,119 +315,34 @@ public class NRLParser implements INRLParser {
 	public IRuleFile parse(URI uri, IResolverFactory resolverFactory) throws IOException,
 			RecognitionException, ModelLoadingException, ResolverException,
 			OperatorLoadingException {
-		errors.clear();
-
-		IURIResolver uriResolver = resolverFactory.createURIResolver();
-
-		String content = getNRLFileAsString(uri, uriResolver);
-		content = preprocess(content);
-
-		IRuleFile ruleFile = parse(content);
-		if (ruleFile == null) {
-			return null;
-		}
-
-		IModelLoader modelLoader = resolverFactory.createModelLoader();
-		resolveOperators(uri, uriResolver, modelLoader, ruleFile);
-		resolveModels(uri, modelLoader, ruleFile);
-
-		return ruleFile;
-	}
-
-	private void resolveOperators(URI uri, IURIResolver uriResolver, IModelLoader modelLoader,
-			IRuleFile ruleFile) throws ResolverException, OperatorLoadingException {
-		IOperators[] operators = loadOperators(ruleFile, uriResolver, modelLoader, uri);
-		AntlrOperatorResolverVisitor visitor = new AntlrOperatorResolverVisitor(operators);
-		ruleFile.accept(visitor);
-
-		errors.addAll(visitor.getErrors());
-	}
-
-	private ModelCollection resolveModels(URI uri, IModelLoader modelLoader,
-			IRuleFile ruleFile) throws ModelLoadingException {
-		ModelCollection models = new ModelCollection();
-
-		for (IModelFileReference reference : ruleFile.getModelFileReferences()) {
-			IPackage model = modelLoader.loadModel(uri, reference.getFileName());
-			models.addModelPackage(model);
-			reference.resolveModel(model);
-		}
-
-		AntlrModelResolver modelResolver = new AntlrModelResolver(models);
-		errors = modelResolver.resolve(ruleFile);
-		return models;
+		NRLParsingService service = new NRLParsingService(resolverFactory);
+		service.setCharset(charset);
+		service.setMemoizing(memoizing);
+		service.setParseThreads(parseThreads, parseExecutor);
+		service.setFusingPasses(fusingPasses);
+		service.setResolutionThreads(resolutionThreads, resolutionExecutor);
+		service.setBacktrackingStatistics(backtrackingStatistics);
+		service.setTypeHierarchies(typeHierarchies);
+
+		NRLParseResult result = service.parse(uri);
+		errors = new ArrayList<NRLError>(result.getErrors());
+		typeHierarchy = result.getTypeHierarchy();
+		return result.getRuleFile();
 	}
 
-	private RuleFileImpl parse(String content) throws RecognitionException {
-		// Parse
-		NRLJFlexer lexer = new NRLJFlexer(new StringReader(content));
-		CommonTokenStream tokenStream = new CommonTokenStream(lexer);
-
+	private NRLActionParser createParser(TokenStream tokenStream) {
 		NRLActionParser parser = new NRLActionParser(tokenStream);
 		parser.setTreeAdaptor(new Antlr3NRLTreeAdaptor());
-		RuleFileImpl ruleFile = (RuleFileImpl) parser.fileBody().getTree();
-
-		// Syntax errors? Get out now
-		if (parser.getSyntaxErrors().size() > 0) {
-			errors = parser.getSyntaxErrors();
-			return null;
-		}
-
-		// Resolve the tree and return it (and set errors)
-		ActionAstResolver resolver = new ActionAstResolver();
-		errors = resolver.resolve(ruleFile);
-		if (errors.size() > 0) {
-			return null;
-		}
-		return ruleFile;
+		parser.setMemoizing(memoizing);
+		parser.setBacktrackingStatistics(backtrackingStatistics);
+		return parser;
 	}
 
-	private String preprocess(String content) {
+	private CharSequence preprocess(CharSequence content) {
 		ReferencePreprocessor processor = new ReferencePreprocessor();
 		return processor.process(content);
 	}
 
-	private String getNRLFileAsString(URI uri, IURIResolver uriResolver) throws ResolverException,
-			IOException {
-		InputStream stream = null;
-		String content = null;
-		try {
-			stream = uriResolver.openStream(uri);
-			content = getStreamAsString(new InputStreamReader(stream));
-			stream.close();
-		} finally {
-			if (stream != null) {
-				stream.close();
-			}
-		}
-		return content;
-	}
-
-	private IOperators[] loadOperators(IRuleFile ruleFile, IURIResolver uriResolver,
-			IModelLoader modelLoader, URI baseURI) throws ResolverException,
-			OperatorLoadingException {
-		List<IOperators> operators = new ArrayList<IOperators>();
-		for (IOperatorFileReference operatorFileReference : ruleFile.getOperatorFileReferences()) {
-			String operatorFileName = operatorFileReference.getFileName();
-
-			XmlOperatorLoader loader = new XmlOperatorLoader(
-					modelLoader, uriResolver);
-			try {
-				URI operatorFileUri = new URI(org.eclipse.emf.common.util.URI.encodeQuery(operatorFileName, true));
-				loader.load(baseURI, operatorFileUri, errors);
-			} catch (Exception e) {
-				throw new OperatorLoadingException(format("Failed to load operators from : %s",
-						operatorFileName));
-			}
-
-			IOperators loadedOperatorFile = loader.getOperators();
-			operatorFileReference.resolveOperators(loadedOperatorFile);
-
-			operators.add(loadedOperatorFile);
-		}
-		return operators.toArray(new IOperators[] {});
-	}
-
 	/**
 	 * Attach model information to a parsed rule file AST. This traverses the AST and decorates any
 	 * model references with actual elements from the model.
@@ -275,6 +360,8 @@ public class NRLParser implements INRLParser {
 		errors = new ArrayList<NRLError>();
 
 		AntlrModelResolver resolver = new AntlrModelResolver(models);
+		resolver.setResolutionThreads(resolutionThreads);
+		resolver.setExecutor(resolutionExecutor);
 		errors = resolver.resolve(ruleFile);
 	}
 
@@ -0,0 +1,438 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+
+import net.sourceforge.nrl.parser.ast.IModelFileReference;
+import net.sourceforge.nrl.parser.ast.IOperatorFileReference;
+import net.sourceforge.nrl.parser.ast.IRuleFile;
+import net.sourceforge.nrl.parser.ast.action.impl.ActionAstResolver;
+import net.sourceforge.nrl.parser.ast.action.impl.FusedAstResolver;
+import net.sourceforge.nrl.parser.ast.impl.Antlr3NRLTreeAdaptor;
+import net.sourceforge.nrl.parser.ast.impl.AntlrModelResolver;
+import net.sourceforge.nrl.parser.ast.impl.AntlrOperatorResolverVisitor;
+import net.sourceforge.nrl.parser.ast.impl.BacktrackingStatistics;
+import net.sourceforge.nrl.parser.ast.impl.CompactTokenStream;
+import net.sourceforge.nrl.parser.ast.impl.NRLActionParser;
+import net.sourceforge.nrl.parser.ast.impl.ParallelDeclarationParser;
+import net.sourceforge.nrl.parser.ast.impl.RuleFileImpl;
+import net.sourceforge.nrl.parser.model.IPackage;
+import net.sourceforge.nrl.parser.model.ModelCollection;
+import net.sourceforge.nrl.parser.model.TypeHierarchyIndex;
+import net.sourceforge.nrl.parser.model.loader.IModelLoader;
+import net.sourceforge.nrl.parser.model.loader.ModelLoadingException;
+import net.sourceforge.nrl.parser.model.loader.OperatorLoadingException;
+import net.sourceforge.nrl.parser.operators.IOperators;
+import net.sourceforge.nrl.parser.operators.XmlOperatorLoader;
+import net.sourceforge.nrl.parser.preprocessing.ReferencePreprocessor;
+import net.sourceforge.nrl.parser.resolver.IResolverFactory;
+import net.sourceforge.nrl.parser.resolver.IURIResolver;
+import net.sourceforge.nrl.parser.resolver.ResolverException;
+import net.sourceforge.nrl.parser.util.StreamUtilities;
+import net.sourceforge.nrl.parser.util.ThreadUtilities;
+
+import org.antlr.runtime.RecognitionException;
+
+/**
+ * A thread-safe NRL parser. Unlike {@link NRLParser}, a service keeps no state between parses:
+ * every call to {@link #parse(URI)} returns its rule file, models, operators and errors in an
+ * immutable {@link NRLParseResult}. A single service can be shared by any number of threads, and
+ * parses through it share the caches of its resolver factory, for example loaded models. The
+ * setters are not thread-safe: configure a service before sharing it.
+ * <p>
+ * Parses that resolve without errors also index the type hierarchy of their models, once for
+ * every distinct set of models, see {@link NRLParseResult#getTypeHierarchy()}.
+ * <p>
+ * The resolver factory must be safe for concurrent use. {@link
+ * net.sourceforge.nrl.parser.resolver.StandaloneResolverFactory} is.
+ *
+ * @since 1.4.18
+ */
+public class NRLParsingService {
+
+	private final IResolverFactory resolverFactory;
+
+	private Charset charset = StreamUtilities.DEFAULT_CHARSET;
+
+	private boolean memoizing = false;
+
+	private int parseThreads = 1;
+
+	// The pool shared by the declaration parsers of all parses, null if parsing sequentially
+	private ExecutorService parseExecutor = null;
+
+	private boolean fusingPasses = false;
+
+	private int resolutionThreads = 1;
+
+	// The pool shared by the model resolvers of all parses, null if resolving sequentially
+	private ExecutorService resolutionExecutor = null;
+
+	private BacktrackingStatistics backtrackingStatistics = null;
+
+	// Type hierarchy indexes, by the packages of the models they index
+	private ConcurrentMap<List<IPackage>, TypeHierarchyIndex> typeHierarchies =
+			new ConcurrentHashMap<List<IPackage>, TypeHierarchyIndex>();
+
+	/**
+	 * Create a service that reads UTF-8 files and parses and resolves them on the calling
+	 * thread, without memoization. Use the setters to change this before sharing the service
+	 * between threads.
+	 *
+	 * @param resolverFactory the factory used to load files, models and operators
+	 */
+	public NRLParsingService(IResolverFactory resolverFactory) {
+		this.resolverFactory = resolverFactory;
+	}
+
+	/**
+	 * Return the resolver factory.
+	 *
+	 * @return the factory
+	 */
+	public IResolverFactory getResolverFactory() {
+		return resolverFactory;
+	}
+
+	/**
+	 * Return the character set used to decode NRL files.
+	 *
+	 * @return the character set, UTF-8 by default
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Set the character set used to decode NRL files.
+	 *
+	 * @param charset the character set, null for UTF-8
+	 */
+	public void setCharset(Charset charset) {
+		this.charset = charset == null ? StreamUtilities.DEFAULT_CHARSET : charset;
+	}
+
+	/**
+	 * Return true if speculative parses are memoized.
+	 *
+	 * @return true if memoizing, false by default
+	 */
+	public boolean isMemoizing() {
+		return memoizing;
+	}
+
+	/**
+	 * Switch memoization of speculative parses on or off, see
+	 * {@link NRLParser#setMemoizing(boolean)}.
+	 *
+	 * @param memoizing true to memoize
+	 */
+	public void setMemoizing(boolean memoizing) {
+		this.memoizing = memoizing;
+	}
+
+	/**
+	 * Return the number of threads that the declarations of each file are parsed on.
+	 *
+	 * @return the number of threads, 1 if files are parsed on the calling thread
+	 */
+	public int getParseThreads() {
+		return parseThreads;
+	}
+
+	/**
+	 * Parse the declarations of every file on several threads. This speeds up parsing of very
+	 * large files, see {@link ParallelDeclarationParser}. The threads are shared by all parses
+	 * through the service.
+	 *
+	 * @param parseThreads the number of threads, 1 to parse on the calling thread
+	 */
+	public void setParseThreads(int parseThreads) {
+		parseThreads = Math.max(1, parseThreads);
+		if (parseThreads != this.parseThreads) {
+			setParseThreads(parseThreads, parseThreads > 1 ? ThreadUtilities.newSharedPool(
+					parseThreads, "nrl-declaration-parser") : null);
+		}
+	}
+
+	/*
+	 * Set the parse threads and the pool to parse on. Used by NRLParser, which keeps its pool
+	 * between parses.
+	 */
+	void setParseThreads(int parseThreads, ExecutorService parseExecutor) {
+		this.parseThreads = Math.max(1, parseThreads);
+		this.parseExecutor = parseExecutor;
+	}
+
+	/**
+	 * Return true if identifiers, fragment references and operator references are resolved in a
+	 * single walk over the AST.
+	 *
+	 * @return true if fusing the resolution passes, false by default
+	 */
+	public boolean isFusingPasses() {
+		return fusingPasses;
+	}
+
+	/**
+	 * Resolve identifiers, fragment references and operator references in a single walk over
+	 * the AST, see {@link FusedAstResolver}. The errors are the same as with separate walks.
+	 *
+	 * @param fusingPasses true to resolve in a single walk
+	 */
+	public void setFusingPasses(boolean fusingPasses) {
+		this.fusingPasses = fusingPasses;
+	}
+
+	/**
+	 * Return the number of threads that the model references of each file are resolved on.
+	 *
+	 * @return the number of threads, 1 if model references are resolved on the calling thread
+	 */
+	public int getResolutionThreads() {
+		return resolutionThreads;
+	}
+
+	/**
+	 * Resolve the model references in the bodies of rules and fragments on several threads, see
+	 * {@link AntlrModelResolver#setResolutionThreads(int)}. The threads are shared by all parses
+	 * through the service.
+	 *
+	 * @param resolutionThreads the number of threads, 1 to resolve on the calling thread
+	 */
+	public void setResolutionThreads(int resolutionThreads) {
+		resolutionThreads = Math.max(1, resolutionThreads);
+		if (resolutionThreads != this.resolutionThreads) {
+			setResolutionThreads(resolutionThreads, resolutionThreads > 1 ? ThreadUtilities
+					.newSharedPool(resolutionThreads, "nrl-model-resolver") : null);
+		}
+	}
+
+	/*
+	 * Set the resolution threads and the pool to resolve on. Used by NRLParser and the batch
+	 * compiler, which keep their pools between parses.
+	 */
+	void setResolutionThreads(int resolutionThreads, ExecutorService resolutionExecutor) {
+		this.resolutionThreads = Math.max(1, resolutionThreads);
+		this.resolutionExecutor = resolutionExecutor;
+	}
+
+	/*
+	 * Collect backtracking statistics, which are not thread-safe. Used by NRLParser, which is
+	 * single-threaded.
+	 */
+	void setBacktrackingStatistics(BacktrackingStatistics backtrackingStatistics) {
+		this.backtrackingStatistics = backtrackingStatistics;
+	}
+
+	/*
+	 * Share type hierarchy indexes with other services. Used by NRLParser, which keeps its
+	 * indexes between parses.
+	 */
+	void setTypeHierarchies(ConcurrentMap<List<IPackage>, TypeHierarchyIndex> typeHierarchies) {
+		this.typeHierarchies = typeHierarchies;
+	}
+
+	/**
+	 * Parse an NRL file, and resolve it against the models and operators it references. Syntax
+	 * errors, and semantic errors in the rule file and its operator files, are reported in the
+	 * result.
+	 *
+	 * @param uri the absolute URI of the NRL file
+	 * @return the result
+	 * @throws IOException if the NRL file cannot be read
+	 * @throws ResolverException if the NRL file cannot be opened
+	 * @throws ModelLoadingException if a referenced model cannot be loaded
+	 * @throws OperatorLoadingException if a referenced operator file cannot be loaded, for
+	 *             example because it is not valid
+	 * @throws RecognitionException if the parser fails to recover from a syntax error
+	 */
+	public NRLParseResult parse(URI uri) throws IOException, RecognitionException,
+			ResolverException, ModelLoadingException, OperatorLoadingException {
+		List<NRLError> errors = new ArrayList<NRLError>();
+		IURIResolver uriResolver = resolverFactory.createURIResolver();
+
+		CharSequence content = getNRLFileContent(uri, uriResolver);
+		content = new ReferencePreprocessor().process(content);
+
+		ActionAstResolver astResolver = createAstResolver();
+		IRuleFile ruleFile = parse(content, astResolver, errors);
+		if (ruleFile == null) {
+			return new NRLParseResult(null, null, null, errors);
+		}
+
+		IModelLoader modelLoader = resolverFactory.createModelLoader();
+		List<IOperators> operators = resolveOperators(uri, uriResolver, modelLoader, ruleFile,
+				astResolver, errors);
+		ModelCollection models = resolveModels(uri, modelLoader, ruleFile, errors);
+
+		TypeHierarchyIndex typeHierarchy = errors.isEmpty() ? getTypeHierarchy(models) : null;
+		return new NRLParseResult(ruleFile, models, operators, errors, typeHierarchy);
+	}
+
+	/*
+	 * Return the type hierarchy index of a set of models, indexing them on first use. Parses
+	 * that reference the same models share the index, as they share the loaded models.
+	 */
+	TypeHierarchyIndex getTypeHierarchy(ModelCollection models) {
+		List<IPackage> key = Arrays.asList(models.getModelPackages());
+		TypeHierarchyIndex index = typeHierarchies.get(key);
+		if (index == null) {
+			index = new TypeHierarchyIndex(models);
+			TypeHierarchyIndex existing = typeHierarchies.putIfAbsent(key, index);
+			if (existing != null) {
+				index = existing;
+			}
+		}
+		return index;
+	}
+
+	/*
+	 * Create the resolver for identifiers and fragment references. A fused resolver also
+	 * remembers the operator references, see resolveOperators.
+	 */
+	ActionAstResolver createAstResolver() {
+		return fusingPasses ? new FusedAstResolver() : new ActionAstResolver();
+	}
+
+	/*
+	 * Parse and resolve the tree. Returns null if there are syntax or semantic errors.
+	 */
+	RuleFileImpl parse(CharSequence content, ActionAstResolver resolver, List<NRLError> errors)
+			throws RecognitionException {
+		RuleFileImpl ruleFile;
+		List<NRLError> syntaxErrors;
+
+		// Statistics are not thread-safe, so are only collected by sequential parses
+		if (parseThreads > 1 && backtrackingStatistics == null) {
+			ParallelDeclarationParser parser = new ParallelDeclarationParser(content, parseThreads);
+			parser.setMemoizing(memoizing);
+			parser.setExecutor(parseExecutor);
+			ruleFile = parser.parse();
+			syntaxErrors = parser.getSyntaxErrors();
+		} else {
+			NRLActionParser parser = new NRLActionParser(new CompactTokenStream(content));
+			parser.setTreeAdaptor(new Antlr3NRLTreeAdaptor());
+			parser.setMemoizing(memoizing);
+			parser.setBacktrackingStatistics(backtrackingStatistics);
+			ruleFile = (RuleFileImpl) parser.fileBody().getTree();
+			syntaxErrors = parser.getSyntaxErrors();
+		}
+
+		// Syntax errors? Get out now
+		if (syntaxErrors.size() > 0) {
+			errors.addAll(syntaxErrors);
+			return null;
+		}
+
+		List<NRLError> resolverErrors = resolver.resolve(ruleFile);
+		if (resolverErrors.size() > 0) {
+			errors.addAll(resolverErrors);
+			return null;
+		}
+		return ruleFile;
+	}
+
+	List<IOperators> resolveOperators(URI uri, IURIResolver uriResolver,
+			IModelLoader modelLoader, IRuleFile ruleFile, ActionAstResolver astResolver,
+			List<NRLError> errors)
+			throws ResolverException, OperatorLoadingException {
+		List<IOperators> operators = new ArrayList<IOperators>();
+		for (IOperatorFileReference operatorFileReference : ruleFile.getOperatorFileReferences()) {
+			IOperators loadedOperatorFile = loadOperators(uri, operatorFileReference
+					.getFileName(), uriResolver, modelLoader, errors);
+			operatorFileReference.resolveOperators(loadedOperatorFile);
+
+			operators.add(loadedOperatorFile);
+		}
+
+		IOperators[] operatorArray = operators.toArray(new IOperators[operators.size()]);
+		if (astResolver instanceof FusedAstResolver) {
+			// The operator references were found when the tree was resolved
+			errors.addAll(((FusedAstResolver) astResolver).resolveOperators(operatorArray));
+		} else {
+			AntlrOperatorResolverVisitor visitor = new AntlrOperatorResolverVisitor(operatorArray);
+			ruleFile.accept(visitor);
+			errors.addAll(visitor.getErrors());
+		}
+
+		return operators;
+	}
+
+	/*
+	 * Load one operator file referenced by an NRL file. Overridden by the batch compiler to share
+	 * operator files between NRL files.
+	 */
+	IOperators loadOperators(URI uri, String operatorFileName, IURIResolver uriResolver,
+			IModelLoader modelLoader, List<NRLError> errors) throws OperatorLoadingException {
+		XmlOperatorLoader loader = new XmlOperatorLoader(modelLoader, uriResolver);
+		try {
+			loader.load(uri, getOperatorFileURI(operatorFileName), errors);
+		} catch (Exception e) {
+			throw new OperatorLoadingException(format("Failed to load operators from : %s",
+					operatorFileName));
+		}
+		return loader.getOperators();
+	}
+
+	URI getOperatorFileURI(String operatorFileName) throws URISyntaxException {
+		return new URI(org.eclipse.emf.common.util.URI.encodeQuery(operatorFileName, true));
+	}
+
+	ModelCollection resolveModels(URI uri, IModelLoader modelLoader, IRuleFile ruleFile,
+			List<NRLError> errors) throws ModelLoadingException {
+		ModelCollection models = new ModelCollection();
+
+		for (IModelFileReference reference : ruleFile.getModelFileReferences()) {
+			IPackage model = modelLoader.loadModel(uri, reference.getFileName());
+			models.addModelPackage(model);
+			reference.resolveModel(model);
+		}
+
+		AntlrModelResolver modelResolver = new AntlrModelResolver(models);
+		modelResolver.setResolutionThreads(resolutionThreads);
+		modelResolver.setExecutor(resolutionExecutor);
+		errors.addAll(modelResolver.resolve(ruleFile));
+		return models;
+	}
+
+	CharSequence getNRLFileContent(URI uri, IURIResolver uriResolver)
+			throws ResolverException, IOException {
+		InputStream stream = null;
+		CharSequence content = null;
+		try {
+			stream = uriResolver.openStream(uri);
+			content = StreamUtilities.read(stream, charset);
+		} finally {
+			if (stream != null) {
+				stream.close();
+			}
+		}
+		return content;
+	}
+}
@@ -21,62 +21,142 @@ package net.sourceforge.nrl.parser.ast;
  * Representation of NRL primitive types. A type will be of a certain kind (e.g.
  * integer, string) and will also be either scalar, or a list or enumeration of
  * that type.
+ * <p>
+ * Data types are immutable and interned: there is exactly one instance for
+ * every combination of kind, collection and enumeration, obtained through
+ * {@link #get(Type, boolean, boolean)} or derived from another type with
+ * {@link #withCollection(boolean)} and {@link #withEnumeration(boolean)}.
+ * Instances can therefore be shared freely.
+ * <p>
+ * The public constructors and setters are deprecated, and kept for one release
+ * so that existing callers and subclasses continue to work. Constructed
+ * instances are private, modifiable copies that are equal to, but not the
+ * same as, the interned ones. Interned instances cannot be modified: the
+ * setters throw an {@link UnsupportedOperationException} when called on the
+ * constants, on the results of {@link #get(Type, boolean, boolean)} and the
+ * <code>with</code> methods, and on the types the type checker assigns to
+ * model elements and AST nodes. Code that still modifies such a type must
+ * first take a copy with {@link #NRLDataType(NRLDataType)}.
  * 
  * @author Christian Nentwich
  */
 public class NRLDataType {
 
-	public static NRLDataType UNKNOWN = new NRLDataType(Type.Unknown);
+	// All instances, indexed by type ordinal, collection and enumeration
+	private static final NRLDataType[] INSTANCES = new NRLDataType[Type.values().length * 4];
+
+	static {
+		for (Type type : Type.values()) {
+			for (int flags = 0; flags < 4; flags++) {
+				INSTANCES[type.ordinal() * 4 + flags] = new NRLDataType(type, (flags & 2) != 0,
+						(flags & 1) != 0, true);
+			}
+		}
+	}
+
+	public static final NRLDataType UNKNOWN = get(Type.Unknown);
 
 	/** Scalar string type */
-	public static NRLDataType STRING = new NRLDataType(Type.String);
+	public static final NRLDataType STRING = get(Type.String);
 
 	/** Scalar date type */
-	public static NRLDataType DATE = new NRLDataType(Type.Date);
+	public static final NRLDataType DATE = get(Type.Date);
 
 	/** Scalar Integer type */
-	public static NRLDataType INTEGER = new NRLDataType(Type.Integer);
+	public static final NRLDataType INTEGER = get(Type.Integer);
 
 	/** Scalar decimal (float, double) type */
-	public static NRLDataType DECIMAL = new NRLDataType(Type.Decimal);
+	public static final NRLDataType DECIMAL = get(Type.Decimal);
 
 	/** Scalar boolean type */
-	public static NRLDataType BOOLEAN = new NRLDataType(Type.Boolean);
+	public static final NRLDataType BOOLEAN = get(Type.Boolean);
 
 	/** Scalar void type */
-	public static NRLDataType VOID = new NRLDataType(Type.Void);
+	public static final NRLDataType VOID = get(Type.Void);
 
 	/** Scalar element type (complex model element) */
-	public static NRLDataType ELEMENT = new NRLDataType(Type.Element);
+	public static final NRLDataType ELEMENT = get(Type.Element);
 
 	/** Enumeration of basic type names */
 	public enum Type {
 		Unknown, String, Decimal, Integer, Boolean, Date, Element, Void
 	}
 
-	private boolean collection = false;
+	private boolean collection;
+
+	private boolean enumeration;
 
-	private boolean enumeration = false;
+	private Type type;
 
-	private Type type = Type.Unknown;
+	// True for the shared instances, which cannot be modified
+	private final boolean interned;
 
+	private NRLDataType(Type type, boolean collection, boolean enumeration, boolean interned) {
+		this.type = type;
+		this.collection = collection;
+		this.enumeration = enumeration;
+		this.interned = interned;
+	}
+
+	/**
+	 * @deprecated Use {@link #UNKNOWN}.
+	 */
+	@Deprecated
 	public NRLDataType() {
+		this(Type.Unknown, false, false, false);
 	}
 
+	/**
+	 * @deprecated Use {@link #get(Type)}.
+	 */
+	@Deprecated
 	public NRLDataType(Type type) {
-		this.type = type;
+		this(type, false, false, false);
 	}
 
+	/**
+	 * Create a private, modifiable copy of another data type. This is the only
+	 * way to obtain an instance that the deprecated setters accept if the
+	 * other type is a shared one.
+	 * 
+	 * @deprecated Data types are immutable, use the other instance.
+	 */
+	@Deprecated
 	public NRLDataType(NRLDataType other) {
-		this.type = other.type;
-		this.collection = other.collection;
-		this.enumeration = other.enumeration;
+		this(other.type, other.collection, other.enumeration, false);
 	}
-	
+
+	/**
+	 * @deprecated Use {@link #get(Type, boolean, boolean)}.
+	 */
+	@Deprecated
 	public NRLDataType(Type type, boolean collection, boolean enumeration) {
-		this.type = type;
-		this.collection = collection;
-		this.enumeration = enumeration;
+		this(type, collection, enumeration, false);
+	}
+
+	/**
+	 * Return the scalar, non-enumeration data type of a kind.
+	 * 
+	 * @param type the kind of type, null for unknown
+	 * @return the shared data type instance
+	 */
+	public static NRLDataType get(Type type) {
+		return get(type, false, false);
+	}
+
+	/**
+	 * Return the data type for a combination of kind, collection and
+	 * enumeration.
+	 * 
+	 * @param type the kind of type, null for unknown
+	 * @param collection true for a collection type
+	 * @param enumeration true for an enumeration type
+	 * @return the shared data type instance
+	 */
+	public static NRLDataType get(Type type, boolean collection, boolean enumeration) {
+		if (type == null)
+			type = Type.Unknown;
+		return INSTANCES[type.ordinal() * 4 + (collection ? 2 : 0) + (enumeration ? 1 : 0)];
 	}
 
 	@Override
@@ -109,18 +189,79 @@ public class NRLDataType {
 		return enumeration;
 	}
 
+	/**
+	 * Return the data type of the same kind and enumeration status, but with
+	 * the given collection status.
+	 * 
+	 * @param collection true for a collection
+	 * @return the shared data type instance
+	 */
+	public NRLDataType withCollection(boolean collection) {
+		return get(type, collection, enumeration);
+	}
+
+	/**
+	 * Return the data type of the same kind and collection status, but with the
+	 * given enumeration status.
+	 * 
+	 * @param enumeration true for an enumeration
+	 * @return the shared data type instance
+	 */
+	public NRLDataType withEnumeration(boolean enumeration) {
+		return get(type, collection, enumeration);
+	}
+
+	/**
+	 * Modify this data type. Only instances created with one of the deprecated
+	 * constructors can be modified.
+	 * 
+	 * @throws UnsupportedOperationException if this is a shared instance, for
+	 *             example a constant or a type assigned by the type checker
+	 * @deprecated Use {@link #withCollection(boolean)}, which returns the shared
+	 *             instance instead of modifying this one.
+	 */
+	@Deprecated
 	public void setCollection(boolean collection) {
+		checkModifiable();
 		this.collection = collection;
 	}
 
+	/**
+	 * Modify this data type. Only instances created with one of the deprecated
+	 * constructors can be modified.
+	 * 
+	 * @throws UnsupportedOperationException if this is a shared instance, for
+	 *             example a constant or a type assigned by the type checker
+	 * @deprecated Use {@link #withEnumeration(boolean)}, which returns the shared
+	 *             instance instead of modifying this one.
+	 */
+	@Deprecated
 	public void setEnumeration(boolean enumeration) {
+		checkModifiable();
 		this.enumeration = enumeration;
 	}
 
+	/**
+	 * Modify this data type. Only instances created with one of the deprecated
+	 * constructors can be modified.
+	 * 
+	 * @throws UnsupportedOperationException if this is a shared instance, for
+	 *             example a constant or a type assigned by the type checker
+	 * @deprecated Use {@link #get(Type, boolean, boolean)}, which returns the shared
+	 *             instance instead of modifying this one.
+	 */
+	@Deprecated
 	public void setType(Type type) {
+		checkModifiable();
 		this.type = type;
 	}
 
+	private void checkModifiable() {
+		if (interned)
+			throw new UnsupportedOperationException("Shared data type " + this
+					+ " cannot be modified");
+	}
+
 	@Override
 	public String toString() {
 		String str = isEnumeration() ? "Enumeration of " : "";
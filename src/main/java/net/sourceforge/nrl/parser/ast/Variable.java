@@ -39,8 +39,8 @@ public class Variable implements IVariable {
 
 	private NRLDataType type = NRLDataType.UNKNOWN;
 
-	// User data map (string->object)
-	private Map<String, Object> userData = new HashMap<String, Object>();
+	// User data map (string->object), created when the first entry is set
+	private Map<String, Object> userData = null;
 
 	public Variable(String name, IExpression boundExpression) {
 		this.name = name;
@@ -87,7 +87,7 @@ public class Variable implements IVariable {
 	}
 
 	public Object getUserData(String key) {
-		return userData.get(key);
+		return userData == null ? null : userData.get(key);
 	}
 
 	public boolean isBoundToElement() {
@@ -108,7 +108,9 @@ public class Variable implements IVariable {
 	}
 
 	public void setUserData(String key, Object data) {
-		userData.put(key, data);		
+		if (userData == null)
+			userData = new HashMap<String, Object>(4);
+		userData.put(key, data);
 	}
 
 }
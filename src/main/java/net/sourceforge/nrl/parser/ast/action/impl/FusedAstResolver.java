@@ -0,0 +1,270 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License 
+ * Version 1.1 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" 
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See 
+ * the License for the specific language governing rights and limitations 
+ * under the License.
+ * 
+ * The Original Code is the NRL Parser, released 28 April 2006, 
+ * Copyright (c) Christian Nentwich. The Initial Developer of the 
+ * Original Code is Christian Nentwich. Portions created by contributors 
+ * identified in the NOTICES file are Copyright (c) the contributors. 
+ * All Rights Reserved. 
+ */
+package net.sourceforge.nrl.parser.ast.action.impl;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.nrl.parser.IStatusCode;
+import net.sourceforge.nrl.parser.NRLError;
+import net.sourceforge.nrl.parser.SemanticError;
+import net.sourceforge.nrl.parser.ast.IDeclaration;
+import net.sourceforge.nrl.parser.ast.INRLAstNode;
+import net.sourceforge.nrl.parser.ast.IRuleDeclaration;
+import net.sourceforge.nrl.parser.ast.action.IActionFragmentDeclaration;
+import net.sourceforge.nrl.parser.ast.constraints.IExistsStatement;
+import net.sourceforge.nrl.parser.ast.constraints.impl.ExistsStatementImpl;
+import net.sourceforge.nrl.parser.ast.constraints.impl.ModelReferenceImpl;
+import net.sourceforge.nrl.parser.ast.constraints.impl.OperatorInvocationImpl;
+import net.sourceforge.nrl.parser.ast.constraints.impl.ValidationFragmentApplicationImpl;
+import net.sourceforge.nrl.parser.ast.constraints.impl.ValidationFragmentDeclarationImpl;
+import net.sourceforge.nrl.parser.ast.impl.Antlr3NRLBaseAst;
+import net.sourceforge.nrl.parser.ast.impl.AntlrAstVisitor;
+import net.sourceforge.nrl.parser.ast.impl.AntlrOperatorResolverVisitor;
+import net.sourceforge.nrl.parser.ast.impl.RuleFileImpl;
+import net.sourceforge.nrl.parser.operators.IOperators;
+
+/**
+ * An action AST resolver that walks the AST once, instead of once for every kind of identifier,
+ * once for every kind of fragment reference and twice per declaration for incomplete exists
+ * statements. The walk collects the declarations, fragment applications, exists statements and
+ * operator invocations; identifiers and references are then resolved from these lists.
+ * <p>
+ * The resolver also remembers the operator invocations and operator actions, so that
+ * {@link #resolveOperators(IOperators[])} can bind them once the operator files are loaded,
+ * instead of a separate {@link AntlrOperatorResolverVisitor} walk. The errors of both methods
+ * are exactly those of {@link ActionAstResolver} and the operator resolver visitor, in the same
+ * order.
+ * 
+ * @since 1.4.18
+ */
+public class FusedAstResolver extends ActionAstResolver {
+
+	// Nodes collected by the walk, in visiting order
+	private List<ValidationFragmentDeclarationImpl> fragmentDeclarations;
+
+	private List<IRuleDeclaration> ruleDeclarations;
+
+	private List<IActionFragmentDeclaration> actionFragmentDeclarations;
+
+	private List<ValidationFragmentApplicationImpl> fragmentApplications;
+
+	private List<ActionFragmentApplicationActionImpl> actionFragmentApplications;
+
+	private List<Antlr3NRLBaseAst> operatorNodes = new ArrayList<Antlr3NRLBaseAst>();
+
+	// The exists statements of every declaration, depth-first
+	private Map<IDeclaration, List<IExistsStatement>> existsStatements;
+
+	/**
+	 * Collect all identifiers in one walk over the AST, which also collects the nodes resolved
+	 * later. The errors are added in the order of the base implementation.
+	 */
+	@Override
+	protected void collectIdentifiers(RuleFileImpl ruleFile, List<NRLError> errors) {
+		collectNodes(ruleFile);
+
+		fragmentIds.clear();
+		for (ValidationFragmentDeclarationImpl decl : fragmentDeclarations) {
+			if (fragmentIds.containsKey(decl.getId())) {
+				errors.add(new SemanticError(IStatusCode.DUPLICATE_FRAGMENT, decl.getLine(), decl
+						.getColumn(), "Duplicate fragment id: " + decl.getId()));
+			} else
+				fragmentIds.put(decl.getId(), decl);
+		}
+
+		ruleIds.clear();
+		for (IRuleDeclaration decl : ruleDeclarations) {
+			if (ruleIds.contains(decl.getId())) {
+				errors.add(new SemanticError(IStatusCode.DUPLICATE_RULE, decl.getLine(), decl
+						.getColumn(), "Duplicate rule id: " + decl.getId()));
+			} else
+				ruleIds.add(decl.getId());
+		}
+
+		collectRuleSetIds(ruleFile, errors);
+		collectGlobalVariableIds(ruleFile, errors);
+
+		actionFragmentIds.clear();
+		for (IActionFragmentDeclaration decl : actionFragmentDeclarations) {
+			if (actionFragmentIds.containsKey(decl.getId())) {
+				errors.add(new SemanticError(IStatusCode.DUPLICATE_ACTION_FRAGMENT,
+						decl.getLine(), decl.getColumn(), "Duplicate action fragment id: "
+								+ decl.getId()));
+			} else
+				actionFragmentIds.put(decl.getId(), decl);
+		}
+	}
+
+	/**
+	 * Resolve the fragment applications collected by the walk.
+	 */
+	@Override
+	protected void resolveReferences(RuleFileImpl ruleFile, List<NRLError> errors) {
+		for (ValidationFragmentApplicationImpl app : fragmentApplications) {
+			ValidationFragmentDeclarationImpl decl = (ValidationFragmentDeclarationImpl) fragmentIds
+					.get(app.getFragmentName());
+			if (decl == null) {
+				errors.add(new SemanticError(IStatusCode.INVALID_FRAGMENT_REF, app.getLine(), app
+						.getColumn(), "Rule references undeclared fragment: "
+						+ app.getFragmentName()));
+			} else
+				app.setFragment(decl);
+		}
+
+		for (ActionFragmentApplicationActionImpl appl : actionFragmentApplications) {
+			ActionFragmentDeclarationImpl decl = (ActionFragmentDeclarationImpl) actionFragmentIds
+					.get(appl.getActionFragmentId());
+			if (decl == null) {
+				errors.add(new SemanticError(IStatusCode.INVALID_ACTION_FRAGMENT_REF, appl
+						.getLine(), appl.getColumn(), "Rule references undeclared action fragment: "
+						+ appl.getActionFragmentId()));
+			} else
+				appl.setFragment(decl);
+		}
+	}
+
+	/**
+	 * Resolve incomplete exists statements from the lists collected by the walk, see the base
+	 * implementation.
+	 */
+	@Override
+	protected void resolveIncompleteExistsStatements(RuleFileImpl ruleFile,
+			List<NRLError> errors) {
+		for (IDeclaration declNode : ruleFile.getDeclarations()) {
+			List<IExistsStatement> allExists = existsStatements.get(declNode);
+			if (allExists == null) {
+				// Not reached by the walk of the rule file
+				allExists = collectExistsStatements(declNode);
+			}
+
+			for (int i = 0; i < allExists.size(); i++) {
+				if (!(allExists.get(i) instanceof ExistsStatementImpl))
+					continue;
+				ExistsStatementImpl exists = (ExistsStatementImpl) allExists.get(i);
+				if (exists.getElement() != null)
+					continue;
+
+				// Use the element of the first preceding statement that has one
+				boolean resolved = false;
+				for (int j = 0; j < i && !resolved; j++) {
+					ExistsStatementImpl other = (ExistsStatementImpl) allExists.get(j);
+					if (other.getElement() != null) {
+						exists.setElement(new ModelReferenceImpl(((ModelReferenceImpl) other
+								.getElement())));
+						resolved = true;
+					}
+				}
+
+				if (!resolved) {
+					errors.add(new SemanticError(IStatusCode.AMBIGUOUS_EXISTENCE, exists
+							.getLine(), exists.getColumn(),
+							"Ambiguous existance statement: need to refer to an attribute"));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Resolve the operator invocations and operator actions found by the last call to
+	 * {@link #resolve(RuleFileImpl)}, without walking the AST again.
+	 * 
+	 * @param operators the operators to resolve against
+	 * @return the errors, empty if there were none
+	 */
+	public List<NRLError> resolveOperators(IOperators[] operators) {
+		AntlrOperatorResolverVisitor visitor = new AntlrOperatorResolverVisitor(operators);
+		for (Antlr3NRLBaseAst node : operatorNodes) {
+			visitor.visitBefore(node);
+		}
+		return visitor.getErrors();
+	}
+
+	/*
+	 * Walk the rule file once, collecting everything that the other methods resolve.
+	 */
+	private void collectNodes(RuleFileImpl ruleFile) {
+		fragmentDeclarations = new ArrayList<ValidationFragmentDeclarationImpl>();
+		ruleDeclarations = new ArrayList<IRuleDeclaration>();
+		actionFragmentDeclarations = new ArrayList<IActionFragmentDeclaration>();
+		fragmentApplications = new ArrayList<ValidationFragmentApplicationImpl>();
+		actionFragmentApplications = new ArrayList<ActionFragmentApplicationActionImpl>();
+		operatorNodes = new ArrayList<Antlr3NRLBaseAst>();
+		existsStatements = new IdentityHashMap<IDeclaration, List<IExistsStatement>>();
+
+		final Map<IDeclaration, Boolean> declarations =
+				new IdentityHashMap<IDeclaration, Boolean>();
+		for (IDeclaration decl : ruleFile.getDeclarations()) {
+			declarations.put(decl, Boolean.TRUE);
+		}
+
+		ruleFile.accept(new AntlrAstVisitor() {
+			// The declaration being walked and its exists statements, if any
+			private INRLAstNode currentDeclaration = null;
+
+			private List<IExistsStatement> currentExists = null;
+
+			protected boolean visitBefore(Antlr3NRLBaseAst node) {
+				if (currentDeclaration == null && declarations.containsKey(node)) {
+					currentDeclaration = node;
+					currentExists = new ArrayList<IExistsStatement>();
+					existsStatements.put((IDeclaration) node, currentExists);
+				}
+
+				if (node instanceof ValidationFragmentDeclarationImpl)
+					fragmentDeclarations.add((ValidationFragmentDeclarationImpl) node);
+				if (node instanceof IRuleDeclaration)
+					ruleDeclarations.add((IRuleDeclaration) node);
+				if (node instanceof IActionFragmentDeclaration)
+					actionFragmentDeclarations.add((IActionFragmentDeclaration) node);
+				if (node instanceof ValidationFragmentApplicationImpl)
+					fragmentApplications.add((ValidationFragmentApplicationImpl) node);
+				if (node instanceof ActionFragmentApplicationActionImpl)
+					actionFragmentApplications.add((ActionFragmentApplicationActionImpl) node);
+				if (node instanceof OperatorInvocationImpl || node instanceof OperatorActionImpl)
+					operatorNodes.add(node);
+				if (node instanceof IExistsStatement && currentExists != null)
+					currentExists.add((IExistsStatement) node);
+
+				return true;
+			}
+
+			@Override
+			protected void visitAfter(Antlr3NRLBaseAst node) {
+				if (node == currentDeclaration) {
+					currentDeclaration = null;
+					currentExists = null;
+				}
+			}
+		});
+	}
+
+	private List<IExistsStatement> collectExistsStatements(IDeclaration decl) {
+		final List<IExistsStatement> result = new ArrayList<IExistsStatement>();
+		decl.accept(new AntlrAstVisitor() {
+			protected boolean visitBefore(Antlr3NRLBaseAst node) {
+				if (node instanceof IExistsStatement)
+					result.add((IExistsStatement) node);
+				return true;
+			}
+		});
+		return result;
+	}
+}
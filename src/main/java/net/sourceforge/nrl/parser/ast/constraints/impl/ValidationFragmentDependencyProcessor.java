@@ -2,7 +2,9 @@ package net.sourceforge.nrl.parser.ast.constraints.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -23,7 +25,11 @@ import net.sourceforge.nrl.parser.ast.constraints.IValidationFragmentDeclaration
  * This class enables the type checker to determine a processing order, because fragment types
  * cannot determined until types of properties referenced within them are clear.
  * <p>
- * The class also detects circular fragment references. Here is how to use it:
+ * The class also detects circular fragment references. The ordering is computed from the strongly
+ * connected components of the reference graph (Tarjan's algorithm), in time linear in the number
+ * of fragments and references. Every component that contains more than one fragment, or a
+ * fragment that references itself, is reported as a cycle. Fragments that merely reference a cycle
+ * are ordered after it, but are not reported. Here is how to use it:
  * <ul>
  * <li>Call {@link #addDeclaration(IDeclaration)} repeatedly
  * <li>Call {@link #resolve()} and abort if necessary
@@ -38,6 +44,13 @@ public class ValidationFragmentDependencyProcessor {
 
 	private List<IDeclaration> orderedDeclarations = new ArrayList<IDeclaration>();
 
+	private List<List<IDeclaration>> cycles = new ArrayList<List<IDeclaration>>();
+
+	private List<List<IDeclaration>> levels = new ArrayList<List<IDeclaration>>();
+
+	// Next Tarjan index to assign during resolve
+	private int nextIndex = 0;
+
 	public void addDeclaration(IValidationFragmentDeclaration decl) {
 		declarations.add(decl);
 	}
@@ -55,61 +68,98 @@ public class ValidationFragmentDependencyProcessor {
 
 	public List<NRLError> resolve() {
 		orderedDeclarations.clear();
+		cycles.clear();
+		levels.clear();
 		List<NRLError> result = new ArrayList<NRLError>();
 
 		// Nothing to do
-		if (declarations.size() < 2) {
-			orderedDeclarations.addAll(declarations);
+		if (declarations.isEmpty()) {
 			return result;
 		}
 
-		// Build a list of dependency node
+		// Build a list of dependency nodes, in declaration order
 		Collection<DependencyNode> nodes = buildDependencyGraph();
 
-		// Find a list of nodes with no incoming edges (i.e. not referenced
-		// by other properties)
-		List<DependencyNode> independent = new ArrayList<DependencyNode>();
-
+		// Components are completed dependencies first, so they can be appended
+		// to the ordered list as they are found
+		nextIndex = 0;
 		for (DependencyNode node : nodes) {
-
-			int count = 0;
-			for (DependencyNode others : nodes) {
-				if (others.references(node))
-					count++;
-			}
-
-			if (count == 0) {
-				independent.add(node);
-			}
+			if (node.index == DependencyNode.UNVISITED)
+				strongConnect(node);
 		}
 
-		for (DependencyNode node : independent) {
-			depthFirst(node, nodes);
-		}
-
-		// Independent set empty? Must be a cycle.
-		if (!nodes.isEmpty()) {
-			for (DependencyNode node : nodes) {
-				IDeclaration decl = node.getSource();
-
+		for (List<IDeclaration> cycle : cycles) {
+			for (IDeclaration decl : cycle) {
 				result.add(new SemanticError(IStatusCode.FRAGMENT_CYCLICAL_REFERENCE, decl
 						.getLine(), decl.getColumn(), 1,
 						"Fragment is involved in a circular reference"));
-
-				orderedDeclarations.add(decl);
 			}
 		}
 
 		return result;
 	}
 
+	/**
+	 * Find the strongly connected component of a node and of all nodes reachable from it, using
+	 * Tarjan's algorithm. Every component is added to the orderedDeclarations list when it is
+	 * complete, which is after all components it references. The traversal uses an explicit stack,
+	 * so long reference chains cannot overflow the call stack.
+	 * 
+	 * @param root the node to start from
+	 */
+	protected void strongConnect(DependencyNode root) {
+		List<DependencyNode> component = new ArrayList<DependencyNode>();
+		List<DependencyNode> callStack = new ArrayList<DependencyNode>();
+		List<Integer> nextTarget = new ArrayList<Integer>();
+
+		visit(root, component, callStack, nextTarget);
+		while (!callStack.isEmpty()) {
+			int top = callStack.size() - 1;
+			DependencyNode node = callStack.get(top);
+			int next = nextTarget.get(top);
+
+			if (next < node.getTargets().size()) {
+				nextTarget.set(top, next + 1);
+				DependencyNode target = node.getTargets().get(next);
+				if (target.index == DependencyNode.UNVISITED) {
+					visit(target, component, callStack, nextTarget);
+				} else if (target.onStack) {
+					node.lowLink = Math.min(node.lowLink, target.index);
+				}
+				continue;
+			}
+
+			callStack.remove(top);
+			nextTarget.remove(top);
+			if (top > 0) {
+				DependencyNode caller = callStack.get(top - 1);
+				caller.lowLink = Math.min(caller.lowLink, node.lowLink);
+			}
+
+			// Root of a component: pop it off the component stack
+			if (node.lowLink == node.index) {
+				int start = component.lastIndexOf(node);
+				List<DependencyNode> members = component.subList(start, component.size());
+				addComponent(members);
+				for (DependencyNode member : members) {
+					member.onStack = false;
+				}
+				members.clear();
+			}
+		}
+	}
+
 	/**
 	 * Traverse from a node, and add all encountered nodes to the orderedDeclarations list. Also
 	 * remove from the second list being provided as parameter, to indicate processing.
 	 * 
 	 * @param root the root node
 	 * @param removalList the list to remove from
+	 * @deprecated No longer called by {@link #resolve()}, which orders the declarations with
+	 *             {@link #strongConnect(DependencyNode)}. This method does not detect cycles,
+	 *             and overflows the stack if one is reachable from the root.
 	 */
+	@Deprecated
 	protected void depthFirst(DependencyNode root, Collection<DependencyNode> removalList) {
 		for (DependencyNode target : root.getTargets()) {
 			depthFirst(target, removalList);
@@ -119,29 +169,81 @@ public class ValidationFragmentDependencyProcessor {
 		removalList.remove(root);
 	}
 
+	private void visit(DependencyNode node, List<DependencyNode> component,
+			List<DependencyNode> callStack, List<Integer> nextTarget) {
+		node.index = nextIndex;
+		node.lowLink = nextIndex;
+		nextIndex++;
+		node.onStack = true;
+		component.add(node);
+		callStack.add(node);
+		nextTarget.add(0);
+	}
+
+	/*
+	 * Append a completed component to the ordered declarations, in declaration order, and record
+	 * it as a cycle if it is one.
+	 */
+	private void addComponent(List<DependencyNode> members) {
+		List<DependencyNode> sorted = new ArrayList<DependencyNode>(members);
+		if (sorted.size() > 1) {
+			Collections.sort(sorted, new Comparator<DependencyNode>() {
+				public int compare(DependencyNode first, DependencyNode second) {
+					return first.position - second.position;
+				}
+			});
+		}
+
+		// One level above the highest component referenced, which is complete. Members are still
+		// on the stack, and every other node on it would be part of this component if referenced
+		int level = 0;
+		for (DependencyNode node : sorted) {
+			for (DependencyNode target : node.getTargets()) {
+				if (!target.onStack)
+					level = Math.max(level, target.level + 1);
+			}
+		}
+
+		List<IDeclaration> decls = new ArrayList<IDeclaration>(sorted.size());
+		for (DependencyNode node : sorted) {
+			node.level = level;
+			decls.add(node.getSource());
+		}
+		orderedDeclarations.addAll(decls);
+
+		while (levels.size() <= level) {
+			levels.add(new ArrayList<IDeclaration>());
+		}
+		levels.get(level).addAll(decls);
+
+		if (decls.size() > 1 || sorted.get(0).references(sorted.get(0)))
+			cycles.add(decls);
+	}
+
 	/**
-	 * Build the graph of DependencyNode objects. See below for the class definition.
+	 * Build the graph of DependencyNode objects. See below for the class definition. References to
+	 * fragments that were not added to this processor are ignored.
 	 * 
-	 * @return the graph
+	 * @return the graph, in declaration order
 	 */
 	protected Collection<DependencyNode> buildDependencyGraph() {
-		Map<IDeclaration, DependencyNode> deps = new HashMap<IDeclaration, DependencyNode>();
+		Map<IDeclaration, DependencyNode> deps = new LinkedHashMap<IDeclaration, DependencyNode>();
 		for (IDeclaration decl : declarations) {
-			DependencyNode node = new DependencyNode(decl);
-			deps.put(decl, node);
+			if (!deps.containsKey(decl)) {
+				DependencyNode node = new DependencyNode(decl);
+				node.position = deps.size();
+				deps.put(decl, node);
+			}
 		}
 
 		for (DependencyNode node : deps.values()) {
 			IDeclaration decl = node.getSource();
 
 			for (IDeclaration ref : getReferencedDeclarations(decl)) {
-				node.addTarget(deps.get(ref));
+				DependencyNode target = deps.get(ref);
+				if (target != null)
+					node.addTarget(target);
 			}
-
-			// System.out.println(node.getSource().getId());
-			// for (DependencyNode d : node.getTargets()) {
-			// System.out.println(" " + d.getSource().getId());
-			// }
 		}
 		return deps.values();
 	}
@@ -177,9 +279,48 @@ public class ValidationFragmentDependencyProcessor {
 		return orderedDeclarations;
 	}
 
+	/**
+	 * Return the ordered declarations grouped into levels. The first level contains the fragments
+	 * that reference no other fragments, and every later level the fragments that only reference
+	 * fragments in earlier levels, or in their own cycle. Fragments in the same level can be
+	 * processed independently of each other. Within a level, fragments are in the order of
+	 * {@link #getOrderedDeclarations()}.
+	 * 
+	 * @return the levels, empty if there are no declarations
+	 * @since 1.4.18
+	 */
+	public List<List<IDeclaration>> getLevels() {
+		return levels;
+	}
+
+	/**
+	 * Return the circular references found by the last call to {@link #resolve()}. Each cycle is
+	 * the list of fragments involved in it, in declaration order.
+	 * 
+	 * @return the cycles, may be empty
+	 */
+	public List<List<IDeclaration>> getCycles() {
+		return cycles;
+	}
+
 	class DependencyNode {
+		static final int UNVISITED = -1;
+
 		private IDeclaration source;
 
+		// Position in declaration order
+		int position;
+
+		// Tarjan state
+		int index = UNVISITED;
+
+		int lowLink;
+
+		boolean onStack = false;
+
+		// Dependency level, see getLevels
+		int level = 0;
+
 		private List<DependencyNode> targets = new ArrayList<DependencyNode>();
 
 		public DependencyNode(IDeclaration source) {
@@ -40,8 +40,8 @@ public class Antlr3NRLBaseAst extends CommonTree implements INRLAstNode {
 	// token column
 	private int column = -1;
 
-	// User data map (string->object)
-	private Map<String, Object> userData = new HashMap<String, Object>();
+	// User data map (string->object), created when the first entry is set
+	private Map<String, Object> userData = null;
 	
 	public Antlr3NRLBaseAst() {
 	}
@@ -84,7 +84,7 @@ public class Antlr3NRLBaseAst extends CommonTree implements INRLAstNode {
 	}
 
 	public Object getUserData(String key) {
-		return userData.get(key);
+		return userData == null ? null : userData.get(key);
 	}
 
 	public void initialisePositionFromChild(int childPos) {
@@ -103,6 +103,8 @@ public class Antlr3NRLBaseAst extends CommonTree implements INRLAstNode {
 	}
 	
 	public void setUserData(String key, Object data) {
-		userData.put(key, data);		
+		if (userData == null)
+			userData = new HashMap<String, Object>(4);
+		userData.put(key, data);
 	}
 }
@@ -1,8 +1,10 @@
 package net.sourceforge.nrl.parser.ast.impl;
 
 import java.lang.reflect.Constructor;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import net.sourceforge.nrl.parser.ast.action.impl.ActionFragmentApplicationActionImpl;
 import net.sourceforge.nrl.parser.ast.action.impl.ActionFragmentDeclarationImpl;
@@ -60,115 +62,603 @@ import org.antlr.runtime.tree.CommonTreeAdaptor;
  * <p>
  * This is much neater than in ANTLR 2: if the token names get out of line with
  * the contents of this class, you will find a compiler error in here.
+ * <p>
+ * Nodes are created by a table of {@link NodeFactory} objects indexed by token
+ * type, so creating a node is an array lookup and a constructor call. The
+ * default table is built once and shared by all adaptors. Subclasses that
+ * still change the deprecated {@link #tokenTypeToClass} map get the reflective
+ * construction for the token types they changed.
  * 
  * @author Christian Nentwich
  */
 public class Antlr3NRLTreeAdaptor extends CommonTreeAdaptor {
 
-	protected Map<Integer, Class<?>> tokenTypeToClass = new HashMap<Integer, Class<?>>();
+	/**
+	 * Creates the AST node for a token.
+	 * 
+	 * @since 1.4.18
+	 */
+	public interface NodeFactory {
+		/**
+		 * Create a node.
+		 * 
+		 * @param token the token, never null
+		 * @return the node
+		 */
+		public Antlr3NRLBaseAst create(Token token);
+	}
 
-	public Antlr3NRLTreeAdaptor() {
-		tokenTypeToClass.put(NRLActionParser.ADD, ArithmeticExpressionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.AND, BinaryOperatorStatementImpl.class);
-		tokenTypeToClass.put(NRLActionParser.AS_A, CastExpressionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.BOOLEAN, BooleanLiteralImpl.class);
-		tokenTypeToClass.put(NRLActionParser.DECIMAL_NUMBER, DecimalNumberImpl.class);
-		tokenTypeToClass.put(NRLActionParser.DIV, ArithmeticExpressionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.EACH, ForallStatementImpl.class);		
-		tokenTypeToClass.put(NRLActionParser.EQUALS, BinaryPredicateImpl.class);
-		tokenTypeToClass.put(NRLActionParser.GREATER, BinaryPredicateImpl.class);
-		tokenTypeToClass.put(NRLActionParser.GREATER_EQ, BinaryPredicateImpl.class);
-		tokenTypeToClass.put(NRLActionParser.IDENTIFIER, ModelReferenceStep.class);
-		tokenTypeToClass.put(NRLActionParser.IF, IfThenStatementImpl.class);
-		tokenTypeToClass.put(NRLActionParser.IFF, BinaryOperatorStatementImpl.class);
-		tokenTypeToClass.put(NRLActionParser.IMPLIES, BinaryOperatorStatementImpl.class);
-		tokenTypeToClass.put(NRLActionParser.INTEGER_NUMBER, IntegerNumberImpl.class);
-		tokenTypeToClass.put(NRLActionParser.IS_IN, IsInPredicateImpl.class);
-		tokenTypeToClass.put(NRLActionParser.IS_NOT_IN, IsNotInPredicateImpl.class);
-		tokenTypeToClass.put(NRLActionParser.KIND_OF, IsSubtypePredicateImpl.class);
-		tokenTypeToClass.put(NRLActionParser.LESS, BinaryPredicateImpl.class);
-		tokenTypeToClass.put(NRLActionParser.LESS_EQ, BinaryPredicateImpl.class);
-		tokenTypeToClass.put(NRLActionParser.MODEL, ModelFileReferenceImpl.class);
-		tokenTypeToClass.put(NRLActionParser.MINUS, ArithmeticExpressionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.MOD, ArithmeticExpressionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.NOT_EQUALS, BinaryPredicateImpl.class);		
-		tokenTypeToClass.put(NRLActionParser.NOT_PRESENT, NotExistsStatementImpl.class);
-		tokenTypeToClass.put(NRLActionParser.NUMBER_OF, FunctionalExpressionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.OPERATOR, OperatorInvocationImpl.class);
-		tokenTypeToClass.put(NRLActionParser.OPERATORS, OperatorFileReferenceImpl.class);
-		tokenTypeToClass.put(NRLActionParser.OR, BinaryOperatorStatementImpl.class);
-		tokenTypeToClass.put(NRLActionParser.ORDINAL_NUMBER, CollectionIndexImpl.class);
-		tokenTypeToClass.put(NRLActionParser.PROPERTYNAME, ValidationFragmentApplicationImpl.class);			
-		tokenTypeToClass.put(NRLActionParser.RULESET, RuleSetDeclarationImpl.class);
-		tokenTypeToClass.put(NRLActionParser.SINGLE_QUOTED_STRING, LiteralStringImpl.class);
-		tokenTypeToClass.put(NRLActionParser.SUM_OF, FunctionalExpressionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.THERE_IS, GlobalExistsStatementImpl.class);
-		tokenTypeToClass.put(NRLActionParser.TIMES, ArithmeticExpressionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VALIDATION_FRAGMENT, ValidationFragmentDeclarationImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VALIDATION_RULE, ConstraintRuleDeclarationImpl.class);
-		
-		tokenTypeToClass.put(NRLActionParser.VT_COMPOUND_REPORT, CompoundReportImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_CONCATENATED_REPORT, ConcatenatedReportImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_CONDITIONAL_REPORT, ConditionalReportImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_ENUMERATOR, CardinalityConstraintImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_EXISTS, ExistsStatementImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_FIRST_ORDINAL_NUMBER, CollectionIndexImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_MODELREFERENCE, ModelReferenceImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_NAMED_PARAMETER, NamedParameterImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_MULTIPLE_EXISTS, MultipleExistsStatementImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_MULTIPLE_NOTEXISTS, MultipleNotExistsStatementImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_NEGATE_DECIMAL, DecimalNumberImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_NEGATE_INTEGER, IntegerNumberImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_RULEFILE, RuleFileImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_SELECTION_EXPR, SelectionExpressionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_SINGLE_SELECTION_EXPR, SelectionExpressionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_VARIABLE_DECLARATION, VariableDeclarationImpl.class);
-		
-
-		tokenTypeToClass.put(NRLActionParser.MODEL, ModelFileReferenceImpl.class);
-		tokenTypeToClass.put(NRLActionParser.OPERATORS, OperatorFileReferenceImpl.class);
+	private static final NodeFactory ARITHMETIC_EXPRESSION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new ArithmeticExpressionImpl(token);
+		}
+	};
+
+	private static final NodeFactory BINARY_OPERATOR_STATEMENT_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new BinaryOperatorStatementImpl(token);
+		}
+	};
+
+	private static final NodeFactory CAST_EXPRESSION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new CastExpressionImpl(token);
+		}
+	};
+
+	private static final NodeFactory BOOLEAN_LITERAL_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new BooleanLiteralImpl(token);
+		}
+	};
+
+	private static final NodeFactory DECIMAL_NUMBER_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new DecimalNumberImpl(token);
+		}
+	};
+
+	private static final NodeFactory FORALL_STATEMENT_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new ForallStatementImpl(token);
+		}
+	};
+
+	private static final NodeFactory BINARY_PREDICATE_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new BinaryPredicateImpl(token);
+		}
+	};
+
+	private static final NodeFactory MODEL_REFERENCE_STEP_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new ModelReferenceStep(token);
+		}
+	};
+
+	private static final NodeFactory IF_THEN_STATEMENT_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new IfThenStatementImpl(token);
+		}
+	};
+
+	private static final NodeFactory INTEGER_NUMBER_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new IntegerNumberImpl(token);
+		}
+	};
+
+	private static final NodeFactory IS_IN_PREDICATE_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new IsInPredicateImpl(token);
+		}
+	};
+
+	private static final NodeFactory IS_NOT_IN_PREDICATE_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new IsNotInPredicateImpl(token);
+		}
+	};
+
+	private static final NodeFactory IS_SUBTYPE_PREDICATE_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new IsSubtypePredicateImpl(token);
+		}
+	};
+
+	private static final NodeFactory MODEL_FILE_REFERENCE_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new ModelFileReferenceImpl(token);
+		}
+	};
+
+	private static final NodeFactory NOT_EXISTS_STATEMENT_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new NotExistsStatementImpl(token);
+		}
+	};
+
+	private static final NodeFactory FUNCTIONAL_EXPRESSION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new FunctionalExpressionImpl(token);
+		}
+	};
+
+	private static final NodeFactory OPERATOR_INVOCATION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new OperatorInvocationImpl(token);
+		}
+	};
+
+	private static final NodeFactory OPERATOR_FILE_REFERENCE_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new OperatorFileReferenceImpl(token);
+		}
+	};
+
+	private static final NodeFactory COLLECTION_INDEX_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new CollectionIndexImpl(token);
+		}
+	};
+
+	private static final NodeFactory VALIDATION_FRAGMENT_APPLICATION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new ValidationFragmentApplicationImpl(token);
+		}
+	};
+
+	private static final NodeFactory RULE_SET_DECLARATION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new RuleSetDeclarationImpl(token);
+		}
+	};
+
+	private static final NodeFactory LITERAL_STRING_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new LiteralStringImpl(token);
+		}
+	};
+
+	private static final NodeFactory GLOBAL_EXISTS_STATEMENT_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new GlobalExistsStatementImpl(token);
+		}
+	};
+
+	private static final NodeFactory VALIDATION_FRAGMENT_DECLARATION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new ValidationFragmentDeclarationImpl(token);
+		}
+	};
+
+	private static final NodeFactory CONSTRAINT_RULE_DECLARATION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new ConstraintRuleDeclarationImpl(token);
+		}
+	};
+
+	private static final NodeFactory COMPOUND_REPORT_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new CompoundReportImpl(token);
+		}
+	};
+
+	private static final NodeFactory CONCATENATED_REPORT_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new ConcatenatedReportImpl(token);
+		}
+	};
+
+	private static final NodeFactory CONDITIONAL_REPORT_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new ConditionalReportImpl(token);
+		}
+	};
+
+	private static final NodeFactory CARDINALITY_CONSTRAINT_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new CardinalityConstraintImpl(token);
+		}
+	};
+
+	private static final NodeFactory EXISTS_STATEMENT_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new ExistsStatementImpl(token);
+		}
+	};
+
+	private static final NodeFactory MODEL_REFERENCE_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new ModelReferenceImpl(token);
+		}
+	};
+
+	private static final NodeFactory NAMED_PARAMETER_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new NamedParameterImpl(token);
+		}
+	};
+
+	private static final NodeFactory MULTIPLE_EXISTS_STATEMENT_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new MultipleExistsStatementImpl(token);
+		}
+	};
+
+	private static final NodeFactory MULTIPLE_NOT_EXISTS_STATEMENT_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new MultipleNotExistsStatementImpl(token);
+		}
+	};
+
+	private static final NodeFactory RULE_FILE_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new RuleFileImpl(token);
+		}
+	};
+
+	private static final NodeFactory SELECTION_EXPRESSION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new SelectionExpressionImpl(token);
+		}
+	};
+
+	private static final NodeFactory VARIABLE_DECLARATION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new VariableDeclarationImpl(token);
+		}
+	};
+
+	private static final NodeFactory ACTION_FRAGMENT_DECLARATION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new ActionFragmentDeclarationImpl(token);
+		}
+	};
+
+	private static final NodeFactory ACTION_RULE_DECLARATION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new ActionRuleDeclarationImpl(token);
+		}
+	};
+
+	private static final NodeFactory ADD_ACTION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new AddActionImpl(token);
+		}
+	};
+
+	private static final NodeFactory CREATE_ACTION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new CreateActionImpl(token);
+		}
+	};
+
+	private static final NodeFactory REMOVE_ACTION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new RemoveActionImpl(token);
+		}
+	};
+
+	private static final NodeFactory SET_ACTION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new SetActionImpl(token);
+		}
+	};
+
+	private static final NodeFactory COMPOUND_ACTION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new CompoundActionImpl(token);
+		}
+	};
+
+	private static final NodeFactory CONDITIONAL_ACTION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new ConditionalActionImpl(token);
+		}
+	};
+
+	private static final NodeFactory FOR_EACH_ACTION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new ForEachActionImpl(token);
+		}
+	};
+
+	private static final NodeFactory ACTION_FRAGMENT_APPLICATION_ACTION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new ActionFragmentApplicationActionImpl(token);
+		}
+	};
+
+	private static final NodeFactory OPERATOR_ACTION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new OperatorActionImpl(token);
+		}
+	};
+
+	private static final NodeFactory REMOVE_FROM_COLLECTION_ACTION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new RemoveFromCollectionActionImpl(token);
+		}
+	};
+
+	private static final NodeFactory VARIABLE_DECLARATION_ACTION_FACTORY = new NodeFactory() {
+		public Antlr3NRLBaseAst create(Token token) {
+			return new VariableDeclarationActionImpl(token);
+		}
+	};
+
+	// Default factories by token type
+	private static final NodeFactory[] DEFAULT_FACTORIES =
+			new NodeFactory[NRLActionParser.tokenNames.length];
+
+	// Node classes created by the default factories, to fill tokenTypeToClass
+	private static final Map<Integer, Class<?>> DEFAULT_CLASSES = new HashMap<Integer, Class<?>>();
+
+	static {
+		register(NRLActionParser.ADD, ArithmeticExpressionImpl.class,
+				ARITHMETIC_EXPRESSION_FACTORY);
+		register(NRLActionParser.AND, BinaryOperatorStatementImpl.class,
+				BINARY_OPERATOR_STATEMENT_FACTORY);
+		register(NRLActionParser.AS_A, CastExpressionImpl.class, CAST_EXPRESSION_FACTORY);
+		register(NRLActionParser.BOOLEAN, BooleanLiteralImpl.class, BOOLEAN_LITERAL_FACTORY);
+		register(NRLActionParser.DECIMAL_NUMBER, DecimalNumberImpl.class, DECIMAL_NUMBER_FACTORY);
+		register(NRLActionParser.DIV, ArithmeticExpressionImpl.class,
+				ARITHMETIC_EXPRESSION_FACTORY);
+		register(NRLActionParser.EACH, ForallStatementImpl.class, FORALL_STATEMENT_FACTORY);
+		register(NRLActionParser.EQUALS, BinaryPredicateImpl.class, BINARY_PREDICATE_FACTORY);
+		register(NRLActionParser.GREATER, BinaryPredicateImpl.class, BINARY_PREDICATE_FACTORY);
+		register(NRLActionParser.GREATER_EQ, BinaryPredicateImpl.class, BINARY_PREDICATE_FACTORY);
+		register(NRLActionParser.IDENTIFIER, ModelReferenceStep.class,
+				MODEL_REFERENCE_STEP_FACTORY);
+		register(NRLActionParser.IF, IfThenStatementImpl.class, IF_THEN_STATEMENT_FACTORY);
+		register(NRLActionParser.IFF, BinaryOperatorStatementImpl.class,
+				BINARY_OPERATOR_STATEMENT_FACTORY);
+		register(NRLActionParser.IMPLIES, BinaryOperatorStatementImpl.class,
+				BINARY_OPERATOR_STATEMENT_FACTORY);
+		register(NRLActionParser.INTEGER_NUMBER, IntegerNumberImpl.class, INTEGER_NUMBER_FACTORY);
+		register(NRLActionParser.IS_IN, IsInPredicateImpl.class, IS_IN_PREDICATE_FACTORY);
+		register(NRLActionParser.IS_NOT_IN, IsNotInPredicateImpl.class,
+				IS_NOT_IN_PREDICATE_FACTORY);
+		register(NRLActionParser.KIND_OF, IsSubtypePredicateImpl.class,
+				IS_SUBTYPE_PREDICATE_FACTORY);
+		register(NRLActionParser.LESS, BinaryPredicateImpl.class, BINARY_PREDICATE_FACTORY);
+		register(NRLActionParser.LESS_EQ, BinaryPredicateImpl.class, BINARY_PREDICATE_FACTORY);
+		register(NRLActionParser.MODEL, ModelFileReferenceImpl.class, MODEL_FILE_REFERENCE_FACTORY);
+		register(NRLActionParser.MINUS, ArithmeticExpressionImpl.class,
+				ARITHMETIC_EXPRESSION_FACTORY);
+		register(NRLActionParser.MOD, ArithmeticExpressionImpl.class,
+				ARITHMETIC_EXPRESSION_FACTORY);
+		register(NRLActionParser.NOT_EQUALS, BinaryPredicateImpl.class, BINARY_PREDICATE_FACTORY);
+		register(NRLActionParser.NOT_PRESENT, NotExistsStatementImpl.class,
+				NOT_EXISTS_STATEMENT_FACTORY);
+		register(NRLActionParser.NUMBER_OF, FunctionalExpressionImpl.class,
+				FUNCTIONAL_EXPRESSION_FACTORY);
+		register(NRLActionParser.OPERATOR, OperatorInvocationImpl.class,
+				OPERATOR_INVOCATION_FACTORY);
+		register(NRLActionParser.OPERATORS, OperatorFileReferenceImpl.class,
+				OPERATOR_FILE_REFERENCE_FACTORY);
+		register(NRLActionParser.OR, BinaryOperatorStatementImpl.class,
+				BINARY_OPERATOR_STATEMENT_FACTORY);
+		register(NRLActionParser.ORDINAL_NUMBER, CollectionIndexImpl.class,
+				COLLECTION_INDEX_FACTORY);
+		register(NRLActionParser.PROPERTYNAME, ValidationFragmentApplicationImpl.class,
+				VALIDATION_FRAGMENT_APPLICATION_FACTORY);
+		register(NRLActionParser.RULESET, RuleSetDeclarationImpl.class,
+				RULE_SET_DECLARATION_FACTORY);
+		register(NRLActionParser.SINGLE_QUOTED_STRING, LiteralStringImpl.class,
+				LITERAL_STRING_FACTORY);
+		register(NRLActionParser.SUM_OF, FunctionalExpressionImpl.class,
+				FUNCTIONAL_EXPRESSION_FACTORY);
+		register(NRLActionParser.THERE_IS, GlobalExistsStatementImpl.class,
+				GLOBAL_EXISTS_STATEMENT_FACTORY);
+		register(NRLActionParser.TIMES, ArithmeticExpressionImpl.class,
+				ARITHMETIC_EXPRESSION_FACTORY);
+		register(NRLActionParser.VALIDATION_FRAGMENT, ValidationFragmentDeclarationImpl.class,
+				VALIDATION_FRAGMENT_DECLARATION_FACTORY);
+		register(NRLActionParser.VALIDATION_RULE, ConstraintRuleDeclarationImpl.class,
+				CONSTRAINT_RULE_DECLARATION_FACTORY);
+		register(NRLActionParser.VT_COMPOUND_REPORT, CompoundReportImpl.class,
+				COMPOUND_REPORT_FACTORY);
+		register(NRLActionParser.VT_CONCATENATED_REPORT, ConcatenatedReportImpl.class,
+				CONCATENATED_REPORT_FACTORY);
+		register(NRLActionParser.VT_CONDITIONAL_REPORT, ConditionalReportImpl.class,
+				CONDITIONAL_REPORT_FACTORY);
+		register(NRLActionParser.VT_ENUMERATOR, CardinalityConstraintImpl.class,
+				CARDINALITY_CONSTRAINT_FACTORY);
+		register(NRLActionParser.VT_EXISTS, ExistsStatementImpl.class, EXISTS_STATEMENT_FACTORY);
+		register(NRLActionParser.VT_FIRST_ORDINAL_NUMBER, CollectionIndexImpl.class,
+				COLLECTION_INDEX_FACTORY);
+		register(NRLActionParser.VT_MODELREFERENCE, ModelReferenceImpl.class,
+				MODEL_REFERENCE_FACTORY);
+		register(NRLActionParser.VT_NAMED_PARAMETER, NamedParameterImpl.class,
+				NAMED_PARAMETER_FACTORY);
+		register(NRLActionParser.VT_MULTIPLE_EXISTS, MultipleExistsStatementImpl.class,
+				MULTIPLE_EXISTS_STATEMENT_FACTORY);
+		register(NRLActionParser.VT_MULTIPLE_NOTEXISTS, MultipleNotExistsStatementImpl.class,
+				MULTIPLE_NOT_EXISTS_STATEMENT_FACTORY);
+		register(NRLActionParser.VT_NEGATE_DECIMAL, DecimalNumberImpl.class,
+				DECIMAL_NUMBER_FACTORY);
+		register(NRLActionParser.VT_NEGATE_INTEGER, IntegerNumberImpl.class,
+				INTEGER_NUMBER_FACTORY);
+		register(NRLActionParser.VT_RULEFILE, RuleFileImpl.class, RULE_FILE_FACTORY);
+		register(NRLActionParser.VT_SELECTION_EXPR, SelectionExpressionImpl.class,
+				SELECTION_EXPRESSION_FACTORY);
+		register(NRLActionParser.VT_SINGLE_SELECTION_EXPR, SelectionExpressionImpl.class,
+				SELECTION_EXPRESSION_FACTORY);
+		register(NRLActionParser.VT_VARIABLE_DECLARATION, VariableDeclarationImpl.class,
+				VARIABLE_DECLARATION_FACTORY);
 
 		// Actions
-		tokenTypeToClass.put(NRLActionParser.ACTION_FRAGMENT,
-				ActionFragmentDeclarationImpl.class);
-		tokenTypeToClass
-				.put(NRLActionParser.ACTION_RULE, ActionRuleDeclarationImpl.class);
-		tokenTypeToClass.put(NRLActionParser.ADD_VERB, AddActionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.CREATE, CreateActionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.REMOVE, RemoveActionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.SET, SetActionImpl.class);
-
-		tokenTypeToClass
-				.put(NRLActionParser.VT_COMPOUND_ACTION, CompoundActionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_CONDITIONAL_ACTION,
-				ConditionalActionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_FOREACH_ACTION, ForEachActionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_MACRO_APPLICATION,
-				ActionFragmentApplicationActionImpl.class);
-		tokenTypeToClass
-				.put(NRLActionParser.VT_OPERATOR_ACTION, OperatorActionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_REMOVE_FROM_COLLECTION,
-				RemoveFromCollectionActionImpl.class);
-		tokenTypeToClass.put(NRLActionParser.VT_VARIABLE_DECLARATION_ACTION,
-				VariableDeclarationActionImpl.class);
+		register(NRLActionParser.ACTION_FRAGMENT, ActionFragmentDeclarationImpl.class,
+				ACTION_FRAGMENT_DECLARATION_FACTORY);
+		register(NRLActionParser.ACTION_RULE, ActionRuleDeclarationImpl.class,
+				ACTION_RULE_DECLARATION_FACTORY);
+		register(NRLActionParser.ADD_VERB, AddActionImpl.class, ADD_ACTION_FACTORY);
+		register(NRLActionParser.CREATE, CreateActionImpl.class, CREATE_ACTION_FACTORY);
+		register(NRLActionParser.REMOVE, RemoveActionImpl.class, REMOVE_ACTION_FACTORY);
+		register(NRLActionParser.SET, SetActionImpl.class, SET_ACTION_FACTORY);
+		register(NRLActionParser.VT_COMPOUND_ACTION, CompoundActionImpl.class,
+				COMPOUND_ACTION_FACTORY);
+		register(NRLActionParser.VT_CONDITIONAL_ACTION, ConditionalActionImpl.class,
+				CONDITIONAL_ACTION_FACTORY);
+		register(NRLActionParser.VT_FOREACH_ACTION, ForEachActionImpl.class,
+				FOR_EACH_ACTION_FACTORY);
+		register(NRLActionParser.VT_MACRO_APPLICATION, ActionFragmentApplicationActionImpl.class,
+				ACTION_FRAGMENT_APPLICATION_ACTION_FACTORY);
+		register(NRLActionParser.VT_OPERATOR_ACTION, OperatorActionImpl.class,
+				OPERATOR_ACTION_FACTORY);
+		register(NRLActionParser.VT_REMOVE_FROM_COLLECTION, RemoveFromCollectionActionImpl.class,
+				REMOVE_FROM_COLLECTION_ACTION_FACTORY);
+		register(NRLActionParser.VT_VARIABLE_DECLARATION_ACTION,
+				VariableDeclarationActionImpl.class, VARIABLE_DECLARATION_ACTION_FACTORY);
+	}
+
+	/**
+	 * The node class for each token type, as used by earlier versions. The
+	 * adaptor no longer reads this map unless it is changed or replaced, in
+	 * which case {@link #create(Token)} creates the nodes of all token types
+	 * whose class differs from the default reflectively, as before.
+	 * 
+	 * @deprecated Use {@link #setNodeFactory(int, NodeFactory)}, which avoids
+	 *             the reflective constructor call.
+	 */
+	@Deprecated
+	protected Map<Integer, Class<?>> tokenTypeToClass;
+
+	// The map initially assigned to tokenTypeToClass
+	private final ClassMap defaultClassMap;
+
+	// Factories used by this adaptor, copied from the defaults on first change
+	private NodeFactory[] nodeFactories = DEFAULT_FACTORIES;
+
+	@SuppressWarnings("deprecation")
+	public Antlr3NRLTreeAdaptor() {
+		defaultClassMap = new ClassMap(DEFAULT_CLASSES);
+		tokenTypeToClass = defaultClassMap;
+	}
+
+	private static void register(int tokenType, Class<?> nodeClass, NodeFactory factory) {
+		DEFAULT_CLASSES.put(tokenType, nodeClass);
+		DEFAULT_FACTORIES[tokenType] = factory;
+	}
+
+	/**
+	 * Set the factory used to create nodes for a token type in this adaptor.
+	 * 
+	 * @param tokenType the token type
+	 * @param factory the factory, or null to create plain nodes
+	 * @since 1.4.18
+	 */
+	protected void setNodeFactory(int tokenType, NodeFactory factory) {
+		if (nodeFactories == DEFAULT_FACTORIES || tokenType >= nodeFactories.length) {
+			NodeFactory[] copy = new NodeFactory[Math.max(nodeFactories.length, tokenType + 1)];
+			System.arraycopy(nodeFactories, 0, copy, 0, nodeFactories.length);
+			nodeFactories = copy;
+		}
+		nodeFactories[tokenType] = factory;
+	}
+
+	/**
+	 * Return the factory used to create nodes for a token type.
+	 * 
+	 * @param tokenType the token type
+	 * @return the factory, or null if plain nodes are created
+	 * @since 1.4.18
+	 */
+	protected NodeFactory getNodeFactory(int tokenType) {
+		if (tokenType < 0 || tokenType >= nodeFactories.length)
+			return null;
+		return nodeFactories[tokenType];
 	}
 
 	@Override
+	@SuppressWarnings("deprecation")
 	public Object create(Token token) {
 		if (token == null)
 			return new Antlr3NRLBaseAst();
-		
-		Class<?> tokenClass = tokenTypeToClass.get(token.getType());
-		
+
+		if (tokenTypeToClass != defaultClassMap || defaultClassMap.changed) {
+			Class<?> tokenClass = tokenTypeToClass.get(token.getType());
+			if (tokenClass != DEFAULT_CLASSES.get(token.getType()))
+				return createReflectively(tokenClass, token);
+		}
+
+		NodeFactory factory = getNodeFactory(token.getType());
+		if (factory == null)
+			return new Antlr3NRLBaseAst(token);
+
+		return factory.create(token);
+	}
+
+	private Object createReflectively(Class<?> tokenClass, Token token) {
 		if (tokenClass == null)
 			return new Antlr3NRLBaseAst(token);
-		
+
 		try {
 			Constructor<?> constr = tokenClass.getConstructor(new Class<?>[] { Token.class });
-			return constr.newInstance(new Object[] { token } );
+			return constr.newInstance(new Object[] { token });
 		} catch (Exception e) {
-			throw new RuntimeException("Internal error: could not instantiate token type " + 
-					token.getType()+". This is a development problem.", e);
-		} 
-	}	
+			throw new RuntimeException("Internal error: could not instantiate token type "
+					+ token.getType() + ". This is a development problem.", e);
+		}
+	}
+
+	/*
+	 * The initial token class map, which records whether a subclass changed it. Access to the
+	 * views counts as a change, because they can be used to modify the map.
+	 */
+	private static class ClassMap extends HashMap<Integer, Class<?>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private boolean changed;
+
+		ClassMap(Map<Integer, Class<?>> classes) {
+			super(classes);
+			changed = false;
+		}
+
+		@Override
+		public Class<?> put(Integer key, Class<?> value) {
+			changed = true;
+			return super.put(key, value);
+		}
+
+		@Override
+		public void putAll(Map<? extends Integer, ? extends Class<?>> map) {
+			changed = true;
+			super.putAll(map);
+		}
+
+		@Override
+		public Class<?> remove(Object key) {
+			changed = true;
+			return super.remove(key);
+		}
+
+		@Override
+		public void clear() {
+			changed = true;
+			super.clear();
+		}
+
+		@Override
+		public Set<Integer> keySet() {
+			changed = true;
+			return super.keySet();
+		}
+
+		@Override
+		public Collection<Class<?>> values() {
+			changed = true;
+			return super.values();
+		}
+
+		@Override
+		public Set<Map.Entry<Integer, Class<?>>> entrySet() {
+			changed = true;
+			return super.entrySet();
+		}
+	}
 }
@@ -18,6 +18,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import net.sourceforge.nrl.parser.IStatusCode;
 import net.sourceforge.nrl.parser.NRLError;
@@ -50,6 +54,7 @@ import net.sourceforge.nrl.parser.model.IModelElement;
 import net.sourceforge.nrl.parser.model.IPackage;
 import net.sourceforge.nrl.parser.model.PrimitiveTypeFactory;
 import net.sourceforge.nrl.parser.model.IModelElement.ElementType;
+import net.sourceforge.nrl.parser.util.ThreadUtilities;
 
 /**
  * This class resolves all model references on the AST and replaces the string values with with
@@ -60,6 +65,9 @@ import net.sourceforge.nrl.parser.model.IModelElement.ElementType;
  */
 public class AntlrModelResolver {
 
+	// Chunks per thread in parallel mode, so that threads are kept busy if rule sizes vary
+	private static final int CHUNKS_PER_THREAD = 4;
+
 	class NoneClassifier extends AbstractClassifier {
 		public NoneClassifier(String name, IPackage container) {
 			super(name, container);
@@ -76,11 +84,117 @@ public class AntlrModelResolver {
 
 	protected IModelCollection models;
 
+	private boolean cachingReferences = true;
+
+	// Cache of the current or last run of resolve, null if not caching
+	private ModelReferenceCache referenceCache = null;
+
+	private int resolutionThreads = 1;
+
+	// The pool that declarations are resolved on in parallel mode, created on first use unless
+	// set, and kept for later runs
+	private ExecutorService executor = null;
+
+	private boolean sharedExecutor = false;
+
 	public AntlrModelResolver(IModelCollection models) {
 		assert models != null;
 		this.models = models;
 	}
 
+	/**
+	 * Return true if model references that recur under the same context are resolved once per
+	 * call to {@link #resolve(IRuleFile)}.
+	 * 
+	 * @return true if caching, the default
+	 * @since 1.4.18
+	 */
+	public boolean isCachingReferences() {
+		return cachingReferences;
+	}
+
+	/**
+	 * Switch the model reference cache on or off, see {@link ModelReferenceCache}.
+	 * 
+	 * @param cachingReferences true to cache
+	 * @since 1.4.18
+	 */
+	public void setCachingReferences(boolean cachingReferences) {
+		this.cachingReferences = cachingReferences;
+	}
+
+	/**
+	 * Return the model reference cache of the last call to {@link #resolve(IRuleFile)}, for
+	 * example to report its hit rate.
+	 * 
+	 * @return the cache, or null if not caching
+	 * @since 1.4.18
+	 */
+	public ModelReferenceCache getReferenceCache() {
+		return referenceCache;
+	}
+
+	/**
+	 * Return the number of threads that the bodies of rules and fragments are resolved on.
+	 * 
+	 * @return the number of threads, 1 if resolving on the calling thread
+	 * @since 1.4.18
+	 */
+	public int getResolutionThreads() {
+		return resolutionThreads;
+	}
+
+	/**
+	 * Resolve the bodies of rules and fragments on several threads. Contexts, global variables
+	 * and rule sets are always resolved on the calling thread. The errors are the same, and in
+	 * the same order, as for sequential resolution.
+	 * <p>
+	 * The models must be safe for concurrent reads, which the model classes in
+	 * {@link net.sourceforge.nrl.parser.model} are once loaded. Overriding methods of this class
+	 * that resolve declarations must be thread-safe.
+	 * <p>
+	 * On one thread, the bodies are resolved through
+	 * {@link #resolveAction(IAction, IClassifier, Map, List, List)},
+	 * {@link #resolveActionFragment(IActionFragmentDeclaration, Map, List)} and
+	 * {@link #resolveValidationFragmentDeclaration(IValidationFragmentDeclaration, Map, List)}.
+	 * On several threads, each chunk of declarations has its own reference cache, so those
+	 * methods are bypassed and the overloads that take a {@link ModelReferenceCache} are called
+	 * directly. Subclasses that resolve in parallel must override the overloads.
+	 * 
+	 * @param resolutionThreads the number of threads, 1 (the default) to resolve on the calling
+	 *            thread
+	 * @since 1.4.18
+	 */
+	public void setResolutionThreads(int resolutionThreads) {
+		resolutionThreads = Math.max(1, resolutionThreads);
+		// The threads of a replaced pool end once idle
+		if (resolutionThreads != this.resolutionThreads && !sharedExecutor)
+			executor = null;
+		this.resolutionThreads = resolutionThreads;
+	}
+
+	/**
+	 * Resolve in parallel on a pool shared with other resolvers, rather than on a pool of this
+	 * resolver. The pool is not shut down by the resolver; see
+	 * {@link ThreadUtilities#newSharedPool(int, String)} for a pool that does not need to be.
+	 * 
+	 * @param executor the pool, or null to use a pool of this resolver
+	 * @since 1.4.18
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+		this.sharedExecutor = executor != null;
+	}
+
+	/*
+	 * Make a visitor resolve its references through a cache, which may be null.
+	 */
+	private static AntlrModelResolverVisitor withCache(AntlrModelResolverVisitor visitor,
+			ModelReferenceCache cache) {
+		visitor.setReferenceCache(cache);
+		return visitor;
+	}
+
 	protected void eliminateExistenceWithBackreference(IConstraint constraint,
 			final IModelElement context) {
 
@@ -147,6 +261,7 @@ public class AntlrModelResolver {
 	 */
 	public List<NRLError> resolve(IRuleFile ruleFile) {
 		List<NRLError> errors = new ArrayList<NRLError>();
+		referenceCache = cachingReferences ? new ModelReferenceCache() : null;
 
 		Map<String, IVariableDeclaration> globalVariables = getGlobalVariablesAsMap(ruleFile);
 
@@ -163,15 +278,65 @@ public class AntlrModelResolver {
 		return errors;
 	}
 
+	/**
+	 * Resolve the references of an action through the reference cache of the current run. Not
+	 * called when resolving in parallel, see {@link #setResolutionThreads(int)}.
+	 * 
+	 * @param action the action
+	 * @param context the context of the action rule
+	 * @param globalVariables the global variables by name
+	 * @param variables the rule parameters
+	 * @param errors the error list to add to
+	 */
 	protected void resolveAction(IAction action, IClassifier context,
 			Map<String, IVariableDeclaration> globalVariables, List<Variable> variables,
 			List<NRLError> errors) {
-		action.accept(new AntlrModelResolverVisitor(context, models, globalVariables, variables,
-				errors));
+		resolveAction(action, context, globalVariables, variables, referenceCache, errors);
 	}
 
+	/**
+	 * Resolve the references of an action.
+	 * 
+	 * @param action the action
+	 * @param context the context of the action rule
+	 * @param globalVariables the global variables by name
+	 * @param variables the rule parameters
+	 * @param cache the cache to resolve references through, null if not caching
+	 * @param errors the error list to add to
+	 * @since 1.4.18
+	 */
+	protected void resolveAction(IAction action, IClassifier context,
+			Map<String, IVariableDeclaration> globalVariables, List<Variable> variables,
+			ModelReferenceCache cache, List<NRLError> errors) {
+		action.accept(withCache(new AntlrModelResolverVisitor(context, models, globalVariables,
+				variables, errors), cache));
+	}
+
+	/**
+	 * Resolve the references of an action fragment through the reference cache of the current
+	 * run. Not called when resolving in parallel, see {@link #setResolutionThreads(int)}.
+	 * 
+	 * @param macro the fragment
+	 * @param globalVariables the global variables by name
+	 * @param errors the error list to add to
+	 */
 	protected void resolveActionFragment(IActionFragmentDeclaration macro,
 			Map<String, IVariableDeclaration> globalVariables, List<NRLError> errors) {
+		resolveActionFragment(macro, globalVariables, referenceCache, errors);
+	}
+
+	/**
+	 * Resolve the references of an action fragment.
+	 * 
+	 * @param macro the fragment
+	 * @param globalVariables the global variables by name
+	 * @param cache the cache to resolve references through, null if not caching
+	 * @param errors the error list to add to
+	 * @since 1.4.18
+	 */
+	protected void resolveActionFragment(IActionFragmentDeclaration macro,
+			Map<String, IVariableDeclaration> globalVariables, ModelReferenceCache cache,
+			List<NRLError> errors) {
 
 		List<Variable> variables = new ArrayList<Variable>();
 
@@ -185,85 +350,178 @@ public class AntlrModelResolver {
 			variables.add(var);
 		}
 
-		macro.accept(new AntlrModelResolverVisitor(models, globalVariables, variables, errors));
+		macro.accept(withCache(new AntlrModelResolverVisitor(models, globalVariables, variables,
+				errors), cache));
 	}
 
 	protected void resolveActions(IRuleFile ruleFile, List<NRLError> errors) {
-		Map<String, IVariableDeclaration> globals = getGlobalVariablesAsMap(ruleFile);
+		final Map<String, IVariableDeclaration> globals = getGlobalVariablesAsMap(ruleFile);
 
+		List<IDeclaration> declarations = new ArrayList<IDeclaration>();
 		for (IDeclaration decl : ruleFile.getDeclarations()) {
 			// Don't resolve those that failed before
-
-			if (decl instanceof ISingleContextDeclaration) {
-				SingleContextDeclarationImpl single = (SingleContextDeclarationImpl) decl;
-				if (single.getContext() == null)
-					continue;
-				if (!(single.getContext() instanceof IClassifier || single.getContext() instanceof IDataType))
-					continue;
-				if (!single.areAdditionalParametersFullyResolved())
-					continue;
-			} else if (decl instanceof MultipleContextDeclarationImpl) {
-				MultipleContextDeclarationImpl multi = (MultipleContextDeclarationImpl) decl;
-				if (!multi.isFullyResolved())
+			if (decl instanceof ISingleContextDeclaration
+					|| decl instanceof MultipleContextDeclarationImpl) {
+				if (!isResolvable(decl))
 					continue;
 			}
 
-			if (decl instanceof IActionRuleDeclaration) {
-				ActionRuleDeclarationImpl action = (ActionRuleDeclarationImpl) decl;
+			if (decl instanceof IActionRuleDeclaration
+					|| decl instanceof IActionFragmentDeclaration)
+				declarations.add(decl);
+		}
 
-				List<Variable> variables = new ArrayList<Variable>();
-				for (String paramName : action.getAdditionalParameterNames()) {
-					Variable var = new Variable(paramName, action
-							.getAdditionalParameterType(paramName));
-					var.setDeclarationNode(action.getAdditionalParameterTypeReference(paramName));
-					variables.add(var);
-				}
+		resolveDeclarations(declarations, new DeclarationResolver() {
+			void resolve(IDeclaration decl, ModelReferenceCache cache, boolean parallel,
+					List<NRLError> errors) {
+				if (decl instanceof IActionRuleDeclaration) {
+					ActionRuleDeclarationImpl action = (ActionRuleDeclarationImpl) decl;
+
+					List<Variable> variables = new ArrayList<Variable>();
+					for (String paramName : action.getAdditionalParameterNames()) {
+						Variable var = new Variable(paramName, action
+								.getAdditionalParameterType(paramName));
+						var.setDeclarationNode(action
+								.getAdditionalParameterTypeReference(paramName));
+						variables.add(var);
+					}
 
-				resolveAction(action.getAction(), (IClassifier) action.getContext(), globals,
-						variables, errors);
-			} else if (decl instanceof IActionFragmentDeclaration) {
-				resolveActionFragment((IActionFragmentDeclaration) decl, globals, errors);
+					if (parallel)
+						resolveAction(action.getAction(), (IClassifier) action.getContext(),
+								globals, variables, cache, errors);
+					else
+						resolveAction(action.getAction(), (IClassifier) action.getContext(),
+								globals, variables, errors);
+				} else if (parallel) {
+					resolveActionFragment((IActionFragmentDeclaration) decl, globals, cache,
+							errors);
+				} else {
+					resolveActionFragment((IActionFragmentDeclaration) decl, globals, errors);
+				}
 			}
-		}
+		}, errors);
 	}
 
 	protected void resolveConstraints(IRuleFile ruleFile,
-			Map<String, IVariableDeclaration> globalVariables, List<NRLError> errors) {
+			final Map<String, IVariableDeclaration> globalVariables, List<NRLError> errors) {
 
+		List<IDeclaration> declarations = new ArrayList<IDeclaration>();
 		for (IDeclaration d : ruleFile.getDeclarations()) {
 			// Don't resolve those that failed before
-			if (d instanceof ISingleContextDeclaration) {
-				SingleContextDeclarationImpl single = (SingleContextDeclarationImpl) d;
-				if (single.getContext() == null)
-					continue;
-				if (!(single.getContext() instanceof IClassifier || single.getContext() instanceof IDataType))
-					continue;
-				if (!single.areAdditionalParametersFullyResolved())
-					continue;
-			} else if (d instanceof MultipleContextDeclarationImpl) {
-				MultipleContextDeclarationImpl multi = (MultipleContextDeclarationImpl) d;
-				if (!multi.isFullyResolved())
-					continue;
-			} else
+			if (!isResolvable(d))
 				continue;
 
-			if (d instanceof IConstraintRuleDeclaration) {
-				ConstraintRuleDeclarationImpl constraint = (ConstraintRuleDeclarationImpl) d;
+			if (d instanceof IConstraintRuleDeclaration
+					|| d instanceof IValidationFragmentDeclaration)
+				declarations.add(d);
+		}
+
+		resolveDeclarations(declarations, new DeclarationResolver() {
+			void resolve(IDeclaration d, ModelReferenceCache cache, boolean parallel,
+					List<NRLError> errors) {
+				if (d instanceof IConstraintRuleDeclaration) {
+					ConstraintRuleDeclarationImpl constraint = (ConstraintRuleDeclarationImpl) d;
+
+					List<Variable> variables = new ArrayList<Variable>();
+					for (String paramName : constraint.getAdditionalParameterNames()) {
+						Variable var = new Variable(paramName, constraint
+								.getAdditionalParameterType(paramName));
+						var.setDeclarationNode(constraint
+								.getAdditionalParameterTypeReference(paramName));
+						variables.add(var);
+					}
+
+					constraint.accept(withCache(new AntlrModelResolverVisitor(
+							(IClassifier) constraint.getContext(), models, globalVariables,
+							variables, errors), cache));
+				} else if (parallel) {
+					resolveValidationFragmentDeclaration((IValidationFragmentDeclaration) d,
+							globalVariables, cache, errors);
+				} else {
+					resolveValidationFragmentDeclaration((IValidationFragmentDeclaration) d,
+							globalVariables, errors);
+				}
+			}
+		}, errors);
+	}
+
+	/*
+	 * Return true if the context of a declaration resolved, so that its body can be resolved.
+	 * Returns false for declarations without a context.
+	 */
+	private boolean isResolvable(IDeclaration d) {
+		if (d instanceof ISingleContextDeclaration) {
+			SingleContextDeclarationImpl single = (SingleContextDeclarationImpl) d;
+			if (single.getContext() == null)
+				return false;
+			if (!(single.getContext() instanceof IClassifier || single.getContext() instanceof IDataType))
+				return false;
+			return single.areAdditionalParametersFullyResolved();
+		} else if (d instanceof MultipleContextDeclarationImpl) {
+			return ((MultipleContextDeclarationImpl) d).isFullyResolved();
+		}
+		return false;
+	}
+
+	/*
+	 * Resolve the bodies of declarations, in parallel if configured. Declarations only share the
+	 * models, which are read but not changed, so each chunk of declarations is resolved with its
+	 * own error list and reference cache, which are merged into those of the run. The errors are
+	 * appended in declaration order, as if resolved sequentially.
+	 */
+	private void resolveDeclarations(List<IDeclaration> declarations,
+			final DeclarationResolver resolver, List<NRLError> errors) {
+		int chunks = Math.min(declarations.size(), resolutionThreads * CHUNKS_PER_THREAD);
+		if (resolutionThreads < 2 || chunks < 2) {
+			for (IDeclaration decl : declarations) {
+				resolver.resolve(decl, referenceCache, false, errors);
+			}
+			return;
+		}
 
-				List<Variable> variables = new ArrayList<Variable>();
-				for (String paramName : constraint.getAdditionalParameterNames()) {
-					Variable var = new Variable(paramName, constraint
-							.getAdditionalParameterType(paramName));
-					var.setDeclarationNode(constraint
-							.getAdditionalParameterTypeReference(paramName));
-					variables.add(var);
+		if (executor == null)
+			executor = ThreadUtilities.newSharedPool(resolutionThreads, "nrl-model-resolver");
+
+		List<Future<ResolvedChunk>> futures = new ArrayList<Future<ResolvedChunk>>();
+		for (int i = 0; i < chunks; i++) {
+			final List<IDeclaration> chunk = declarations.subList(i * declarations.size()
+					/ chunks, (i + 1) * declarations.size() / chunks);
+			final ModelReferenceCache cache = referenceCache == null ? null
+					: new ModelReferenceCache();
+			futures.add(executor.submit(new Callable<ResolvedChunk>() {
+				public ResolvedChunk call() {
+					ResolvedChunk result = new ResolvedChunk(cache);
+					for (IDeclaration decl : chunk) {
+						resolver.resolve(decl, cache, true, result.errors);
+					}
+					return result;
 				}
+			}));
+		}
+
+		for (Future<ResolvedChunk> future : futures) {
+			ResolvedChunk chunk = getResult(future);
+			errors.addAll(chunk.errors);
+			if (chunk.cache != null)
+				referenceCache.merge(chunk.cache);
+		}
+	}
 
-				constraint.accept(new AntlrModelResolverVisitor((IClassifier) constraint
-						.getContext(), models, globalVariables, variables, errors));
-			} else if (d instanceof IValidationFragmentDeclaration)
-				resolveValidationFragmentDeclaration((IValidationFragmentDeclaration) d,
-						globalVariables, errors);
+	private static <T> T getResult(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while resolving declarations", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
 		}
 	}
 
@@ -371,8 +629,31 @@ public class AntlrModelResolver {
 		}
 	}
 
+	/**
+	 * Resolve the references of a validation fragment through the reference cache of the
+	 * current run. Not called when resolving in parallel, see {@link #setResolutionThreads(int)}.
+	 * 
+	 * @param decl the fragment
+	 * @param globalVariables the global variables by name
+	 * @param errors the error list to add to
+	 */
 	protected void resolveValidationFragmentDeclaration(IValidationFragmentDeclaration decl,
 			Map<String, IVariableDeclaration> globalVariables, List<NRLError> errors) {
+		resolveValidationFragmentDeclaration(decl, globalVariables, referenceCache, errors);
+	}
+
+	/**
+	 * Resolve the references of a validation fragment.
+	 * 
+	 * @param decl the fragment
+	 * @param globalVariables the global variables by name
+	 * @param cache the cache to resolve references through, null if not caching
+	 * @param errors the error list to add to
+	 * @since 1.4.18
+	 */
+	protected void resolveValidationFragmentDeclaration(IValidationFragmentDeclaration decl,
+			Map<String, IVariableDeclaration> globalVariables, ModelReferenceCache cache,
+			List<NRLError> errors) {
 
 		List<Variable> variables = new ArrayList<Variable>();
 
@@ -385,7 +666,8 @@ public class AntlrModelResolver {
 			variables.add(var);
 		}
 
-		decl.accept(new AntlrModelResolverVisitor(models, globalVariables, variables, errors));
+		decl.accept(withCache(new AntlrModelResolverVisitor(models, globalVariables, variables,
+				errors), cache));
 	}
 
 	/**
@@ -442,8 +724,8 @@ public class AntlrModelResolver {
 			decl.setContext(element);
 
 			decl.getPreconditionConstraint().accept(
-					new AntlrModelResolverVisitor((IClassifier) element, models, globalVariables,
-							errors));
+					withCache(new AntlrModelResolverVisitor((IClassifier) element, models,
+							globalVariables, errors), referenceCache));
 		}
 	}
 
@@ -546,4 +828,27 @@ public class AntlrModelResolver {
 			}
 		}
 	}
+
+	/*
+	 * Resolves the body of one declaration through a reference cache, which may be null, adding
+	 * errors to the list passed in. In parallel, the cache is that of the chunk rather than of
+	 * the run.
+	 */
+	private abstract static class DeclarationResolver {
+		abstract void resolve(IDeclaration decl, ModelReferenceCache cache, boolean parallel,
+				List<NRLError> errors);
+	}
+
+	/*
+	 * The errors and cache of one chunk of declarations resolved in parallel.
+	 */
+	private static class ResolvedChunk {
+		private final List<NRLError> errors = new ArrayList<NRLError>();
+
+		private final ModelReferenceCache cache;
+
+		ResolvedChunk(ModelReferenceCache cache) {
+			this.cache = cache;
+		}
+	}
 }
@@ -75,6 +75,9 @@ public class AntlrModelResolverVisitor extends AntlrAstVisitor {
 	protected Map<String, IVariableDeclaration> globalVariables;
 
 	private IModelCollection models;
+
+	// Cache of resolved references, may be null
+	private ModelReferenceCache referenceCache = null;
 	
 	private PrimitiveTypeFactory primitiveTypeFactory = PrimitiveTypeFactory.getInstance();
 
@@ -137,6 +140,27 @@ public class AntlrModelResolverVisitor extends AntlrAstVisitor {
 		this(noneClassifier, models, globalVariables, contextVariables, errors);
 	}
 
+	/**
+	 * Return the cache that model references are resolved through.
+	 * 
+	 * @return the cache, or null if references are always resolved
+	 * @since 1.4.18
+	 */
+	public ModelReferenceCache getReferenceCache() {
+		return referenceCache;
+	}
+
+	/**
+	 * Resolve model references through a cache, which can be shared with other visitors over the
+	 * same models.
+	 * 
+	 * @param referenceCache the cache, or null to always resolve
+	 * @since 1.4.18
+	 */
+	public void setReferenceCache(ModelReferenceCache referenceCache) {
+		this.referenceCache = referenceCache;
+	}
+
 	public void bindVariable(IVariable var, INRLAstNode declarationNode, boolean checkDuplicates) {
 
 		// Check that the variable name is ok
@@ -232,7 +256,7 @@ public class AntlrModelResolverVisitor extends AntlrAstVisitor {
 			ModelReferenceImpl ref = (ModelReferenceImpl) exists.getElement();
 
 			ModelReferenceHelper.resolveReference(ref, models, context.peek(), ruleContext,
-					variableContext, globalVariables, errors);
+					variableContext, globalVariables, errors, referenceCache);
 			if (ref.getInitialStep() == null)
 				return false;
 
@@ -264,7 +288,7 @@ public class AntlrModelResolverVisitor extends AntlrAstVisitor {
 			ModelReferenceImpl ref = (ModelReferenceImpl) forall.getElement();
 
 			ModelReferenceHelper.resolveReference(ref, models, context.peek(),
-					ruleContext, variableContext, globalVariables, errors);
+					ruleContext, variableContext, globalVariables, errors, referenceCache);
 
 			if (ref.getInitialStep() == null)
 				return false;
@@ -288,7 +312,7 @@ public class AntlrModelResolverVisitor extends AntlrAstVisitor {
 						.next();
 
 				ModelReferenceHelper.resolveReference(ref, models, context.peek(),
-						ruleContext, variableContext, globalVariables, errors);
+						ruleContext, variableContext, globalVariables, errors, referenceCache);
 				if (ref.getInitialStep() == null)
 					return false;
 
@@ -319,7 +343,7 @@ public class AntlrModelResolverVisitor extends AntlrAstVisitor {
 				}
 
 				ModelReferenceHelper.resolveReference(ref, models, context.peek(),
-						ruleContext, variableContext, globalVariables, errors);
+						ruleContext, variableContext, globalVariables, errors, referenceCache);
 
 				if (ref.getInitialStep() != null)
 					newVar = new Variable(var.getVariableName(), ref.getTarget());
@@ -356,7 +380,7 @@ public class AntlrModelResolverVisitor extends AntlrAstVisitor {
 			ModelReferenceImpl ref = (ModelReferenceImpl) selection.getModelReference();
 
 			ModelReferenceHelper.resolveReference(ref, models, context.peek(), ruleContext,
-					variableContext, globalVariables, errors);
+					variableContext, globalVariables, errors, referenceCache);
 			if (ref.getInitialStep() == null)
 				return false;
 
@@ -368,7 +392,7 @@ public class AntlrModelResolverVisitor extends AntlrAstVisitor {
 			// may have resolve it already
 			if (ref.getInitialStep() == null) {
 				ModelReferenceHelper.resolveReference(ref, models, context.peek(),
-						ruleContext, variableContext, globalVariables, errors);
+						ruleContext, variableContext, globalVariables, errors, referenceCache);
 
 				if (ref.getInitialStep() == null)
 					return false;
@@ -381,7 +405,8 @@ public class AntlrModelResolverVisitor extends AntlrAstVisitor {
 			// Resolve it. Bail out if it fails
 			ModelReferenceImpl ref = (ModelReferenceImpl) remove.getTarget();
 			ModelReferenceHelper.resolveReference(ref, getModels(), getCurrentContext(),
-					getRuleContext(), getVariableContext(), globalVariables, getErrors());
+					getRuleContext(), getVariableContext(), globalVariables, getErrors(),
+					referenceCache);
 			if (ref.getInitialStep() == null)
 				return false;
 
@@ -403,7 +428,8 @@ public class AntlrModelResolverVisitor extends AntlrAstVisitor {
 			// Resolve it. Bail out if it fails
 			ModelReferenceImpl ref = (ModelReferenceImpl) forEach.getCollection();
 			ModelReferenceHelper.resolveReference(ref, getModels(), getCurrentContext(),
-					getRuleContext(), getVariableContext(), globalVariables, getErrors());
+					getRuleContext(), getVariableContext(), globalVariables, getErrors(),
+					referenceCache);
 			if (ref.getInitialStep() == null)
 				return false;
 
@@ -444,7 +470,8 @@ public class AntlrModelResolverVisitor extends AntlrAstVisitor {
 							.getModelReference();
 
 				ModelReferenceHelper.resolveReference(ref, getModels(), getCurrentContext(),
-						getRuleContext(), getVariableContext(), globalVariables, getErrors());
+						getRuleContext(), getVariableContext(), globalVariables, getErrors(),
+						referenceCache);
 
 				if (ref.getInitialStep() != null)
 					newVar = new Variable(var.getVariableName(), ref.getTarget());
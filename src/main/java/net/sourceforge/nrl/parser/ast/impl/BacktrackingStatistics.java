@@ -0,0 +1,167 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.antlr.runtime.BaseRecognizer;
+
+/**
+ * Counts, per grammar rule, how often the parser entered a rule speculatively while evaluating a
+ * syntactic predicate, and how many of those invocations were answered from the memoization table
+ * instead of being parsed again. Attach an instance to a parser using
+ * {@link NRLActionParser#setBacktrackingStatistics(BacktrackingStatistics)} to find the decisions
+ * that cause the most backtracking.
+ * <p>
+ * Rule names are taken from the stack when a rule is first seen, so collecting statistics slows
+ * down parsing and should not be enabled in production. One instance may be shared by several
+ * parsers, but not by parsers running at the same time.
+ *
+ * @since 1.4.18
+ */
+public class BacktrackingStatistics {
+
+	// Rule name to {speculative invocations, memoization hits}
+	private Map<String, int[]> counts = new HashMap<String, int[]>();
+
+	// Rule names by recognizer class and rule index, resolved once
+	private Map<Class<?>, String[]> ruleNames = new HashMap<Class<?>, String[]>();
+
+	/**
+	 * Record a speculative invocation of a rule. Called by the parser, from its
+	 * <code>alreadyParsedRule</code> method.
+	 *
+	 * @param recognizer the parser
+	 * @param ruleIndex the rule index in the parser
+	 * @param memoized true if the result came from the memoization table
+	 */
+	public void record(BaseRecognizer recognizer, int ruleIndex, boolean memoized) {
+		String name = getRuleName(recognizer, ruleIndex);
+		int[] count = counts.get(name);
+		if (count == null) {
+			count = new int[2];
+			counts.put(name, count);
+		}
+		count[0]++;
+		if (memoized)
+			count[1]++;
+	}
+
+	/**
+	 * Return the number of times a rule was entered speculatively.
+	 *
+	 * @param rule the rule name
+	 * @return the number of invocations, including those answered from the memoization table
+	 */
+	public int getInvocations(String rule) {
+		int[] count = counts.get(rule);
+		return count == null ? 0 : count[0];
+	}
+
+	/**
+	 * Return the number of speculative invocations of a rule that were answered from the
+	 * memoization table.
+	 *
+	 * @param rule the rule name
+	 * @return the number of memoization hits
+	 */
+	public int getMemoizationHits(String rule) {
+		int[] count = counts.get(rule);
+		return count == null ? 0 : count[1];
+	}
+
+	/**
+	 * Return the total number of speculative rule invocations.
+	 *
+	 * @return the total
+	 */
+	public int getTotalInvocations() {
+		int total = 0;
+		for (int[] count : counts.values())
+			total += count[0];
+		return total;
+	}
+
+	/**
+	 * Return the names of all rules that were entered speculatively, the rule with the most
+	 * invocations first.
+	 *
+	 * @return the rule names
+	 */
+	public List<String> getRules() {
+		List<String> result = new ArrayList<String>(counts.keySet());
+		Collections.sort(result, new Comparator<String>() {
+			public int compare(String a, String b) {
+				int diff = getInvocations(b) - getInvocations(a);
+				return diff != 0 ? diff : a.compareTo(b);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Discard all counts.
+	 */
+	public void reset() {
+		counts.clear();
+	}
+
+	/**
+	 * Return a report with one line per rule, the rule with the most invocations first.
+	 */
+	@Override
+	public String toString() {
+		StringBuffer result = new StringBuffer();
+		result.append("Speculative rule invocations: " + getTotalInvocations());
+		for (String rule : getRules()) {
+			result.append("\n  " + rule + ": " + getInvocations(rule) + " ("
+					+ getMemoizationHits(rule) + " memoized)");
+		}
+		return result.toString();
+	}
+
+	/*
+	 * The generated parsers do not record rule names, so take the name of the method that called
+	 * alreadyParsedRule, i.e. the rule, from the stack.
+	 */
+	private String getRuleName(BaseRecognizer recognizer, int ruleIndex) {
+		String[] names = ruleNames.get(recognizer.getClass());
+		if (names == null || ruleIndex >= names.length) {
+			String[] larger = new String[ruleIndex + 16];
+			if (names != null)
+				System.arraycopy(names, 0, larger, 0, names.length);
+			names = larger;
+			ruleNames.put(recognizer.getClass(), names);
+		}
+
+		if (names[ruleIndex] == null) {
+			names[ruleIndex] = "rule " + ruleIndex;
+			StackTraceElement[] stack = new Throwable().getStackTrace();
+			for (int i = 0; i < stack.length - 1; i++) {
+				if (stack[i].getMethodName().equals("alreadyParsedRule")
+						&& !stack[i + 1].getMethodName().equals("alreadyParsedRule")) {
+					names[ruleIndex] = stack[i + 1].getMethodName();
+					break;
+				}
+			}
+		}
+		return names[ruleIndex];
+	}
+}
@@ -0,0 +1,358 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.List;
+
+import net.sourceforge.nrl.parser.NRLError;
+import net.sourceforge.nrl.parser.util.StreamUtilities;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+import org.antlr.runtime.TokenStream;
+
+/**
+ * A token stream that lexes NRL source text into parallel arrays of token types, text offsets,
+ * text lengths, lines and columns, instead of a list of token objects. The parser predicts
+ * alternatives on the token types alone; a token object is only created when the parser matches a
+ * token, and the token's text is only copied out of the source when it is asked for, typically by
+ * an AST node. Keywords and punctuation never have their text materialised.
+ * <p>
+ * This stream behaves like a {@link org.antlr.runtime.CommonTokenStream} over an
+ * {@link NRLJFlexer}: the whole input is lexed on first use, the end-of-file token is not part of
+ * the buffer, and lexical errors are thrown as {@link SyntaxErrorException}. A stream created
+ * with an error list instead skips unexpected characters and records an error for each.
+ *
+ * @since 1.4.18
+ */
+public class CompactTokenStream implements TokenStream {
+
+	private final CharSequence content;
+
+	private final NRLJFlexer lexer;
+
+	// Receives lexical errors, null to throw them
+	private final List<NRLError> errors;
+
+	private int[] types;
+
+	private int[] starts;
+
+	private int[] lengths;
+
+	private int[] lines;
+
+	private int[] columns;
+
+	// The first token of this stream, greater than 0 for sub-streams
+	private int from = 0;
+
+	// The index after the last token
+	private int size = 0;
+
+	// Token objects, created on demand and indexed by token index less the first index
+	private Token[] tokens = null;
+
+	// The current token, -1 until the buffer is filled
+	private int p = -1;
+
+	private int lastMarker;
+
+	/**
+	 * Create a stream over NRL source text. The text must not change while the stream is in use.
+	 *
+	 * @param content the source
+	 */
+	public CompactTokenStream(CharSequence content) {
+		this(content, null);
+	}
+
+	/**
+	 * Create a stream over NRL source text that continues after lexical errors. Each unexpected
+	 * character is left out of the stream, and a lexer error is added to the list instead of
+	 * being thrown. The text must not change while the stream is in use.
+	 *
+	 * @param content the source
+	 * @param errors the list to add lexical errors to, null to throw them
+	 */
+	public CompactTokenStream(CharSequence content, List<NRLError> errors) {
+		this.content = content;
+		this.lexer = new NRLJFlexer(StreamUtilities.newReader(content));
+		this.errors = errors;
+
+		int capacity = content.length() / 8 + 16;
+		types = new int[capacity];
+		starts = new int[capacity];
+		lengths = new int[capacity];
+		lines = new int[capacity];
+		columns = new int[capacity];
+	}
+
+	/*
+	 * Create a sub-stream sharing the arrays of a filled stream.
+	 */
+	private CompactTokenStream(CompactTokenStream source, int from, int to) {
+		this.content = source.content;
+		this.lexer = source.lexer;
+		this.errors = source.errors;
+		this.types = source.types;
+		this.starts = source.starts;
+		this.lengths = source.lengths;
+		this.lines = source.lines;
+		this.columns = source.columns;
+		this.from = from;
+		this.size = to;
+		this.p = from;
+	}
+
+	/**
+	 * Return a stream over a range of the tokens of this stream. The new stream shares the
+	 * token arrays of this one, and behaves as if the input ended after the range: token indexes,
+	 * lines and columns are those of the whole input. Sub-streams of the same stream can be used
+	 * by different threads at the same time.
+	 * 
+	 * @param start the index of the first token
+	 * @param stop the index after the last token
+	 * @return the stream
+	 */
+	public CompactTokenStream subStream(int start, int stop) {
+		if (p == -1)
+			fillBuffer();
+		if (start < from || stop > size || start > stop)
+			throw new IndexOutOfBoundsException(start + ".." + stop);
+		return new CompactTokenStream(this, start, stop);
+	}
+
+	/*
+	 * Return the type of a token without creating a token object.
+	 */
+	int getType(int i) {
+		if (p == -1)
+			fillBuffer();
+		return types[i];
+	}
+
+	public Token LT(int k) {
+		if (p == -1)
+			fillBuffer();
+		if (k == 0)
+			return null;
+
+		int i = p + (k < 0 ? k : k - 1);
+		if (i < from)
+			return null;
+		if (i >= size)
+			return Token.EOF_TOKEN;
+		return get(i);
+	}
+
+	public int LA(int k) {
+		if (p == -1)
+			fillBuffer();
+		if (k == 0)
+			return 0;
+
+		int i = p + (k < 0 ? k : k - 1);
+		if (i < from)
+			return Token.INVALID_TOKEN_TYPE;
+		if (i >= size)
+			return Token.EOF;
+		return types[i];
+	}
+
+	/**
+	 * Return a token, creating it on first access. The same object is returned for every access.
+	 */
+	public Token get(int i) {
+		if (p == -1)
+			fillBuffer();
+
+		if (tokens == null)
+			tokens = new Token[size - from];
+		if (tokens[i - from] == null)
+			tokens[i - from] = new CompactToken(content, types[i], i, lines[i], columns[i],
+					starts[i], lengths[i]);
+		return tokens[i - from];
+	}
+
+	public void consume() {
+		if (p == -1)
+			fillBuffer();
+		if (p < size)
+			p++;
+	}
+
+	public int index() {
+		return p;
+	}
+
+	public int range() {
+		return p;
+	}
+
+	public int mark() {
+		if (p == -1)
+			fillBuffer();
+		lastMarker = index();
+		return lastMarker;
+	}
+
+	public void release(int marker) {
+		// No resources to release
+	}
+
+	public void rewind(int marker) {
+		seek(marker);
+	}
+
+	public void rewind() {
+		seek(lastMarker);
+	}
+
+	public void seek(int index) {
+		p = index;
+	}
+
+	public int size() {
+		if (p == -1)
+			fillBuffer();
+		return size;
+	}
+
+	public TokenSource getTokenSource() {
+		return lexer;
+	}
+
+	public String getSourceName() {
+		return lexer.getSourceName();
+	}
+
+	public String toString(int start, int stop) {
+		if (start < 0 || stop < 0)
+			return null;
+		if (p == -1)
+			fillBuffer();
+
+		StringBuffer result = new StringBuffer();
+		for (int i = Math.max(start, from); i <= stop && i < size; i++) {
+			result.append(content, starts[i], starts[i] + lengths[i]);
+		}
+		return result.toString();
+	}
+
+	public String toString(Token start, Token stop) {
+		if (start == null || stop == null)
+			return null;
+		return toString(start.getTokenIndex(), stop.getTokenIndex());
+	}
+
+	@Override
+	public String toString() {
+		if (p == -1)
+			fillBuffer();
+		return toString(from, size - 1);
+	}
+
+	/*
+	 * Lex the whole input into the arrays.
+	 */
+	private void fillBuffer() {
+		while (true) {
+			int type;
+			try {
+				type = lexer.yylex();
+			} catch (IOException e) {
+				type = Token.EOF;
+			} catch (SyntaxErrorException e) {
+				if (errors == null)
+					throw e;
+				errors.add(e.getSyntaxError());
+				continue;
+			}
+			if (type == Token.EOF)
+				break;
+
+			if (size == types.length) {
+				int capacity = size * 2;
+				types = grow(types, capacity);
+				starts = grow(starts, capacity);
+				lengths = grow(lengths, capacity);
+				lines = grow(lines, capacity);
+				columns = grow(columns, capacity);
+			}
+
+			types[size] = type;
+			starts[size] = lexer.getTokenStart();
+			lengths[size] = lexer.getTokenLength();
+			lines[size] = lexer.getTokenLine();
+			columns[size] = lexer.getTokenColumn();
+			size++;
+		}
+		p = 0;
+	}
+
+	private int[] grow(int[] array, int capacity) {
+		int[] result = new int[capacity];
+		System.arraycopy(array, 0, result, 0, size);
+		return result;
+	}
+
+	/*
+	 * A token that copies its text out of the source on first access. Tokens only refer to the
+	 * source, not to the stream, so that the token arrays and the lexer can be collected while an
+	 * AST still refers to its tokens. The text is materialised before a token is serialised.
+	 */
+	private static class CompactToken extends CommonToken {
+
+		private static final long serialVersionUID = -5004376342524593432L;
+
+		private transient CharSequence content;
+
+		private boolean hasText = false;
+
+		CompactToken(CharSequence content, int type, int index, int line, int column, int start,
+				int length) {
+			super(type);
+			this.content = content;
+			setTokenIndex(index);
+			setLine(line);
+			setCharPositionInLine(column);
+			setStartIndex(start);
+			setStopIndex(start + length - 1);
+		}
+
+		@Override
+		public String getText() {
+			if (!hasText) {
+				setText(content.subSequence(getStartIndex(), getStopIndex() + 1).toString());
+			}
+			return super.getText();
+		}
+
+		private void writeObject(ObjectOutputStream out) throws IOException {
+			getText();
+			out.defaultWriteObject();
+		}
+
+		@Override
+		public void setText(String text) {
+			hasText = true;
+			super.setText(text);
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.nrl.parser.ast.IModelReference;
+import net.sourceforge.nrl.parser.ast.constraints.impl.ModelReferenceImpl;
+import net.sourceforge.nrl.parser.model.IAttribute;
+import net.sourceforge.nrl.parser.model.IClassifier;
+import net.sourceforge.nrl.parser.model.IModelElement;
+
+/**
+ * A cache of model references resolved by {@link ModelReferenceHelper}, keyed by the current
+ * context element, the rule context and the reference steps. Generated rule files repeat the same
+ * navigations many times under the same context; a cached reference is resolved by copying the
+ * initial step, attribute steps and reference type of the first resolution.
+ * <p>
+ * Only references that resolved without errors, and without reference to a local or global
+ * variable, are cached: what they resolve to depends on the models alone, which must not change
+ * while the cache is in use. A cache is not thread-safe, and is normally used for one run of
+ * {@link AntlrModelResolver}.
+ * 
+ * @since 1.4.18
+ */
+public class ModelReferenceCache {
+
+	private final Map<Key, Resolution> resolutions = new HashMap<Key, Resolution>();
+
+	private int hits = 0;
+
+	private int misses = 0;
+
+	/**
+	 * Resolve a reference from the cache, if it is there.
+	 * 
+	 * @param ref the reference
+	 * @param contextElement the current context element
+	 * @param initialContext the rule context
+	 * @return true if the reference was resolved
+	 */
+	boolean apply(ModelReferenceImpl ref, IModelElement contextElement,
+			IClassifier initialContext) {
+		Resolution resolution = resolutions.get(new Key(contextElement, initialContext, ref
+				.getStepsAsStrings()));
+		if (resolution == null) {
+			misses++;
+			return false;
+		}
+
+		hits++;
+		ref.resetSteps();
+		ref.setInitialStep(resolution.initialStep);
+		for (IAttribute step : resolution.steps) {
+			ref.addStep(step);
+		}
+		ref.setReferenceType(resolution.referenceType);
+		if (resolution.currentContext != null)
+			ref.setCurrentContext(resolution.currentContext);
+		return true;
+	}
+
+	/**
+	 * Remember a resolved reference, unless it refers to a variable or did not resolve.
+	 * 
+	 * @param ref the reference
+	 * @param contextElement the current context element
+	 * @param initialContext the rule context
+	 */
+	void put(ModelReferenceImpl ref, IModelElement contextElement, IClassifier initialContext) {
+		if (ref.getInitialStep() == null)
+			return;
+		if (ref.getReferenceType() == IModelReference.REFERENCE_VARIABLE_RELATIVE_ATTRIBUTE
+				|| ref.getReferenceType() == IModelReference.REFERENCE_GLOBAL_VARIABLE
+				|| ref.getInitialStepType() == IModelReference.STEP_VARIABLE)
+			return;
+
+		resolutions.put(new Key(contextElement, initialContext, new ArrayList<String>(ref
+				.getStepsAsStrings())), new Resolution(ref, contextElement));
+	}
+
+	/**
+	 * Add the references and statistics of another cache, used to combine the caches of
+	 * declarations resolved in parallel. References already in this cache are kept.
+	 *
+	 * @param other the other cache
+	 */
+	void merge(ModelReferenceCache other) {
+		for (Map.Entry<Key, Resolution> entry : other.resolutions.entrySet()) {
+			if (!resolutions.containsKey(entry.getKey()))
+				resolutions.put(entry.getKey(), entry.getValue());
+		}
+		hits += other.hits;
+		misses += other.misses;
+	}
+
+	/**
+	 * Return the number of references resolved from the cache.
+	 * 
+	 * @return the number of hits
+	 */
+	public int getHits() {
+		return hits;
+	}
+
+	/**
+	 * Return the number of references looked up but not found in the cache, including those that
+	 * cannot be cached.
+	 * 
+	 * @return the number of misses
+	 */
+	public int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Return the fraction of lookups that were resolved from the cache.
+	 * 
+	 * @return the hit rate between 0 and 1, or 0 if there were no lookups
+	 */
+	public double getHitRate() {
+		int lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	/**
+	 * Return the number of cached references.
+	 * 
+	 * @return the size
+	 */
+	public int size() {
+		return resolutions.size();
+	}
+
+	/**
+	 * Empty the cache and reset the statistics.
+	 */
+	public void clear() {
+		resolutions.clear();
+		hits = 0;
+		misses = 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d references cached, %d hits, %d misses, hit rate %.1f%%",
+				resolutions.size(), hits, misses, getHitRate() * 100);
+	}
+
+	/*
+	 * Context elements are compared by identity, steps by value.
+	 */
+	private static class Key {
+
+		private final IModelElement contextElement;
+
+		private final IClassifier initialContext;
+
+		private final List<String> steps;
+
+		private final int hashCode;
+
+		Key(IModelElement contextElement, IClassifier initialContext, List<String> steps) {
+			this.contextElement = contextElement;
+			this.initialContext = initialContext;
+			this.steps = steps;
+			this.hashCode = (System.identityHashCode(contextElement) * 31 + System
+					.identityHashCode(initialContext))
+					* 31 + steps.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return contextElement == other.contextElement
+					&& initialContext == other.initialContext && steps.equals(other.steps);
+		}
+	}
+
+	/*
+	 * The state of a resolved reference.
+	 */
+	private static class Resolution {
+
+		private final Object initialStep;
+
+		private final List<IAttribute> steps;
+
+		private final int referenceType;
+
+		private final IModelElement currentContext;
+
+		Resolution(ModelReferenceImpl ref, IModelElement contextElement) {
+			this.initialStep = ref.getInitialStep();
+			this.steps = new ArrayList<IAttribute>(ref.getRemainingSteps());
+			this.referenceType = ref.getReferenceType();
+
+			// Only references relative to the current context are given one
+			this.currentContext = referenceType == IModelReference.REFERENCE_RELATIVE_ATTRIBUTE
+					? contextElement : null;
+		}
+	}
+}
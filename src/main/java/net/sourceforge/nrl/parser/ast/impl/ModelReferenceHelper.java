@@ -74,6 +74,46 @@ public class ModelReferenceHelper {
 			IModelElement contextElement, IClassifier initialContext,
 			VariableContext variableContext,
 			Map<String, IVariableDeclaration> globalVariableContext, List<NRLError> errors) {
+		resolveReference(ref, models, contextElement, initialContext, variableContext,
+				globalVariableContext, errors, null);
+	}
+
+	/**
+	 * Resolve a reference like
+	 * {@link #resolveReference(ModelReferenceImpl, IModelCollection, IModelElement, IClassifier, VariableContext, Map, List)}
+	 * , but look it up in a cache first. A reference that is not in the cache is resolved and, if
+	 * it resolved without errors and does not involve variables, added to the cache.
+	 * 
+	 * @param cache the cache, or null to always resolve
+	 * @since 1.4.18
+	 */
+	public static void resolveReference(ModelReferenceImpl ref, IModelCollection models,
+			IModelElement contextElement, IClassifier initialContext,
+			VariableContext variableContext,
+			Map<String, IVariableDeclaration> globalVariableContext, List<NRLError> errors,
+			ModelReferenceCache cache) {
+		if (cache == null || ref.getStepsAsStrings().size() == 0) {
+			resolveUncached(ref, models, contextElement, initialContext, variableContext,
+					globalVariableContext, errors);
+			return;
+		}
+
+		if (cache.apply(ref, contextElement, initialContext))
+			return;
+
+		int errorCount = errors.size();
+		resolveUncached(ref, models, contextElement, initialContext, variableContext,
+				globalVariableContext, errors);
+
+		if (errors.size() == errorCount) {
+			cache.put(ref, contextElement, initialContext);
+		}
+	}
+
+	private static void resolveUncached(ModelReferenceImpl ref, IModelCollection models,
+			IModelElement contextElement, IClassifier initialContext,
+			VariableContext variableContext,
+			Map<String, IVariableDeclaration> globalVariableContext, List<NRLError> errors) {
 
 		List<String> steps = ref.getStepsAsStrings();
 		if (steps.size() == 0)
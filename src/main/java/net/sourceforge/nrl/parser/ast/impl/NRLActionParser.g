@@ -20,6 +20,7 @@ parser grammar NRLActionParser;
 options {
 	output = AST;
 	ASTLabelType = CommonTree;
+	memoize = true;
 }
 
 import NRLConstraintRules;
@@ -89,6 +90,50 @@ import net.sourceforge.nrl.parser.ast.constraints.impl.ModelReferenceImpl;
 		if (obj instanceof Antlr3NRLBaseAst)
 			((Antlr3NRLBaseAst) obj).initialisePositionFromChild(index);
 	}
+	
+	private boolean memoizing = false;
+	
+	private BacktrackingStatistics backtrackingStatistics = null;
+	
+	/**
+	 * Switch memoization of speculative parses on or off. When on, the result of every rule
+	 * invoked while evaluating a syntactic predicate is remembered by input position, and not
+	 * parsed again by later predicates or by the actual parse. This trades memory for time on
+	 * deeply nested input. Off by default.
+	 */
+	public void setMemoizing(boolean memoizing) {
+		this.memoizing = memoizing;
+		gNRLConstraintRules.setMemoizing(memoizing);
+	}
+	
+	public boolean isMemoizing() {
+		return memoizing;
+	}
+	
+	/**
+	 * Count speculative rule invocations in a statistics object, or pass null to stop counting.
+	 */
+	public void setBacktrackingStatistics(BacktrackingStatistics statistics) {
+		this.backtrackingStatistics = statistics;
+		gNRLConstraintRules.setBacktrackingStatistics(statistics);
+	}
+	
+	public BacktrackingStatistics getBacktrackingStatistics() {
+		return backtrackingStatistics;
+	}
+	
+	// Called on every speculative rule invocation
+	public boolean alreadyParsedRule(IntStream input, int ruleIndex) {
+		boolean parsed = memoizing && super.alreadyParsedRule(input, ruleIndex);
+		if (backtrackingStatistics != null)
+			backtrackingStatistics.record(this, ruleIndex, parsed);
+		return parsed;
+	}
+	
+	public void memoize(IntStream input, int ruleIndex, int ruleStartIndex) {
+		if (memoizing)
+			super.memoize(input, ruleIndex, ruleStartIndex);
+	}
 }
 
 // -------------------------------- TOP LEVEL (SHARED) ----------------------------------------
@@ -97,6 +142,11 @@ fileBody
 		:	modelFileReferences operatorFileReferences declarations EOF
 			-> ^(VT_RULEFILE modelFileReferences operatorFileReferences? declarations?)
 		;
+
+// Declarations without file header, used to parse the declarations of a file in parallel
+declarationsAndEOF
+		:	declarations EOF!
+		;
 		
 modelFileReferences
 		:	(modelFileReference)+
@@ -20,6 +20,8 @@ parser grammar NRLConstraintRules;
 options {
 	output = AST;
 	ASTLabelType = CommonTree;
+	// Generates the memoization hooks; they are switched on per parser, see setMemoizing
+	memoize = true;
 }
 
 tokens {
@@ -48,6 +50,10 @@ tokens {
 @members {
 	private java.util.List<NRLError> syntaxErrors = new java.util.ArrayList<NRLError>();
 	
+	private boolean memoizing = false;
+	
+	private BacktrackingStatistics backtrackingStatistics = null;
+	
 	public java.util.List<NRLError> getSyntaxErrors() {
 		return syntaxErrors;
 	}
@@ -87,6 +93,27 @@ tokens {
 			((Antlr3NRLBaseAst) obj).initialisePositionFromChild(index);
 	}
 	
+	public void setMemoizing(boolean memoizing) {
+		this.memoizing = memoizing;
+	}
+	
+	public void setBacktrackingStatistics(BacktrackingStatistics statistics) {
+		this.backtrackingStatistics = statistics;
+	}
+	
+	// Called on every speculative rule invocation
+	public boolean alreadyParsedRule(IntStream input, int ruleIndex) {
+		boolean parsed = memoizing && super.alreadyParsedRule(input, ruleIndex);
+		if (backtrackingStatistics != null)
+			backtrackingStatistics.record(this, ruleIndex, parsed);
+		return parsed;
+	}
+	
+	public void memoize(IntStream input, int ruleIndex, int ruleStartIndex) {
+		if (memoizing)
+			super.memoize(input, ruleIndex, ruleStartIndex);
+	}
+	
 	private void validateChildType(Tree tree, Class<?> clazz, String expectedChildDescription) throws RecognitionException {
 		for (int i = 0; i < tree.getChildCount(); i++) {
 			Object obj = tree.getChild(i);
@@ -249,18 +276,23 @@ forallStart
 		:	(IN)? EACH
 		;		
 					
+/*
+ * The left-hand expression is parsed once and the operator decides the alternative. Predicating
+ * on (expression IS_IN) parsed every expression up to three times.
+ */
 predicateStatement
 @after { 
 	if (retval.tree instanceof IBinaryPredicate && retval.tree.getChildCount() == 2) {
 		validateChildType(retval.tree, IExpression.class, "expression");
 	}
 }
-		:	(expression IS_IN) => expression IS_IN^ listDefinition
-		|	(expression IS_NOT_IN) => expression IS_NOT_IN^ listDefinition
-		|	(modelReference KIND_OF) => isSubtypePredicate
+		:	(modelReference KIND_OF) => isSubtypePredicate
 		|	(FOLLOWING PRESENT) => multipleExistsStatement
 		|	(FOLLOWING NOT_PRESENT) => multipleNotExistsStatement
-		|	expression	((
+		|	expression	(
+						  IS_IN^ listDefinition
+						| IS_NOT_IN^ listDefinition
+						| (
 						  EQUALS^
 						| NOT_EQUALS^
 						| LESS^
@@ -268,7 +300,8 @@ predicateStatement
 						| GREATER^
 						| GREATER_EQ^
 						)
-			expression)?
+						expression
+			)?
 		;
 		
 /*
@@ -451,8 +484,12 @@ modelReferenceList
 			)*
 		;
 		
+/*
+ * A loop rather than right recursion: the lookahead DFAs can scan over a loop, so decisions like
+ * (modelReference PRESENT) or (context VALIDATION_RULE) are made without backtracking.
+ */
 identifierSequence
-		:	IDENTIFIER (OF! identifierSequence)?
+		:	IDENTIFIER (OF! IDENTIFIER)*
 		;
 		
 /* Reporting */
@@ -0,0 +1,257 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.sourceforge.nrl.parser.NRLError;
+import net.sourceforge.nrl.parser.util.ThreadUtilities;
+
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.tree.CommonTree;
+
+/**
+ * Parses the declarations of one NRL file on several threads. The file is lexed once, and the
+ * token buffer is split into chunks at top-level keywords that can only start a declaration
+ * (<i>Context:</i>, <i>Validation rule</i> and <i>Action rule</i> without a context, and
+ * <i>Rule set</i>). The file header and every chunk are then parsed concurrently, and the
+ * declarations are appended to a single rule file tree in their original order. As all chunks
+ * share the token buffer, line and column numbers are those of the whole file.
+ * <p>
+ * If any chunk has a syntax error, the whole file is parsed again on the calling thread, so that
+ * errors and error recovery are exactly those of a sequential parse. Files that cannot be split
+ * into at least two chunks, for example those with a single declaration, are always parsed
+ * sequentially.
+ * <p>
+ * Like {@link NRLActionParser}, call {@link #getSyntaxErrors()} after parsing. The returned tree
+ * has not been resolved.
+ * 
+ * @since 1.4.18
+ */
+public class ParallelDeclarationParser {
+
+	// Chunks per thread, to even out declarations of different length
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final CompactTokenStream tokens;
+
+	private final int threads;
+
+	private boolean memoizing = false;
+
+	private ExecutorService executor;
+
+	private List<NRLError> syntaxErrors = new ArrayList<NRLError>();
+
+	/**
+	 * Create a parser.
+	 * 
+	 * @param content the source of the file, after preprocessing
+	 * @param threads the number of threads to parse on
+	 */
+	public ParallelDeclarationParser(CharSequence content, int threads) {
+		this.tokens = new CompactTokenStream(content);
+		this.threads = threads;
+	}
+
+	/**
+	 * Switch memoization of speculative parses on or off, see
+	 * {@link NRLActionParser#setMemoizing(boolean)}.
+	 * 
+	 * @param memoizing true to memoize
+	 */
+	public void setMemoizing(boolean memoizing) {
+		this.memoizing = memoizing;
+	}
+
+	public boolean isMemoizing() {
+		return memoizing;
+	}
+
+	/**
+	 * Parse the chunks on a pool shared with other parsers. The pool is not shut down by the
+	 * parser; see {@link ThreadUtilities#newSharedPool(int, String)} for a pool that does not
+	 * need to be.
+	 * 
+	 * @param executor the pool, or null to create a pool for the next parse
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Return the syntax errors found by the last parse.
+	 * 
+	 * @return the errors, empty if there were none
+	 */
+	public List<NRLError> getSyntaxErrors() {
+		return syntaxErrors;
+	}
+
+	/**
+	 * Parse the file.
+	 * 
+	 * @return the rule file tree, which may be incomplete if there were syntax errors
+	 * @throws RecognitionException
+	 */
+	public RuleFileImpl parse() throws RecognitionException {
+		syntaxErrors = new ArrayList<NRLError>();
+
+		List<Integer> chunkStarts = getChunkStarts(findDeclarationStarts(tokens), tokens.size(),
+				threads * CHUNKS_PER_THREAD);
+		if (threads < 2 || chunkStarts.size() < 2) {
+			return parseSequentially();
+		}
+
+		if (executor == null)
+			executor = ThreadUtilities.newSharedPool(threads, "nrl-declaration-parser");
+
+		List<Future<Object>> chunks = new ArrayList<Future<Object>>();
+		List<NRLActionParser> parsers = new ArrayList<NRLActionParser>();
+
+		for (int i = 0; i < chunkStarts.size(); i++) {
+			int stop = i + 1 < chunkStarts.size() ? chunkStarts.get(i + 1) : tokens.size();
+			final NRLActionParser parser = createParser(tokens.subStream(chunkStarts.get(i), stop));
+			parsers.add(parser);
+			chunks.add(executor.submit(new Callable<Object>() {
+				public Object call() throws RecognitionException {
+					return parser.declarationsAndEOF().getTree();
+				}
+			}));
+		}
+
+		// Parse the header on this thread, while the chunks are parsed
+		NRLActionParser headerParser = createParser(tokens.subStream(0, chunkStarts.get(0)));
+		Object header = headerParser.fileBody().getTree();
+		parsers.add(0, headerParser);
+
+		List<Object> trees = new ArrayList<Object>();
+		for (Future<Object> chunk : chunks) {
+			trees.add(getResult(chunk));
+		}
+
+		for (NRLActionParser parser : parsers) {
+			if (parser.hasErrors()) {
+				return parseSequentially();
+			}
+		}
+
+		// Nil trees add their children, which are the declarations
+		RuleFileImpl ruleFile = (RuleFileImpl) header;
+		for (Object tree : trees) {
+			if (tree != null) {
+				ruleFile.addChild((CommonTree) tree);
+			}
+		}
+		return ruleFile;
+	}
+
+	/*
+	 * Return the index of every token that starts a declaration and can be found without
+	 * parsing. Global variable declarations cannot, and stay in the chunk of the declaration
+	 * before them.
+	 */
+	static List<Integer> findDeclarationStarts(CompactTokenStream tokens) {
+		List<Integer> result = new ArrayList<Integer>();
+
+		// True between a context and the keyword of its declaration
+		boolean inContext = false;
+
+		for (int i = 0; i < tokens.size(); i++) {
+			switch (tokens.getType(i)) {
+			case NRLActionParser.CONTEXT:
+				result.add(i);
+				inContext = true;
+				break;
+			case NRLActionParser.VALIDATION_RULE:
+			case NRLActionParser.ACTION_RULE:
+				if (!inContext)
+					result.add(i);
+				inContext = false;
+				break;
+			case NRLActionParser.VALIDATION_FRAGMENT:
+			case NRLActionParser.ACTION_FRAGMENT:
+				inContext = false;
+				break;
+			case NRLActionParser.RULESET:
+				result.add(i);
+				inContext = false;
+				break;
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Group declarations into chunks of roughly equal numbers of tokens, and return the index of
+	 * the first token of each chunk.
+	 */
+	static List<Integer> getChunkStarts(List<Integer> declarationStarts, int size, int chunks) {
+		List<Integer> result = new ArrayList<Integer>();
+		if (declarationStarts.isEmpty())
+			return result;
+
+		int first = declarationStarts.get(0);
+		int tokensPerChunk = Math.max(1, (size - first) / chunks);
+		int next = first;
+		for (int start : declarationStarts) {
+			if (start >= next) {
+				result.add(start);
+				next = start + tokensPerChunk;
+			}
+		}
+		return result;
+	}
+
+	private RuleFileImpl parseSequentially() throws RecognitionException {
+		NRLActionParser parser = createParser(tokens.subStream(0, tokens.size()));
+		RuleFileImpl ruleFile = (RuleFileImpl) parser.fileBody().getTree();
+		syntaxErrors = parser.getSyntaxErrors();
+		return ruleFile;
+	}
+
+	private NRLActionParser createParser(CompactTokenStream stream) {
+		NRLActionParser parser = new NRLActionParser(stream);
+		parser.setTreeAdaptor(new Antlr3NRLTreeAdaptor());
+		parser.setMemoizing(memoizing);
+		return parser;
+	}
+
+	private static <T> T getResult(Future<T> future) throws RecognitionException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while parsing declarations", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RecognitionException) {
+				throw (RecognitionException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+}
@@ -17,8 +17,10 @@
  */
 package net.sourceforge.nrl.parser.model;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A basic attribute implementation, to be subclassed. This provides a very
@@ -36,7 +38,8 @@ public abstract class AbstractAttribute implements IAttribute {
 	
 	private String originalName;
 	
-	private Map<String, Object> userData = new HashMap<String, Object>();
+	// Created when the first entry is set
+	private Map<String, Object> userData = null;
 	
 	public AbstractAttribute(String name) {
 		this.name = name;
@@ -61,7 +64,18 @@ public abstract class AbstractAttribute implements IAttribute {
 	}
 
 	public Object getUserData(String key) {
-		return userData.get(key);
+		return userData == null ? null : userData.get(key);
+	}
+
+	/**
+	 * Return the keys of all user data stored on this element.
+	 * 
+	 * @return the keys, may be empty
+	 */
+	public Set<String> getUserDataKeys() {
+		if (userData == null)
+			return Collections.emptySet();
+		return userData.keySet();
 	}
 	
 	public boolean isRepeating() {
@@ -85,6 +99,8 @@ public abstract class AbstractAttribute implements IAttribute {
 	}
 	
 	public void setUserData(String key, Object data) {
+		if (userData == null)
+			userData = new HashMap<String, Object>(4);
 		userData.put(key, data);
 	}
 }
@@ -15,6 +15,7 @@
 package net.sourceforge.nrl.parser.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,10 +28,19 @@ import java.util.Map;
  */
 public abstract class AbstractClassifier extends AbstractModelElement implements IClassifier {
 
-	private List<IAttribute> attributes = new ArrayList<IAttribute>();
+	private AttributeList attributes = new AttributeList();
 
+	/**
+	 * The attributes declared by this classifier, by name. Subclasses that modify this map
+	 * directly must call {@link #invalidateAttributeTables()}.
+	 */
 	protected Map<String, IAttribute> nameToAttribute = new HashMap<String, IAttribute>();
 
+	private volatile AttributeTable attributeTable;
+
+	// Incremented when the attributes of this classifier change other than through the list
+	private volatile int attributeVersion = 0;
+
 	// Does this classifier contain static attributes
 	// -1 = not initialised, 0 = no, 1 = yes
 	private int containsStaticAttributes = -1;
@@ -47,23 +57,36 @@ public abstract class AbstractClassifier extends AbstractModelElement implements
 	public void addAttribute(IAttribute attribute) {
 		attributes.add(attribute);
 		nameToAttribute.put(attribute.getName(), attribute);
+		invalidateAttributeTables();
 	}
 
+	/**
+	 * Return the attributes of this classifier, in a new list. Inherited attributes are copied
+	 * from {@link #getFlattenedAttributes()}.
+	 */
 	public List<IAttribute> getAttributes(boolean includeInherited) {
-		List<IAttribute> result = new ArrayList<IAttribute>();
-
-		if (includeInherited && getParent() != null && getParent() instanceof IClassifier) {
-			IClassifier parent = (IClassifier) getParent();
-			result.addAll(parent.getAttributes(true));
+		if (includeInherited) {
+			return new ArrayList<IAttribute>(getAttributeTable().attributes);
 		}
+		return new ArrayList<IAttribute>(attributes);
+	}
 
-		result.addAll(attributes);
-
-		return result;
+	/**
+	 * Return the attributes of this classifier including inherited ones, like
+	 * {@link #getAttributes(boolean) getAttributes(true)}, but without copying. The result is a
+	 * shared, unmodifiable list that is computed once and kept until an attribute or parent of
+	 * this classifier or one of its ancestors changes.
+	 * 
+	 * @return the attributes
+	 * @since 1.4.18
+	 */
+	public List<IAttribute> getFlattenedAttributes() {
+		return getAttributeTable().attributes;
 	}
 
 	/**
-	 * Return the actual, unmodified attribute list for use by subclasses.
+	 * Return the actual, unmodified attribute list for use by subclasses. Adding, removing or
+	 * replacing attributes through the list is detected by the flattened attribute tables.
 	 * 
 	 * @return the list
 	 */
@@ -76,6 +99,10 @@ public abstract class AbstractClassifier extends AbstractModelElement implements
 		if (!includeInherited || result != null)
 			return result;
 
+		Map<String, IAttribute> inherited = getAttributeTable().nameToAttribute;
+		if (inherited != null)
+			return inherited.get(name);
+
 		IClassifier run = this;
 		while (run != null) {
 			result = run.getAttributeByName(name, false);
@@ -127,18 +154,133 @@ public abstract class AbstractClassifier extends AbstractModelElement implements
 		for (IAttribute attr : attributes) {
 			nameToAttribute.put(attr.getName(), attr);
 		}
+		invalidateAttributeTables();
 	}
 
 	public void removeAttribute(IAttribute attribute) {
 		attributes.remove(attribute);
+		invalidateAttributeTables();
 	}
 
 	public void removeAttributeNameMapping(String name) {
 		nameToAttribute.remove(name);
+		invalidateAttributeTables();
+	}
+
+	@Override
+	public void setParent(IModelElement parent) {
+		super.setParent(parent);
+		invalidateAttributeTables();
 	}
 
 	public void setEnumeration(boolean enumeration) {
 		this.enumeration = enumeration;
 	}
 
+	/**
+	 * Discard the flattened attribute tables of this classifier and its descendants. Subclasses
+	 * must call this after changing {@link #nameToAttribute} directly.
+	 */
+	protected void invalidateAttributeTables() {
+		attributeVersion++;
+	}
+
+	/*
+	 * Return the flattened attribute table, building it from the parent's table if it is out of
+	 * date. A table is out of date if this classifier changed since it was built, or if the
+	 * parent's table was rebuilt, so changes to an ancestor reach all of its descendants.
+	 */
+	private AttributeTable getAttributeTable() {
+		IModelElement parent = getParent();
+		AttributeTable parentTable = null;
+		if (parent instanceof AbstractClassifier) {
+			parentTable = ((AbstractClassifier) parent).getAttributeTable();
+		}
+
+		int version = attributeVersion;
+		int listVersion = attributes.getModCount();
+		AttributeTable table = attributeTable;
+		if (table != null && table.version == version && table.listVersion == listVersion
+				&& table.parent == parent && table.parentTable == parentTable) {
+			return table;
+		}
+
+		List<IAttribute> flattened = new ArrayList<IAttribute>();
+		Map<String, IAttribute> byName = new HashMap<String, IAttribute>();
+
+		if (parentTable != null) {
+			flattened.addAll(parentTable.attributes);
+			if (parentTable.nameToAttribute == null) {
+				byName = null;
+			} else {
+				byName.putAll(parentTable.nameToAttribute);
+			}
+		} else if (parent instanceof IClassifier) {
+			// Unknown implementation, whose changes cannot be detected: names are looked up by
+			// walking the parents, and the table is not kept
+			flattened.addAll(((IClassifier) parent).getAttributes(true));
+			flattened.addAll(attributes);
+			return new AttributeTable(Collections.unmodifiableList(flattened), null, version,
+					listVersion, parent, null);
+		}
+
+		flattened.addAll(attributes);
+		if (byName != null) {
+			byName.putAll(nameToAttribute);
+		}
+
+		table = new AttributeTable(Collections.unmodifiableList(flattened), byName, version,
+				listVersion, parent, parentTable);
+		attributeTable = table;
+		return table;
+	}
+
+	/*
+	 * The attributes of a classifier including inherited ones, valid while the classifier's
+	 * versions, its parent and the parent's table are unchanged.
+	 */
+	private static class AttributeTable {
+
+		private final List<IAttribute> attributes;
+
+		// Null if an ancestor is not an AbstractClassifier
+		private final Map<String, IAttribute> nameToAttribute;
+
+		private final int version;
+
+		private final int listVersion;
+
+		private final IModelElement parent;
+
+		private final AttributeTable parentTable;
+
+		AttributeTable(List<IAttribute> attributes, Map<String, IAttribute> nameToAttribute,
+				int version, int listVersion, IModelElement parent, AttributeTable parentTable) {
+			this.attributes = attributes;
+			this.nameToAttribute = nameToAttribute;
+			this.version = version;
+			this.listVersion = listVersion;
+			this.parent = parent;
+			this.parentTable = parentTable;
+		}
+	}
+
+	/*
+	 * The declared attributes, exposing the list's modification count so that changes made
+	 * through getAttributes() are detected. Replacing an element counts as a modification.
+	 */
+	private static class AttributeList extends ArrayList<IAttribute> {
+
+		private static final long serialVersionUID = 1L;
+
+		int getModCount() {
+			return modCount;
+		}
+
+		@Override
+		public IAttribute set(int index, IAttribute element) {
+			modCount++;
+			return super.set(index, element);
+		}
+	}
 }
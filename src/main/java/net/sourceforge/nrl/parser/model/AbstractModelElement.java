@@ -18,9 +18,12 @@
 package net.sourceforge.nrl.parser.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Basic abstract implementation of a model element that manages the name and parent.
@@ -32,15 +35,23 @@ public abstract class AbstractModelElement implements IModelElement {
 
 	private String name;
 
+	// Computed on first use, and reset when this element or one of its containers is renamed
+	private volatile String qualifiedName;
+
 	private IModelElement parent = OBJECT;
 
 	private List<IModelElement> children = new ArrayList<IModelElement>();
 
+	// An index of this element and all its descendants, set by the index, and reset when a child
+	// is added here or below
+	private volatile TypeHierarchyIndex typeHierarchy = null;
+
 	private IPackage container;
 
 	private boolean supplementary = false;
 
-	private Map<String, Object> userData = new HashMap<String, Object>();
+	// Created when the first entry is set
+	private Map<String, Object> userData = null;
 
 	private String originalName;
 
@@ -54,6 +65,7 @@ public abstract class AbstractModelElement implements IModelElement {
 	}
 
 	public void addChild(IModelElement child) {
+		invalidateTypeHierarchy();
 		children.add(child);
 	}
 
@@ -73,11 +85,19 @@ public abstract class AbstractModelElement implements IModelElement {
 		if (!transitive)
 			return children;
 
+		TypeHierarchyIndex index = typeHierarchy;
+		if (index != null)
+			return new ArrayList<IModelElement>(index.getIndexedDescendants(this));
+
 		List<IModelElement> result = new ArrayList<IModelElement>();
+		Set<IModelElement> added = new HashSet<IModelElement>();
 		for (IModelElement child : children) {
-			if (!result.contains(child) && child != this) {
+			if (!added.contains(child) && child != this) {
+				List<IModelElement> descendants = child.getDescendants(true);
 				result.add(child);
-				result.addAll(child.getDescendants(true));
+				result.addAll(descendants);
+				added.add(child);
+				added.addAll(descendants);
 			}
 		}
 
@@ -90,7 +110,16 @@ public abstract class AbstractModelElement implements IModelElement {
 		return originalName;
 	}
 
+	/**
+	 * Return the qualified name. The name is computed once and cached, interned, until this
+	 * element or a package containing it is renamed.
+	 */
 	public String getQualifiedName() {
+		String cached = qualifiedName;
+		if (cached != null) {
+			return cached;
+		}
+
 		StringBuffer result = new StringBuffer();
 		result.append(name);
 
@@ -100,11 +129,24 @@ public abstract class AbstractModelElement implements IModelElement {
 			current = current.getContainingPackage();
 		}
 
-		return result.toString();
+		String computed = result.toString().intern();
+		qualifiedName = computed;
+		return computed;
 	}
 
 	public Object getUserData(String key) {
-		return userData.get(key);
+		return userData == null ? null : userData.get(key);
+	}
+
+	/**
+	 * Return the keys of all user data stored on this element.
+	 * 
+	 * @return the keys, may be empty
+	 */
+	public Set<String> getUserDataKeys() {
+		if (userData == null)
+			return Collections.emptySet();
+		return userData.keySet();
 	}
 
 	public boolean isAssignableFrom(IModelElement other) {
@@ -127,6 +169,7 @@ public abstract class AbstractModelElement implements IModelElement {
 
 	public void setName(String name) {
 		this.name = name;
+		invalidateQualifiedName();
 	}
 
 	public void setOriginalName(String name) {
@@ -134,6 +177,8 @@ public abstract class AbstractModelElement implements IModelElement {
 	}
 
 	public void setParent(IModelElement parent) {
+		// Ancestors are found through the parents, so reset those that will no longer be found
+		invalidateTypeHierarchy();
 		this.parent = parent;
 	}
 
@@ -142,6 +187,39 @@ public abstract class AbstractModelElement implements IModelElement {
 	}
 
 	public void setUserData(String key, Object data) {
+		if (userData == null)
+			userData = new HashMap<String, Object>(4);
 		userData.put(key, data);
 	}
+
+	/*
+	 * Used by TypeHierarchyIndex once this element and its descendants are numbered.
+	 */
+	void setTypeHierarchy(TypeHierarchyIndex typeHierarchy) {
+		this.typeHierarchy = typeHierarchy;
+	}
+
+	/*
+	 * Stop answering descendant queries from an index, here and in the ancestors. An index
+	 * covers the whole subtree of an element it is set on, so the ancestors above the first one
+	 * without an index have none either.
+	 */
+	private void invalidateTypeHierarchy() {
+		IModelElement current = this;
+		while (current instanceof AbstractModelElement) {
+			AbstractModelElement element = (AbstractModelElement) current;
+			if (element.typeHierarchy == null)
+				return;
+			element.typeHierarchy = null;
+			current = element.parent;
+		}
+	}
+
+	/**
+	 * Discard the cached qualified name. Packages also discard the names of the elements they
+	 * contain.
+	 */
+	void invalidateQualifiedName() {
+		qualifiedName = null;
+	}
 }
@@ -113,6 +113,19 @@ public abstract class AbstractPackage extends AbstractModelElement implements IP
 		return count;
 	}
 
+	/**
+	 * Discard the cached qualified names of this package and of everything it contains, whose
+	 * names start with the name of this package.
+	 */
+	@Override
+	void invalidateQualifiedName() {
+		super.invalidateQualifiedName();
+		for (IModelElement e : contents) {
+			if (e instanceof AbstractModelElement && e != this)
+				((AbstractModelElement) e).invalidateQualifiedName();
+		}
+	}
+
 	public void removeElement(IModelElement element) {
 		contents.remove(element);
 		nameToModelElement.remove(element.getName());
@@ -18,13 +18,34 @@
 package net.sourceforge.nrl.parser.model;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Default model collection. Lookups by name and qualified name, and
+ * ambiguity checks, are answered from indexes built when a package is added,
+ * so packages must be complete before they are added to the collection.
+ * Changes made to a package after it was added are not seen by the indexes.
+ */
 public class ModelCollection implements IModelCollection {
 
 	// A list of IPackage objects
 	private List<IPackage> modelPackages = new ArrayList<IPackage>();
 
+	// Top-level packages by name, the first package wins
+	private Map<String, IPackage> nameToPackage = new HashMap<String, IPackage>();
+
+	// The result of a deep search by name, in package order
+	private Map<String, IModelElement> nameToElement = new HashMap<String, IModelElement>();
+
+	// Number of elements with a name across all packages
+	private Map<String, Integer> nameToCount = new HashMap<String, Integer>();
+
+	// Elements by qualified name, as reachable through getElementByQualifiedName
+	private Map<String, IModelElement> qualifiedNameToElement =
+			new HashMap<String, IModelElement>();
+
 	/**
 	 * Add a package to the collection
 	 * 
@@ -32,6 +53,20 @@ public class ModelCollection implements IModelCollection {
 	 */
 	public void addModelPackage(IPackage modelPackage) {
 		modelPackages.add(modelPackage);
+
+		// A package shadowed by an earlier one of the same name is not
+		// reachable by qualified name
+		String name = modelPackage.getName();
+		if (name != null && !nameToPackage.containsKey(name)) {
+			nameToPackage.put(name, modelPackage);
+			indexQualifiedNames(modelPackage, name);
+		}
+
+		indexNames(modelPackage);
+		for (IModelElement element : modelPackage.getContents(true)) {
+			Integer count = nameToCount.get(element.getName());
+			nameToCount.put(element.getName(), count == null ? 1 : count + 1);
+		}
 	}
 
 	/**
@@ -39,16 +74,14 @@ public class ModelCollection implements IModelCollection {
 	 */
 	public void clear() {
 		modelPackages.clear();
+		nameToPackage.clear();
+		nameToElement.clear();
+		nameToCount.clear();
+		qualifiedNameToElement.clear();
 	}
 
 	public IModelElement getElementByName(String name) {
-		for (IPackage pack : modelPackages) {
-			IModelElement result = pack.getElementByName(name, true);
-			if (result != null)
-				return result;
-		}
-
-		return null;
+		return nameToElement.get(name);
 	}
 
 	public IModelElement getElementByQualifiedName(String qualifiedName) {
@@ -57,28 +90,11 @@ public class ModelCollection implements IModelCollection {
 		if (qualifiedName.indexOf("::") == -1)
 			return getModelPackageByName(qualifiedName);
 
-		String[] steps = qualifiedName.split("::");
-		
-		IPackage currentPackage = getModelPackageByName(steps[0]);
-		if (currentPackage == null)
-			return null;
-		
-		for (int i = 1; i < steps.length - 1; i++) {
-			IModelElement next = currentPackage.getElementByName(steps[i], false);
-			if (next == null || !(next instanceof IPackage))
-				return null;
-			currentPackage = (IPackage) next;
-		}
-
-		return currentPackage.getElementByName(steps[steps.length - 1], false);
+		return qualifiedNameToElement.get(qualifiedName);
 	}
 
 	public IPackage getModelPackageByName(String name) {
-		for (IPackage pack : modelPackages) {
-			if (pack.getName() != null && pack.getName().equals(name))
-				return pack;
-		}
-		return null;
+		return nameToPackage.get(name);
 	}
 
 	public IPackage[] getModelPackages() {
@@ -86,20 +102,52 @@ public class ModelCollection implements IModelCollection {
 	}
 
 	public boolean isAmbiguous(String name) {
-		int found = 0;
-
-		for (IPackage pack : modelPackages) {
-			if (pack.isAmbiguous(name))
-				return true;
-			if (pack.getElementByName(name, true) != null)
-				found++;
-		}
-
-		return found > 1;
+		Integer count = nameToCount.get(name);
+		return count != null && count > 1;
 	}
 
 	public int size() {
 		return modelPackages.size();
 	}
 
+	/*
+	 * Record the element a deep search by name returns for every name in the
+	 * package that is not already indexed. Mirrors the order of
+	 * IPackage.getElementByName: direct contents first, then subpackages in
+	 * order.
+	 */
+	private void indexNames(IPackage pack) {
+		List<IModelElement> contents = pack.getContents(false);
+		for (IModelElement element : contents) {
+			String name = element.getName();
+			if (!nameToElement.containsKey(name)) {
+				IModelElement result = pack.getElementByName(name, false);
+				if (result != null)
+					nameToElement.put(name, result);
+			}
+		}
+
+		for (IModelElement element : contents) {
+			if (element instanceof IPackage)
+				indexNames((IPackage) element);
+		}
+	}
+
+	/*
+	 * Record every element reachable by stepping through the package by name
+	 * from a qualified package path.
+	 */
+	private void indexQualifiedNames(IPackage pack, String path) {
+		for (IModelElement element : pack.getContents(false)) {
+			String name = element.getName();
+			IModelElement result = pack.getElementByName(name, false);
+			if (result != element)
+				continue;
+
+			String qualifiedName = path + "::" + name;
+			qualifiedNameToElement.put(qualifiedName, element);
+			if (element instanceof IPackage)
+				indexQualifiedNames((IPackage) element, qualifiedName);
+		}
+	}
 }
@@ -36,7 +36,8 @@ import net.sourceforge.nrl.parser.ast.NRLDataType.Type;
  */
 public class PrimitiveTypeFactory {
 
-	private static PrimitiveTypeFactory instance;
+	// Created eagerly, so that concurrent parses share one set of types
+	private static final PrimitiveTypeFactory instance = new PrimitiveTypeFactory();
 
 	private IDataType tBoolean = new SimpleTypeImplementation(Type.Boolean, "Boolean");
 
@@ -87,8 +88,6 @@ public class PrimitiveTypeFactory {
 	}
 
 	public static PrimitiveTypeFactory getInstance() {
-		if (instance == null)
-			instance = new PrimitiveTypeFactory();
 		return instance;
 	}
 
@@ -0,0 +1,263 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the type hierarchy of a set of models that answers subtype questions in constant
+ * time. Every type in the models, and every supertype they reference, is numbered in a depth-first
+ * pre-order traversal of the hierarchy (following {@link IModelElement#getParent()}), and records
+ * the number one past its last descendant. A type is then assignable from another if the other's
+ * number falls into its interval, and its transitive descendants are a contiguous range.
+ * <p>
+ * The index is a snapshot: it must be created after the models have been loaded, and does not
+ * see later changes. Elements not in the index, or that are part of an inheritance cycle, fall
+ * back to the methods on {@link IModelElement}.
+ * <p>
+ * Where the parents of the indexed types agree with their lists of children, the index also
+ * answers {@link IModelElement#getDescendants(boolean) transitive descendant} queries on
+ * {@link AbstractModelElement}s, with a range scan, until a child is added to the type or one of
+ * its ancestors.
+ *
+ * @since 1.4.18
+ */
+public class TypeHierarchyIndex {
+
+	// Pre-order number of every indexed type
+	private final Map<IModelElement, Integer> elementToNumber =
+			new IdentityHashMap<IModelElement, Integer>();
+
+	// Types by pre-order number
+	private final List<IModelElement> preOrder = new ArrayList<IModelElement>();
+
+	// For every pre-order number, the number following the last descendant
+	private int[] subtreeEnd;
+
+	/**
+	 * Index the types in all packages of a model collection.
+	 *
+	 * @param models the models
+	 */
+	public TypeHierarchyIndex(IModelCollection models) {
+		this(Arrays.asList(models.getModelPackages()));
+	}
+
+	/**
+	 * Index the types in a list of packages and their subpackages.
+	 *
+	 * @param packages the packages
+	 */
+	public TypeHierarchyIndex(List<IPackage> packages) {
+		Map<IModelElement, List<IModelElement>> children =
+				new IdentityHashMap<IModelElement, List<IModelElement>>();
+		List<IModelElement> roots = new ArrayList<IModelElement>();
+
+		for (IPackage pkg : packages) {
+			for (IModelElement element : pkg.getContents(true)) {
+				if (!(element instanceof IPackage)) {
+					addWithAncestors(element, children, roots);
+				}
+			}
+		}
+
+		// Follow the order of the child lists where they agree with the parents, so that ranges
+		// list descendants as IModelElement.getDescendants(true) does
+		Map<IModelElement, Boolean> consistent = new IdentityHashMap<IModelElement, Boolean>();
+		for (Map.Entry<IModelElement, List<IModelElement>> entry : children.entrySet()) {
+			if (matchesChildList(entry.getKey(), entry.getValue()))
+				consistent.put(entry.getKey(), Boolean.TRUE);
+		}
+
+		subtreeEnd = new int[children.size()];
+		List<AbstractModelElement> complete = new ArrayList<AbstractModelElement>();
+		for (IModelElement root : roots) {
+			number(root, children, consistent, complete);
+		}
+
+		// Only once numbering is done, as elements may be queried by other threads
+		for (AbstractModelElement element : complete) {
+			element.setTypeHierarchy(this);
+		}
+	}
+
+	/**
+	 * Return true if an element of type <code>other</code> can be assigned to an element of
+	 * <code>type</code>, following the semantics of {@link IModelElement#isAssignableFrom}.
+	 *
+	 * @param type the target type
+	 * @param other the type to check, may be null
+	 * @return true if assignable
+	 */
+	public boolean isAssignableFrom(IModelElement type, IModelElement other) {
+		if (other == type || other == null)
+			return true;
+
+		Integer typeNumber = elementToNumber.get(type);
+		Integer otherNumber = elementToNumber.get(other);
+		if (typeNumber == null || otherNumber == null)
+			return type.isAssignableFrom(other);
+
+		return typeNumber < otherNumber && otherNumber < subtreeEnd[typeNumber];
+	}
+
+	/**
+	 * Return all direct and indirect subtypes of a type, in depth-first order.
+	 *
+	 * @param type the type
+	 * @return the subtypes, may be empty
+	 */
+	public List<IModelElement> getDescendants(IModelElement type) {
+		Integer number = elementToNumber.get(type);
+		if (number == null)
+			return type.getDescendants(true);
+
+		return Collections.unmodifiableList(preOrder.subList(number + 1, subtreeEnd[number]));
+	}
+
+	/*
+	 * Return the descendants of a type whose whole subtree agrees with the child lists.
+	 */
+	List<IModelElement> getIndexedDescendants(IModelElement type) {
+		int number = elementToNumber.get(type);
+		return preOrder.subList(number + 1, subtreeEnd[number]);
+	}
+
+	/**
+	 * Return true if a type is in the index.
+	 *
+	 * @param type the type
+	 * @return true if indexed
+	 */
+	public boolean isIndexed(IModelElement type) {
+		return elementToNumber.containsKey(type);
+	}
+
+	/**
+	 * Return the number of indexed types.
+	 *
+	 * @return the number of types
+	 */
+	public int size() {
+		return preOrder.size();
+	}
+
+	/*
+	 * Record an element, and its ancestors if not already recorded, in the child lists.
+	 */
+	private void addWithAncestors(IModelElement element,
+			Map<IModelElement, List<IModelElement>> children, List<IModelElement> roots) {
+		if (children.containsKey(element))
+			return;
+		children.put(element, new ArrayList<IModelElement>());
+
+		IModelElement run = element;
+		while (true) {
+			IModelElement parent = run.getParent();
+			if (parent == null) {
+				roots.add(run);
+				return;
+			}
+
+			boolean known = children.containsKey(parent);
+			if (!known)
+				children.put(parent, new ArrayList<IModelElement>());
+			children.get(parent).add(run);
+
+			if (known)
+				return;
+			run = parent;
+		}
+	}
+
+	/*
+	 * Return true if the children found through the parents of the types are exactly the child
+	 * list of an element, and if so, put them into the order of that list.
+	 */
+	private boolean matchesChildList(IModelElement element, List<IModelElement> found) {
+		List<IModelElement> own = element.getDescendants(false);
+		if (own == null || own.size() != found.size())
+			return false;
+
+		Map<IModelElement, Boolean> remaining = new IdentityHashMap<IModelElement, Boolean>();
+		for (IModelElement child : found) {
+			remaining.put(child, Boolean.TRUE);
+		}
+		for (IModelElement child : own) {
+			if (child == element || remaining.remove(child) == null)
+				return false;
+		}
+
+		found.clear();
+		found.addAll(own);
+		return true;
+	}
+
+	/*
+	 * Number a root and its descendants, iteratively so that deep hierarchies cannot overflow the
+	 * stack. Elements whose subtrees agree with the child lists throughout are added to the
+	 * complete list.
+	 */
+	private void number(IModelElement root, Map<IModelElement, List<IModelElement>> children,
+			Map<IModelElement, Boolean> consistent, List<AbstractModelElement> complete) {
+		List<IModelElement> stack = new ArrayList<IModelElement>();
+		List<Iterator<IModelElement>> iterators = new ArrayList<Iterator<IModelElement>>();
+		Map<IModelElement, Boolean> completed = new IdentityHashMap<IModelElement, Boolean>();
+
+		visit(root, children, stack, iterators);
+		while (!stack.isEmpty()) {
+			int top = stack.size() - 1;
+			Iterator<IModelElement> iter = iterators.get(top);
+			if (iter.hasNext()) {
+				visit(iter.next(), children, stack, iterators);
+			} else {
+				IModelElement element = stack.get(top);
+				subtreeEnd[elementToNumber.get(element)] = preOrder.size();
+				stack.remove(top);
+				iterators.remove(top);
+
+				if (consistent.containsKey(element)
+						&& isCompleted(children.get(element), completed)) {
+					completed.put(element, Boolean.TRUE);
+					if (element instanceof AbstractModelElement)
+						complete.add((AbstractModelElement) element);
+				}
+			}
+		}
+	}
+
+	private boolean isCompleted(List<IModelElement> elements,
+			Map<IModelElement, Boolean> completed) {
+		for (IModelElement element : elements) {
+			if (!completed.containsKey(element))
+				return false;
+		}
+		return true;
+	}
+
+	private void visit(IModelElement element, Map<IModelElement, List<IModelElement>> children,
+			List<IModelElement> stack, List<Iterator<IModelElement>> iterators) {
+		elementToNumber.put(element, preOrder.size());
+		preOrder.add(element);
+		stack.add(element);
+		iterators.add(children.get(element).iterator());
+	}
+}
@@ -1,8 +1,9 @@
 package net.sourceforge.nrl.parser.model;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Stack;
+import java.util.Map;
 
 import net.sourceforge.nrl.parser.ast.IVariable;
 
@@ -15,48 +16,90 @@ import net.sourceforge.nrl.parser.ast.IVariable;
  * <li>Additional frames required for block-type statements like "if". The
  * frames can be pushed and popped as necessary.
  * </ul>
+ * <p>
+ * Variables are held in a hash table from name to the innermost binding of
+ * that name, which links to the binding it shadows. Lookups therefore take
+ * constant time however deeply frames are nested, pushing a frame is constant
+ * time, and popping a frame takes time proportional to the variables bound in
+ * it.
  * 
  * @author Christian Nentwich
  */
 public class VariableContext {
 
-	private Stack<List<IVariable>> variableFrames = new Stack<List<IVariable>>();
+	// Visible binding of every name
+	private final Map<String, Binding> bindings = new HashMap<String, Binding>();
+
+	// Names bound in each frame, reused when frames are pushed again
+	private final List<List<String>> frames = new ArrayList<List<String>>();
+
+	// Index of the current frame
+	private int depth = -1;
 
 	public VariableContext() {
 		pushFrame();
 	}
 
+	/**
+	 * Bind a variable in the current frame. If the frame already binds a
+	 * variable of the same name, the first one remains visible.
+	 */
 	public void bindToCurrentFrame(IVariable var) {
-		variableFrames.peek().add(var);
+		Binding shadowed = bindings.get(var.getName());
+		if (shadowed != null && shadowed.depth == depth)
+			return;
+
+		bindings.put(var.getName(), new Binding(var, depth, shadowed));
+		frames.get(depth).add(var.getName());
 	}
 
 	public boolean isAlreadyDeclared(String varName) {
-		for (List<IVariable> frame : variableFrames) {
-			for (IVariable var : frame) {
-				if (var.getName().equals(varName))
-					return true;
-			}
-		}
-		return false;
+		return bindings.containsKey(varName);
 	}
 
 	public IVariable lookup(String name) {
-		for (int i = variableFrames.size() - 1; i >= 0; i--) {
-			List<IVariable> frame = variableFrames.get(i);
-			for (IVariable var : frame) {
-				if (var.getName().equals(name))
-					return var;
-			}
-		}
-		return null;
+		Binding binding = bindings.get(name);
+		return binding == null ? null : binding.variable;
 	}
 
 	public void pushFrame() {
-		variableFrames.push(new ArrayList<IVariable>());
+		depth++;
+		if (depth == frames.size())
+			frames.add(new ArrayList<String>());
 	}
 
 	public void popFrame() {
-		if (variableFrames.size() > 1)
-			variableFrames.pop();
+		if (depth == 0)
+			return;
+
+		List<String> names = frames.get(depth);
+		for (String name : names) {
+			Binding shadowed = bindings.get(name).shadowed;
+			if (shadowed == null)
+				bindings.remove(name);
+			else
+				bindings.put(name, shadowed);
+		}
+		names.clear();
+		depth--;
+	}
+
+	/*
+	 * A variable bound in a frame, and the binding of the same name in an
+	 * outer frame that it hides.
+	 */
+	private static class Binding {
+
+		private final IVariable variable;
+
+		private final int depth;
+
+		private final Binding shadowed;
+
+		Binding(IVariable variable, int depth, Binding shadowed) {
+			this.variable = variable;
+			this.depth = depth;
+			this.shadowed = shadowed;
+		}
 	}
 }
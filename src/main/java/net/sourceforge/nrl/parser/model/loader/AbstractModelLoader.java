@@ -119,9 +119,16 @@ public abstract class AbstractModelLoader implements IModelLoader {
 		}
 	}
 
-	private IPackage loadXSDModel(URI resolvedModelURI) throws ModelLoadingException {
+	/**
+	 * Load an XML Schema model from a resolved URI.
+	 * 
+	 * @param resolvedModelURI the absolute model URI
+	 * @return the model
+	 * @throws ModelLoadingException if loading fails
+	 */
+	protected IPackage loadXSDModel(URI resolvedModelURI) throws ModelLoadingException {
 		Resource res = createXSDResource(resolvedModelURI);
-		XSDModelLoader loader = new XSDModelLoader();
+		XSDModelLoader loader = createXSDModelLoader();
 		try {
 			return loader.load(res, (Map<?, ?>) null);
 		} catch (Exception e) {
@@ -130,6 +137,17 @@ public abstract class AbstractModelLoader implements IModelLoader {
 		}
 	}
 
+	/**
+	 * Create the loader used to convert an XML Schema resource into a model. A new loader is
+	 * created for every model.
+	 * 
+	 * @return the loader
+	 * @since 1.4.18
+	 */
+	protected XSDModelLoader createXSDModelLoader() {
+		return new XSDModelLoader();
+	}
+
 	protected abstract void validateBaseURI(URI baseURI) throws ModelLoadingException;
 
 	protected abstract void validateModelURI(URI modelURI) throws ModelLoadingException;
@@ -2,13 +2,22 @@ package net.sourceforge.nrl.parser.model.loader;
 
 import static java.lang.String.format;
 
+import java.io.File;
 import java.net.URI;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import net.sourceforge.nrl.parser.model.IPackage;
+import net.sourceforge.nrl.parser.model.xsd.XSDFragmentCache;
+import net.sourceforge.nrl.parser.model.xsd.XSDModelLoader;
+import net.sourceforge.nrl.parser.model.xsd.XSDPackage;
 
 import org.eclipse.emf.ecore.EcorePackage;
 import org.eclipse.emf.ecore.EPackage.Registry;
@@ -34,9 +43,16 @@ public class StandaloneModelLoader extends AbstractModelLoader {
 
 	private final ClassLoader classLoader;
 
-	private Map<URI, IPackage> cachedModels = new HashMap<URI, IPackage>();
+	// Completed and in-flight model loads, by resolved URI
+	private final ConcurrentMap<URI, FutureTask<IPackage>> cachedModels =
+			new ConcurrentHashMap<URI, FutureTask<IPackage>>();
 	
 	private Map<org.eclipse.emf.common.util.URI, org.eclipse.emf.common.util.URI>  customURIMap;
+
+	private volatile XSDModelCache modelCache;
+
+	// Converted schemas shared between the models loaded by this loader
+	private final XSDFragmentCache fragmentCache = new XSDFragmentCache();
 	
 	public StandaloneModelLoader() {
 		this(StandaloneModelLoader.class.getClassLoader());
@@ -50,18 +66,120 @@ public class StandaloneModelLoader extends AbstractModelLoader {
 	protected Map<org.eclipse.emf.common.util.URI, org.eclipse.emf.common.util.URI> getCustomURIMap() {
 		return this.customURIMap;
 	}
+
+	/**
+	 * Return the on-disk XML Schema model cache, or null if none is used.
+	 * 
+	 * @return the cache or null
+	 * @since 1.4.18
+	 */
+	public XSDModelCache getModelCache() {
+		return modelCache;
+	}
+
+	/**
+	 * Return the cache of converted schemas shared by all XML Schema models loaded through this
+	 * loader. Schemas imported by several models are only converted once.
+	 * 
+	 * @return the cache
+	 * @since 1.4.18
+	 */
+	public XSDFragmentCache getFragmentCache() {
+		return fragmentCache;
+	}
+
+	/**
+	 * Store loaded XML Schema models in a directory, and load them from there on subsequent
+	 * loads as long as none of the schema files has changed. Pass null to disable the cache,
+	 * which is the default.
+	 * 
+	 * @param directory the cache directory or null
+	 * @since 1.4.18
+	 */
+	public void setModelCacheDirectory(File directory) {
+		if (directory == null) {
+			this.modelCache = null;
+		} else {
+			this.modelCache = new XSDModelCache(directory, classLoader, customURIMap);
+		}
+	}
 	
+	/**
+	 * Load a model, or return the previously loaded model for the same URI. Distinct models are
+	 * loaded concurrently if called from multiple threads, while concurrent requests for the same
+	 * URI wait for a single load to complete. A failed load is not cached, so a later request
+	 * will retry it.
+	 */
 	@Override
-	public synchronized IPackage loadModel(URI uri) throws ModelLoadingException {
-		if (cachedModels.containsKey(uri)) {
-			return cachedModels.get(uri);
+	public IPackage loadModel(final URI uri) throws ModelLoadingException {
+		FutureTask<IPackage> load = cachedModels.get(uri);
+		if (load == null) {
+			FutureTask<IPackage> newLoad = new FutureTask<IPackage>(new Callable<IPackage>() {
+				public IPackage call() throws ModelLoadingException {
+					return StandaloneModelLoader.super.loadModel(uri);
+				}
+			});
+
+			load = cachedModels.putIfAbsent(uri, newLoad);
+			if (load == null) {
+				load = newLoad;
+				load.run();
+			}
 		}
 
-		IPackage model = super.loadModel(uri);
-		cachedModels.put(uri, model);
+		try {
+			return load.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ModelLoadingException(format("Interrupted while loading %s.", uri
+					.toString()), e);
+		} catch (ExecutionException e) {
+			cachedModels.remove(uri, load);
+
+			Throwable cause = e.getCause();
+			if (cause instanceof ModelLoadingException) {
+				throw (ModelLoadingException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new ModelLoadingException(format("Failed to load %s.", uri.toString()), cause);
+		}
+	}
+
+	@Override
+	protected IPackage loadXSDModel(URI resolvedModelURI) throws ModelLoadingException {
+		XSDModelCache modelCache = this.modelCache;
+		if (modelCache == null) {
+			return super.loadXSDModel(resolvedModelURI);
+		}
+
+		// The URI map may have changed since the cache was created
+		if (!modelCache.getURIMap().equals(customURIMap)) {
+			modelCache = new XSDModelCache(modelCache.getDirectory(), classLoader, customURIMap);
+			this.modelCache = modelCache;
+		}
+
+		IPackage model = modelCache.read(resolvedModelURI);
+		if (model == null) {
+			model = super.loadXSDModel(resolvedModelURI);
+			if (model instanceof XSDPackage) {
+				modelCache.write(resolvedModelURI, (XSDPackage) model);
+			}
+		}
 		return model;
 	}
 
+	@Override
+	protected XSDModelLoader createXSDModelLoader() {
+		XSDModelLoader loader = super.createXSDModelLoader();
+		loader.setFragmentCache(fragmentCache);
+		return loader;
+	}
+
 	@Override
 	protected Resource createUMLResource(URI resolvedModelURI) {
 		org.eclipse.emf.common.util.URI emfURI = createEMFURI(resolvedModelURI);
@@ -113,6 +231,7 @@ public class StandaloneModelLoader extends AbstractModelLoader {
 
 		ResourceSetImpl resourceSet = new ResourceSetImpl();
 		resourceSet.getURIConverter().getURIHandlers().add(0, new ClasspathURIHandler(classLoader));
+		resourceSet.getURIConverter().getURIMap().putAll(this.customURIMap);
 
 		resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put(
 				Resource.Factory.Registry.DEFAULT_EXTENSION, new XSDResourceFactoryImpl());
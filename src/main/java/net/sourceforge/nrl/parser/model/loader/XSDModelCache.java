@@ -0,0 +1,315 @@
+package net.sourceforge.nrl.parser.model.loader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import net.sourceforge.nrl.parser.model.IModelElement;
+import net.sourceforge.nrl.parser.model.IPackage;
+import net.sourceforge.nrl.parser.model.xsd.IXSDUserData;
+import net.sourceforge.nrl.parser.model.xsd.XSDModelSerializer;
+import net.sourceforge.nrl.parser.model.xsd.XSDPackage;
+
+import org.eclipse.emf.ecore.resource.URIConverter;
+import org.eclipse.emf.ecore.resource.impl.ExtensibleURIConverterImpl;
+
+/**
+ * An on-disk cache of loaded XML Schema models. Each cache entry holds a model in the format
+ * written by {@link XSDModelSerializer}, together with the location and a digest of every schema
+ * file that contributed to the model (the main schema and all its includes and imports).
+ * <p>
+ * An entry is only used if all schema files still have the recorded digest, otherwise it is
+ * treated as absent. Schema locations are resolved through the URI map of the model loader, and
+ * entries written under one URI map are not used under another. The cache is a best-effort
+ * mechanism: failures to read or write an entry never cause a model load to fail.
+ *
+ * @since 1.4.18
+ */
+public class XSDModelCache {
+
+	private final static String DIGEST_ALGORITHM = "SHA-1";
+
+	private final static String FILE_EXTENSION = ".model";
+
+	private final File directory;
+
+	private final URIConverter uriConverter;
+
+	private final Map<org.eclipse.emf.common.util.URI, org.eclipse.emf.common.util.URI> uriMap;
+
+	// Part of the key of every entry, identifying the URI map
+	private final String uriMapKey;
+
+	/**
+	 * Create a new cache without a URI map.
+	 *
+	 * @param directory the directory to store cache entries in, will be created if it does not
+	 * exist
+	 * @param classLoader the class loader used to resolve <code>classpath</code> schema locations
+	 */
+	public XSDModelCache(File directory, ClassLoader classLoader) {
+		this(directory, classLoader, null);
+	}
+
+	/**
+	 * Create a new cache that resolves schema locations through a URI map, as the model loader
+	 * does. The map is copied.
+	 *
+	 * @param directory the directory to store cache entries in, will be created if it does not
+	 * exist
+	 * @param classLoader the class loader used to resolve <code>classpath</code> schema locations
+	 * @param uriMap the URI map of the model loader, may be null
+	 */
+	public XSDModelCache(File directory, ClassLoader classLoader,
+			Map<org.eclipse.emf.common.util.URI, org.eclipse.emf.common.util.URI> uriMap) {
+		if (directory == null) {
+			throw new IllegalArgumentException("directory must be non-null");
+		}
+		this.directory = directory;
+		this.uriMap = uriMap == null ? Collections
+				.<org.eclipse.emf.common.util.URI, org.eclipse.emf.common.util.URI> emptyMap()
+				: Collections.unmodifiableMap(new HashMap<org.eclipse.emf.common.util.URI,
+						org.eclipse.emf.common.util.URI>(uriMap));
+		this.uriMapKey = createURIMapKey(this.uriMap);
+		this.uriConverter = new ExtensibleURIConverterImpl();
+		this.uriConverter.getURIHandlers().add(0, new ClasspathURIHandler(classLoader));
+		this.uriConverter.getURIMap().putAll(this.uriMap);
+	}
+
+	/**
+	 * Return the directory the cache entries are stored in.
+	 *
+	 * @return the directory
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Return the URI map schema locations are resolved through.
+	 *
+	 * @return the unmodifiable map, empty if there is none
+	 */
+	public Map<org.eclipse.emf.common.util.URI, org.eclipse.emf.common.util.URI> getURIMap() {
+		return uriMap;
+	}
+
+	/**
+	 * Return a cached model, if there is a cache entry for the model URI and none of the schema
+	 * files it was built from have changed.
+	 *
+	 * @param modelURI the resolved model URI
+	 * @return the model or null if no valid entry exists
+	 */
+	public IPackage read(URI modelURI) {
+		File file = getCacheFile(modelURI);
+		if (!file.isFile()) {
+			return null;
+		}
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+			if (!getKey(modelURI).equals(in.readUTF())) {
+				return null;
+			}
+
+			int schemaCount = in.readInt();
+			for (int i = 0; i < schemaCount; i++) {
+				String location = in.readUTF();
+				byte[] digest = new byte[in.readInt()];
+				in.readFully(digest);
+
+				if (!Arrays.equals(digest, computeDigest(location))) {
+					return null;
+				}
+			}
+
+			return new XSDModelSerializer().read(in);
+		} catch (IOException e) {
+			// Corrupt or unreadable entry, or a schema file has gone
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * Store a model in the cache. The entry is written to a temporary file first and then moved
+	 * into place, so that concurrent readers never see a partial entry.
+	 *
+	 * @param modelURI the resolved model URI
+	 * @param model the model loaded from the URI
+	 * @return true if the entry was written, false if the model could not be cached
+	 */
+	public boolean write(URI modelURI, XSDPackage model) {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			return false;
+		}
+
+		File file = getCacheFile(modelURI);
+		File tempFile = null;
+		DataOutputStream out = null;
+		try {
+			tempFile = File.createTempFile("nrl", FILE_EXTENSION, directory);
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+			out.writeUTF(getKey(modelURI));
+
+			Set<String> locations = getSchemaLocations(model);
+			out.writeInt(locations.size());
+			for (String location : locations) {
+				byte[] digest = computeDigest(location);
+				out.writeUTF(location);
+				out.writeInt(digest.length);
+				out.write(digest);
+			}
+
+			new XSDModelSerializer().write(model, out);
+			out.close();
+			out = null;
+
+			if (file.exists() && !file.delete()) {
+				return false;
+			}
+			return tempFile.renameTo(file);
+		} catch (IOException e) {
+			return false;
+		} finally {
+			close(out);
+			if (tempFile != null && tempFile.exists()) {
+				tempFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Return the file storing the cache entry for a model URI.
+	 *
+	 * @param modelURI the model URI
+	 * @return the file, which may not exist
+	 */
+	protected File getCacheFile(URI modelURI) {
+		return new File(directory, toHex(digest(getKey(modelURI))) + FILE_EXTENSION);
+	}
+
+	private String getKey(URI modelURI) {
+		return modelURI.toString() + uriMapKey;
+	}
+
+	/*
+	 * The map entries in a stable order, so equal maps give equal keys.
+	 */
+	private static String createURIMapKey(
+			Map<org.eclipse.emf.common.util.URI, org.eclipse.emf.common.util.URI> uriMap) {
+		Map<String, String> sorted = new TreeMap<String, String>();
+		for (org.eclipse.emf.common.util.URI key : uriMap.keySet()) {
+			sorted.put(key.toString(), String.valueOf(uriMap.get(key)));
+		}
+
+		StringBuilder result = new StringBuilder();
+		for (Map.Entry<String, String> entry : sorted.entrySet()) {
+			result.append('\n').append(entry.getKey()).append('=').append(entry.getValue());
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Return the locations of all schema files that make up a model. These are recorded on the
+	 * packages created by the XSD model loader.
+	 *
+	 * @param model the model
+	 * @return the locations, in model order
+	 */
+	protected Set<String> getSchemaLocations(XSDPackage model) throws IOException {
+		Set<String> result = new LinkedHashSet<String>();
+		addSchemaLocation(model, result);
+		for (IModelElement element : model.getContents(true)) {
+			addSchemaLocation(element, result);
+		}
+
+		if (result.isEmpty()) {
+			throw new IOException("Model does not record any schema locations");
+		}
+		return result;
+	}
+
+	private void addSchemaLocation(IModelElement element, Set<String> result) {
+		if (element instanceof IPackage) {
+			Object location = element.getUserData(IXSDUserData.MODEL_FILE_LOCATION);
+			if (location instanceof String) {
+				result.add((String) location);
+			}
+		}
+	}
+
+	private byte[] computeDigest(String location) throws IOException {
+		InputStream in = uriConverter.createInputStream(org.eclipse.emf.common.util.URI
+				.createURI(location));
+		try {
+			MessageDigest digest = createDigest();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+			return digest.digest();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static byte[] digest(String str) {
+		try {
+			return createDigest().digest(str.getBytes("UTF-8"));
+		} catch (IOException e) {
+			throw new RuntimeException("Internal error. UTF-8 not supported.", e);
+		}
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("Internal error. " + DIGEST_ALGORITHM
+					+ " digests not supported.", e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder result = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			result.append(Character.forDigit((b >> 4) & 0xf, 16));
+			result.append(Character.forDigit(b & 0xf, 16));
+		}
+		return result.toString();
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// Ignore
+			}
+		}
+	}
+}
@@ -125,7 +125,7 @@ public class UML2Classifier extends AbstractClassifier {
 						+ " with unresolvable type from " + getName() + " (UML type "
 						+ attr.getUMLType().getName() + ")");
 				iter.remove();
-				nameToAttribute.remove(attr.getName());
+				removeAttributeNameMapping(attr.getName());
 			}
 		}
 	}
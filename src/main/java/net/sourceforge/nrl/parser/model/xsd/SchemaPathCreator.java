@@ -24,7 +24,7 @@ class SchemaPathCreator {
 	public static String getPath(XSDAttribute attr) {
 		Element element = attr.getSchemaElement();
 		if (element == null) {
-			return null;
+			return attr.getSchemaPath();
 		}
 
 		StringBuilder result = new StringBuilder();
@@ -52,6 +52,9 @@ public class XSDAttribute extends AbstractAttribute {
 	// came from
 	private Element schemaElement;
 
+	// A precomputed path to the declaration in the schema, used if there is no schema element
+	private String schemaPath;
+
 	public XSDAttribute(String name) {
 		super(XSDHelper.getCleanedName(name));
 		setUserData(IXSDUserData.ATTRIBUTE_KIND, IXSDUserData.XSD_ELEMENT_KIND);
@@ -177,6 +180,14 @@ public class XSDAttribute extends AbstractAttribute {
 	protected void setSchemaElement(Element schemaElement) {
 		this.schemaElement = schemaElement;
 	}
+
+	protected String getSchemaPath() {
+		return schemaPath;
+	}
+
+	protected void setSchemaPath(String schemaPath) {
+		this.schemaPath = schemaPath;
+	}
 	
 	public String getTypeName() {
 		return typeName;
@@ -0,0 +1,399 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.model.xsd;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sourceforge.nrl.parser.model.AbstractClassifier;
+import net.sourceforge.nrl.parser.model.AbstractModelElement;
+import net.sourceforge.nrl.parser.model.IAttribute;
+import net.sourceforge.nrl.parser.model.IModelElement;
+
+/**
+ * A thread-safe cache of converted schema fragments, keyed by resolved schema location. A
+ * fragment is the content of the package the {@link XSDModelLoader} creates for one schema in a
+ * resource set, captured after the types and global elements of the schema were converted but
+ * before references between schemas were resolved.
+ * <p>
+ * When a schema is imported or included by several models, for example a common types schema,
+ * the loader copies the cached fragment instead of walking the schema again. A fragment is only
+ * reused if the inputs its conversion depended on are the same: for every namespace it declares
+ * types in, the types already converted before it and the set of type names declared across the
+ * resource set (which drive the naming of anonymous types) must match those recorded when the
+ * fragment was stored.
+ * <p>
+ * Cached fragments never reference the EMF schema objects they were built from, and are never
+ * modified after they were stored, so one cache can be shared between loaders on different
+ * threads. Entries are not invalidated when schema files change; create a new cache to pick up
+ * modified schemas.
+ *
+ * @since 1.4.18
+ */
+public class XSDFragmentCache {
+
+	// Stand-in for the Object supertype of the load a fragment was stored from
+	private final static XSDClassifier OBJECT_PLACEHOLDER = new XSDClassifier("Object", null);
+
+	private final ConcurrentMap<String, Fragment> fragments =
+			new ConcurrentHashMap<String, Fragment>();
+
+	private final AtomicInteger hits = new AtomicInteger();
+
+	private final AtomicInteger misses = new AtomicInteger();
+
+	/**
+	 * Remove all fragments.
+	 */
+	public void clear() {
+		fragments.clear();
+	}
+
+	/**
+	 * Return the number of times a fragment was reused.
+	 *
+	 * @return the number of hits
+	 */
+	public int getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Return the number of times a schema had to be converted, because no matching fragment was
+	 * present.
+	 *
+	 * @return the number of misses
+	 */
+	public int getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Return the number of cached fragments.
+	 *
+	 * @return the number of fragments
+	 */
+	public int size() {
+		return fragments.size();
+	}
+
+	/**
+	 * Try to fill a schema package from a cached fragment.
+	 *
+	 * @param schemaLocation the resolved schema location
+	 * @param loader the loader performing the current load
+	 * @param target the empty package for the schema, with its namespace already set
+	 * @return true if a matching fragment was copied into the package
+	 */
+	boolean restore(String schemaLocation, XSDModelLoader loader, XSDPackage target) {
+		Fragment fragment = fragments.get(getKey(schemaLocation, target));
+		if (fragment == null || !fragment.matches(loader)) {
+			misses.incrementAndGet();
+			return false;
+		}
+
+		Map<Object, Object> copies = copyContents(fragment.template, target, OBJECT_PLACEHOLDER,
+				loader.getObjectType());
+		for (Map.Entry<String, IModelElement> entry : fragment.registrations.entrySet()) {
+			loader.registerElement(entry.getKey(), (IModelElement) copies.get(entry.getValue()));
+		}
+		loader.addWarnings(fragment.warnings);
+
+		hits.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Store the result of converting a schema, if it qualifies for reuse.
+	 *
+	 * @param schemaLocation the resolved schema location
+	 * @param loader the loader performing the current load
+	 * @param source the package the schema was converted into
+	 * @param registrations the qualified names registered during the conversion
+	 * @param warnings the warnings produced during the conversion
+	 */
+	void store(String schemaLocation, XSDModelLoader loader, XSDPackage source,
+			List<String> registrations, List<String> warnings) {
+		Set<String> namespaces = new HashSet<String>();
+		namespaces.add(getNamespace(source));
+		for (String qualifiedName : registrations) {
+			if (loader.getRegisteredElement(qualifiedName).getContainingPackage() != source) {
+				return;
+			}
+			namespaces.add(getNamespace(qualifiedName));
+		}
+
+		Map<String, Set<String>> registeredBefore = new HashMap<String, Set<String>>();
+		Map<String, Set<String>> typeNames = new HashMap<String, Set<String>>();
+		for (String namespace : namespaces) {
+			Set<String> before = new HashSet<String>(loader.getRegisteredNames(namespace));
+			before.removeAll(registrations);
+			registeredBefore.put(namespace, before);
+			typeNames.put(namespace, copy(loader.getTypeNames(namespace)));
+		}
+
+		XSDPackage template = new XSDPackage(source.getName(), null);
+		Map<Object, Object> copies = copyContents(source, template, loader.getObjectType(),
+				OBJECT_PLACEHOLDER);
+		if (copies == null) {
+			return;
+		}
+
+		Map<String, IModelElement> templateRegistrations = new LinkedHashMap<String, IModelElement>();
+		for (String qualifiedName : registrations) {
+			templateRegistrations.put(qualifiedName, (IModelElement) copies.get(loader
+					.getRegisteredElement(qualifiedName)));
+		}
+
+		fragments.put(getKey(schemaLocation, source), new Fragment(template, registeredBefore,
+				typeNames, templateRegistrations, new ArrayList<String>(warnings)));
+	}
+
+	/**
+	 * Return the namespace part of a qualified name produced by
+	 * {@link XSDHelper#getQualifiedName(String, String)}, or "" if there is none.
+	 *
+	 * @param qualifiedName the qualified name
+	 * @return the namespace
+	 */
+	static String getNamespace(String qualifiedName) {
+		int colon = qualifiedName.lastIndexOf(':');
+		if (colon == -1) {
+			return "";
+		}
+		return qualifiedName.substring(0, colon);
+	}
+
+	private static String getNamespace(XSDPackage pkg) {
+		Object namespace = pkg.getUserData(IXSDUserData.NAMESPACE);
+		return namespace == null ? "" : namespace.toString();
+	}
+
+	private static String getKey(String schemaLocation, XSDPackage pkg) {
+		return schemaLocation + "\n" + getNamespace(pkg);
+	}
+
+	private static Set<String> copy(Set<String> names) {
+		return names == null ? null : new HashSet<String>(names);
+	}
+
+	/**
+	 * Copy the classifiers and data types in a package, with their attributes, to another package.
+	 * References to elements and attributes inside the package are mapped to the copies, and
+	 * references to the object type of the source are mapped to that of the target.
+	 *
+	 * @return map from originals to copies, or null if the package contains anything else or
+	 * references elements outside itself
+	 */
+	private static Map<Object, Object> copyContents(XSDPackage source, XSDPackage target,
+			IModelElement sourceObject, IModelElement targetObject) {
+		Map<Object, Object> copies = new IdentityHashMap<Object, Object>();
+		copies.put(sourceObject, targetObject);
+		copies.put(IModelElement.OBJECT, IModelElement.OBJECT);
+
+		List<IModelElement> contents = source.getContents(false);
+		List<AbstractModelElement> copiedElements = new ArrayList<AbstractModelElement>();
+
+		// Create elements and attributes
+		for (IModelElement element : contents) {
+			AbstractClassifier copy;
+			if (element instanceof XSDClassifier) {
+				XSDClassifier classifier = new XSDClassifier(element.getName(), target);
+				classifier.setParentName(((XSDClassifier) element).getParentName());
+				copy = classifier;
+			} else if (element instanceof XSDDataType) {
+				XSDDataType dataType = new XSDDataType(element.getName(), target);
+				dataType.setParentName(((XSDDataType) element).getParentName());
+				dataType.setAttributesStripped(((XSDDataType) element).hasStrippedAttributes());
+				copy = dataType;
+			} else {
+				return null;
+			}
+
+			AbstractClassifier original = (AbstractClassifier) element;
+			if (!original.getOriginalName().equals(original.getName())) {
+				copy.setOriginalName(original.getOriginalName());
+			}
+			copy.setEnumeration(original.isEnumeration());
+			copy.setSupplementary(original.isSupplementary());
+
+			for (IAttribute attr : original.getAttributes(false)) {
+				if (!(attr instanceof XSDAttribute)) {
+					return null;
+				}
+				XSDAttribute xsdAttr = (XSDAttribute) attr;
+
+				XSDAttribute attrCopy = new XSDAttribute(xsdAttr.getName());
+				attrCopy.setName(xsdAttr.getName());
+				attrCopy.setOriginalName(xsdAttr.getOriginalName());
+				attrCopy.setTypeName(xsdAttr.getTypeName());
+				attrCopy.setMinOccurs(xsdAttr.getMinOccurs());
+				attrCopy.setMaxOccurs(xsdAttr.getMaxOccurs());
+				attrCopy.setStatic(xsdAttr.isStatic());
+				for (String doc : xsdAttr.getDocumentation()) {
+					attrCopy.addDocumentation(doc);
+				}
+				attrCopy.setSchemaPath(SchemaPathCreator.getPath(xsdAttr));
+
+				copy.addAttribute(attrCopy);
+				attrCopy.setOwner(copy);
+				copies.put(attr, attrCopy);
+			}
+
+			copies.put(element, copy);
+			copiedElements.add(copy);
+		}
+
+		// Map references
+		for (int i = 0; i < contents.size(); i++) {
+			AbstractClassifier original = (AbstractClassifier) contents.get(i);
+			AbstractModelElement copy = copiedElements.get(i);
+
+			if (original.getParent() != null) {
+				Object parent = copies.get(original.getParent());
+				if (parent == null) {
+					return null;
+				}
+				copy.setParent((IModelElement) parent);
+			} else {
+				copy.setParent(null);
+			}
+
+			for (IModelElement child : original.getDescendants(false)) {
+				Object childCopy = copies.get(child);
+				if (childCopy == null) {
+					return null;
+				}
+				copy.addChild((IModelElement) childCopy);
+			}
+
+			if (!copyUserData(original, copy, copies)) {
+				return null;
+			}
+
+			List<IAttribute> attributes = original.getAttributes(false);
+			for (IAttribute attr : attributes) {
+				XSDAttribute attrCopy = (XSDAttribute) copies.get(attr);
+
+				if (attr.getType() != null) {
+					Object type = copies.get(attr.getType());
+					if (type == null) {
+						return null;
+					}
+					attrCopy.setType((IModelElement) type);
+				}
+
+				if (!copyUserData((XSDAttribute) attr, attrCopy, copies)) {
+					return null;
+				}
+			}
+		}
+
+		for (AbstractModelElement copy : copiedElements) {
+			target.addElement(copy);
+		}
+
+		return copies;
+	}
+
+	private static boolean copyUserData(AbstractModelElement original, AbstractModelElement copy,
+			Map<Object, Object> copies) {
+		for (String key : original.getUserDataKeys()) {
+			Object value = copyValue(original.getUserData(key), copies);
+			if (value == null && original.getUserData(key) != null) {
+				return false;
+			}
+			copy.setUserData(key, value);
+		}
+		return true;
+	}
+
+	private static boolean copyUserData(XSDAttribute original, XSDAttribute copy,
+			Map<Object, Object> copies) {
+		for (String key : original.getUserDataKeys()) {
+			Object value = copyValue(original.getUserData(key), copies);
+			if (value == null && original.getUserData(key) != null) {
+				return false;
+			}
+			copy.setUserData(key, value);
+		}
+		return true;
+	}
+
+	/*
+	 * Return the value to store in a copy: immutable values are shared, references are mapped.
+	 * Returns null if the value cannot be copied.
+	 */
+	private static Object copyValue(Object value, Map<Object, Object> copies) {
+		if (value == null || value instanceof String || value instanceof Boolean
+				|| value instanceof Integer) {
+			return value;
+		}
+		if (value instanceof IModelElement || value instanceof IAttribute) {
+			return copies.get(value);
+		}
+		return null;
+	}
+
+	/*
+	 * A cached fragment, never modified after construction.
+	 */
+	private static class Fragment {
+
+		private final XSDPackage template;
+
+		private final Map<String, Set<String>> registeredNames;
+
+		private final Map<String, Set<String>> typeNames;
+
+		private final Map<String, IModelElement> registrations;
+
+		private final List<String> warnings;
+
+		Fragment(XSDPackage template, Map<String, Set<String>> registeredNames,
+				Map<String, Set<String>> typeNames, Map<String, IModelElement> registrations,
+				List<String> warnings) {
+			this.template = template;
+			this.registeredNames = registeredNames;
+			this.typeNames = typeNames;
+			this.registrations = registrations;
+			this.warnings = warnings;
+		}
+
+		boolean matches(XSDModelLoader loader) {
+			for (Map.Entry<String, Set<String>> entry : registeredNames.entrySet()) {
+				if (!loader.getRegisteredNames(entry.getKey()).equals(entry.getValue())) {
+					return false;
+				}
+
+				Set<String> expected = typeNames.get(entry.getKey());
+				Set<String> current = loader.getTypeNames(entry.getKey());
+				if (current == null ? expected != null : !current.equals(expected)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
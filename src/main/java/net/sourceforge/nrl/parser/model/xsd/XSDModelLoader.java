@@ -20,6 +20,7 @@ import static net.sourceforge.nrl.parser.model.xsd.XSDAmbiguousAttributeResolver
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -83,11 +84,31 @@ public class XSDModelLoader implements IXSDUserData {
 	 */
 	private Map<String, Set<String>> namespaceToTypeNames = new HashMap<String, Set<String>>();
 
+	/**
+	 * The keys of {@link #nameToElement}, grouped by namespace. "" is mapped for "no namespace".
+	 */
+	private Map<String, Set<String>> namespaceToRegisteredNames = new HashMap<String, Set<String>>();
+
+	/**
+	 * If not null, records the qualified names registered while converting a single schema.
+	 */
+	private List<String> registrationLog = null;
+
+	/**
+	 * Set if a name logged in {@link #registrationLog} had already been registered.
+	 */
+	private boolean registrationCollision = false;
+
 	/**
 	 * The Object supertype.
 	 */
 	private XSDClassifier _object;
 
+	/**
+	 * Optional cache of converted schema fragments, shared between loaders.
+	 */
+	private XSDFragmentCache fragmentCache = null;
+
 	/**
 	 * Traverse the entire particle and check whether all descendant elements have a unique type.
 	 * 
@@ -508,8 +529,7 @@ public class XSDModelLoader implements IXSDUserData {
 		result.setUserData(XSD_GLOBAL_ELEMENT, declaredAsGlobalElement);
 		result.setUserData(NAMESPACE, complexDef.getTargetNamespace());
 
-		nameToElement
-				.put(XSDHelper.getQualifiedName(complexDef.getTargetNamespace(), name), result);
+		registerElement(XSDHelper.getQualifiedName(complexDef.getTargetNamespace(), name), result);
 
 		// Add the attribute definitions
 		for (Iterator<?> attrIter = complexDef.getAttributeContents().iterator(); attrIter
@@ -710,7 +730,7 @@ public class XSDModelLoader implements IXSDUserData {
 			}
 		}
 
-		nameToElement.put(XSDHelper.getQualifiedName(def.getTargetNamespace(), name), result);
+		registerElement(XSDHelper.getQualifiedName(def.getTargetNamespace(), name), result);
 
 		return result;
 	}
@@ -759,7 +779,7 @@ public class XSDModelLoader implements IXSDUserData {
 			result.setParentName(XSDHelper.getQualifiedName(def.getBaseType().getTargetNamespace(),
 					XSDHelper.getCleanedName(def.getBaseType().getName())));
 
-		nameToElement.put(XSDHelper.getQualifiedName(def.getTargetNamespace(), name), result);
+		registerElement(XSDHelper.getQualifiedName(def.getTargetNamespace(), name), result);
 
 		return result;
 	}
@@ -898,7 +918,7 @@ public class XSDModelLoader implements IXSDUserData {
 			attribute.setOwner(result);
 		}
 
-		nameToElement.put(XSDHelper.getQualifiedName(def.getTargetNamespace(), name), result);
+		registerElement(XSDHelper.getQualifiedName(def.getTargetNamespace(), name), result);
 
 		return result;
 	}
@@ -1018,7 +1038,7 @@ public class XSDModelLoader implements IXSDUserData {
 				result.setUserData(XSD_GLOBAL_ELEMENT, true);
 
 				resultPackage.addElement(result);
-				nameToElement.put(XSDHelper.getQualifiedName(decl.getTargetNamespace(), name),
+				registerElement(XSDHelper.getQualifiedName(decl.getTargetNamespace(), name),
 						result);
 			}
 		}
@@ -1186,6 +1206,7 @@ public class XSDModelLoader implements IXSDUserData {
 		warnings.clear();
 		nameToElement.clear();
 		namespaceToTypeNames.clear();
+		namespaceToRegisteredNames.clear();
 
 		try {
 			res.load(options);
@@ -1214,7 +1235,7 @@ public class XSDModelLoader implements IXSDUserData {
 
 			element.setUserData(IXSDUserData.NAMESPACE, XSDBuiltInSimpleTypes.NAMESPACE);
 
-			nameToElement.put(XSDHelper.getQualifiedName(XSDBuiltInSimpleTypes.NAMESPACE, element
+			registerElement(XSDHelper.getQualifiedName(XSDBuiltInSimpleTypes.NAMESPACE, element
 					.getName()), element);
 		}
 
@@ -1223,7 +1244,7 @@ public class XSDModelLoader implements IXSDUserData {
 		// Store the Object super type
 		_object = new XSDClassifier("Object", xsdTypes);
 		xsdTypes.addElement(_object);
-		nameToElement.put(XSDHelper.getQualifiedName(XSDBuiltInSimpleTypes.NAMESPACE, _object
+		registerElement(XSDHelper.getQualifiedName(XSDBuiltInSimpleTypes.NAMESPACE, _object
 				.getName()), _object);
 
 		// Build the namespace to name map
@@ -1268,14 +1289,23 @@ public class XSDModelLoader implements IXSDUserData {
 					schema.setTargetNamespace(rootSchema.getTargetNamespace());
 				}
 
-				// Read in derived simple types from the schema
-				getSimpleTypes(schema, childPackage);
-
-				// Read in global complex type definitions
-				getComplexTypes(schema, childPackage);
-
-				// Read in global element definitions
-				getGlobalElements(schema, childPackage);
+				if (fragmentCache == null) {
+					convertSchema(schema, childPackage);
+				} else if (!fragmentCache.restore(schema.getSchemaLocation(), this, childPackage)) {
+					int firstWarning = warnings.size();
+					registrationLog = new ArrayList<String>();
+					registrationCollision = false;
+					try {
+						convertSchema(schema, childPackage);
+						if (!registrationCollision) {
+							fragmentCache.store(schema.getSchemaLocation(), this, childPackage,
+									registrationLog, warnings.subList(firstWarning, warnings
+											.size()));
+						}
+					} finally {
+						registrationLog = null;
+					}
+				}
 			} else {
 				throw new Exception("Resource " + impl.getURI().toString()
 						+ " did not resolve during schema loading!");
@@ -1289,6 +1319,105 @@ public class XSDModelLoader implements IXSDUserData {
 		return result;
 	}
 
+	/**
+	 * Convert the types and global elements declared in one schema and add them to a package.
+	 * 
+	 * @param schema the schema
+	 * @param childPackage the package representing the schema
+	 */
+	private void convertSchema(XSDSchema schema, XSDPackage childPackage) {
+		// Read in derived simple types from the schema
+		getSimpleTypes(schema, childPackage);
+
+		// Read in global complex type definitions
+		getComplexTypes(schema, childPackage);
+
+		// Read in global element definitions
+		getGlobalElements(schema, childPackage);
+	}
+
+	/**
+	 * Return the cache of converted schema fragments, or null if none is used.
+	 * 
+	 * @return the cache or null
+	 */
+	public XSDFragmentCache getFragmentCache() {
+		return fragmentCache;
+	}
+
+	/**
+	 * Set a cache of converted schema fragments. When set, schemas that were already converted by
+	 * another load, for example a common types schema imported by several models, are copied from
+	 * the cache instead of being converted again.
+	 * 
+	 * @param fragmentCache the cache, or null to convert every schema
+	 */
+	public void setFragmentCache(XSDFragmentCache fragmentCache) {
+		this.fragmentCache = fragmentCache;
+	}
+
+	/**
+	 * Return the Object supertype used by the current load.
+	 */
+	XSDClassifier getObjectType() {
+		return _object;
+	}
+
+	/**
+	 * Return the names of all types declared in a namespace by the schemas in the current load.
+	 * 
+	 * @param namespace the namespace, "" for no namespace
+	 * @return the names or null
+	 */
+	Set<String> getTypeNames(String namespace) {
+		return namespaceToTypeNames.get(namespace);
+	}
+
+	/**
+	 * Return the qualified names registered for a namespace in the current load.
+	 * 
+	 * @param namespace the namespace, "" for no namespace
+	 * @return the names, may be empty
+	 */
+	Set<String> getRegisteredNames(String namespace) {
+		Set<String> names = namespaceToRegisteredNames.get(namespace);
+		if (names == null) {
+			return Collections.emptySet();
+		}
+		return names;
+	}
+
+	void addWarnings(List<String> newWarnings) {
+		warnings.addAll(newWarnings);
+	}
+
+	/**
+	 * Record a model element under its qualified name, for later resolution of references.
+	 * 
+	 * @param qualifiedName the name, as produced by {@link XSDHelper#getQualifiedName(String, String)}
+	 * @param element the element
+	 */
+	void registerElement(String qualifiedName, IModelElement element) {
+		String namespace = XSDFragmentCache.getNamespace(qualifiedName);
+		Set<String> names = namespaceToRegisteredNames.get(namespace);
+		if (names == null) {
+			names = new HashSet<String>();
+			namespaceToRegisteredNames.put(namespace, names);
+		}
+
+		if (!names.add(qualifiedName) && registrationLog != null) {
+			registrationCollision = true;
+		}
+		nameToElement.put(qualifiedName, element);
+		if (registrationLog != null) {
+			registrationLog.add(qualifiedName);
+		}
+	}
+
+	IModelElement getRegisteredElement(String qualifiedName) {
+		return nameToElement.get(qualifiedName);
+	}
+
 	/**
 	 * Examines the schema for redefines, if one is found then an exception is thrown as NRL is not
 	 * compatiable with redefines.
@@ -0,0 +1,479 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.model.xsd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.nrl.parser.model.AbstractClassifier;
+import net.sourceforge.nrl.parser.model.AbstractModelElement;
+import net.sourceforge.nrl.parser.model.IAttribute;
+import net.sourceforge.nrl.parser.model.IModelElement;
+import net.sourceforge.nrl.parser.model.IPackage;
+
+/**
+ * Writes and reads a loaded XML Schema model in a compact binary format. This is used to cache
+ * the result of {@link XSDModelLoader#load(org.eclipse.emf.ecore.resource.Resource, Map)}, so that
+ * a model can be restored without going through the EMF schema loader again.
+ * <p>
+ * The format consists of a string table, followed by the package tree (element kinds and names),
+ * the attributes of every classifier, and finally all references between elements: parents,
+ * descendants, attribute types and user data. Only models made up of {@link XSDPackage},
+ * {@link XSDClassifier}, {@link XSDDataType} and {@link XSDAttribute} objects can be written.
+ *
+ * @since 1.4.18
+ */
+public class XSDModelSerializer {
+
+	/** The format version, to be incremented on any change to the layout. */
+	public final static int VERSION = 1;
+
+	private final static int MAGIC = 0x4e524c4d; // "NRLM"
+
+	// Element kinds
+	private final static byte PACKAGE = 0;
+
+	private final static byte CLASSIFIER = 1;
+
+	private final static byte DATA_TYPE = 2;
+
+	// Element references
+	private final static int NULL_REF = -1;
+
+	private final static int OBJECT_REF = -2;
+
+	// User data value tags
+	private final static byte NULL_VALUE = 0;
+
+	private final static byte STRING_VALUE = 1;
+
+	private final static byte BOOLEAN_VALUE = 2;
+
+	private final static byte INTEGER_VALUE = 3;
+
+	private final static byte ELEMENT_VALUE = 4;
+
+	private final static byte ATTRIBUTE_VALUE = 5;
+
+	/**
+	 * Write a model to a stream.
+	 *
+	 * @param model the root package of the model, as returned by the model loader
+	 * @param out the stream to write to
+	 * @throws IOException if writing fails, or the model contains elements that cannot be written
+	 */
+	public void write(XSDPackage model, DataOutputStream out) throws IOException {
+		Writer writer = new Writer();
+		writer.collect(model);
+
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream body = new DataOutputStream(buffer);
+		writer.writeBody(model, body);
+		body.flush();
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(writer.strings.size());
+		for (String str : writer.strings.keySet()) {
+			byte[] bytes = str.getBytes("UTF-8");
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		buffer.writeTo(out);
+		out.flush();
+	}
+
+	/**
+	 * Read a model previously written with {@link #write(XSDPackage, DataOutputStream)}.
+	 *
+	 * @param in the stream to read from
+	 * @return the root package of the model
+	 * @throws IOException if reading fails, or the stream is not in the expected format
+	 */
+	public XSDPackage read(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a serialised NRL model");
+		int version = in.readInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported serialised model version " + version);
+
+		String[] strings = new String[in.readInt()];
+		for (int i = 0; i < strings.length; i++) {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			strings[i] = new String(bytes, "UTF-8");
+		}
+
+		return new Reader(strings, in).readBody();
+	}
+
+	/*
+	 * State for a single write operation: identity-based numbering of all elements and
+	 * attributes, and the string table.
+	 */
+	private static class Writer {
+
+		private Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+
+		private List<IModelElement> elements = new ArrayList<IModelElement>();
+
+		private Map<Object, Integer> ids = new IdentityHashMap<Object, Integer>();
+
+		private List<IAttribute> attributes = new ArrayList<IAttribute>();
+
+		void collect(IModelElement element) throws IOException {
+			if (!(element instanceof XSDPackage) && !(element instanceof XSDClassifier)
+					&& !(element instanceof XSDDataType)) {
+				throw new IOException("Cannot serialise model element "
+						+ element.getQualifiedName() + " of type " + element.getClass().getName());
+			}
+
+			ids.put(element, elements.size());
+			elements.add(element);
+
+			if (element instanceof XSDPackage) {
+				for (IModelElement child : ((XSDPackage) element).getContents(false)) {
+					collect(child);
+				}
+			} else {
+				for (IAttribute attr : ((AbstractClassifier) element).getAttributes(false)) {
+					if (!(attr instanceof XSDAttribute)) {
+						throw new IOException("Cannot serialise attribute " + attr.getName()
+								+ " of type " + attr.getClass().getName());
+					}
+					ids.put(attr, attributes.size());
+					attributes.add(attr);
+				}
+			}
+		}
+
+		void writeBody(XSDPackage model, DataOutputStream out) throws IOException {
+			// The package tree
+			writeElement(model, out);
+
+			// Attribute declarations, classifier by classifier
+			for (IModelElement element : elements) {
+				if (!(element instanceof AbstractClassifier))
+					continue;
+
+				List<IAttribute> attrs = ((AbstractClassifier) element).getAttributes(false);
+				out.writeInt(attrs.size());
+				for (IAttribute attr : attrs) {
+					XSDAttribute xsdAttr = (XSDAttribute) attr;
+					writeString(xsdAttr.getName(), out);
+					writeString(xsdAttr.getOriginalName(), out);
+					writeString(xsdAttr.getTypeName(), out);
+					out.writeInt(xsdAttr.getMinOccurs());
+					out.writeInt(xsdAttr.getMaxOccurs());
+					out.writeBoolean(xsdAttr.isStatic());
+					out.writeInt(xsdAttr.getDocumentation().size());
+					for (String doc : xsdAttr.getDocumentation()) {
+						writeString(doc, out);
+					}
+				}
+			}
+
+			// Element references and user data
+			for (IModelElement element : elements) {
+				AbstractModelElement abstractElement = (AbstractModelElement) element;
+				writeReference(element.getParent(), out);
+
+				List<IModelElement> descendants = element.getDescendants(false);
+				out.writeInt(descendants.size());
+				for (IModelElement descendant : descendants) {
+					writeReference(descendant, out);
+				}
+
+				out.writeInt(abstractElement.getUserDataKeys().size());
+				for (String key : abstractElement.getUserDataKeys()) {
+					writeString(key, out);
+					writeValue(abstractElement.getUserData(key), out);
+				}
+			}
+
+			// Attribute references and user data
+			for (IAttribute attr : attributes) {
+				XSDAttribute xsdAttr = (XSDAttribute) attr;
+				writeReference(xsdAttr.getType(), out);
+
+				out.writeInt(xsdAttr.getUserDataKeys().size());
+				for (String key : xsdAttr.getUserDataKeys()) {
+					writeString(key, out);
+					writeValue(xsdAttr.getUserData(key), out);
+				}
+			}
+		}
+
+		void writeElement(IModelElement element, DataOutputStream out) throws IOException {
+			AbstractModelElement abstractElement = (AbstractModelElement) element;
+
+			if (element instanceof XSDPackage) {
+				out.writeByte(PACKAGE);
+			} else if (element instanceof XSDClassifier) {
+				out.writeByte(CLASSIFIER);
+			} else {
+				out.writeByte(DATA_TYPE);
+			}
+
+			writeString(element.getName(), out);
+			writeString(element.getOriginalName(), out);
+			out.writeBoolean(abstractElement.isSupplementary());
+
+			if (element instanceof XSDPackage) {
+				List<IModelElement> contents = ((XSDPackage) element).getContents(false);
+				out.writeInt(contents.size());
+				for (IModelElement child : contents) {
+					writeElement(child, out);
+				}
+			} else if (element instanceof XSDClassifier) {
+				XSDClassifier classifier = (XSDClassifier) element;
+				out.writeBoolean(classifier.isEnumeration());
+				writeString(classifier.getParentName(), out);
+			} else {
+				XSDDataType dataType = (XSDDataType) element;
+				out.writeBoolean(dataType.isEnumeration());
+				out.writeBoolean(dataType.hasStrippedAttributes());
+				writeString(dataType.getParentName(), out);
+			}
+		}
+
+		void writeReference(Object target, DataOutputStream out) throws IOException {
+			if (target == null) {
+				out.writeInt(NULL_REF);
+			} else if (target == IModelElement.OBJECT) {
+				out.writeInt(OBJECT_REF);
+			} else {
+				Integer id = ids.get(target);
+				if (id == null) {
+					throw new IOException("Model references an element outside the model: "
+							+ target);
+				}
+				out.writeInt(id);
+			}
+		}
+
+		void writeString(String str, DataOutputStream out) throws IOException {
+			if (str == null) {
+				out.writeInt(NULL_REF);
+				return;
+			}
+
+			Integer index = strings.get(str);
+			if (index == null) {
+				index = strings.size();
+				strings.put(str, index);
+			}
+			out.writeInt(index);
+		}
+
+		void writeValue(Object value, DataOutputStream out) throws IOException {
+			if (value == null) {
+				out.writeByte(NULL_VALUE);
+			} else if (value instanceof String) {
+				out.writeByte(STRING_VALUE);
+				writeString((String) value, out);
+			} else if (value instanceof Boolean) {
+				out.writeByte(BOOLEAN_VALUE);
+				out.writeBoolean((Boolean) value);
+			} else if (value instanceof Integer) {
+				out.writeByte(INTEGER_VALUE);
+				out.writeInt((Integer) value);
+			} else if (value instanceof IModelElement) {
+				out.writeByte(ELEMENT_VALUE);
+				writeReference(value, out);
+			} else if (value instanceof IAttribute) {
+				out.writeByte(ATTRIBUTE_VALUE);
+				writeReference(value, out);
+			} else {
+				throw new IOException("Cannot serialise user data of type "
+						+ value.getClass().getName());
+			}
+		}
+	}
+
+	/*
+	 * State for a single read operation.
+	 */
+	private static class Reader {
+
+		private final String[] strings;
+
+		private final DataInputStream in;
+
+		private List<AbstractModelElement> elements = new ArrayList<AbstractModelElement>();
+
+		private List<XSDAttribute> attributes = new ArrayList<XSDAttribute>();
+
+		Reader(String[] strings, DataInputStream in) {
+			this.strings = strings;
+			this.in = in;
+		}
+
+		XSDPackage readBody() throws IOException {
+			AbstractModelElement root = readElement(null);
+			if (!(root instanceof XSDPackage))
+				throw new IOException("Serialised model does not start with a package");
+
+			for (AbstractModelElement element : elements) {
+				if (!(element instanceof AbstractClassifier))
+					continue;
+
+				AbstractClassifier classifier = (AbstractClassifier) element;
+				int count = in.readInt();
+				for (int i = 0; i < count; i++) {
+					String name = readString();
+					XSDAttribute attr = new XSDAttribute(name);
+					attr.setName(name);
+					attr.setOriginalName(readString());
+					attr.setTypeName(readString());
+					attr.setMinOccurs(in.readInt());
+					attr.setMaxOccurs(in.readInt());
+					attr.setStatic(in.readBoolean());
+					int docs = in.readInt();
+					for (int j = 0; j < docs; j++) {
+						attr.addDocumentation(readString());
+					}
+
+					classifier.addAttribute(attr);
+					attr.setOwner(classifier);
+					attributes.add(attr);
+				}
+			}
+
+			for (AbstractModelElement element : elements) {
+				element.setParent((IModelElement) readReference(false));
+
+				int descendants = in.readInt();
+				for (int i = 0; i < descendants; i++) {
+					element.addChild((IModelElement) readReference(false));
+				}
+
+				int userData = in.readInt();
+				for (int i = 0; i < userData; i++) {
+					element.setUserData(readString(), readValue());
+				}
+			}
+
+			for (XSDAttribute attr : attributes) {
+				attr.setType((IModelElement) readReference(false));
+
+				int userData = in.readInt();
+				for (int i = 0; i < userData; i++) {
+					attr.setUserData(readString(), readValue());
+				}
+			}
+
+			return (XSDPackage) root;
+		}
+
+		AbstractModelElement readElement(IPackage container) throws IOException {
+			byte kind = in.readByte();
+			String name = readString();
+			String originalName = readString();
+			boolean supplementary = in.readBoolean();
+
+			AbstractModelElement result;
+			switch (kind) {
+			case PACKAGE:
+				XSDPackage pkg = new XSDPackage(name, container);
+				result = pkg;
+				elements.add(result);
+
+				int size = in.readInt();
+				for (int i = 0; i < size; i++) {
+					pkg.addElement(readElement(pkg));
+				}
+				break;
+			case CLASSIFIER:
+				XSDClassifier classifier = new XSDClassifier(name, container);
+				result = classifier;
+				elements.add(result);
+
+				classifier.setEnumeration(in.readBoolean());
+				classifier.setParentName(readString());
+				break;
+			case DATA_TYPE:
+				XSDDataType dataType = new XSDDataType(name, container);
+				result = dataType;
+				elements.add(result);
+
+				dataType.setEnumeration(in.readBoolean());
+				dataType.setAttributesStripped(in.readBoolean());
+				dataType.setParentName(readString());
+				break;
+			default:
+				throw new IOException("Unknown element kind " + kind + " in serialised model");
+			}
+
+			if (originalName != null && !originalName.equals(name))
+				result.setOriginalName(originalName);
+			result.setSupplementary(supplementary);
+			return result;
+		}
+
+		Object readReference(boolean attribute) throws IOException {
+			int ref = in.readInt();
+			if (ref == NULL_REF)
+				return null;
+			if (ref == OBJECT_REF)
+				return IModelElement.OBJECT;
+
+			if (attribute) {
+				if (ref < 0 || ref >= attributes.size())
+					throw new IOException("Illegal attribute reference " + ref);
+				return attributes.get(ref);
+			}
+			if (ref < 0 || ref >= elements.size())
+				throw new IOException("Illegal element reference " + ref);
+			return elements.get(ref);
+		}
+
+		String readString() throws IOException {
+			int index = in.readInt();
+			if (index == NULL_REF)
+				return null;
+			if (index < 0 || index >= strings.length)
+				throw new IOException("Illegal string reference " + index);
+			return strings[index];
+		}
+
+		Object readValue() throws IOException {
+			byte tag = in.readByte();
+			switch (tag) {
+			case NULL_VALUE:
+				return null;
+			case STRING_VALUE:
+				return readString();
+			case BOOLEAN_VALUE:
+				return in.readBoolean();
+			case INTEGER_VALUE:
+				return in.readInt();
+			case ELEMENT_VALUE:
+				return readReference(false);
+			case ATTRIBUTE_VALUE:
+				return readReference(true);
+			default:
+				throw new IOException("Unknown user data tag " + tag + " in serialised model");
+			}
+		}
+	}
+}
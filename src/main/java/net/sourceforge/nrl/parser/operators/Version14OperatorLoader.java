@@ -1,7 +1,6 @@
 package net.sourceforge.nrl.parser.operators;
 
 import java.io.InputStream;
-import java.io.StringReader;
 
 import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
@@ -18,6 +17,7 @@ import net.sourceforge.nrl.parser.jaxb14.JaxbOperators;
 import net.sourceforge.nrl.parser.jaxb14.JaxbParameter;
 import net.sourceforge.nrl.parser.operators.IOperators.LoadedVersion;
 
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 /**
@@ -28,7 +28,7 @@ import org.xml.sax.SAXException;
  */
 final class Version14OperatorLoader {
 
-	public static Operators load(String xmlContent, JAXBContext context) throws JAXBException,
+	public static Operators load(InputSource source, JAXBContext context) throws JAXBException,
 			SAXException {
 		// Loading using JAXB
 		Unmarshaller unmarshaller = context.createUnmarshaller();
@@ -41,7 +41,7 @@ final class Version14OperatorLoader {
 
 		unmarshaller.setSchema(schema);
 
-		JAXBElement<?> root = (JAXBElement<?>) unmarshaller.unmarshal(new StringReader(xmlContent));
+		JAXBElement<?> root = (JAXBElement<?>) unmarshaller.unmarshal(source);
 		JaxbOperators operators = (JaxbOperators) root.getValue();
 
 		Operators result = new Operators();
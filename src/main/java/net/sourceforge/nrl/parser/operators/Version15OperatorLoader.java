@@ -1,7 +1,8 @@
 package net.sourceforge.nrl.parser.operators;
 
 import java.io.InputStream;
-import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
@@ -17,7 +18,9 @@ import net.sourceforge.nrl.parser.jaxb15.JaxbOperator;
 import net.sourceforge.nrl.parser.jaxb15.JaxbOperators;
 import net.sourceforge.nrl.parser.jaxb15.JaxbParameter;
 import net.sourceforge.nrl.parser.operators.IOperators.LoadedVersion;
+import net.sourceforge.nrl.parser.util.StreamUtilities;
 
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 /**
@@ -29,7 +32,37 @@ import org.xml.sax.SAXException;
  */
 final class Version15OperatorLoader {
 
-	public static Operators load(String xmlContent, JAXBContext context) throws JAXBException,
+	private static final String NAMESPACE = "urn:net:sourceforge:nrl:1.5";
+
+	// The namespace in the encodings it can appear in. ASCII covers UTF-8 and the single byte
+	// character sets
+	private static final byte[][] ENCODED_NAMESPACES = new byte[][] { encode("US-ASCII"),
+			encode("UTF-16BE"), encode("UTF-16LE") };
+
+	/**
+	 * Return true if an operator file uses the version 1.5 namespace. The file has not been
+	 * decoded, as its encoding is only known to the XML parser, so the namespace is searched for
+	 * in every encoding it can appear in.
+	 * 
+	 * @param content the undecoded file
+	 * @return true for a version 1.5 file
+	 */
+	static boolean isVersion15(ByteBuffer content) {
+		for (byte[] namespace : ENCODED_NAMESPACES) {
+			if (StreamUtilities.indexOf(content, namespace, 0) != -1)
+				return true;
+		}
+		return false;
+	}
+
+	private static byte[] encode(String charset) {
+		ByteBuffer buffer = Charset.forName(charset).encode(NAMESPACE);
+		byte[] result = new byte[buffer.remaining()];
+		buffer.get(result);
+		return result;
+	}
+
+	public static Operators load(InputSource source, JAXBContext context) throws JAXBException,
 			SAXException {
 		// Loading using JAXB
 		Unmarshaller unmarshaller = context.createUnmarshaller();
@@ -42,7 +75,7 @@ final class Version15OperatorLoader {
 
 		unmarshaller.setSchema(schema);
 
-		JAXBElement<?> root = (JAXBElement<?>) unmarshaller.unmarshal(new StringReader(xmlContent));
+		JAXBElement<?> root = (JAXBElement<?>) unmarshaller.unmarshal(source);
 		JaxbOperators operators = (JaxbOperators) root.getValue();
 
 		Operators result = new Operators();
@@ -17,10 +17,10 @@ package net.sourceforge.nrl.parser.operators;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.Writer;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import javax.xml.bind.JAXBContext;
@@ -44,7 +44,9 @@ import net.sourceforge.nrl.parser.model.loader.ModelLoadingException;
 import net.sourceforge.nrl.parser.resolver.IResolverFactory;
 import net.sourceforge.nrl.parser.resolver.IURIResolver;
 import net.sourceforge.nrl.parser.resolver.ResolverException;
+import net.sourceforge.nrl.parser.util.StreamUtilities;
 
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 /**
@@ -59,11 +61,6 @@ import org.xml.sax.SAXException;
  */
 public class XmlOperatorLoader {
 
-	/**
-	 * Version 1.5 operator file namespace: <code>urn:net:sourceforge:nrl:1.5</code>
-	 */
-	private static final String NAMESPACE_VERSION_1_5 = "urn:net:sourceforge:nrl:1.5";
-
 	/**
 	 * File version of this persistence mechanism: currently 1.5.0
 	 */
@@ -157,25 +154,20 @@ public class XmlOperatorLoader {
 	 */
 	public IOperators load(URI baseURI, URI operatorFileUri, List<NRLError> errors)
 			throws JAXBException, SAXException, IOException, ResolverException {
+		// Read into memory first, leaving decoding to the XML parser
+		ByteBuffer content;
 		InputStream operatorStream = uriResolver.openStream(baseURI, operatorFileUri);
-
-		Reader operatorReader = new InputStreamReader(operatorStream);
-
-		// Read into a string first
-		StringBuilder intermediate = new StringBuilder();
-		char[] buffer = new char[5000];
-
-		while (operatorReader.ready()) {
-			int count = operatorReader.read(buffer);
-			intermediate.append(new String(buffer, 0, count));
+		try {
+			content = StreamUtilities.readBytes(operatorStream);
+		} finally {
+			operatorStream.close();
 		}
 
-		if (intermediate.indexOf(NAMESPACE_VERSION_1_5) != -1) {
-			loadedOperators = Version15OperatorLoader.load(intermediate.toString(),
-					version15Context);
+		InputSource source = new InputSource(StreamUtilities.newInputStream(content));
+		if (Version15OperatorLoader.isVersion15(content)) {
+			loadedOperators = Version15OperatorLoader.load(source, version15Context);
 		} else {
-			loadedOperators = Version14OperatorLoader.load(intermediate.toString(),
-					version14Context);
+			loadedOperators = Version14OperatorLoader.load(source, version14Context);
 		}
 		URI resolvedOperatorFileURI = baseURI.resolve(operatorFileUri);
 		resolveModelReferences(resolvedOperatorFileURI, loadedOperators, errors);
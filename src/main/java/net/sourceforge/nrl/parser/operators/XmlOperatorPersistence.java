@@ -18,10 +18,12 @@
 package net.sourceforge.nrl.parser.operators;
 
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
@@ -35,7 +37,9 @@ import net.sourceforge.nrl.parser.jaxb15.JaxbParameter;
 import net.sourceforge.nrl.parser.jaxb15.JaxbParameters;
 import net.sourceforge.nrl.parser.jaxb15.ObjectFactory;
 import net.sourceforge.nrl.parser.model.IDataType;
+import net.sourceforge.nrl.parser.util.StreamUtilities;
 
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 /**
@@ -133,7 +137,17 @@ public class XmlOperatorPersistence {
 	 * @throws IOException
 	 */
 	public LoadedVersion load(File file) throws JAXBException, SAXException, IOException {
-		return load(new FileReader(file));
+		// Read into memory first, leaving decoding to the XML parser
+		ByteBuffer content;
+		InputStream stream = new FileInputStream(file);
+		try {
+			content = StreamUtilities.readBytes(stream);
+		} finally {
+			stream.close();
+		}
+
+		InputSource source = new InputSource(StreamUtilities.newInputStream(content));
+		return loadSource(source, Version15OperatorLoader.isVersion15(content));
 	}
 
 	/**
@@ -150,22 +164,19 @@ public class XmlOperatorPersistence {
 	 * @throws IOException
 	 */
 	public LoadedVersion load(Reader reader) throws JAXBException, SAXException, IOException {
-		// Read into a string first
-		StringBuilder intermediate = new StringBuilder();
-		char[] buffer = new char[5000];
-
-		while (reader.ready()) {
-			int count = reader.read(buffer);
-			intermediate.append(new String(buffer, 0, count));
-		}
+		// Read into memory first
+		CharSequence content = StreamUtilities.read(reader);
+		InputSource source = new InputSource(StreamUtilities.newReader(content));
+		return loadSource(source, StreamUtilities.indexOf(content, NAMESPACE_VERSION_1_5, 0) != -1);
+	}
 
-		if (intermediate.indexOf(NAMESPACE_VERSION_1_5) != -1) {
-			loadedOperators = Version15OperatorLoader.load(intermediate.toString(),
-					version15Context);
+	private LoadedVersion loadSource(InputSource source, boolean version15) throws JAXBException,
+			SAXException {
+		if (version15) {
+			loadedOperators = Version15OperatorLoader.load(source, version15Context);
 			return LoadedVersion.Version15;
 		} else {
-			loadedOperators = Version14OperatorLoader.load(intermediate.toString(),
-					version14Context);
+			loadedOperators = Version14OperatorLoader.load(source, version14Context);
 			return LoadedVersion.Version14;
 		}
 	}
@@ -0,0 +1,129 @@
+package net.sourceforge.nrl.parser.preprocessing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A multi-pattern string matcher (Aho-Corasick) that finds all occurrences of
+ * a set of fragment names in a single pass over the input, independent of the
+ * number of names.
+ * <p>
+ * The matcher reports, for every position of the input, the length of the
+ * longest name that starts there. The preprocessor uses this to select
+ * leftmost-longest, non-overlapping matches.
+ *
+ * @since 1.4.18
+ */
+class FragmentMatcher {
+
+	private final Node root = new Node();
+
+	/**
+	 * Build a matcher for a set of names. Null and empty names are ignored.
+	 *
+	 * @param names the names
+	 */
+	public FragmentMatcher(String[] names) {
+		for (String name : names) {
+			if (name == null || name.length() == 0)
+				continue;
+
+			Node node = root;
+			for (int i = 0; i < name.length(); i++) {
+				Character c = name.charAt(i);
+				Node next = node.children.get(c);
+				if (next == null) {
+					next = new Node();
+					node.children.put(c, next);
+				}
+				node = next;
+			}
+			node.length = name.length();
+		}
+
+		buildFailureLinks();
+	}
+
+	/**
+	 * Return true if the matcher has no names to look for.
+	 *
+	 * @return true if empty
+	 */
+	public boolean isEmpty() {
+		return root.children.isEmpty();
+	}
+
+	/**
+	 * Scan the input and return, for every position, the length of the
+	 * longest name starting at that position, or 0 if none does.
+	 *
+	 * @param input the input
+	 * @return the match lengths, indexed by start position
+	 */
+	public int[] longestMatches(CharSequence input) {
+		int[] result = new int[input.length()];
+
+		Node state = root;
+		for (int i = 0; i < input.length(); i++) {
+			Character c = input.charAt(i);
+			while (state != root && !state.children.containsKey(c))
+				state = state.failure;
+
+			Node next = state.children.get(c);
+			state = next == null ? root : next;
+
+			// Every name ending here
+			for (Node out = state.length > 0 ? state : state.output; out != null; out = out.output) {
+				int start = i - out.length + 1;
+				if (out.length > result[start])
+					result[start] = out.length;
+			}
+		}
+
+		return result;
+	}
+
+	/*
+	 * Breadth-first computation of the failure links (longest proper suffix
+	 * that is a prefix of some name) and output links (longest proper suffix
+	 * that is a name).
+	 */
+	private void buildFailureLinks() {
+		List<Node> queue = new ArrayList<Node>();
+		for (Node child : root.children.values()) {
+			child.failure = root;
+			queue.add(child);
+		}
+
+		for (int head = 0; head < queue.size(); head++) {
+			Node node = queue.get(head);
+
+			for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+				Character c = entry.getKey();
+				Node child = entry.getValue();
+
+				Node fail = node.failure;
+				while (fail != root && !fail.children.containsKey(c))
+					fail = fail.failure;
+				Node target = fail.children.get(c);
+				child.failure = target == null || target == child ? root : target;
+				child.output = child.failure.length > 0 ? child.failure : child.failure.output;
+
+				queue.add(child);
+			}
+		}
+	}
+
+	private static class Node {
+		private Map<Character, Node> children = new HashMap<Character, Node>();
+
+		private Node failure;
+
+		private Node output;
+
+		// Length of the name ending at this node, 0 if none
+		private int length = 0;
+	}
+}
@@ -28,63 +28,124 @@ public class ReferencePreprocessor {
 	protected final static char PROP_END = '}';
 
 	public String process(String input) {
+		CharSequence result = process((CharSequence) input);
+		return result == null ? null : result.toString();
+	}
+
+	/**
+	 * Place curly brackets around all references to fragments declared in the
+	 * input. If there are none, the input itself is returned.
+	 * <p>
+	 * String input is passed to the <code>String</code> overloads of
+	 * {@link #getFragmentNames(String)} and {@link #process(String, String[])},
+	 * so that subclasses overriding those still see it.
+	 * 
+	 * @param input the input, may be null
+	 * @return the processed input
+	 */
+	@SuppressWarnings("deprecation")
+	public CharSequence process(CharSequence input) {
 		if (input == null)
 			return null;
 
 		// Get fragment names
-		String[] fragments = getFragmentNames(input);
-		return process(input, fragments);
+		if (input instanceof String) {
+			String string = (String) input;
+			return process(string, getFragmentNames(string));
+		}
+		return process(input, getFragmentNames(input));
 	}
-	
+
 	public String process(String input, String[] properties) {
+		CharSequence result = process((CharSequence) input, properties);
+		return result == null ? null : result.toString();
+	}
+	
+	/**
+	 * Place curly brackets around every occurrence of a fragment name in the
+	 * input. The input is scanned once for all names. Where names overlap,
+	 * the leftmost occurrence wins, and of several names starting at the same
+	 * position the longest. Occurrences preceded by a double quote (the
+	 * declaration itself) or an opening curly bracket (already a reference)
+	 * are left as they are. If no brackets are placed, the input itself is
+	 * returned.
+	 * 
+	 * @param input the input, may be null
+	 * @param properties the fragment names
+	 * @return the processed input
+	 */
+	public CharSequence process(CharSequence input, String[] properties) {
 		if (input == null)
 			return null;
-		
-		StringBuffer result = new StringBuffer();
-		result.append(input);
 
-		// Now try to replace them if they occur in text
-		for (int i = 0; i < properties.length; i++) {
-			String fragment = properties[i];
+		FragmentMatcher matcher = new FragmentMatcher(properties);
+		if (matcher.isEmpty())
+			return input;
 
-			int pos = 0;
-			while (pos != -1) {
-				pos = result.indexOf(fragment, pos);
-				if (pos == -1)
-					break;
+		int[] matches = matcher.longestMatches(input);
 
-				// Make sure it's not the declaration itself and that it has not
-				// been previously replaced
-				if (pos > 0 && result.charAt(pos - 1) != '\"'
-						&& result.charAt(pos - 1) != PROP_START) {
-					result.insert(pos, PROP_START);
-					result.insert(pos + fragment.length() + 1, PROP_END);
-				}
+		StringBuffer result = null;
+		int copied = 0;
+		int pos = 0;
+		while (pos < matches.length) {
+			int length = matches[pos];
+			if (length == 0) {
+				pos++;
+				continue;
+			}
 
-				pos = pos + fragment.length();
-				if (pos >= result.length())
-					break;
+			// Make sure it's not the declaration itself and that it is not
+			// already a reference
+			if (pos > 0 && input.charAt(pos - 1) != '\"' && input.charAt(pos - 1) != PROP_START) {
+				if (result == null)
+					result = new StringBuffer(input.length() + input.length() / 8);
+				result.append(input, copied, pos);
+				result.append(PROP_START);
+				result.append(input, pos, pos + length);
+				result.append(PROP_END);
+				copied = pos + length;
 			}
+
+			pos = pos + length;
 		}
 
-		return result.toString();
+		if (result == null)
+			return input;
+
+		result.append(input, copied, input.length());
+		return result;
 	}
 
 	/**
 	 * Return all fragment names declared in a file
 	 * 
 	 * @return the fragment names
+	 * @deprecated Use {@link #getFragmentNames(CharSequence)}.
 	 */
+	@Deprecated
 	public String[] getFragmentNames(String input) {
-		String inputLowercase = input.toLowerCase();
+		return getFragmentNames((CharSequence) input);
+	}
 
+	/**
+	 * Return all fragment names declared in a file
+	 * 
+	 * @return the fragment names
+	 */
+	public String[] getFragmentNames(CharSequence input) {
 		List<String> result = new ArrayList<String>();
 
+		// Next occurrence of each keyword, only searched again once passed
+		int validationPos = indexOfKeyword(input, VALIDATION_FRAGMENT_KEYWORD, 0);
+		int actionPos = indexOfKeyword(input, ACTION_FRAGMENT_KEYWORD, 0);
+
 		int pos = 0;
-		while (pos != -1) {
-			int validationPos = inputLowercase.indexOf(VALIDATION_FRAGMENT_KEYWORD, pos);
-			int actionPos = inputLowercase.indexOf(ACTION_FRAGMENT_KEYWORD, pos);
-			
+		while (true) {
+			if (validationPos != -1 && validationPos < pos)
+				validationPos = indexOfKeyword(input, VALIDATION_FRAGMENT_KEYWORD, pos);
+			if (actionPos != -1 && actionPos < pos)
+				actionPos = indexOfKeyword(input, ACTION_FRAGMENT_KEYWORD, pos);
+
 			if (validationPos != -1) {
 				if (actionPos == -1)
 					pos = validationPos;
@@ -92,45 +153,89 @@ public class ReferencePreprocessor {
 					pos = validationPos < actionPos ? validationPos : actionPos;
 			} else {
 				if (actionPos == -1)
-					break;				
+					break;
 				pos = actionPos;
 			}
 
 			// Do not process if this is a quoted line
-			if (isQuotedLine(input, pos)) {
+			if (isQuoted(input, pos)) {
 				pos++;
 				continue;
 			}
-			
+
 			// Skip spaces and find quoted name (might be unterminated
 			// or not there!)
-			while (pos < input.length() && input.charAt(pos) != '"')
-				pos++;
+			pos = indexOfQuote(input, pos);
+			if (pos == -1)
+				break;
 
-			pos++;
-			String fragmentName = "";
-			while (pos < input.length() && input.charAt(pos) != '"') {
-				fragmentName += input.charAt(pos);
-				pos++;
-			}
-
-			if (pos >= input.length() || input.charAt(pos) != '"')
-				continue;
+			int start = pos + 1;
+			pos = indexOfQuote(input, start);
+			if (pos == -1)
+				break;
 
-			if (fragmentName.trim().length() > 0)
-				result.add(fragmentName.trim());
+			String fragmentName = input.subSequence(start, pos).toString().trim();
+			if (fragmentName.length() > 0)
+				result.add(fragmentName);
 		}
 
 		return result.toArray(new String[0]);
 	}
 
+	/*
+	 * Find a lower case keyword, ignoring the case of the input.
+	 */
+	private int indexOfKeyword(CharSequence input, String keyword, int fromIndex) {
+		int last = input.length() - keyword.length();
+		for (int i = fromIndex; i <= last; i++) {
+			int j = 0;
+			while (j < keyword.length()
+					&& Character.toLowerCase(input.charAt(i + j)) == keyword.charAt(j))
+				j++;
+			if (j == keyword.length())
+				return i;
+		}
+		return -1;
+	}
+
+	private int indexOfQuote(CharSequence input, int fromIndex) {
+		for (int i = fromIndex; i < input.length(); i++) {
+			if (input.charAt(i) == '"')
+				return i;
+		}
+		return -1;
+	}
+
+	/*
+	 * Call the String overload for String input, in case a subclass overrides
+	 * it.
+	 */
+	@SuppressWarnings("deprecation")
+	private boolean isQuoted(CharSequence input, int pos) {
+		if (input instanceof String)
+			return isQuotedLine((String) input, pos);
+		return isQuotedLine(input, pos);
+	}
+
 	/**
 	 * Return true if the position is in a quoted line
 	 * @param input the document
 	 * @param pos position
 	 * @return true if quoted, false otherwise
+	 * @deprecated Override {@link #isQuotedLine(CharSequence, int)}.
 	 */
+	@Deprecated
 	protected boolean isQuotedLine(String input, int pos) {
+		return isQuotedLine((CharSequence) input, pos);
+	}
+
+	/**
+	 * Return true if the position is in a quoted line
+	 * @param input the document
+	 * @param pos position
+	 * @return true if quoted, false otherwise
+	 */
+	protected boolean isQuotedLine(CharSequence input, int pos) {
 		boolean startOfComment = false;
 		
 		while (pos >= 0 && pos < input.length()) {
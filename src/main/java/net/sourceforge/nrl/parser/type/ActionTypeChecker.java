@@ -50,7 +50,6 @@ import net.sourceforge.nrl.parser.ast.action.ISetAction;
 import net.sourceforge.nrl.parser.ast.action.IVariableDeclarationAction;
 import net.sourceforge.nrl.parser.ast.constraints.IConstraintRuleDeclaration;
 import net.sourceforge.nrl.parser.ast.constraints.IExpression;
-import net.sourceforge.nrl.parser.ast.constraints.IValidationFragmentDeclaration;
 import net.sourceforge.nrl.parser.model.IDataType;
 import net.sourceforge.nrl.parser.model.IModelElement;
 import net.sourceforge.nrl.parser.model.PrimitiveTypeFactory;
@@ -64,11 +63,7 @@ public class ActionTypeChecker extends ConstraintTypeChecker implements INRLActi
 
 	@Override
 	protected void checkRemainingDeclarations(IRuleFile ruleFile) {
-		for (IDeclaration decl : ruleFile.getDeclarations()) {
-			if (!(decl instanceof IValidationFragmentDeclaration)) {
-				decl.accept(new ActionVisitorDispatcher(this));
-			}
-		}
+		super.checkRemainingDeclarations(ruleFile);
 
 		// Check any rules that are in no rule set - no mixing of
 		// actions and constraints
@@ -91,6 +86,16 @@ public class ActionTypeChecker extends ConstraintTypeChecker implements INRLActi
 		}
 	}
 
+	@Override
+	protected void checkDeclaration(IDeclaration decl) {
+		decl.accept(new ActionVisitorDispatcher(this));
+	}
+
+	@Override
+	protected ConstraintTypeChecker createWorker() {
+		return new ActionTypeChecker();
+	}
+
 	private List<IRuleDeclaration> getRulesWithoutSets(IRuleFile ruleFile) {
 		// Make a list of all rules that are in sets
 		Set<String> idsInSets = new HashSet<String>();
@@ -139,7 +144,7 @@ public class ActionTypeChecker extends ConstraintTypeChecker implements INRLActi
 
 					// Must be subclass if both are elements
 					if (passed instanceof IModelReference) {
-						if (!declaredType.isAssignableFrom(((IModelReference) passed).getTarget())) {
+						if (!isAssignableFrom(declaredType, ((IModelReference) passed).getTarget())) {
 							error(IStatusCode.ACTION_FRAGMENT_PARAMETER_MISMATCH, passed,
 									"Action Fragment argument of type "
 											+ ((IModelReference) passed).getTarget().getName()
@@ -194,7 +199,7 @@ public class ActionTypeChecker extends ConstraintTypeChecker implements INRLActi
 						"Cannot add an expression to a complex collection");
 			} else {
 				IModelElement target = ((IModelReference) add.getSource()).getTarget();
-				if (!add.getTo().getTarget().isAssignableFrom(target)) {
+				if (!isAssignableFrom(add.getTo().getTarget(), target)) {
 					error(IStatusCode.ADD_TYPES_INCOMPATIBLE, add.getTo(),
 							"Cannot add incompatible types: '"
 									+ (target != null ? target.getName() : "") + "' and '"
@@ -275,7 +280,8 @@ public class ActionTypeChecker extends ConstraintTypeChecker implements INRLActi
 		} else if (action.getElement().getNRLDataType().isCollection()) {
 			error(IStatusCode.REMOVE_CANNOT_REMOVE_COLLECTION, action.getElement(),
 					"Cannot remove a collection from a collection");
-		} else if (!action.getFrom().getTarget().isAssignableFrom(action.getElement().getTarget())) {
+		} else if (!isAssignableFrom(action.getFrom().getTarget(), action.getElement()
+				.getTarget())) {
 			error(IStatusCode.REMOVE_TYPES_INCOMPATIBLE, action.getFrom(),
 					"Cannot remove incompatible types: '"
 							+ action.getElement().getTarget().getName() + "' and '"
@@ -343,7 +349,7 @@ public class ActionTypeChecker extends ConstraintTypeChecker implements INRLActi
 						+ "' is not compatible with '" + valueName + "', whose NRL type is: "
 						+ value.getNRLDataType() + ". Check your type mapping.");
 			} else if (value.getNRLDataType().getType() == Element
-					&& !target.getTarget().isAssignableFrom(value.getTarget())) {
+					&& !isAssignableFrom(target.getTarget(), value.getTarget())) {
 				String targetName = target.getTarget() != null ? target.getTarget().getName()
 						: target.getNRLDataType().toString();
 				String valueName = value.getTarget() != null ? value.getTarget().getName() : value
@@ -24,7 +24,13 @@ import static net.sourceforge.nrl.parser.ast.NRLDataType.Type.String;
 import static net.sourceforge.nrl.parser.ast.NRLDataType.Type.Unknown;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import net.sourceforge.nrl.parser.IStatusCode;
 import net.sourceforge.nrl.parser.NRLError;
@@ -78,9 +84,11 @@ import net.sourceforge.nrl.parser.model.IAttribute;
 import net.sourceforge.nrl.parser.model.IClassifier;
 import net.sourceforge.nrl.parser.model.IDataType;
 import net.sourceforge.nrl.parser.model.IModelElement;
+import net.sourceforge.nrl.parser.model.TypeHierarchyIndex;
 import net.sourceforge.nrl.parser.operators.IOperator;
 import net.sourceforge.nrl.parser.operators.IOperators;
 import net.sourceforge.nrl.parser.operators.IParameter;
+import net.sourceforge.nrl.parser.util.ThreadUtilities;
 
 /**
  * Default type checker implementation. This uses the built-in visitor pattern to type-check every
@@ -112,6 +120,10 @@ public class ConstraintTypeChecker implements INRLConstraintDetailVisitor, IType
 			new Type[] { Integer, Decimal, Integer, String, Unknown },
 			new Type[] { String, Boolean, Date, Decimal, Integer, String, Unknown } };
 
+	// Chunks per thread when checking in parallel, so that threads are kept busy if rule sizes
+	// vary
+	private static final int CHUNKS_PER_THREAD = 4;
+
 	protected List<NRLError> errors = new ArrayList<NRLError>();
 
 	protected List<ITypeMapping> typeMappings = new ArrayList<ITypeMapping>();
@@ -120,22 +132,153 @@ public class ConstraintTypeChecker implements INRLConstraintDetailVisitor, IType
 	// references are allowed
 	private boolean isImplicitIterationAllowed = false;
 
+	private TypeHierarchyIndex typeHierarchy = null;
+
+	// Types resolved by getType during the current check, by identity of the model element
+	private Map<IModelElement, NRLDataType> resolvedTypes =
+			new IdentityHashMap<IModelElement, NRLDataType>();
+
+	private int typeCacheHits = 0;
+
+	private int typeCacheMisses = 0;
+
+	private int checkThreads = 1;
+
+	// The pool that declarations are checked on in parallel mode, created on first use unless
+	// set, and kept for later checks
+	private ExecutorService executor = null;
+
+	private boolean sharedExecutor = false;
+
+	// True while the current check runs in parallel
+	private boolean checkingInParallel = false;
+
 	public void addTypeMapping(ITypeMapping mapping) {
 		typeMappings.add(mapping);
+		resetTypeCache();
+	}
+
+	/**
+	 * Return the type hierarchy index used for subtype checks, if any.
+	 * 
+	 * @return the index or null
+	 */
+	public TypeHierarchyIndex getTypeHierarchy() {
+		return typeHierarchy;
+	}
+
+	/**
+	 * Set an index over the models that the checked rules refer to, to speed up subtype checks.
+	 * If not set, subtype checks walk the parent chain of the types.
+	 * 
+	 * @param typeHierarchy the index or null
+	 */
+	public void setTypeHierarchy(TypeHierarchyIndex typeHierarchy) {
+		this.typeHierarchy = typeHierarchy;
 	}
 
 	public List<NRLError> getErrors() {
 		return errors;
 	}
 
+	/**
+	 * Return the number of threads that rule files are checked on.
+	 * 
+	 * @return the number of threads, 1 if checking on the calling thread
+	 * @since 1.4.18
+	 */
+	public int getCheckThreads() {
+		return checkThreads;
+	}
+
+	/**
+	 * Check the declarations of rule files on several threads. Global variables and rule sets are
+	 * checked on the calling thread. Validation fragments are checked one dependency level at a
+	 * time, see {@link ValidationFragmentDependencyProcessor#getLevels()}, and all other
+	 * declarations are checked once the fragments are done. The errors are the same, and in the
+	 * same order, as when checking on one thread.
+	 * <p>
+	 * Declarations are checked by workers created by {@link #createWorker()}, which share the
+	 * type mappings and type hierarchy of this type checker. Subclasses must override that
+	 * method to check in parallel, and are checked on the calling thread if they do not.
+	 * 
+	 * @param checkThreads the number of threads, 1 (the default) to check on the calling thread
+	 * @since 1.4.18
+	 */
+	public void setCheckThreads(int checkThreads) {
+		checkThreads = Math.max(1, checkThreads);
+
+		// The threads of a replaced pool end once idle
+		if (checkThreads != this.checkThreads && !sharedExecutor)
+			executor = null;
+		this.checkThreads = checkThreads;
+	}
+
+	/**
+	 * Check in parallel on a pool shared with other type checkers, rather than on a pool of this
+	 * type checker. The pool is not shut down by the type checker; see
+	 * {@link ThreadUtilities#newSharedPool(int, String)} for a pool that does not need to be.
+	 * 
+	 * @param executor the pool, or null to use a pool of this type checker
+	 * @since 1.4.18
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+		this.sharedExecutor = executor != null;
+	}
+
 	/**
 	 * Use the type mappings to look up the internal type for a model element. This tries them all
-	 * in turn, until it finds once that returns a known type
+	 * in turn, until it finds once that returns a known type. Results are cached for the duration
+	 * of a check.
 	 * 
 	 * @param element the element
 	 * @return the type
 	 */
 	protected NRLDataType getType(IModelElement element) {
+		NRLDataType cached = resolvedTypes.get(element);
+		if (cached != null) {
+			typeCacheHits++;
+			return cached;
+		}
+
+		typeCacheMisses++;
+		NRLDataType type = resolveType(element);
+		resolvedTypes.put(element, type);
+		return type;
+	}
+
+	/**
+	 * Return the number of calls to {@link #getType(IModelElement)} during the last check that
+	 * were answered from the cache of resolved types.
+	 * 
+	 * @return the number of cache hits
+	 */
+	public int getTypeCacheHits() {
+		return typeCacheHits;
+	}
+
+	/**
+	 * Return the number of calls to {@link #getType(IModelElement)} during the last check that
+	 * had to consult the type mappings.
+	 * 
+	 * @return the number of cache misses
+	 */
+	public int getTypeCacheMisses() {
+		return typeCacheMisses;
+	}
+
+	/**
+	 * Discard all resolved types and reset the cache counters. This is done at the start of every
+	 * check, and when a type mapping is added.
+	 */
+	protected void resetTypeCache() {
+		resolvedTypes.clear();
+		typeCacheHits = 0;
+		typeCacheMisses = 0;
+	}
+
+	private NRLDataType resolveType(IModelElement element) {
 		for (int i = 0; i < typeMappings.size(); i++) {
 			ITypeMapping mapping = typeMappings.get(i);
 
@@ -144,7 +287,7 @@ public class ConstraintTypeChecker implements INRLConstraintDetailVisitor, IType
 			while (run != null && run != AbstractModelElement.OBJECT) {
 				NRLDataType type = mapping.getType(run);
 				if (type.getType() != Unknown)
-					return new NRLDataType(type);
+					return type;
 				run = run.getParent();
 			}
 		}
@@ -152,8 +295,23 @@ public class ConstraintTypeChecker implements INRLConstraintDetailVisitor, IType
 		return NRLDataType.UNKNOWN;
 	}
 
+	/**
+	 * Return true if <code>other</code> is the same as or a subtype of <code>type</code>, using
+	 * the type hierarchy index if one is set.
+	 * 
+	 * @param type the target type
+	 * @param other the type to check
+	 * @return true if assignable
+	 */
+	protected boolean isAssignableFrom(IModelElement type, IModelElement other) {
+		if (typeHierarchy != null)
+			return typeHierarchy.isAssignableFrom(type, other);
+		return type.isAssignableFrom(other);
+	}
+
 	public List<NRLError> check(IOperators operators) {
 		errors = new ArrayList<NRLError>();
+		resetTypeCache();
 
 		for (IOperator op : operators.getOperators()) {
 			if (op.getNRLReturnType().getType() == Unknown && op.getReturnType() != null) {
@@ -178,6 +336,7 @@ public class ConstraintTypeChecker implements INRLConstraintDetailVisitor, IType
 
 	public List<NRLError> check(IRuleFile ruleFile) {
 		errors = new ArrayList<NRLError>();
+		resetTypeCache();
 
 		// Global variables
 
@@ -192,16 +351,28 @@ public class ConstraintTypeChecker implements INRLConstraintDetailVisitor, IType
 		List<NRLError> dependencyErrors = dependencyProc.resolve();
 		errors.addAll(dependencyErrors);
 
-		for (IDeclaration decl : dependencyProc.getOrderedDeclarations()) {
-			decl.accept(new ConstraintVisitorDispatcher(this));
-		}
+		checkingInParallel = checkThreads > 1 && ruleFile.getDeclarations().size() > 1
+				&& hasWorkers();
+		if (checkingInParallel && executor == null)
+			executor = ThreadUtilities.newSharedPool(checkThreads, "nrl-type-checker");
+		try {
+			if (checkingInParallel && dependencyProc.getCycles().isEmpty()) {
+				checkFragmentLevels(dependencyProc);
+			} else {
+				for (IDeclaration decl : dependencyProc.getOrderedDeclarations()) {
+					decl.accept(new ConstraintVisitorDispatcher(this));
+				}
+			}
 
-		// Rule sets
-		for (IRuleSetDeclaration decl : ruleFile.getRuleSetDeclarations()) {
-			decl.accept(new ConstraintVisitorDispatcher(this));
-		}
+			// Rule sets
+			for (IRuleSetDeclaration decl : ruleFile.getRuleSetDeclarations()) {
+				decl.accept(new ConstraintVisitorDispatcher(this));
+			}
 
-		checkRemainingDeclarations(ruleFile);
+			checkRemainingDeclarations(ruleFile);
+		} finally {
+			checkingInParallel = false;
+		}
 
 		return errors;
 	}
@@ -218,10 +389,157 @@ public class ConstraintTypeChecker implements INRLConstraintDetailVisitor, IType
 	 */
 	protected void checkRemainingDeclarations(IRuleFile ruleFile) {
 		// Now all others
+		List<IDeclaration> remaining = new ArrayList<IDeclaration>();
 		for (IDeclaration decl : ruleFile.getDeclarations()) {
 			if (!(decl instanceof IValidationFragmentDeclaration)) {
+				remaining.add(decl);
+			}
+		}
+		checkDeclarations(remaining);
+	}
+
+	/**
+	 * Check a list of declarations that do not depend on each other, with
+	 * {@link #checkDeclaration(IDeclaration)}. If checking in parallel, they are checked by
+	 * workers and their errors are added in list order.
+	 * 
+	 * @param declarations the declarations
+	 * @since 1.4.18
+	 */
+	protected void checkDeclarations(List<IDeclaration> declarations) {
+		if (!checkingInParallel || declarations.size() < 2) {
+			for (IDeclaration decl : declarations) {
+				checkDeclaration(decl);
+			}
+			return;
+		}
+
+		for (List<NRLError> declErrors : checkInParallel(declarations, false)) {
+			errors.addAll(declErrors);
+		}
+	}
+
+	/**
+	 * Check one declaration that is not a global variable, fragment or rule set.
+	 * 
+	 * @param decl the declaration
+	 * @since 1.4.18
+	 */
+	protected void checkDeclaration(IDeclaration decl) {
+		decl.accept(new ConstraintVisitorDispatcher(this));
+	}
+
+	/**
+	 * Create a type checker that checks declarations for this one when checking in parallel.
+	 * Every class that checks in parallel must override this method to return a new instance of
+	 * itself, copying any state that checking depends on. If the worker is not of the same class
+	 * as this type checker, declarations are checked on the calling thread instead. The type
+	 * mappings and type hierarchy are copied to the worker by the caller.
+	 * 
+	 * @return the worker
+	 * @since 1.4.18
+	 */
+	protected ConstraintTypeChecker createWorker() {
+		return new ConstraintTypeChecker();
+	}
+
+	/*
+	 * Return true if workers are of the class of this type checker, so that a subclass that does
+	 * not override createWorker is not checked by workers of its superclass.
+	 */
+	private boolean hasWorkers() {
+		ConstraintTypeChecker worker = createWorker();
+		return worker != null && worker.getClass() == getClass();
+	}
+
+	/*
+	 * Check the validation fragments one dependency level at a time, then add their errors in
+	 * dependency order, as if checked sequentially.
+	 */
+	private void checkFragmentLevels(ValidationFragmentDependencyProcessor dependencyProc) {
+		Map<IDeclaration, List<NRLError>> fragmentErrors =
+				new IdentityHashMap<IDeclaration, List<NRLError>>();
+		for (List<IDeclaration> level : dependencyProc.getLevels()) {
+			List<List<NRLError>> levelErrors = checkInParallel(level, true);
+			for (int i = 0; i < level.size(); i++) {
+				fragmentErrors.put(level.get(i), levelErrors.get(i));
+			}
+		}
+
+		for (IDeclaration decl : dependencyProc.getOrderedDeclarations()) {
+			errors.addAll(fragmentErrors.get(decl));
+		}
+	}
+
+	/*
+	 * Check declarations in chunks on the pool, each chunk by its own worker, and return the
+	 * errors of every declaration in list order.
+	 */
+	private List<List<NRLError>> checkInParallel(List<IDeclaration> declarations,
+			final boolean fragments) {
+		int chunks = Math.min(declarations.size(), checkThreads * CHUNKS_PER_THREAD);
+
+		List<Future<List<List<NRLError>>>> futures = new ArrayList<Future<List<List<NRLError>>>>();
+		List<ConstraintTypeChecker> workers = new ArrayList<ConstraintTypeChecker>(chunks);
+		for (int i = 0; i < chunks; i++) {
+			final List<IDeclaration> chunk = declarations.subList(i * declarations.size() / chunks,
+					(i + 1) * declarations.size() / chunks);
+			final ConstraintTypeChecker worker = createWorker();
+			worker.typeMappings = new ArrayList<ITypeMapping>(typeMappings);
+			worker.typeHierarchy = typeHierarchy;
+			workers.add(worker);
+
+			futures.add(executor.submit(new Callable<List<List<NRLError>>>() {
+				public List<List<NRLError>> call() {
+					return worker.checkChunk(chunk, fragments);
+				}
+			}));
+		}
+
+		List<List<NRLError>> result = new ArrayList<List<NRLError>>(declarations.size());
+		for (Future<List<List<NRLError>>> future : futures) {
+			result.addAll(getResult(future));
+		}
+		for (ConstraintTypeChecker worker : workers) {
+			typeCacheHits += worker.typeCacheHits;
+			typeCacheMisses += worker.typeCacheMisses;
+		}
+		return result;
+	}
+
+	/*
+	 * Check a chunk of declarations on a worker, collecting the errors of each separately.
+	 */
+	private List<List<NRLError>> checkChunk(List<IDeclaration> chunk, boolean fragments) {
+		resetTypeCache();
+		List<List<NRLError>> result = new ArrayList<List<NRLError>>(chunk.size());
+		for (IDeclaration decl : chunk) {
+			errors = new ArrayList<NRLError>();
+			if (fragments) {
 				decl.accept(new ConstraintVisitorDispatcher(this));
+			} else {
+				checkDeclaration(decl);
+			}
+			result.add(errors);
+		}
+		return result;
+	}
+
+	private static <T> T getResult(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while type checking", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
 			}
+			throw new IllegalStateException(cause);
 		}
 	}
 
@@ -373,8 +691,8 @@ public class ConstraintTypeChecker implements INRLConstraintDetailVisitor, IType
 
 			if (leftTarget != null && rightTarget != null) {
 				if (leftTarget.isEnumeration() && rightTarget.isEnumeration()) {
-					if (!leftTarget.isAssignableFrom(rightTarget)
-							&& !rightTarget.isAssignableFrom(leftTarget)) {
+					if (!isAssignableFrom(leftTarget, rightTarget)
+							&& !isAssignableFrom(rightTarget, leftTarget)) {
 						error(IStatusCode.BINARY_PREDICATE_ARGUMENT_INCOMPATIBLE, predicate,
 								"Enumeration values can only be compared to the same enumeration type.");
 					} else
@@ -425,9 +743,7 @@ public class ConstraintTypeChecker implements INRLConstraintDetailVisitor, IType
 			return;
 		}
 
-		NRLDataType result = new NRLDataType(index.getCollection().getNRLDataType());
-		result.setCollection(false);
-		index.setNRLDataType(result);
+		index.setNRLDataType(index.getCollection().getNRLDataType().withCollection(false));
 	}
 
 	public void visitCompoundReportAfter(ICompoundReport report) {
@@ -454,7 +770,7 @@ public class ConstraintTypeChecker implements INRLConstraintDetailVisitor, IType
 					"Cannot cast variables that have been assigned a complex expression");
 		}
 
-		if (source != null && !source.isAssignableFrom(expr.getTargetType())) {
+		if (source != null && !isAssignableFrom(source, expr.getTargetType())) {
 			error(IStatusCode.CAST_REQUIRES_SUBTYPE, expr, "Cannot convert from "
 					+ source.getName() + " to " + expr.getTargetType().getName()
 					+ ": not a sub-type.");
@@ -640,7 +956,7 @@ public class ConstraintTypeChecker implements INRLConstraintDetailVisitor, IType
 				IModelReference idReference = (IModelReference) id;
 				IModelReference exprReference = (IModelReference) expression;
 
-				if (!exprReference.getTarget().isAssignableFrom(idReference.getTarget())) {
+				if (!isAssignableFrom(exprReference.getTarget(), idReference.getTarget())) {
 					error(IStatusCode.IS_IN_EXPRESSION_INCOMPATIBLE, expression,
 							"Enumeration values can only be compared to the same enumeration type.");
 				} else
@@ -714,7 +1030,7 @@ public class ConstraintTypeChecker implements INRLConstraintDetailVisitor, IType
 					"Cannot check collection types");
 		}
 
-		if (check != null && !check.isAssignableFrom(subType.getTargetType())) {
+		if (check != null && !isAssignableFrom(check, subType.getTargetType())) {
 			error(IStatusCode.CAST_REQUIRES_SUBTYPE, subType, "Cannot convert from "
 					+ check.getName() + " to " + subType.getTargetType().getName()
 					+ ": not a sub-type.");
@@ -753,7 +1069,7 @@ public class ConstraintTypeChecker implements INRLConstraintDetailVisitor, IType
 				if (var.isBoundToElement()) {
 					target = var.getBoundElement();
 				} else {
-					ref.setNRLDataType(new NRLDataType(var.getBoundExpression().getNRLDataType()));
+					ref.setNRLDataType(var.getBoundExpression().getNRLDataType());
 					return;
 				}
 			}
@@ -771,21 +1087,17 @@ public class ConstraintTypeChecker implements INRLConstraintDetailVisitor, IType
 
 		if (target instanceof IModelElement) {
 			IModelElement targetElement = (IModelElement) target;
-			NRLDataType type = new NRLDataType(getType(targetElement));
+			NRLDataType type = getType(targetElement);
 
 			if (type.getType() != Unknown) {
 				if (targetElement instanceof IClassifier && type.getType() != Unknown
 						&& ((IClassifier) targetElement).isEnumeration()) {
-					type.setEnumeration(true);
+					type = type.withEnumeration(true);
 				}
-				type.setCollection(collection);
-				ref.setNRLDataType(type);
+				ref.setNRLDataType(type.withCollection(collection));
 			} else if (target instanceof IClassifier && !(target instanceof IDataType)) {
-				type = new NRLDataType(Element);
-				type.setCollection(collection);
-				if (((IClassifier) target).isEnumeration())
-					type.setEnumeration(true);
-				ref.setNRLDataType(type);
+				ref.setNRLDataType(NRLDataType.get(Element, collection,
+						((IClassifier) target).isEnumeration()));
 			}
 		}
 
@@ -935,7 +1247,7 @@ public class ConstraintTypeChecker implements INRLConstraintDetailVisitor, IType
 						&& paramExpr.getNRLDataType().getType() == Element
 						&& paramExpr instanceof IModelReference
 						&& ((IModelReference) paramExpr).getTarget() != null
-						&& !param.getType().isAssignableFrom(
+						&& !isAssignableFrom(param.getType(),
 								((IModelReference) paramExpr).getTarget())) {
 					error(IStatusCode.OPERATOR_TYPE_MISMATCH, paramExpr,
 							"Type mismatch for parameter '" + param.getName() + "' of operator '"
@@ -990,11 +1302,9 @@ public class ConstraintTypeChecker implements INRLConstraintDetailVisitor, IType
 		}
 
 		if (expr.isSingleElementSelection()) {
-			NRLDataType resultType = new NRLDataType(expr.getModelReference().getNRLDataType());
-			resultType.setCollection(false);
-			expr.setNRLDataType(resultType);
+			expr.setNRLDataType(expr.getModelReference().getNRLDataType().withCollection(false));
 		} else {
-			expr.setNRLDataType(new NRLDataType(expr.getModelReference().getNRLDataType()));
+			expr.setNRLDataType(expr.getModelReference().getNRLDataType());
 		}
 	}
 
@@ -1019,7 +1329,7 @@ public class ConstraintTypeChecker implements INRLConstraintDetailVisitor, IType
 
 					// Must be subclass if both are elements
 					if (passed instanceof IModelReference) {
-						if (!declaredType.isAssignableFrom(((IModelReference) passed).getTarget())) {
+						if (!isAssignableFrom(declaredType, ((IModelReference) passed).getTarget())) {
 							error(IStatusCode.FRAGMENT_PARAMETER_MISMATCH, passed,
 									"Property argument of type "
 											+ ((IModelReference) passed).getTarget().getName()
@@ -177,7 +177,7 @@ public class TypeMapping implements ITypeMapping {
 		NRLDataType type = getType(attr.getType());
 		if (type.getType() != Type.Unknown
 				&& (attr.getMaxOccurs() > 1 || attr.getMaxOccurs() == IAttribute.UNBOUNDED)) {
-			type.setCollection(true);
+			type = type.withCollection(true);
 		}
 
 		return type;
@@ -198,9 +198,9 @@ public class TypeMapping implements ITypeMapping {
 
 		// Found? Return the type
 		if (entry != null) {
-			NRLDataType type = new NRLDataType(entry.getType());
+			NRLDataType type = entry.getType();
 			if ((element instanceof IClassifier) && ((IClassifier) element).isEnumeration()) {
-				type.setEnumeration(true);
+				type = type.withEnumeration(true);
 			}
 			return type;
 		}
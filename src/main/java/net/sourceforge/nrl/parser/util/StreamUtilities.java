@@ -0,0 +1,232 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006,
+ * Copyright (c) Christian Nentwich. The Initial Developer of the
+ * Original Code is Christian Nentwich. Portions created by contributors
+ * identified in the NOTICES file are Copyright (c) the contributors.
+ * All Rights Reserved.
+ */
+package net.sourceforge.nrl.parser.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Utilities for reading NRL and operator files into memory. Content is read
+ * into a single character buffer that is shared, as a {@link CharSequence},
+ * by the preprocessor, lexer and operator loaders, rather than being copied
+ * into intermediate strings.
+ */
+public class StreamUtilities {
+
+	/** The character set used for files if no other is set: UTF-8 */
+	public static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+	private static final int INITIAL_BUFFER_SIZE = 8192;
+
+	/**
+	 * Read a byte stream to the end, decoding it with a character set. The
+	 * stream is not closed.
+	 *
+	 * @param stream the stream
+	 * @param charset the character set, {@link #DEFAULT_CHARSET} if null
+	 * @return the content
+	 * @throws IOException
+	 */
+	public static CharBuffer read(InputStream stream, Charset charset) throws IOException {
+		return read(new InputStreamReader(stream, charset == null ? DEFAULT_CHARSET : charset));
+	}
+
+	/**
+	 * Read a reader to the end. This blocks until the reader reports the end
+	 * of the stream, so it is safe for slow streams and streams that return
+	 * partial reads. The reader is not closed.
+	 *
+	 * @param reader the reader
+	 * @return the content, backed by the read buffer
+	 * @throws IOException
+	 */
+	public static CharBuffer read(Reader reader) throws IOException {
+		char[] buffer = new char[INITIAL_BUFFER_SIZE];
+		int length = 0;
+
+		while (true) {
+			if (length == buffer.length) {
+				char[] larger = new char[buffer.length * 2];
+				System.arraycopy(buffer, 0, larger, 0, length);
+				buffer = larger;
+			}
+
+			int count = reader.read(buffer, length, buffer.length - length);
+			if (count == -1)
+				break;
+			length += count;
+		}
+
+		return CharBuffer.wrap(buffer, 0, length);
+	}
+
+	/**
+	 * Read a byte stream to the end without decoding it, for content such as
+	 * XML that declares its own encoding. The stream is not closed.
+	 *
+	 * @param stream the stream
+	 * @return the content, backed by the read buffer
+	 * @throws IOException
+	 */
+	public static ByteBuffer readBytes(InputStream stream) throws IOException {
+		byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+		int length = 0;
+
+		while (true) {
+			if (length == buffer.length) {
+				byte[] larger = new byte[buffer.length * 2];
+				System.arraycopy(buffer, 0, larger, 0, length);
+				buffer = larger;
+			}
+
+			int count = stream.read(buffer, length, buffer.length - length);
+			if (count == -1)
+				break;
+			length += count;
+		}
+
+		return ByteBuffer.wrap(buffer, 0, length);
+	}
+
+	/**
+	 * Return an input stream over the remaining bytes of a buffer returned by
+	 * {@link #readBytes(InputStream)}, without copying them.
+	 *
+	 * @param content the content
+	 * @return an input stream
+	 */
+	public static InputStream newInputStream(ByteBuffer content) {
+		return new ByteArrayInputStream(content.array(), content.arrayOffset()
+				+ content.position(), content.remaining());
+	}
+
+	/**
+	 * Return a reader over a character sequence, without copying it.
+	 *
+	 * @param content the content
+	 * @return a reader
+	 */
+	public static Reader newReader(CharSequence content) {
+		return new CharSequenceReader(content);
+	}
+
+	/**
+	 * Return the position of the first occurrence of a string in a character
+	 * sequence, searching from a start position.
+	 *
+	 * @param content the sequence to search
+	 * @param str the string to find
+	 * @param fromIndex the position to start at
+	 * @return the position, or -1 if not found
+	 */
+	public static int indexOf(CharSequence content, String str, int fromIndex) {
+		if (content instanceof String)
+			return ((String) content).indexOf(str, fromIndex);
+
+		int last = content.length() - str.length();
+		for (int i = fromIndex < 0 ? 0 : fromIndex; i <= last; i++) {
+			int j = 0;
+			while (j < str.length() && content.charAt(i + j) == str.charAt(j))
+				j++;
+			if (j == str.length())
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the position of the first occurrence of a byte sequence in the
+	 * remaining bytes of a buffer, searching from a start position.
+	 *
+	 * @param content the buffer to search
+	 * @param bytes the bytes to find
+	 * @param fromIndex the position to start at, relative to the buffer
+	 *            position
+	 * @return the position relative to the buffer position, or -1 if not found
+	 */
+	public static int indexOf(ByteBuffer content, byte[] bytes, int fromIndex) {
+		int start = content.position();
+		int last = content.remaining() - bytes.length;
+		for (int i = fromIndex < 0 ? 0 : fromIndex; i <= last; i++) {
+			int j = 0;
+			while (j < bytes.length && content.get(start + i + j) == bytes[j])
+				j++;
+			if (j == bytes.length)
+				return i;
+		}
+		return -1;
+	}
+
+	/*
+	 * A reader over a character sequence.
+	 */
+	private static class CharSequenceReader extends Reader {
+
+		private CharSequence content;
+
+		private int pos = 0;
+
+		CharSequenceReader(CharSequence content) {
+			this.content = content;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length) throws IOException {
+			if (content == null)
+				throw new IOException("Reader closed");
+			if (length == 0)
+				return 0;
+			if (pos >= content.length())
+				return -1;
+
+			int count = Math.min(length, content.length() - pos);
+			if (content instanceof String) {
+				((String) content).getChars(pos, pos + count, buffer, offset);
+			} else if (content instanceof StringBuffer) {
+				((StringBuffer) content).getChars(pos, pos + count, buffer, offset);
+			} else if (content instanceof CharBuffer) {
+				CharBuffer source = ((CharBuffer) content).duplicate();
+				source.position(source.position() + pos);
+				source.get(buffer, offset, count);
+			} else {
+				for (int i = 0; i < count; i++)
+					buffer[offset + i] = content.charAt(pos + i);
+			}
+			pos += count;
+			return count;
+		}
+
+		@Override
+		public boolean ready() throws IOException {
+			if (content == null)
+				throw new IOException("Reader closed");
+			return true;
+		}
+
+		@Override
+		public void close() {
+			content = null;
+		}
+	}
+}
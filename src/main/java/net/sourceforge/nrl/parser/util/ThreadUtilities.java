@@ -0,0 +1,57 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006,
+ * Copyright (c) Christian Nentwich. The Initial Developer of the
+ * Original Code is Christian Nentwich. Portions created by contributors
+ * identified in the NOTICES file are Copyright (c) the contributors.
+ * All Rights Reserved.
+ */
+package net.sourceforge.nrl.parser.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utilities for the thread pools that parse, resolve and type check rule files in parallel.
+ * 
+ * @since 1.4.18
+ */
+public class ThreadUtilities {
+
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	/**
+	 * Create a thread pool that can be kept for the lifetime of its owner without being shut
+	 * down. Its threads are daemon threads, and end after a minute without work, so an unused
+	 * pool holds no threads. When all threads are busy, further tasks run on the thread that
+	 * submits them, so the pool can be shared by several callers that wait for their own tasks.
+	 * 
+	 * @param threads the maximum number of threads
+	 * @param name the prefix of the thread names
+	 * @return the pool
+	 */
+	public static ExecutorService newSharedPool(int threads, final String name) {
+		final AtomicInteger count = new AtomicInteger();
+		return new ThreadPoolExecutor(0, Math.max(1, threads), KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser;
+
+import static net.sourceforge.nrl.parser.NRLBatchCompilerTest.getBatch;
+
+import java.net.URI;
+import java.util.List;
+
+import net.sourceforge.nrl.parser.resolver.StandaloneResolverFactory;
+import net.sourceforge.nrl.parser.type.ActionTypeChecker;
+import net.sourceforge.nrl.parser.type.DefaultTypeMappingFactory;
+
+import org.junit.Test;
+
+/**
+ * Measure the throughput of the batch compiler against the sequential parser. Run with the
+ * <code>benchmarks</code> profile.
+ */
+public class NRLBatchCompilerBenchmark {
+
+	private static final int COPIES = 40;
+
+	@Test
+	public void benchmarkBatch() throws Exception {
+		List<URI> uris = getBatch(COPIES);
+		StandaloneResolverFactory factory = new StandaloneResolverFactory();
+
+		// Warm up, and load the models into the shared cache
+		new NRLBatchCompiler(factory, 1).compile(getBatch(1));
+
+		long start = System.nanoTime();
+		for (URI uri : uris) {
+			NRLParser parser = new NRLParser();
+			parser.parse(uri, factory);
+			if (parser.getErrors().isEmpty()) {
+				ActionTypeChecker typeChecker = new ActionTypeChecker();
+				typeChecker.addTypeMapping(DefaultTypeMappingFactory.getDefaultTypeMapping());
+				typeChecker.check(parser.getRuleFile());
+			}
+		}
+		long sequential = System.nanoTime() - start;
+
+		NRLBatchCompiler compiler = new NRLBatchCompiler(factory);
+		start = System.nanoTime();
+		List<NRLCompilationResult> results = compiler.compile(uris);
+		long batch = System.nanoTime() - start;
+
+		long[] phases = new long[4];
+		for (NRLCompilationResult result : results) {
+			phases[0] += result.getParseTime();
+			phases[1] += result.getOperatorResolutionTime();
+			phases[2] += result.getModelResolutionTime();
+			phases[3] += result.getTypeCheckTime();
+		}
+
+		System.out.println(String.format("Compiled %d files: sequential %d ms, batch (%d threads) "
+				+ "%d ms, speedup %.2fx; parse %d ms, operators %d ms, models %d ms, "
+				+ "type check %d ms", uris.size(), sequential / 1000000, compiler.getThreads(),
+				batch / 1000000, (double) sequential / batch, phases[0] / 1000000,
+				phases[1] / 1000000, phases[2] / 1000000, phases[3] / 1000000));
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sourceforge.nrl.parser.model.loader.IModelLoader;
+import net.sourceforge.nrl.parser.resolver.IResolverFactory;
+import net.sourceforge.nrl.parser.resolver.IURIResolver;
+import net.sourceforge.nrl.parser.resolver.ResolverException;
+import net.sourceforge.nrl.parser.resolver.StandaloneResolverFactory;
+import net.sourceforge.nrl.parser.type.ActionTypeChecker;
+import net.sourceforge.nrl.parser.type.DefaultTypeMappingFactory;
+
+import org.junit.Test;
+
+/**
+ * Test the batch compiler against the sequential parser.
+ */
+public class NRLBatchCompilerTest {
+
+	private static final String[] FILES = new String[] { "model-correct.nrl",
+			"model-and-operators-correct.nrl", "classpath-model-correct.nrl",
+			"classpath-operator-correct.nrl", "duplicate-rule.nrl", "type-check.nrl" };
+
+	static URI getURI(String fileName) {
+		return new File(NRLParserTest.TEST_DIR.getAbsolutePath(), "src/test/resources/parsing/"
+				+ fileName).toURI();
+	}
+
+	static List<URI> getBatch(int copies) {
+		List<URI> uris = new ArrayList<URI>();
+		for (int i = 0; i < copies; i++) {
+			for (String file : FILES) {
+				uris.add(getURI(file));
+			}
+		}
+		return uris;
+	}
+
+	@Test
+	public void testCompile() throws Exception {
+		NRLBatchCompiler compiler = new NRLBatchCompiler(new StandaloneResolverFactory(), 4);
+		List<NRLCompilationResult> results = compiler.compile(getBatch(3));
+		assertEquals(FILES.length * 3, results.size());
+
+		for (int i = 0; i < results.size(); i++) {
+			String file = FILES[i % FILES.length];
+			NRLCompilationResult result = results.get(i);
+			assertEquals(getURI(file), result.getURI());
+			assertNull(result.getException());
+			assertTrue(result.getParseTime() > 0);
+			assertEquals(result.getParseTime() + result.getOperatorResolutionTime()
+					+ result.getModelResolutionTime() + result.getTypeCheckTime(), result
+					.getTotalTime());
+
+			// Same outcome as the sequential parser and type checker
+			NRLParser parser = new NRLParser();
+			parser.parse(getURI(file), new StandaloneResolverFactory());
+			List<NRLError> expected = new ArrayList<NRLError>(parser.getErrors());
+			if (expected.isEmpty()) {
+				ActionTypeChecker typeChecker = new ActionTypeChecker();
+				typeChecker.addTypeMapping(DefaultTypeMappingFactory.getDefaultTypeMapping());
+				expected.addAll(typeChecker.check(parser.getRuleFile()));
+			}
+			assertEquals(file, expected.toString(), result.getErrors().toString());
+			assertEquals(file, expected.isEmpty(), result.isSuccessful());
+		}
+
+		assertTrue(results.get(0).isSuccessful());
+		assertNotNull(results.get(1).getRuleFile().getRuleById("expr-1"));
+		assertEquals(1, results.get(1).getOperators().size());
+		assertFalse(results.get(4).isSuccessful());
+		assertNull(results.get(4).getRuleFile());
+	}
+
+	@Test
+	public void testResolutionThreads() throws Exception {
+		List<NRLCompilationResult> expected = new NRLBatchCompiler(
+				new StandaloneResolverFactory(), 2).compile(getBatch(2));
+
+		NRLBatchCompiler compiler = new NRLBatchCompiler(new StandaloneResolverFactory(), 2);
+		compiler.setResolutionThreads(4);
+		assertEquals(4, compiler.getResolutionThreads());
+		List<NRLCompilationResult> results = compiler.compile(getBatch(2));
+
+		assertEquals(expected.size(), results.size());
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals(expected.get(i).getErrors().toString(), results.get(i).getErrors()
+					.toString());
+		}
+	}
+
+	@Test
+	public void testCheckThreads() throws Exception {
+		List<NRLCompilationResult> expected = new NRLBatchCompiler(
+				new StandaloneResolverFactory(), 2).compile(getBatch(2));
+
+		NRLBatchCompiler compiler = new NRLBatchCompiler(new StandaloneResolverFactory(), 2);
+		compiler.setCheckThreads(4);
+		assertEquals(4, compiler.getCheckThreads());
+		List<NRLCompilationResult> results = compiler.compile(getBatch(2));
+
+		assertEquals(expected.size(), results.size());
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals(expected.get(i).getErrors().toString(), results.get(i).getErrors()
+					.toString());
+		}
+	}
+
+	@Test
+	public void testOperatorsLoadedOnce() throws Exception {
+		CountingResolverFactory factory = new CountingResolverFactory();
+		NRLBatchCompiler compiler = new NRLBatchCompiler(factory, 8);
+		List<NRLCompilationResult> results = compiler.compile(getBatch(5));
+
+		// Operator files are shared between the files of a batch
+		assertTrue(results.get(1).getOperators().get(0) == results.get(FILES.length + 1)
+				.getOperators().get(0));
+
+		// One read per NRL file, and one per distinct operator file
+		for (NRLCompilationResult result : results) {
+			assertNull(result.getException());
+		}
+		assertEquals(FILES.length * 5, factory.nrlReads.get());
+		assertTrue(factory.operatorReads.get() > 0);
+		assertTrue(factory.operatorReads.get() <= 2);
+	}
+
+	@Test
+	public void testMissingFile() throws Exception {
+		List<URI> uris = new ArrayList<URI>();
+		uris.add(getURI("does-not-exist.nrl"));
+		uris.add(getURI("model-correct.nrl"));
+
+		List<NRLCompilationResult> results = new NRLBatchCompiler(new StandaloneResolverFactory())
+				.compile(uris);
+		assertNotNull(results.get(0).getException());
+		assertFalse(results.get(0).isSuccessful());
+		assertTrue(results.get(1).isSuccessful());
+	}
+
+	/*
+	 * Counts reads of NRL and operator files.
+	 */
+	private static class CountingResolverFactory implements IResolverFactory {
+
+		private final StandaloneResolverFactory delegate = new StandaloneResolverFactory();
+
+		private final AtomicInteger nrlReads = new AtomicInteger();
+
+		private final AtomicInteger operatorReads = new AtomicInteger();
+
+		public IModelLoader createModelLoader() {
+			return delegate.createModelLoader();
+		}
+
+		public IURIResolver createURIResolver() {
+			final IURIResolver resolver = delegate.createURIResolver();
+			return new IURIResolver() {
+				public InputStream openStream(URI uri) throws ResolverException {
+					nrlReads.incrementAndGet();
+					return resolver.openStream(uri);
+				}
+
+				public InputStream openStream(URI baseURI, URI resourceURI)
+						throws ResolverException {
+					operatorReads.incrementAndGet();
+					return resolver.openStream(baseURI, resourceURI);
+				}
+
+				public InputStream openStream(URI baseURI, String resourceURI)
+						throws ResolverException {
+					return resolver.openStream(baseURI, resourceURI);
+				}
+
+				public boolean isURIResolvable(URI uri) {
+					return resolver.isURIResolvable(uri);
+				}
+
+				public boolean isURIResolvable(URI baseURI, URI resourceURI) {
+					return resolver.isURIResolvable(baseURI, resourceURI);
+				}
+
+				public boolean isURIResolvable(URI baseURI, String resourceURI) {
+					return resolver.isURIResolvable(baseURI, resourceURI);
+				}
+			};
+		}
+	}
+}
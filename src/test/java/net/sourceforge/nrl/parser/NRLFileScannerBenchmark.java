@@ -0,0 +1,86 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import net.sourceforge.nrl.parser.ast.IRuleFile;
+
+import org.junit.Test;
+
+/**
+ * Compare the speed of the file scanner with a full parse. The scanner must be at least ten times
+ * faster. Run with the <code>benchmarks</code> profile.
+ */
+public class NRLFileScannerBenchmark {
+
+	private static final int RULES = 5000;
+
+	private static final int RUNS = 5;
+
+	private static final double MIN_SPEEDUP = 10;
+
+	/**
+	 * Return a rule file with a model reference and a number of validation rules.
+	 *
+	 * @param rules the number of rules
+	 * @return the source
+	 */
+	static String createSource(int rules) {
+		StringBuffer content = new StringBuffer("Model \"basicmodel.uml2\"\n");
+		for (int i = 0; i < rules; i++) {
+			content.append("Context: Trade Validation Rule \"r" + i + "\" ");
+			content.append("If tradeDate of tradeHeader is present then ");
+			content.append("tradeDate of tradeHeader is before '2005-12-30' else ");
+			content.append("there is no tradeHeader where tradeDate = 'c'\n");
+		}
+		return content.toString();
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void benchmarkScan() throws Exception {
+		String source = createSource(RULES);
+		NRLFileScanner scanner = new NRLFileScanner();
+
+		// Best of several runs, after a warm up
+		long parse = Long.MAX_VALUE;
+		long scan = Long.MAX_VALUE;
+		for (int i = 0; i <= RUNS; i++) {
+			long start = System.nanoTime();
+			IRuleFile ruleFile = new NRLParser().parse(new StringReader(source));
+			long time = System.nanoTime() - start;
+			if (i > 0)
+				parse = Math.min(parse, time);
+
+			start = System.nanoTime();
+			NRLFileSummary summary = scanner.scan(source);
+			time = System.nanoTime() - start;
+			if (i > 0)
+				scan = Math.min(scan, time);
+
+			assertEquals(ruleFile.getDeclarations().size(), summary.getDeclarations().size());
+		}
+
+		double speedup = (double) parse / scan;
+		System.out.println(String.format("Outline of %d declarations: full parse %d ms, "
+				+ "scan %d ms, speedup %.1fx", RULES, parse / 1000000, scan / 1000000, speedup));
+		assertTrue(String.format("Scan is only %.1fx faster than a full parse", speedup),
+				speedup >= MIN_SPEEDUP);
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sourceforge.nrl.parser.NRLFileSummary.Entry;
+import net.sourceforge.nrl.parser.NRLFileSummary.Kind;
+import net.sourceforge.nrl.parser.ast.IDeclaration;
+import net.sourceforge.nrl.parser.ast.IRuleFile;
+import net.sourceforge.nrl.parser.ast.IRuleSetDeclaration;
+import net.sourceforge.nrl.parser.ast.impl.Antlr3NRLTreeAdaptor;
+import net.sourceforge.nrl.parser.ast.impl.CompactTokenStream;
+import net.sourceforge.nrl.parser.ast.impl.NRLActionParser;
+import net.sourceforge.nrl.parser.ast.impl.RuleFileImpl;
+import net.sourceforge.nrl.parser.preprocessing.ReferencePreprocessor;
+import net.sourceforge.nrl.parser.resolver.StandaloneResolverFactory;
+import net.sourceforge.nrl.parser.util.StreamUtilities;
+
+import org.junit.Test;
+
+/**
+ * Test the lexer-only file scanner against a full parse.
+ */
+public class NRLFileScannerTest {
+
+	@Test
+	public void testScan() {
+		NRLFileSummary summary = new NRLFileScanner().scan("Model \"model.uml\"\n"
+				+ "Operators \"operators.xml\"\n"
+				+ "Context: Trade Validation Rule \"r1\" x = 1\n"
+				+ "Validation Fragment \"frag\" x = 1\n"
+				+ "Rule Set \"set\"\n"
+				+ "Context: No Action Rule \"a1\" Set x to 1\n"
+				+ "Validation Rule");
+
+		assertEquals(1, summary.getModelFileReferences().size());
+		Entry model = summary.getModelFileReferences().get(0);
+		assertEquals(Kind.MODEL_FILE, model.getKind());
+		assertEquals("model.uml", model.getName());
+		assertEquals(0, model.getOffset());
+		assertEquals(1, model.getLine());
+
+		assertEquals("operators.xml", summary.getOperatorFileReferences().get(0).getName());
+
+		// The last keyword has no name, and is ignored
+		assertEquals(Arrays.asList("r1", "frag", "set", "a1"), summary.getDeclarationIds());
+		Entry rule = summary.getDeclarations().get(0);
+		assertEquals(Kind.VALIDATION_RULE, rule.getKind());
+		assertEquals(3, rule.getLine());
+		assertEquals(15, rule.getColumn());
+		assertEquals(summary.getDeclarations().get(1).getOffset() - 27, rule.getOffset());
+		assertEquals(Kind.VALIDATION_FRAGMENT, summary.getDeclarations().get(1).getKind());
+		assertEquals(Kind.RULE_SET, summary.getDeclarations().get(2).getKind());
+		assertEquals(Kind.ACTION_RULE, summary.getDeclarations().get(3).getKind());
+		assertTrue(summary.getErrors().isEmpty());
+	}
+
+	@Test
+	public void testScanURI() throws Exception {
+		NRLFileSummary summary = new NRLFileScanner().scan(new File(NRLParserTest.TEST_DIR
+				.getAbsolutePath(), "src/test/resources/parsing/model-and-operators-correct.nrl")
+				.toURI(), new StandaloneResolverFactory());
+
+		assertEquals(1, summary.getModelFileReferences().size());
+		assertEquals(1, summary.getOperatorFileReferences().size());
+		assertTrue(summary.getDeclarationIds().contains("expr-1"));
+	}
+
+	@Test
+	public void testIllegalCharacter() {
+		NRLFileSummary summary = new NRLFileScanner().scan("Model \"x\" Set @");
+		assertEquals(1, summary.getErrors().size());
+		assertEquals("x", summary.getModelFileReferences().get(0).getName());
+	}
+
+	@Test
+	public void testIllegalCharacterAfterDeclaration() {
+		NRLFileSummary summary = new NRLFileScanner().scan("Model \"model.uml\"\n"
+				+ "Context: Trade Validation Rule \"r1\" x = 1 @ 2\n"
+				+ "Context: Trade Validation Rule \"r2\" x = # 1\n"
+				+ "Rule Set \"set\"\n");
+
+		assertEquals(2, summary.getErrors().size());
+		assertEquals(2, summary.getErrors().get(0).getLine());
+		assertEquals(3, summary.getErrors().get(1).getLine());
+		assertEquals("model.uml", summary.getModelFileReferences().get(0).getName());
+		assertEquals(Arrays.asList("r1", "r2", "set"), summary.getDeclarationIds());
+		assertEquals(3, summary.getDeclarations().get(1).getLine());
+	}
+
+	@Test
+	public void testFragmentReferences() {
+		String content = "Validation Fragment \"a trader's deal\" x = 1\n"
+				+ "Context: Trade Validation Rule \"r1\" a trader's deal and a trader's deal\n"
+				+ "Context: Trade Validation Rule \"r2\" a trader's deal\n";
+		NRLFileSummary summary = new NRLFileScanner().scan(content);
+
+		// Without brackets, the quote in the reference would be a lexical error
+		assertTrue(summary.getErrors().isEmpty());
+		assertEquals(Arrays.asList("a trader's deal", "r1", "r2"), summary.getDeclarationIds());
+
+		Entry rule = summary.getDeclarations().get(2);
+		assertEquals(3, rule.getLine());
+		assertEquals(15, rule.getColumn());
+		assertEquals(content.lastIndexOf("Validation Rule"), rule.getOffset());
+	}
+
+	@Test
+	public void testScanCorpus() throws Exception {
+		for (File file : new File("src/test/resources/parsing").listFiles()) {
+			if (!file.getName().endsWith(".nrl") || file.getName().equals("illegal-char.nrl"))
+				continue;
+
+			FileReader reader = new FileReader(file);
+			CharSequence content;
+			try {
+				content = StreamUtilities.read(reader);
+			} finally {
+				reader.close();
+			}
+
+			NRLActionParser parser = new NRLActionParser(new CompactTokenStream(
+					new ReferencePreprocessor().process(content)));
+			parser.setTreeAdaptor(new Antlr3NRLTreeAdaptor());
+			Object tree = parser.fileBody().getTree();
+			if (parser.hasErrors())
+				continue;
+			IRuleFile ruleFile = (RuleFileImpl) tree;
+
+			List<String> expected = new ArrayList<String>();
+			List<String> actual = new ArrayList<String>();
+			for (IDeclaration decl : ruleFile.getDeclarations())
+				expected.add(decl.getId() + "@" + decl.getLine());
+			for (IRuleSetDeclaration decl : ruleFile.getRuleSetDeclarations())
+				expected.add(decl.getId() + "@" + decl.getLine());
+
+			NRLFileSummary summary = new NRLFileScanner().scan(content);
+			for (Entry entry : summary.getDeclarations()) {
+				if (entry.getKind() != Kind.RULE_SET)
+					actual.add(entry.getName() + "@" + entry.getLine());
+			}
+			for (Entry entry : summary.getDeclarations()) {
+				if (entry.getKind() == Kind.RULE_SET)
+					actual.add(entry.getName() + "@" + entry.getLine());
+			}
+
+			assertEquals(file.getName(), expected, actual);
+			assertEquals(file.getName(), ruleFile.getModelFileReferences().length, summary
+					.getModelFileReferences().size());
+			assertEquals(file.getName(), ruleFile.getOperatorFileReferences().length, summary
+					.getOperatorFileReferences().size());
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testScanGenerated() throws Exception {
+		String source = NRLFileScannerBenchmark.createSource(50);
+		IRuleFile ruleFile = new NRLParser().parse(new StringReader(source));
+		NRLFileSummary summary = new NRLFileScanner().scan(source);
+
+		List<String> expected = new ArrayList<String>();
+		for (IDeclaration decl : ruleFile.getDeclarations())
+			expected.add(decl.getId() + "@" + decl.getLine());
+		List<String> actual = new ArrayList<String>();
+		for (Entry entry : summary.getDeclarations())
+			actual.add(entry.getName() + "@" + entry.getLine());
+		assertEquals(expected, actual);
+	}
+}
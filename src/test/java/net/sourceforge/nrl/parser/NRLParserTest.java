@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.net.URI;
+import java.nio.charset.Charset;
 
 import net.sourceforge.nrl.parser.ast.IModelFileReference;
 import net.sourceforge.nrl.parser.ast.IModelReference;
@@ -36,6 +37,7 @@ import net.sourceforge.nrl.parser.model.ModelCollection;
 import net.sourceforge.nrl.parser.resolver.IResolverFactory;
 import net.sourceforge.nrl.parser.resolver.ResolverException;
 import net.sourceforge.nrl.parser.resolver.StandaloneResolverFactory;
+import net.sourceforge.nrl.parser.util.StreamUtilitiesTest.SlowInputStream;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -300,6 +302,30 @@ public class NRLParserTest extends NRLParserTestSupport {
 						.getRuleById("日本語")).getConstraint()).getLeft()).getOriginalString());
 	}
 
+	/*
+	 * Test parsing from streams that deliver a few bytes at a time, splitting multi-byte
+	 * characters, with the default and an explicit character set.
+	 */
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testParse_SlowStream() throws Exception {
+		NRLParser parser = new NRLParser();
+		IRuleFile ruleFile = parser.parse(new SlowInputStream(new FileInputStream(
+				"src/test/resources/parsing/utf8.nrl"), 3));
+		assertEquals(0, parser.getErrors().size());
+		assertNotNull(ruleFile);
+		assertNotNull(ruleFile.getRuleById("çãüäö"));
+		assertNotNull(ruleFile.getRuleById("日本語"));
+
+		parser.setCharset(Charset.forName("UTF-16"));
+		ruleFile = parser.parse(new SlowInputStream(new FileInputStream(
+				"src/test/resources/parsing/utf16.nrl"), 1));
+		assertEquals(0, parser.getErrors().size());
+		assertNotNull(ruleFile);
+		assertNotNull(ruleFile.getRuleById("çãüäö"));
+		assertNotNull(ruleFile.getRuleById("日本語"));
+	}
+
 	private boolean allModelsResolved(IModelFileReference[] models) {
 		for (IModelFileReference modelFileReference : models) {
 			if (!modelFileReference.isModelResolved()) {
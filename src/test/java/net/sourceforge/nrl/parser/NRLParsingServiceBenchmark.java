@@ -0,0 +1,67 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser;
+
+import static net.sourceforge.nrl.parser.NRLParsingServiceTest.FILES;
+import static net.sourceforge.nrl.parser.NRLParsingServiceTest.PARSES_PER_FILE;
+import static net.sourceforge.nrl.parser.NRLParsingServiceTest.THREADS;
+import static net.sourceforge.nrl.parser.NRLParsingServiceTest.getURI;
+import static net.sourceforge.nrl.parser.NRLParsingServiceTest.submit;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sourceforge.nrl.parser.resolver.StandaloneResolverFactory;
+
+import org.junit.Test;
+
+/**
+ * Measure the throughput of the parsing service on a thread pool. Run with the
+ * <code>benchmarks</code> profile.
+ */
+public class NRLParsingServiceBenchmark {
+
+	@Test
+	public void benchmarkThroughput() throws Exception {
+		NRLParsingService service = new NRLParsingService(new StandaloneResolverFactory());
+
+		// Warm up, and load the models into the shared cache
+		for (String file : FILES)
+			service.parse(getURI(file));
+
+		long start = System.nanoTime();
+		for (int i = 0; i < PARSES_PER_FILE; i++) {
+			for (String file : FILES)
+				service.parse(getURI(file));
+		}
+		long sequential = System.nanoTime() - start;
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			start = System.nanoTime();
+			for (Future<NRLParseResult> result : submit(executor, service))
+				result.get();
+			long parallel = System.nanoTime() - start;
+
+			System.out.println(String.format(
+					"Parsed %d files: sequential %d ms, parallel (%d threads) %d ms, speedup %.2fx",
+					PARSES_PER_FILE * FILES.length, sequential / 1000000, THREADS,
+					parallel / 1000000, (double) sequential / parallel));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sourceforge.nrl.parser.model.TypeHierarchyIndex;
+import net.sourceforge.nrl.parser.resolver.StandaloneResolverFactory;
+import net.sourceforge.nrl.parser.util.StreamUtilities;
+
+import org.junit.Test;
+
+/**
+ * Test the thread-safe parsing service.
+ */
+public class NRLParsingServiceTest {
+
+	static final String[] FILES = new String[] { "model-correct.nrl",
+			"model-and-operators-correct.nrl", "classpath-model-correct.nrl",
+			"classpath-operator-correct.nrl", "duplicate-rule.nrl" };
+
+	static final int THREADS = 8;
+
+	static final int PARSES_PER_FILE = 40;
+
+	static URI getURI(String fileName) {
+		return new File(NRLParserTest.TEST_DIR.getAbsolutePath(), "src/test/resources/parsing/"
+				+ fileName).toURI();
+	}
+
+	@Test
+	public void testParse() throws Exception {
+		NRLParsingService service = new NRLParsingService(new StandaloneResolverFactory());
+		NRLParseResult result = service.parse(getURI("model-and-operators-correct.nrl"));
+
+		assertTrue(result.isSuccessful());
+		assertEquals(0, result.getErrors().size());
+		assertNotNull(result.getRuleFile().getRuleById("expr-1"));
+		assertEquals("Trade", result.getRuleFile().getRuleById("expr-1").getContext().getName());
+		assertEquals(1, result.getModels().getModelPackages().length);
+		assertEquals(1, result.getOperators().size());
+
+		try {
+			result.getErrors().add(null);
+			fail("Errors should be unmodifiable");
+		} catch (UnsupportedOperationException e) {
+		}
+		try {
+			result.getOperators().clear();
+			fail("Operators should be unmodifiable");
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+
+	@Test
+	public void testParseWithErrors() throws Exception {
+		NRLParsingService service = new NRLParsingService(new StandaloneResolverFactory());
+		NRLParseResult result = service.parse(getURI("duplicate-rule.nrl"));
+
+		assertFalse(result.isSuccessful());
+		assertNull(result.getRuleFile());
+		assertNull(result.getModels());
+		assertEquals(0, result.getOperators().size());
+		assertTrue(result.getErrors().size() > 0);
+
+		// The same errors as the single-threaded parser
+		NRLParser parser = new NRLParser();
+		parser.parse(getURI("duplicate-rule.nrl"), new StandaloneResolverFactory());
+		assertEquals(parser.getErrors().toString(), result.getErrors().toString());
+	}
+
+	@Test
+	public void testFusedPasses() throws Exception {
+		NRLParsingService service = new NRLParsingService(new StandaloneResolverFactory());
+		NRLParsingService fused = new NRLParsingService(new StandaloneResolverFactory());
+		fused.setFusingPasses(true);
+		assertFalse(service.isFusingPasses());
+		assertTrue(fused.isFusingPasses());
+
+		for (String file : FILES) {
+			assertEquals(file, describe(service.parse(getURI(file))), describe(fused
+					.parse(getURI(file))));
+		}
+	}
+
+	@Test
+	public void testParseThreads() throws Exception {
+		NRLParsingService service = new NRLParsingService(new StandaloneResolverFactory());
+		NRLParsingService parallel = new NRLParsingService(new StandaloneResolverFactory());
+		parallel.setParseThreads(THREADS);
+		assertEquals(1, service.getParseThreads());
+		assertEquals(THREADS, parallel.getParseThreads());
+
+		for (String file : FILES) {
+			assertEquals(file, describe(service.parse(getURI(file))), describe(parallel
+					.parse(getURI(file))));
+		}
+	}
+
+	@Test
+	public void testSetters() {
+		NRLParsingService service = new NRLParsingService(new StandaloneResolverFactory());
+		assertEquals(StreamUtilities.DEFAULT_CHARSET, service.getCharset());
+		assertFalse(service.isMemoizing());
+
+		service.setCharset(Charset.forName("ISO-8859-1"));
+		service.setMemoizing(true);
+		service.setParseThreads(0);
+		assertEquals(Charset.forName("ISO-8859-1"), service.getCharset());
+		assertTrue(service.isMemoizing());
+		assertEquals(1, service.getParseThreads());
+
+		service.setCharset(null);
+		assertEquals(StreamUtilities.DEFAULT_CHARSET, service.getCharset());
+	}
+
+	@Test
+	public void testResolutionThreads() throws Exception {
+		NRLParsingService service = new NRLParsingService(new StandaloneResolverFactory());
+		NRLParsingService parallel = new NRLParsingService(new StandaloneResolverFactory());
+		parallel.setResolutionThreads(THREADS);
+		assertEquals(1, service.getResolutionThreads());
+		assertEquals(THREADS, parallel.getResolutionThreads());
+
+		for (String file : FILES) {
+			assertEquals(file, describe(service.parse(getURI(file))), describe(parallel
+					.parse(getURI(file))));
+		}
+	}
+
+	@Test
+	public void testTypeHierarchy() throws Exception {
+		NRLParsingService service = new NRLParsingService(new StandaloneResolverFactory());
+		NRLParseResult result = service.parse(getURI("model-correct.nrl"));
+		assertNotNull(result.getTypeHierarchy());
+		assertTrue(result.getTypeHierarchy().size() > 0);
+
+		// Indexed once per set of models
+		assertSame(result.getTypeHierarchy(), service.parse(getURI("model-correct.nrl"))
+				.getTypeHierarchy());
+		assertNull(service.parse(getURI("duplicate-rule.nrl")).getTypeHierarchy());
+
+		NRLParser parser = new NRLParser();
+		StandaloneResolverFactory factory = new StandaloneResolverFactory();
+		parser.parse(getURI("model-correct.nrl"), factory);
+		TypeHierarchyIndex index = parser.getTypeHierarchy();
+		assertNotNull(index);
+		parser.parse(getURI("model-correct.nrl"), factory);
+		assertSame(index, parser.getTypeHierarchy());
+	}
+
+	@Test
+	public void testConcurrentParsing() throws Exception {
+		final NRLParsingService service = new NRLParsingService(new StandaloneResolverFactory());
+
+		// Expected results, parsed on one thread
+		List<String> expected = new ArrayList<String>();
+		for (String file : FILES) {
+			expected.add(describe(service.parse(getURI(file))));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<NRLParseResult>> results = submit(executor, service);
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals(FILES[i % FILES.length], expected.get(i % FILES.length),
+						describe(results.get(i).get()));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	static List<Future<NRLParseResult>> submit(ExecutorService executor,
+			final NRLParsingService service) {
+		List<Future<NRLParseResult>> results = new ArrayList<Future<NRLParseResult>>();
+		for (int i = 0; i < PARSES_PER_FILE; i++) {
+			for (String file : FILES) {
+				final URI uri = getURI(file);
+				results.add(executor.submit(new Callable<NRLParseResult>() {
+					public NRLParseResult call() throws Exception {
+						return service.parse(uri);
+					}
+				}));
+			}
+		}
+		return results;
+	}
+
+	private String describe(NRLParseResult result) {
+		StringBuffer buf = new StringBuffer();
+		buf.append(result.getErrors().toString());
+		if (result.getRuleFile() != null)
+			buf.append(result.getRuleFile().dump(0));
+		buf.append(result.getOperators().size());
+		return buf.toString();
+	}
+}
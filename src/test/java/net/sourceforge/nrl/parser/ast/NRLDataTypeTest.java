@@ -0,0 +1,134 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * 
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import net.sourceforge.nrl.parser.ast.NRLDataType.Type;
+
+import org.junit.Test;
+
+/**
+ * Test the interned instances of the NRLDataType class.
+ */
+public class NRLDataTypeTest {
+
+	@Test
+	public void testConstantsAreInterned() {
+		assertSame(NRLDataType.UNKNOWN, NRLDataType.get(Type.Unknown));
+		assertSame(NRLDataType.STRING, NRLDataType.get(Type.String, false, false));
+		assertSame(NRLDataType.DATE, NRLDataType.get(Type.Date));
+		assertSame(NRLDataType.INTEGER, NRLDataType.get(Type.Integer));
+		assertSame(NRLDataType.DECIMAL, NRLDataType.get(Type.Decimal));
+		assertSame(NRLDataType.BOOLEAN, NRLDataType.get(Type.Boolean));
+		assertSame(NRLDataType.VOID, NRLDataType.get(Type.Void));
+		assertSame(NRLDataType.ELEMENT, NRLDataType.get(Type.Element));
+		assertSame(NRLDataType.UNKNOWN, NRLDataType.get(null));
+	}
+
+	@Test
+	public void testGet() {
+		for (Type type : Type.values()) {
+			for (int flags = 0; flags < 4; flags++) {
+				boolean collection = (flags & 2) != 0;
+				boolean enumeration = (flags & 1) != 0;
+
+				NRLDataType dataType = NRLDataType.get(type, collection, enumeration);
+				assertSame(type, dataType.getType());
+				assertEquals(collection, dataType.isCollection());
+				assertEquals(enumeration, dataType.isEnumeration());
+				assertSame(dataType, NRLDataType.get(type, collection, enumeration));
+			}
+		}
+	}
+
+	@Test
+	public void testWith() {
+		NRLDataType collection = NRLDataType.STRING.withCollection(true);
+		assertTrue(collection.isCollection());
+		assertFalse(collection.isEnumeration());
+		assertSame(Type.String, collection.getType());
+		assertFalse(NRLDataType.STRING.isCollection());
+
+		NRLDataType both = collection.withEnumeration(true);
+		assertSame(NRLDataType.get(Type.String, true, true), both);
+		assertSame(NRLDataType.STRING, both.withCollection(false).withEnumeration(false));
+		assertSame(collection, collection.withCollection(true));
+		assertNotSame(collection, both);
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testDeprecatedConstructors() {
+		NRLDataType constructed = new NRLDataType(Type.String);
+		assertEquals(NRLDataType.STRING, constructed);
+		assertNotSame(NRLDataType.STRING, constructed);
+
+		constructed.setCollection(true);
+		assertEquals(NRLDataType.get(Type.String, true, false), constructed);
+		assertEquals(constructed, new NRLDataType(constructed));
+		assertEquals(NRLDataType.UNKNOWN, new NRLDataType());
+		assertEquals(NRLDataType.get(Type.Date, false, true), new NRLDataType(Type.Date, false,
+				true));
+		assertFalse(NRLDataType.STRING.isCollection());
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test(expected = UnsupportedOperationException.class)
+	public void testInternedAreUnmodifiable() {
+		NRLDataType.STRING.setCollection(true);
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testAllSettersCheckInterned() {
+		NRLDataType shared = NRLDataType.get(Type.Integer, true, false);
+		try {
+			shared.setCollection(false);
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+		try {
+			shared.setEnumeration(true);
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+		try {
+			shared.setType(Type.String);
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+		assertEquals(Type.Integer, shared.getType());
+		assertTrue(shared.isCollection());
+		assertFalse(shared.isEnumeration());
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testCopyOfInternedIsModifiable() {
+		NRLDataType copy = new NRLDataType(NRLDataType.INTEGER);
+		copy.setCollection(true);
+		copy.setEnumeration(true);
+		copy.setType(Type.Decimal);
+		assertEquals(NRLDataType.get(Type.Decimal, true, true), copy);
+		assertEquals(Type.Integer, NRLDataType.INTEGER.getType());
+		assertFalse(NRLDataType.INTEGER.isCollection());
+		assertFalse(NRLDataType.INTEGER.isEnumeration());
+	}
+}
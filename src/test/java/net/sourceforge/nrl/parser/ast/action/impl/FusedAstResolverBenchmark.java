@@ -0,0 +1,72 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.action.impl;
+
+import net.sourceforge.nrl.parser.ast.impl.AntlrOperatorResolverVisitor;
+import net.sourceforge.nrl.parser.ast.impl.RuleFileImpl;
+import net.sourceforge.nrl.parser.operators.IOperators;
+
+import org.junit.Test;
+
+/**
+ * Compare the time taken by the separate resolver passes and the fused resolver. Run with the
+ * <code>benchmarks</code> profile.
+ */
+public class FusedAstResolverBenchmark {
+
+	private static final int RULES = 5000;
+
+	private final FusedAstResolverTest support = new FusedAstResolverTest();
+
+	/*
+	 * Time the resolver and operator passes separately and fused, on the same generated file.
+	 */
+	@Test
+	public void benchmarkPasses() throws Exception {
+		String content = support.createRules(RULES);
+		IOperators[] operators = new IOperators[] { support.loadOperators() };
+
+		// Warm up
+		new ActionAstResolver().resolve(support.parse(content));
+		new FusedAstResolver().resolve(support.parse(content));
+
+		RuleFileImpl ruleFile = support.parse(content);
+		long start = System.nanoTime();
+		new ActionAstResolver().resolve(ruleFile);
+		long separateResolve = System.nanoTime() - start;
+		start = System.nanoTime();
+		AntlrOperatorResolverVisitor visitor = new AntlrOperatorResolverVisitor(operators);
+		ruleFile.accept(visitor);
+		long separateOperators = System.nanoTime() - start;
+
+		ruleFile = support.parse(content);
+		FusedAstResolver resolver = new FusedAstResolver();
+		start = System.nanoTime();
+		resolver.resolve(ruleFile);
+		long fusedResolve = System.nanoTime() - start;
+		start = System.nanoTime();
+		resolver.resolveOperators(operators);
+		long fusedOperators = System.nanoTime() - start;
+
+		long separate = separateResolve + separateOperators;
+		long fused = fusedResolve + fusedOperators;
+		System.out.println(String.format("Resolved %d rules: separate passes %d ms "
+				+ "(identifiers and references %d ms, operators %d ms), fused %d ms "
+				+ "(walk and references %d ms, operators %d ms), speedup %.2fx", RULES,
+				separate / 1000000, separateResolve / 1000000, separateOperators / 1000000,
+				fused / 1000000, fusedResolve / 1000000, fusedOperators / 1000000,
+				(double) separate / fused));
+	}
+}
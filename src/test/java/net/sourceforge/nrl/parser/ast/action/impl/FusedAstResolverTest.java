@@ -0,0 +1,228 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.action.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.nrl.parser.IStatusCode;
+import net.sourceforge.nrl.parser.NRLError;
+import net.sourceforge.nrl.parser.NRLParserTestSupport;
+import net.sourceforge.nrl.parser.ast.constraints.IOperatorInvocation;
+import net.sourceforge.nrl.parser.ast.constraints.impl.ExistsStatementImpl;
+import net.sourceforge.nrl.parser.ast.impl.Antlr3NRLBaseAst;
+import net.sourceforge.nrl.parser.ast.impl.Antlr3NRLTreeAdaptor;
+import net.sourceforge.nrl.parser.ast.impl.AntlrAstVisitor;
+import net.sourceforge.nrl.parser.ast.impl.AntlrOperatorResolverVisitor;
+import net.sourceforge.nrl.parser.ast.impl.CompactTokenStream;
+import net.sourceforge.nrl.parser.ast.impl.NRLActionParser;
+import net.sourceforge.nrl.parser.ast.impl.RuleFileImpl;
+import net.sourceforge.nrl.parser.operators.IOperators;
+import net.sourceforge.nrl.parser.operators.XmlOperatorPersistence;
+import net.sourceforge.nrl.parser.util.StreamUtilities;
+
+import org.junit.Test;
+
+/**
+ * Test that the fused resolver gives the same errors and bindings as the separate resolver
+ * passes.
+ */
+public class FusedAstResolverTest extends NRLParserTestSupport {
+
+	@Test
+	public void testSameErrorsOnCorpus() throws Exception {
+		for (CharSequence content : getCorpus()) {
+			NRLActionParser parser = createParser(content);
+			RuleFileImpl expected = (RuleFileImpl) parser.fileBody().getTree();
+			if (parser.getSyntaxErrors().size() > 0)
+				continue;
+			List<NRLError> expectedErrors = new ActionAstResolver().resolve(expected);
+
+			RuleFileImpl actual = parse(content);
+			List<NRLError> errors = new FusedAstResolver().resolve(actual);
+
+			assertEquals(expectedErrors.toString(), errors.toString());
+			assertEquals(describeExists(expected), describeExists(actual));
+		}
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		String content = "Model \"basicmodel.uml2\" "
+				+ "Context: IRSwap Validation Rule \"r1\" {missing} IRSwap "
+				+ "Context: IRSwap Validation Rule \"r1\" one has tradeDate = '2005-12-30' "
+				+ "Context: IRSwap Action Rule \"a1\" {missing action} IRSwap "
+				+ "Context: IRSwap (\"swap\") Validation Fragment \"f\" 'a' = 'a' "
+				+ "Context: IRSwap (\"swap\") Validation Fragment \"f\" 'a' = 'b'";
+
+		RuleFileImpl expected = parse(content);
+		List<NRLError> expectedErrors = new ActionAstResolver().resolve(expected);
+		List<NRLError> errors = new FusedAstResolver().resolve(parse(content));
+
+		assertEquals(5, errors.size());
+		assertEquals(IStatusCode.DUPLICATE_FRAGMENT, errors.get(0).getStatusCode());
+		assertEquals(IStatusCode.DUPLICATE_RULE, errors.get(1).getStatusCode());
+		assertEquals(IStatusCode.INVALID_FRAGMENT_REF, errors.get(2).getStatusCode());
+		assertEquals(IStatusCode.INVALID_ACTION_FRAGMENT_REF, errors.get(3).getStatusCode());
+		assertEquals(IStatusCode.AMBIGUOUS_EXISTENCE, errors.get(4).getStatusCode());
+		assertEquals(expectedErrors.toString(), errors.toString());
+	}
+
+	@Test
+	public void testResolveOperators() throws Exception {
+		String content = "Model \"basicmodel.uml2\" "
+				+ "Context: IRSwap Validation Rule \"r1\" 'ab' [Operator one] 'cd' "
+				+ "Context: IRSwap Validation Rule \"r2\" [Operator two] "
+				+ "Context: IRSwap Validation Rule \"r3\" 'ab' [Operator two] 'cd' "
+				+ "Context: IRSwap Validation Rule \"r4\" [no such operator] "
+				+ "Context: IRSwap Action Rule \"a1\" [Operator two] IRSwap";
+		IOperators[] operators = new IOperators[] { loadOperators() };
+
+		RuleFileImpl expected = parse(content);
+		assertEquals(0, new ActionAstResolver().resolve(expected).size());
+		AntlrOperatorResolverVisitor visitor = new AntlrOperatorResolverVisitor(operators);
+		expected.accept(visitor);
+
+		FusedAstResolver resolver = new FusedAstResolver();
+		assertEquals(0, resolver.resolveOperators(operators).size());
+		RuleFileImpl actual = parse(content);
+		assertEquals(0, resolver.resolve(actual).size());
+		List<NRLError> errors = resolver.resolveOperators(operators);
+
+		assertEquals(visitor.getErrors().toString(), errors.toString());
+		assertEquals(3, errors.size());
+
+		List<Object> expectedOperators = getOperators(expected);
+		List<Object> actualOperators = getOperators(actual);
+		assertEquals(expectedOperators, actualOperators);
+		assertNotNull(actualOperators.get(0));
+		assertSame(operators[0].getOperator("Operator one"), actualOperators.get(0));
+		assertNull(actualOperators.get(3));
+	}
+
+	@Test
+	public void testGeneratedRules() throws Exception {
+		String content = createRules(50);
+		IOperators[] operators = new IOperators[] { loadOperators() };
+
+		RuleFileImpl expected = parse(content);
+		List<NRLError> expectedErrors = new ActionAstResolver().resolve(expected);
+		AntlrOperatorResolverVisitor visitor = new AntlrOperatorResolverVisitor(operators);
+		expected.accept(visitor);
+
+		RuleFileImpl actual = parse(content);
+		FusedAstResolver resolver = new FusedAstResolver();
+		assertEquals(expectedErrors.toString(), resolver.resolve(actual).toString());
+		assertEquals(visitor.getErrors().toString(), resolver.resolveOperators(operators)
+				.toString());
+		assertEquals(describeExists(expected), describeExists(actual));
+		assertEquals(getOperators(expected), getOperators(actual));
+	}
+
+	String createRules(int count) {
+		StringBuffer content = new StringBuffer("Model \"basicmodel.uml2\"\n");
+		for (int i = 0; i < count; i++) {
+			content.append("Context: IRSwap Validation Rule \"r" + i + "\" ");
+			content.append("one of the tradeHeader has tradeDate = 'a' and one has ");
+			content.append("tradeDate = 'b' and {f" + (i % 10) + "} IRSwap and ");
+			content.append("'ab' [Operator one] 'cd'\n");
+		}
+		for (int i = 0; i < 10; i++) {
+			content.append("Context: IRSwap (\"swap\") Validation Fragment \"f" + i + "\" ");
+			content.append("swap.tradeDate is before '2005-12-12'\n");
+		}
+		return content.toString();
+	}
+
+	IOperators loadOperators() throws Exception {
+		XmlOperatorPersistence loader = new XmlOperatorPersistence();
+		loader.load(new File("src/test/resources/operators/operators.xml"));
+		return loader.getOperators();
+	}
+
+	private NRLActionParser createParser(CharSequence content) {
+		NRLActionParser parser = new NRLActionParser(new CompactTokenStream(content));
+		parser.setTreeAdaptor(new Antlr3NRLTreeAdaptor());
+		return parser;
+	}
+
+	RuleFileImpl parse(CharSequence content) throws Exception {
+		NRLActionParser parser = createParser(content);
+		RuleFileImpl ruleFile = (RuleFileImpl) parser.fileBody().getTree();
+		assertEquals(0, parser.getSyntaxErrors().size());
+		return ruleFile;
+	}
+
+	/*
+	 * The element of every exists statement, depth-first, after resolution.
+	 */
+	private String describeExists(RuleFileImpl ruleFile) {
+		final StringBuffer result = new StringBuffer();
+		ruleFile.accept(new AntlrAstVisitor() {
+			@Override
+			protected boolean visitBefore(Antlr3NRLBaseAst node) {
+				if (node instanceof ExistsStatementImpl) {
+					ExistsStatementImpl exists = (ExistsStatementImpl) node;
+					result.append(exists.getElement() == null ? "none" : exists.getElement()
+							.getOriginalString());
+					result.append(';');
+				}
+				return true;
+			}
+		});
+		return result.toString();
+	}
+
+	/*
+	 * The operator bound to every operator invocation and action, depth-first.
+	 */
+	private List<Object> getOperators(RuleFileImpl ruleFile) {
+		final List<Object> result = new ArrayList<Object>();
+		ruleFile.accept(new AntlrAstVisitor() {
+			@Override
+			protected boolean visitBefore(Antlr3NRLBaseAst node) {
+				if (node instanceof IOperatorInvocation)
+					result.add(((IOperatorInvocation) node).getOperator());
+				else if (node instanceof OperatorActionImpl)
+					result.add(((OperatorActionImpl) node).getOperator());
+				return true;
+			}
+		});
+		return result;
+	}
+
+	private List<CharSequence> getCorpus() throws Exception {
+		List<CharSequence> result = new ArrayList<CharSequence>();
+		for (File file : new File("src/test/resources/parsing").listFiles()) {
+			if (!file.getName().endsWith(".nrl") || file.getName().equals("illegal-char.nrl"))
+				continue;
+
+			FileReader reader = new FileReader(file);
+			try {
+				result.add(StreamUtilities.read(reader));
+			} finally {
+				reader.close();
+			}
+		}
+		return result;
+	}
+}
@@ -3,7 +3,10 @@ package net.sourceforge.nrl.parser.ast.constraints.impl;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import net.sourceforge.nrl.parser.IStatusCode;
 import net.sourceforge.nrl.parser.NRLError;
@@ -11,6 +14,7 @@ import net.sourceforge.nrl.parser.NRLParserTestSupport;
 import net.sourceforge.nrl.parser.ast.IDeclaration;
 import net.sourceforge.nrl.parser.ast.IRuleFile;
 
+import org.antlr.runtime.CommonToken;
 import org.junit.Test;
 
 public class ValidationFragmentDependencyProcessorTest extends NRLParserTestSupport {
@@ -64,6 +68,36 @@ public class ValidationFragmentDependencyProcessorTest extends NRLParserTestSupp
 		assertEquals("p2", decls.get(4).getId());
 	}
 
+	/*
+	 * Group dependent properties into levels that can be checked independently.
+	 */
+	@Test
+	public void testLevels() throws Exception {
+		IRuleFile file = createTestFile("'a' = 'b' "
+				+ "Context: Trade (\"t\") Validation Fragment  \"p1\" 'a' = 'b' "
+				+ "Context: Trade (\"t\") Validation Fragment \"p2\" p3 "
+				+ "Context: Trade (\"t\")  Validation Fragment \"p4\" p1"
+				+ "Context: Trade (\"t\") Validation Fragment \"p3\" p4 or p5"
+				+ "Context: Trade (\"t\") Validation Fragment \"p5\" 'a' = 'b'");
+
+		ValidationFragmentDependencyProcessor proc = new ValidationFragmentDependencyProcessor();
+		proc.addDeclarations(file);
+		assertEquals(0, proc.resolve().size());
+
+		List<List<IDeclaration>> levels = proc.getLevels();
+		assertEquals(4, levels.size());
+		assertEquals(2, levels.get(0).size());
+		assertEquals("p1", levels.get(0).get(0).getId());
+		assertEquals("p5", levels.get(0).get(1).getId());
+		assertEquals("p4", levels.get(1).get(0).getId());
+		assertEquals("p3", levels.get(2).get(0).getId());
+		assertEquals("p2", levels.get(3).get(0).getId());
+
+		// Levels are recomputed on every resolve
+		assertEquals(0, proc.resolve().size());
+		assertEquals(4, proc.getLevels().size());
+	}
+
 	/*
 	 * Resolve a collection of properties with cycles.
 	 */
@@ -112,6 +146,93 @@ public class ValidationFragmentDependencyProcessorTest extends NRLParserTestSupp
 		assertId(decls, "p3");
 	}
 
+	/*
+	 * Only fragments that are part of a cycle are reported, and the cycles list their fragments.
+	 * Fragments that merely reference a cycle are ordered after it.
+	 */
+	@Test
+	public void testResolve_CycleIds() throws Exception {
+		IRuleFile file = createTestFile("'a' = 'b' "
+				+ "Context: Trade (\"t\") Validation Fragment \"p1\" p2 "
+				+ "Context: Trade (\"t\") Validation Fragment \"p2\" p1 "
+				+ "Context: Trade (\"t\") Validation Fragment \"p3\" p4 "
+				+ "Context: Trade (\"t\") Validation Fragment \"p4\" p3 "
+				+ "Context: Trade (\"t\") Validation Fragment \"p5\" p1 or p3 ");
+
+		ValidationFragmentDependencyProcessor proc = new ValidationFragmentDependencyProcessor();
+		proc.addDeclarations(file);
+
+		List<NRLError> errors = proc.resolve();
+		assertEquals(4, errors.size());
+		for (NRLError error : errors) {
+			assertEquals("Fragment is involved in a circular reference", error.getMessage());
+		}
+
+		List<List<IDeclaration>> cycles = proc.getCycles();
+		assertEquals(2, cycles.size());
+		assertEquals("p1", cycles.get(0).get(0).getId());
+		assertEquals("p2", cycles.get(0).get(1).getId());
+		assertEquals("p3", cycles.get(1).get(0).getId());
+		assertEquals("p4", cycles.get(1).get(1).getId());
+
+		List<IDeclaration> decls = proc.getOrderedDeclarations();
+		assertEquals(5, decls.size());
+		assertEquals("p5", decls.get(4).getId());
+	}
+
+	/*
+	 * A fragment that references itself is a cycle on its own, unlike fragments that reference
+	 * it.
+	 */
+	@Test
+	public void testResolve_SelfReference() {
+		GraphProcessor proc = new GraphProcessor(2);
+		proc.addReference(0, 0);
+		proc.addReference(1, 0);
+
+		List<NRLError> errors = proc.resolve();
+		assertEquals(1, errors.size());
+		assertEquals(IStatusCode.FRAGMENT_CYCLICAL_REFERENCE, errors.get(0).getStatusCode());
+		assertEquals(1, proc.getCycles().size());
+		assertEquals("p0", proc.getCycles().get(0).get(0).getId());
+
+		List<IDeclaration> decls = proc.getOrderedDeclarations();
+		assertEquals("p0", decls.get(0).getId());
+		assertEquals("p1", decls.get(1).getId());
+	}
+
+	/*
+	 * Resolve growing numbers of fragments, both acyclic and in one long cycle.
+	 */
+	@Test
+	public void testResolve_Scaling() {
+		for (int size = 10; size <= 10000; size *= 10) {
+			// Fragment i references i + 1 and 2i + 1, so declaration order is the reverse of
+			// dependency order
+			GraphProcessor proc = new GraphProcessor(size);
+			for (int i = 0; i < size; i++) {
+				if (i + 1 < size)
+					proc.addReference(i, i + 1);
+				if (2 * i + 1 < size)
+					proc.addReference(i, 2 * i + 1);
+			}
+
+			assertEquals(0, proc.resolve().size());
+			List<IDeclaration> decls = proc.getOrderedDeclarations();
+			assertEquals(size, decls.size());
+			for (int i = 0; i < size; i++) {
+				assertEquals("p" + (size - 1 - i), decls.get(i).getId());
+			}
+
+			// Close the chain into a single cycle
+			proc.addReference(size - 1, 0);
+			assertEquals(size, proc.resolve().size());
+			assertEquals(1, proc.getCycles().size());
+			assertEquals(size, proc.getCycles().get(0).size());
+			assertEquals(size, proc.getOrderedDeclarations().size());
+		}
+	}
+
 	protected void assertId(List<IDeclaration> decls, String id) {
 		for (IDeclaration decl : decls) {
 			if (decl.getId().equals(id))
@@ -119,4 +240,40 @@ public class ValidationFragmentDependencyProcessorTest extends NRLParserTestSupp
 		}
 		fail("Id " + id + " not found");
 	}
+
+	/*
+	 * A processor over synthetic fragments "p0" to "pN", with references given explicitly rather
+	 * than parsed.
+	 */
+	private static class GraphProcessor extends ValidationFragmentDependencyProcessor {
+
+		private List<IDeclaration> fragments = new ArrayList<IDeclaration>();
+
+		private Map<IDeclaration, List<IDeclaration>> references =
+				new HashMap<IDeclaration, List<IDeclaration>>();
+
+		public GraphProcessor(int size) {
+			for (int i = 0; i < size; i++) {
+				final String id = "p" + i;
+				IDeclaration decl = new ValidationFragmentDeclarationImpl(new CommonToken(0)) {
+					@Override
+					public String getId() {
+						return id;
+					}
+				};
+				fragments.add(decl);
+				references.put(decl, new ArrayList<IDeclaration>());
+				addDeclaration(decl);
+			}
+		}
+
+		public void addReference(int from, int to) {
+			references.get(fragments.get(from)).add(fragments.get(to));
+		}
+
+		@Override
+		protected List<IDeclaration> getReferencedDeclarations(IDeclaration decl) {
+			return references.get(decl);
+		}
+	}
 }
@@ -0,0 +1,74 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.nrl.parser.NRLParserTestSupport;
+
+import org.antlr.runtime.tree.Tree;
+import org.junit.Test;
+
+/**
+ * Report the heap retained by parsed rule files, and what eagerly allocated user data maps would
+ * add to it. Run with the <code>benchmarks</code> profile.
+ */
+public class Antlr3NRLBaseAstBenchmark extends NRLParserTestSupport {
+
+	private static final int COPIES = 200;
+
+	@Test
+	public void benchmarkFootprint() throws Exception {
+		long before = usedMemory();
+		List<Tree> files = new ArrayList<Tree>();
+		for (int i = 0; i < COPIES; i++) {
+			files.add((Tree) getRuleFile("src/test/resources/parsing/model-constraints.nrl"));
+		}
+		long parsed = usedMemory() - before;
+
+		int nodes = 0;
+		List<Tree> stack = new ArrayList<Tree>(files);
+		while (!stack.isEmpty()) {
+			Tree node = stack.remove(stack.size() - 1);
+			nodes++;
+			for (int i = 0; i < node.getChildCount(); i++)
+				stack.add(node.getChild(i));
+		}
+
+		// The maps every node used to allocate up front
+		before = usedMemory();
+		List<Map<String, Object>> eagerMaps = new ArrayList<Map<String, Object>>(nodes);
+		for (int i = 0; i < nodes; i++) {
+			eagerMaps.add(new HashMap<String, Object>());
+		}
+		long eager = usedMemory() - before;
+
+		System.out.println(String.format("%d parsed files, %d nodes: %d KB retained, "
+				+ "eager user data maps would add %d KB", files.size(), nodes, parsed / 1024,
+				eager / 1024));
+		eagerMaps.clear();
+	}
+
+	private long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
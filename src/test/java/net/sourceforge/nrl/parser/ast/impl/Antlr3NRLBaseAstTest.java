@@ -0,0 +1,75 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * 
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.nrl.parser.NRLParserTestSupport;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.tree.Tree;
+import org.junit.Test;
+
+/**
+ * Test the user data of AST nodes.
+ */
+public class Antlr3NRLBaseAstTest extends NRLParserTestSupport {
+
+	@Test
+	public void testUserData() {
+		Antlr3NRLBaseAst node = new Antlr3NRLBaseAst(new CommonToken(0, "x"));
+		assertNull(node.getUserData("a"));
+
+		node.setUserData("a", "1");
+		node.setUserData("b", null);
+		assertEquals("1", node.getUserData("a"));
+		assertNull(node.getUserData("b"));
+		assertNull(node.getUserData("c"));
+	}
+
+	@Test
+	public void testUserDataNotAllocated() throws Exception {
+		assertEquals(0, countUserDataMaps((Tree) getRuleFile(
+				"src/test/resources/parsing/model-constraints.nrl")));
+	}
+
+	/**
+	 * Count the nodes of a tree that have allocated a user data map.
+	 * 
+	 * @param root the tree
+	 * @return the number of nodes with user data maps
+	 */
+	static int countUserDataMaps(Tree root) throws Exception {
+		Field userData = Antlr3NRLBaseAst.class.getDeclaredField("userData");
+		userData.setAccessible(true);
+
+		int maps = 0;
+		List<Tree> stack = new ArrayList<Tree>();
+		stack.add(root);
+		while (!stack.isEmpty()) {
+			Tree node = stack.remove(stack.size() - 1);
+			if (node instanceof Antlr3NRLBaseAst && userData.get(node) != null)
+				maps++;
+			for (int i = 0; i < node.getChildCount(); i++)
+				stack.add(node.getChild(i));
+		}
+		return maps;
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import static net.sourceforge.nrl.parser.ast.impl.Antlr3NRLTreeAdaptorTest.createRules;
+import static net.sourceforge.nrl.parser.ast.impl.Antlr3NRLTreeAdaptorTest.parse;
+
+import net.sourceforge.nrl.parser.ast.impl.Antlr3NRLTreeAdaptorTest.ReflectiveTreeAdaptor;
+
+import org.junit.Test;
+
+/**
+ * Measure tree construction with node factories against the reflective construction the adaptor
+ * used to do. Run with the <code>benchmarks</code> profile.
+ */
+public class Antlr3NRLTreeAdaptorBenchmark {
+
+	private static final int RULES = 5000;
+
+	@Test
+	public void benchmarkTreeConstruction() throws Exception {
+		String content = createRules(RULES);
+
+		// Warm up
+		parse(content, new Antlr3NRLTreeAdaptor());
+		parse(content, new ReflectiveTreeAdaptor());
+
+		long start = System.nanoTime();
+		parse(content, new ReflectiveTreeAdaptor());
+		long reflectiveTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		parse(content, new Antlr3NRLTreeAdaptor());
+		long factoryTime = System.nanoTime() - start;
+
+		System.out.println(String.format(
+				"Parsing %d rules: reflective nodes %d ms, node factories %d ms", RULES,
+				reflectiveTime / 1000000, factoryTime / 1000000));
+	}
+}
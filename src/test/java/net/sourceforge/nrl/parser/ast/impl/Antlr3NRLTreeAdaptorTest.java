@@ -0,0 +1,169 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * 
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.sourceforge.nrl.parser.NRLParserTestSupport;
+import net.sourceforge.nrl.parser.ast.constraints.impl.BinaryPredicateImpl;
+import net.sourceforge.nrl.parser.ast.constraints.impl.IfThenStatementImpl;
+import net.sourceforge.nrl.parser.ast.constraints.impl.LiteralStringImpl;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.tree.Tree;
+import org.junit.Test;
+
+/**
+ * Test the node factories of the tree adaptor, and compare the trees they build with the
+ * reflective construction the adaptor used to do.
+ */
+@SuppressWarnings("deprecation")
+public class Antlr3NRLTreeAdaptorTest extends NRLParserTestSupport {
+
+	@Test
+	public void testCreate() {
+		Antlr3NRLTreeAdaptor adaptor = new Antlr3NRLTreeAdaptor();
+
+		Token token = new CommonToken(NRLActionParser.EQUALS, "=");
+		Object node = adaptor.create(token);
+		assertSame(BinaryPredicateImpl.class, node.getClass());
+		assertSame(token, ((Antlr3NRLBaseAst) node).getToken());
+
+		assertSame(RuleFileImpl.class, adaptor.create(
+				new CommonToken(NRLActionParser.VT_RULEFILE)).getClass());
+		assertSame(Antlr3NRLBaseAst.class, adaptor.create(null).getClass());
+		assertSame(Antlr3NRLBaseAst.class, adaptor.create(new CommonToken(Token.EOF))
+				.getClass());
+	}
+
+	@Test
+	public void testSetNodeFactory() {
+		Antlr3NRLTreeAdaptor adaptor = new Antlr3NRLTreeAdaptor() {
+			{
+				setNodeFactory(NRLActionParser.EQUALS, new NodeFactory() {
+					public Antlr3NRLBaseAst create(Token token) {
+						return new LiteralStringImpl(token);
+					}
+				});
+			}
+		};
+
+		Token token = new CommonToken(NRLActionParser.EQUALS, "=");
+		assertSame(LiteralStringImpl.class, adaptor.create(token).getClass());
+
+		// Other adaptors keep the defaults
+		assertSame(BinaryPredicateImpl.class, new Antlr3NRLTreeAdaptor().create(token)
+				.getClass());
+	}
+
+	@Test
+	public void testTokenTypeToClass() {
+		Antlr3NRLTreeAdaptor adaptor = new Antlr3NRLTreeAdaptor() {
+			{
+				assertSame(BinaryPredicateImpl.class, tokenTypeToClass.get(NRLActionParser.EQUALS));
+				tokenTypeToClass.put(NRLActionParser.EQUALS, LiteralStringImpl.class);
+				tokenTypeToClass.remove(NRLActionParser.VT_RULEFILE);
+			}
+		};
+
+		Token token = new CommonToken(NRLActionParser.EQUALS, "=");
+		Object node = adaptor.create(token);
+		assertSame(LiteralStringImpl.class, node.getClass());
+		assertSame(token, ((Antlr3NRLBaseAst) node).getToken());
+		assertSame(Antlr3NRLBaseAst.class, adaptor.create(
+				new CommonToken(NRLActionParser.VT_RULEFILE)).getClass());
+		assertSame(IfThenStatementImpl.class, adaptor.create(
+				new CommonToken(NRLActionParser.IF)).getClass());
+	}
+
+	@Test
+	public void testTokenTypeToClassReplaced() {
+		Antlr3NRLTreeAdaptor adaptor = new Antlr3NRLTreeAdaptor() {
+			{
+				tokenTypeToClass = new HashMap<Integer, Class<?>>();
+				tokenTypeToClass.put(NRLActionParser.IF, LiteralStringImpl.class);
+			}
+		};
+
+		assertSame(LiteralStringImpl.class, adaptor.create(new CommonToken(NRLActionParser.IF))
+				.getClass());
+		assertSame(Antlr3NRLBaseAst.class, adaptor.create(
+				new CommonToken(NRLActionParser.EQUALS)).getClass());
+	}
+
+	@Test
+	public void testTreeConstruction() throws Exception {
+		String content = createRules(20);
+		Tree reflective = parse(content, new ReflectiveTreeAdaptor());
+		Tree factory = parse(content, new Antlr3NRLTreeAdaptor());
+
+		assertTrue(factory instanceof RuleFileImpl);
+		assertEquals(reflective.toStringTree(), factory.toStringTree());
+	}
+
+	static String createRules(int rules) {
+		StringBuffer content = new StringBuffer("Model \"basicmodel.uml2\" ");
+		for (int i = 0; i < rules; i++) {
+			content.append("Context: Trade Validation Rule \"r" + i + "\" ");
+			content.append("'a' = 'b' and tradeDate = tradeDate or tradeDate = 'c' ");
+		}
+		return content.toString();
+	}
+
+	static Tree parse(String content, Antlr3NRLTreeAdaptor adaptor) throws Exception {
+		NRLJFlexer lexer = new NRLJFlexer(new StringReader(content));
+		NRLActionParser parser = new NRLActionParser(new CommonTokenStream(lexer));
+		parser.setTreeAdaptor(adaptor);
+		Tree tree = (Tree) parser.fileBody().getTree();
+		assertEquals(0, parser.getSyntaxErrors().size());
+		return tree;
+	}
+
+	/*
+	 * Creates nodes the way the adaptor used to: a boxed map lookup of the node class, and a
+	 * reflective constructor call for every node.
+	 */
+	static class ReflectiveTreeAdaptor extends Antlr3NRLTreeAdaptor {
+
+		private Map<Integer, Class<?>> classes = new HashMap<Integer, Class<?>>();
+
+		@Override
+		public Object create(Token token) {
+			if (token == null)
+				return new Antlr3NRLBaseAst();
+
+			Class<?> tokenClass = classes.get(token.getType());
+			if (tokenClass == null) {
+				tokenClass = super.create(token).getClass();
+				classes.put(token.getType(), tokenClass);
+			}
+
+			try {
+				return tokenClass.getConstructor(new Class<?>[] { Token.class }).newInstance(
+						new Object[] { token });
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import static net.sourceforge.nrl.parser.ast.impl.BacktrackingStatisticsTest.createCorpus;
+import static net.sourceforge.nrl.parser.ast.impl.BacktrackingStatisticsTest.createParser;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+/**
+ * Measure parsing of deeply nested conditions with and without memoization, and report the
+ * backtracking statistics. Run with the <code>benchmarks</code> profile.
+ */
+public class BacktrackingStatisticsBenchmark {
+
+	private static final int DEPTH = 12;
+
+	private static final int RULES = 500;
+
+	@Test
+	public void benchmarkNestedConditions() throws Exception {
+		String content = createCorpus(DEPTH, RULES);
+
+		// Warm up
+		createParser(new StringReader(content), false, null).fileBody();
+		createParser(new StringReader(content), true, null).fileBody();
+
+		long start = System.nanoTime();
+		createParser(new StringReader(content), false, null).fileBody();
+		long plainTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		createParser(new StringReader(content), true, null).fileBody();
+		long memoizedTime = System.nanoTime() - start;
+
+		BacktrackingStatistics statistics = new BacktrackingStatistics();
+		createParser(new StringReader(content), false, statistics).fileBody();
+
+		System.out.println(String.format(
+				"Parsing %d rules nested %d deep: plain %d ms, memoizing %d ms", RULES, DEPTH,
+				plainTime / 1000000, memoizedTime / 1000000));
+		System.out.println(statistics);
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.Reader;
+import java.io.StringReader;
+
+import net.sourceforge.nrl.parser.NRLParserTestSupport;
+import net.sourceforge.nrl.parser.util.StreamUtilities;
+
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.tree.Tree;
+import org.junit.Test;
+
+/**
+ * Test memoizing parses and the backtracking statistics.
+ */
+public class BacktrackingStatisticsTest extends NRLParserTestSupport {
+
+	@Test
+	public void testMemoizingCorpus() throws Exception {
+		File[] files = new File("src/test/resources/parsing").listFiles();
+		for (File file : files) {
+			if (!file.getName().endsWith(".nrl"))
+				continue;
+
+			NRLActionParser plain = createParser(read(file), false, null);
+			Tree plainTree = (Tree) plain.fileBody().getTree();
+			NRLActionParser memoizing = createParser(read(file), true, null);
+			Tree memoizingTree = (Tree) memoizing.fileBody().getTree();
+
+			assertEquals(file.getName(), plain.getSyntaxErrors().size(), memoizing
+					.getSyntaxErrors().size());
+			assertEquals(file.getName(), plainTree.toStringTree(), memoizingTree.toStringTree());
+		}
+	}
+
+	@Test
+	public void testStatistics() throws Exception {
+		String content = createCorpus(3, 10);
+
+		BacktrackingStatistics statistics = new BacktrackingStatistics();
+		NRLActionParser parser = createParser(new StringReader(content), false, statistics);
+		parser.fileBody();
+		assertEquals(0, parser.getSyntaxErrors().size());
+
+		int total = 0;
+		for (String rule : statistics.getRules()) {
+			total += statistics.getInvocations(rule);
+			assertEquals(rule, 0, statistics.getMemoizationHits(rule));
+			assertFalse(rule, rule.startsWith("rule "));
+		}
+		assertEquals(statistics.getTotalInvocations(), total);
+
+		// Memoizing never causes more speculation
+		BacktrackingStatistics memoized = new BacktrackingStatistics();
+		parser = createParser(new StringReader(content), true, memoized);
+		parser.fileBody();
+		assertEquals(0, parser.getSyntaxErrors().size());
+		assertTrue(memoized.getTotalInvocations() <= statistics.getTotalInvocations());
+		for (String rule : memoized.getRules()) {
+			assertTrue(rule, memoized.getMemoizationHits(rule) <= memoized.getInvocations(rule));
+		}
+
+		statistics.reset();
+		assertEquals(0, statistics.getTotalInvocations());
+		assertEquals(0, statistics.getRules().size());
+	}
+
+	@Test
+	public void testNestedConditions() throws Exception {
+		String content = createCorpus(4, 10);
+		Tree plain = (Tree) createParser(new StringReader(content), false, null).fileBody()
+				.getTree();
+		Tree memoized = (Tree) createParser(new StringReader(content), true, null).fileBody()
+				.getTree();
+		assertEquals(plain.toStringTree(), memoized.toStringTree());
+	}
+
+	static NRLActionParser createParser(Reader reader, boolean memoizing,
+			BacktrackingStatistics statistics) {
+		NRLJFlexer lexer = new NRLJFlexer(reader);
+		NRLActionParser parser = new NRLActionParser(new CommonTokenStream(lexer));
+		parser.setTreeAdaptor(new Antlr3NRLTreeAdaptor());
+		parser.setMemoizing(memoizing);
+		parser.setBacktrackingStatistics(statistics);
+		return parser;
+	}
+
+	private Reader read(File file) throws Exception {
+		FileReader reader = new FileReader(file);
+		try {
+			return StreamUtilities.newReader(StreamUtilities.read(reader));
+		} finally {
+			reader.close();
+		}
+	}
+
+	/*
+	 * Rules with conditions nested to a depth, each level using long model references in the
+	 * positions that are decided by syntactic predicates.
+	 */
+	static String createCorpus(int depth, int rules) {
+		StringBuffer content = new StringBuffer("Model \"basicmodel.uml2\" ");
+		for (int i = 0; i < rules; i++) {
+			content.append("Context: tradeDate of tradeHeader of Trade Validation Rule \"r" + i
+					+ "\" ");
+			for (int j = 0; j < depth; j++) {
+				content.append("If tradeDate of tradeHeader of Trade is present and ");
+				content.append("(tradeDate of tradeHeader of Trade is one of 'a', 'b' or ");
+				content.append("tradeDate of tradeHeader of Trade = 'c') then ");
+			}
+			content.append("each of tradeHeader of Trade has tradeDate = 'd' ");
+			for (int j = 0; j < depth; j++) {
+				content.append("else tradeDate of tradeHeader of Trade is not present ");
+			}
+		}
+		return content.toString();
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import net.sourceforge.nrl.parser.util.StreamUtilities;
+
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.TokenStream;
+import org.junit.Test;
+
+/**
+ * Measure the time and memory taken to lex a large rule file into the compact token stream and
+ * the common token stream. Run with the <code>benchmarks</code> profile.
+ */
+public class CompactTokenStreamBenchmark {
+
+	private static final int RULES = 5000;
+
+	@Test
+	public void benchmarkLexing() throws Exception {
+		StringBuffer content = new StringBuffer("Model \"basicmodel.uml2\" ");
+		for (int i = 0; i < RULES; i++) {
+			content.append("Context: Trade Validation Rule \"r" + i + "\" ");
+			content.append("If tradeDate of tradeHeader is present then ");
+			content.append("tradeDate of tradeHeader is before '2005-12-30' else ");
+			content.append("there is no tradeHeader where tradeDate = 'c';\n");
+		}
+
+		// Warm up
+		new CommonTokenStream(new NRLJFlexer(StreamUtilities.newReader(content))).size();
+		new CompactTokenStream(content).size();
+
+		long before = usedMemory();
+		long start = System.nanoTime();
+		TokenStream common = new CommonTokenStream(new NRLJFlexer(StreamUtilities
+				.newReader(content)));
+		int tokens = common.size();
+		long commonTime = System.nanoTime() - start;
+		long commonMemory = usedMemory() - before;
+		common.LA(1);
+		common = null;
+
+		before = usedMemory();
+		start = System.nanoTime();
+		TokenStream compact = new CompactTokenStream(content);
+		assertEquals(tokens, compact.size());
+		long compactTime = System.nanoTime() - start;
+		long compactMemory = usedMemory() - before;
+		compact.LA(1);
+
+		System.out.println(String.format("Lexing %d tokens: common stream %d ms, %d KB; "
+				+ "compact stream %d ms, %d KB", tokens, commonTime / 1000000,
+				commonMemory / 1024, compactTime / 1000000, compactMemory / 1024));
+	}
+
+	private long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.nrl.parser.NRLParserTestSupport;
+import net.sourceforge.nrl.parser.util.StreamUtilities;
+
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenStream;
+import org.antlr.runtime.tree.CommonTree;
+import org.antlr.runtime.tree.Tree;
+import org.junit.Test;
+
+/**
+ * Test the compact token stream against the lexer and the common token stream.
+ */
+public class CompactTokenStreamTest extends NRLParserTestSupport {
+
+	@Test
+	public void testTokensMatchLexer() throws Exception {
+		for (CharSequence content : getCorpus()) {
+			NRLJFlexer lexer = new NRLJFlexer(StreamUtilities.newReader(content));
+			CompactTokenStream stream = new CompactTokenStream(content);
+
+			int i = 0;
+			for (Token expected = lexer.nextToken(); expected.getType() != Token.EOF; expected = lexer
+					.nextToken()) {
+				Token actual = stream.LT(1);
+				assertEquals(expected.getType(), stream.LA(1));
+				assertEquals(expected.getType(), actual.getType());
+				assertEquals(expected.getText(), actual.getText());
+				assertEquals(expected.getLine(), actual.getLine());
+				assertEquals(expected.getCharPositionInLine(), actual.getCharPositionInLine());
+				assertEquals(i, actual.getTokenIndex());
+				stream.consume();
+				i++;
+			}
+			assertEquals(i, stream.size());
+			assertEquals(Token.EOF, stream.LA(1));
+		}
+	}
+
+	@Test
+	public void testStream() {
+		CompactTokenStream stream = new CompactTokenStream(
+				"Model \"model.uml\" Validation Rule \"r\" x = 'b'");
+
+		assertEquals(7, stream.size());
+		assertSame(stream.get(0), stream.LT(1));
+		assertEquals(NRLActionParser.MODEL, stream.LA(1));
+		assertNull(stream.LT(-1));
+
+		int marker = stream.mark();
+		stream.consume();
+		assertEquals("model.uml", stream.LT(1).getText());
+		assertSame(stream.get(0), stream.LT(-1));
+		stream.rewind(marker);
+		assertEquals(0, stream.index());
+
+		stream.seek(6);
+		assertEquals("b", stream.LT(1).getText());
+		assertEquals(Token.EOF, stream.LA(2));
+		assertEquals("Validation Rulerx", stream.toString(2, 4));
+	}
+
+	@Test
+	public void testIllegalCharacter() {
+		CompactTokenStream stream = new CompactTokenStream("Set @");
+		try {
+			stream.LA(1);
+			fail("Expected an exception");
+		} catch (SyntaxErrorException e) {
+			assertEquals(1, e.getSyntaxError().getLine());
+			assertEquals(4, e.getSyntaxError().getColumn());
+		}
+	}
+
+	@Test
+	public void testParseCorpus() throws Exception {
+		for (CharSequence content : getCorpus()) {
+			NRLActionParser common = createParser(new CommonTokenStream(new NRLJFlexer(
+					StreamUtilities.newReader(content))));
+			Tree commonTree = (Tree) common.fileBody().getTree();
+			NRLActionParser compact = createParser(new CompactTokenStream(content));
+			Tree compactTree = (Tree) compact.fileBody().getTree();
+
+			assertEquals(common.getSyntaxErrors().toString(), compact.getSyntaxErrors().toString());
+			assertEquals(commonTree.toStringTree(), compactTree.toStringTree());
+		}
+	}
+
+	/*
+	 * Tokens kept by an AST do not keep the stream, its arrays and its lexer alive.
+	 */
+	@Test
+	public void testStreamCollected() throws Exception {
+		String content = "Model \"model.uml\" Validation Rule \"r\" x = 'b'";
+		CompactTokenStream stream = new CompactTokenStream(content);
+		WeakReference<CompactTokenStream> ref = new WeakReference<CompactTokenStream>(stream);
+		Tree tree = (Tree) createParser(stream).fileBody().getTree();
+		stream = null;
+
+		for (int i = 0; i < 50 && ref.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull("Stream still reachable from the tree", ref.get());
+		List<String> texts = new ArrayList<String>();
+		for (Token token : getTokens(tree)) {
+			texts.add(token.getText());
+		}
+		assertTrue(texts.toString(), texts.contains("model.uml"));
+	}
+
+	@Test
+	public void testSerializeToken() throws Exception {
+		Token token = new CompactTokenStream("Validation Rule \"r\" x = 'b'").get(2);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(token);
+		out.close();
+		Token copy = (Token) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))
+				.readObject();
+
+		assertEquals(token.getType(), copy.getType());
+		assertEquals("r", copy.getText());
+		assertEquals(token.getCharPositionInLine(), copy.getCharPositionInLine());
+	}
+
+	/*
+	 * Return the tokens of a tree, in tree order.
+	 */
+	private List<Token> getTokens(Tree tree) {
+		List<Token> result = new ArrayList<Token>();
+		if (tree instanceof CommonTree && ((CommonTree) tree).getToken() != null)
+			result.add(((CommonTree) tree).getToken());
+		for (int i = 0; i < tree.getChildCount(); i++) {
+			result.addAll(getTokens(tree.getChild(i)));
+		}
+		return result;
+	}
+
+	private NRLActionParser createParser(TokenStream stream) {
+		NRLActionParser parser = new NRLActionParser(stream);
+		parser.setTreeAdaptor(new Antlr3NRLTreeAdaptor());
+		return parser;
+	}
+
+	private List<CharSequence> getCorpus() throws Exception {
+		List<CharSequence> result = new ArrayList<CharSequence>();
+		for (File file : new File("src/test/resources/parsing").listFiles()) {
+			if (!file.getName().endsWith(".nrl") || file.getName().equals("illegal-char.nrl"))
+				continue;
+
+			FileReader reader = new FileReader(file);
+			try {
+				result.add(StreamUtilities.read(reader));
+			} finally {
+				reader.close();
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import net.sourceforge.nrl.parser.model.ModelCollection;
+
+import org.junit.Test;
+
+/**
+ * Measure the speedup and hit rate of resolving generated rules through the model reference
+ * cache. Run with the <code>benchmarks</code> profile.
+ */
+public class ModelReferenceCacheBenchmark {
+
+	private static final int RULES = 2000;
+
+	private final ModelReferenceCacheTest support = new ModelReferenceCacheTest();
+
+	@Test
+	public void benchmarkResolution() throws Exception {
+		ModelCollection models = support.getModels();
+		String rules = support.createRules(RULES);
+
+		// Warm up
+		new AntlrModelResolver(models).resolve(support.parse(rules));
+
+		AntlrModelResolver resolver = new AntlrModelResolver(models);
+		resolver.setCachingReferences(false);
+		RuleFileImpl ruleFile = support.parse(rules);
+		long start = System.nanoTime();
+		resolver.resolve(ruleFile);
+		long uncached = System.nanoTime() - start;
+
+		resolver.setCachingReferences(true);
+		ruleFile = support.parse(rules);
+		start = System.nanoTime();
+		resolver.resolve(ruleFile);
+		long cached = System.nanoTime() - start;
+
+		System.out.println(String.format("Resolved %d rules: uncached %d ms, cached %d ms, "
+				+ "speedup %.2fx; %s", RULES, uncached / 1000000, cached / 1000000,
+				(double) uncached / cached, resolver.getReferenceCache()));
+	}
+}
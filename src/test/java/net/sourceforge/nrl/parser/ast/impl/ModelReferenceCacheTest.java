@@ -0,0 +1,138 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.nrl.parser.NRLError;
+import net.sourceforge.nrl.parser.NRLParserTestSupport;
+import net.sourceforge.nrl.parser.ast.IRuleFile;
+import net.sourceforge.nrl.parser.ast.constraints.impl.ModelReferenceImpl;
+import net.sourceforge.nrl.parser.model.ModelCollection;
+
+import org.junit.Test;
+
+/**
+ * Test that resolving model references through the cache gives the same results as resolving
+ * every reference.
+ */
+public class ModelReferenceCacheTest extends NRLParserTestSupport {
+
+	private static final String FILE = "src/test/resources/parsing/model-constraints.nrl";
+
+	private static final int RULES = 2000;
+
+	@Test
+	public void testSameResolution() throws Exception {
+		ModelCollection models = getModels();
+
+		RuleFileImpl uncached = resolveStructure(getRuleFile(FILE));
+		AntlrModelResolver resolver = new AntlrModelResolver(models);
+		resolver.setCachingReferences(false);
+		List<NRLError> expectedErrors = resolver.resolve(uncached);
+		assertNull(resolver.getReferenceCache());
+
+		RuleFileImpl cached = resolveStructure(getRuleFile(FILE));
+		resolver = new AntlrModelResolver(models);
+		List<NRLError> errors = resolver.resolve(cached);
+
+		assertEquals(expectedErrors.toString(), errors.toString());
+		assertTrue(resolver.getReferenceCache().size() > 0);
+		assertSameReferences(uncached, cached);
+	}
+
+	@Test
+	public void testRepeatedNavigation() throws Exception {
+		AntlrModelResolver resolver = new AntlrModelResolver(getModels());
+		RuleFileImpl ruleFile = parse(createRules(RULES));
+		assertEquals(0, resolver.resolve(ruleFile).size());
+
+		ModelReferenceCache cache = resolver.getReferenceCache();
+		assertTrue(cache.toString(), cache.getHitRate() > 0.9);
+
+		RuleFileImpl uncached = parse(createRules(RULES));
+		resolver.setCachingReferences(false);
+		resolver.resolve(uncached);
+		assertSameReferences(uncached, ruleFile);
+	}
+
+	ModelCollection getModels() throws Exception {
+		ModelCollection models = new ModelCollection();
+		models.addModelPackage(getBasicModel());
+		models.addModelPackage(getSimpleModel());
+		return models;
+	}
+
+	String createRules(int count) {
+		StringBuffer content = new StringBuffer("Model \"basicmodel.uml2\"\n");
+		for (int i = 0; i < count; i++) {
+			content.append("Context: Trade Validation Rule \"r" + i + "\" ");
+			content.append("If tradeDate of tradeHeader is present then ");
+			content.append("tradeDate of tradeHeader is before '2005-12-30' else ");
+			content.append("there is no tradeHeader where tradeDate = '2005-12-30'\n");
+		}
+		return content.toString();
+	}
+
+	RuleFileImpl parse(String content) throws Exception {
+		NRLActionParser parser = new NRLActionParser(new CompactTokenStream(content));
+		parser.setTreeAdaptor(new Antlr3NRLTreeAdaptor());
+		RuleFileImpl ruleFile = (RuleFileImpl) parser.fileBody().getTree();
+		assertEquals(0, parser.getSyntaxErrors().size());
+		return resolveStructure(ruleFile);
+	}
+
+	private RuleFileImpl resolveStructure(IRuleFile ruleFile) {
+		assertEquals(0, new ConstraintAstResolver().resolve((RuleFileImpl) ruleFile).size());
+		return (RuleFileImpl) ruleFile;
+	}
+
+	private void assertSameReferences(RuleFileImpl expected, RuleFileImpl actual) {
+		List<ModelReferenceImpl> expectedRefs = getReferences(expected);
+		List<ModelReferenceImpl> actualRefs = getReferences(actual);
+		assertEquals(expectedRefs.size(), actualRefs.size());
+
+		for (int i = 0; i < expectedRefs.size(); i++) {
+			ModelReferenceImpl expectedRef = expectedRefs.get(i);
+			ModelReferenceImpl actualRef = actualRefs.get(i);
+			String name = expectedRef.getOriginalString();
+
+			assertEquals(name, expectedRef.getOriginalString(), actualRef.getOriginalString());
+			assertSame(name, expectedRef.getInitialStep(), actualRef.getInitialStep());
+			assertEquals(name, expectedRef.getRemainingSteps(), actualRef.getRemainingSteps());
+			assertEquals(name, expectedRef.getReferenceType(), actualRef.getReferenceType());
+			assertSame(name, expectedRef.getCurrentContext(), actualRef.getCurrentContext());
+		}
+	}
+
+	private List<ModelReferenceImpl> getReferences(RuleFileImpl ruleFile) {
+		final List<ModelReferenceImpl> result = new ArrayList<ModelReferenceImpl>();
+		ruleFile.accept(new AntlrAstVisitor() {
+			@Override
+			protected boolean visitBefore(Antlr3NRLBaseAst node) {
+				if (node instanceof ModelReferenceImpl)
+					result.add((ModelReferenceImpl) node);
+				return true;
+			}
+		});
+		return result;
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import static net.sourceforge.nrl.parser.ast.impl.ParallelDeclarationParserTest.RULES;
+import static net.sourceforge.nrl.parser.ast.impl.ParallelDeclarationParserTest.createLargeFile;
+import static net.sourceforge.nrl.parser.ast.impl.ParallelDeclarationParserTest.createSequentialParser;
+
+import org.junit.Test;
+
+/**
+ * Measure the speedup of parsing the declarations of a large file in parallel. Run with the
+ * <code>benchmarks</code> profile.
+ */
+public class ParallelDeclarationParserBenchmark {
+
+	@Test
+	public void benchmarkParsing() throws Exception {
+		CharSequence content = createLargeFile(null);
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		// Warm up
+		createSequentialParser(content).fileBody();
+		new ParallelDeclarationParser(content, threads).parse();
+
+		long start = System.nanoTime();
+		createSequentialParser(content).fileBody();
+		long sequential = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		new ParallelDeclarationParser(content, threads).parse();
+		long parallel = System.nanoTime() - start;
+
+		System.out.println(String.format("Parsed %d declarations: sequential %d ms, "
+				+ "parallel (%d threads) %d ms, speedup %.2fx", RULES, sequential / 1000000,
+				threads, parallel / 1000000, (double) sequential / parallel));
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sourceforge.nrl.parser.ast.IDeclaration;
+import net.sourceforge.nrl.parser.util.StreamUtilities;
+
+import org.antlr.runtime.tree.Tree;
+import org.junit.Test;
+
+/**
+ * Test that parsing declarations in parallel produces the same trees and errors as a sequential
+ * parse.
+ */
+public class ParallelDeclarationParserTest {
+
+	static final int RULES = 5000;
+
+	@Test
+	public void testFindDeclarationStarts() {
+		CompactTokenStream tokens = new CompactTokenStream("Model \"m.uml\" "
+				+ "Context: Trade Validation Rule \"r1\" x = 1 "
+				+ "Validation Rule \"r2\" Applies to Trade x = 1 "
+				+ "Rule set \"s\" "
+				+ "\"g\" is 1 "
+				+ "Context: Trade (\"t\") Validation Fragment \"f\" x = 1");
+
+		// Context, Validation Rule without context, Rule set, Context. The global variable
+		// cannot be found without parsing.
+		assertEquals(Arrays.asList(2, 9, 16, 21), ParallelDeclarationParser
+				.findDeclarationStarts(tokens));
+	}
+
+	@Test
+	public void testGetChunkStarts() {
+		List<Integer> starts = Arrays.asList(2, 4, 6, 20, 22, 40);
+		assertEquals(Arrays.asList(2, 20, 40), ParallelDeclarationParser.getChunkStarts(starts,
+				60, 3));
+		assertEquals(starts, ParallelDeclarationParser.getChunkStarts(starts, 60, 100));
+		assertTrue(ParallelDeclarationParser.getChunkStarts(new ArrayList<Integer>(), 60, 3)
+				.isEmpty());
+	}
+
+	@Test
+	public void testParseCorpus() throws Exception {
+		for (File file : new File("src/test/resources/parsing").listFiles()) {
+			if (!file.getName().endsWith(".nrl") || file.getName().equals("illegal-char.nrl"))
+				continue;
+
+			FileReader reader = new FileReader(file);
+			CharSequence content;
+			try {
+				content = StreamUtilities.read(reader);
+			} finally {
+				reader.close();
+			}
+			assertSameAsSequential(file.getName(), content);
+		}
+	}
+
+	@Test
+	public void testParseLargeFile() throws Exception {
+		CharSequence content = createLargeFile(null);
+		RuleFileImpl ruleFile = assertSameAsSequential("large", content);
+
+		List<IDeclaration> declarations = ruleFile.getDeclarations();
+		assertEquals(RULES, declarations.size());
+		assertEquals(1, ruleFile.getGlobalVariableDeclarations().size());
+		assertEquals("r0", declarations.get(0).getId());
+		assertEquals("r" + (RULES - 1), declarations.get(RULES - 1).getId());
+
+		// Positions are those of the whole file
+		assertEquals(3, declarations.get(0).getLine());
+		assertEquals(RULES + 2, declarations.get(RULES - 1).getLine());
+	}
+
+	@Test
+	public void testSyntaxError() throws Exception {
+		CharSequence content = createLargeFile("Context: Trade Validation Rule \"broken\" x = ;\n");
+
+		ParallelDeclarationParser parser = new ParallelDeclarationParser(content, 4);
+		parser.parse();
+
+		NRLActionParser sequential = createSequentialParser(content);
+		sequential.fileBody();
+
+		assertTrue(parser.getSyntaxErrors().size() > 0);
+		assertEquals(sequential.getSyntaxErrors().toString(), parser.getSyntaxErrors().toString());
+	}
+
+	private RuleFileImpl assertSameAsSequential(String name, CharSequence content)
+			throws Exception {
+		NRLActionParser sequential = createSequentialParser(content);
+		Tree expected = (Tree) sequential.fileBody().getTree();
+
+		ParallelDeclarationParser parser = new ParallelDeclarationParser(content, 4);
+		RuleFileImpl actual = parser.parse();
+
+		assertEquals(name, sequential.getSyntaxErrors().toString(), parser.getSyntaxErrors()
+				.toString());
+		assertEquals(name, expected.toStringTree(), actual.toStringTree());
+		return actual;
+	}
+
+	static NRLActionParser createSequentialParser(CharSequence content) {
+		NRLActionParser parser = new NRLActionParser(new CompactTokenStream(content));
+		parser.setTreeAdaptor(new Antlr3NRLTreeAdaptor());
+		return parser;
+	}
+
+	/*
+	 * A model, a global variable, then one rule per line and an optional extra declaration.
+	 */
+	static CharSequence createLargeFile(String extra) {
+		StringBuffer content = new StringBuffer("Model \"basicmodel.uml2\"\n");
+		content.append("\"global\" is 1\n");
+		for (int i = 0; i < RULES; i++) {
+			if (extra != null && i == RULES / 2)
+				content.append(extra);
+			content.append("Context: Trade Validation Rule \"r" + i + "\" ");
+			content.append("If tradeDate of tradeHeader is present then ");
+			content.append("tradeDate of tradeHeader is before '2005-12-30' else ");
+			content.append("there is no tradeHeader where tradeDate = 'c'\n");
+		}
+		return content;
+	}
+}
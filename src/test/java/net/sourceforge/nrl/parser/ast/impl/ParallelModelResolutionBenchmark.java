@@ -0,0 +1,56 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import static net.sourceforge.nrl.parser.ast.impl.ParallelModelResolutionTest.RULES;
+import static net.sourceforge.nrl.parser.ast.impl.ParallelModelResolutionTest.THREADS;
+
+import net.sourceforge.nrl.parser.model.ModelCollection;
+
+import org.junit.Test;
+
+/**
+ * Measure the speedup of resolving the declarations of a large rule file in parallel. Run with
+ * the <code>benchmarks</code> profile.
+ */
+public class ParallelModelResolutionBenchmark {
+
+	private final ParallelModelResolutionTest support = new ParallelModelResolutionTest();
+
+	@Test
+	public void benchmarkResolution() throws Exception {
+		ModelCollection models = support.getModels();
+		String rules = support.createRules(RULES * 2);
+
+		// Warm up
+		new AntlrModelResolver(models).resolve(support.parse(rules));
+
+		AntlrModelResolver resolver = new AntlrModelResolver(models);
+		RuleFileImpl ruleFile = support.parse(rules);
+		long start = System.nanoTime();
+		resolver.resolve(ruleFile);
+		long sequential = System.nanoTime() - start;
+
+		resolver.setResolutionThreads(THREADS);
+		ruleFile = support.parse(rules);
+		start = System.nanoTime();
+		resolver.resolve(ruleFile);
+		long parallel = System.nanoTime() - start;
+
+		System.out.println(String.format("Resolved %d rules: sequential %d ms, parallel "
+				+ "(%d threads) %d ms, speedup %.2fx", RULES * 2, sequential / 1000000, THREADS,
+				parallel / 1000000, (double) sequential / parallel));
+	}
+}
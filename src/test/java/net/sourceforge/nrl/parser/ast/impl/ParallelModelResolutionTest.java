@@ -0,0 +1,256 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.ast.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sourceforge.nrl.parser.NRLError;
+import net.sourceforge.nrl.parser.NRLParserTestSupport;
+import net.sourceforge.nrl.parser.ast.Variable;
+import net.sourceforge.nrl.parser.ast.action.IAction;
+import net.sourceforge.nrl.parser.ast.action.impl.ActionAstResolver;
+import net.sourceforge.nrl.parser.ast.constraints.IVariableDeclaration;
+import net.sourceforge.nrl.parser.ast.constraints.impl.ModelReferenceImpl;
+import net.sourceforge.nrl.parser.model.IClassifier;
+import net.sourceforge.nrl.parser.model.ModelCollection;
+import net.sourceforge.nrl.parser.model.uml2.UML2ModelLoader;
+import net.sourceforge.nrl.parser.util.ThreadUtilities;
+
+import org.junit.Test;
+
+/**
+ * Test that resolving declarations in parallel gives the same references and errors, in the
+ * same order, as sequential resolution, and that shared models can be read by many resolvers at
+ * once.
+ */
+public class ParallelModelResolutionTest extends NRLParserTestSupport {
+
+	static final int RULES = 2000;
+
+	static final int THREADS = 4;
+
+	private static final int STRESS_RUNS = 32;
+
+	@Test
+	public void testSameResolution() throws Exception {
+		ModelCollection models = getModels();
+		String rules = createRules(RULES);
+
+		RuleFileImpl expected = parse(rules);
+		List<NRLError> expectedErrors = new AntlrModelResolver(models).resolve(expected);
+		assertTrue(expectedErrors.size() > 0);
+
+		for (int threads = 2; threads <= THREADS; threads++) {
+			AntlrModelResolver resolver = new AntlrModelResolver(models);
+			resolver.setResolutionThreads(threads);
+			assertEquals(threads, resolver.getResolutionThreads());
+
+			RuleFileImpl actual = parse(rules);
+			assertEquals(expectedErrors.toString(), resolver.resolve(actual).toString());
+			assertSameReferences(expected, actual);
+			assertTrue(resolver.getReferenceCache().getHits() > 0);
+		}
+	}
+
+	@Test
+	public void testWithoutCache() throws Exception {
+		ModelCollection models = getModels();
+		String rules = createRules(100);
+
+		RuleFileImpl expected = parse(rules);
+		List<NRLError> expectedErrors = new AntlrModelResolver(models).resolve(expected);
+
+		AntlrModelResolver resolver = new AntlrModelResolver(models);
+		resolver.setCachingReferences(false);
+		resolver.setResolutionThreads(THREADS);
+		RuleFileImpl actual = parse(rules);
+		assertEquals(expectedErrors.toString(), resolver.resolve(actual).toString());
+		assertSameReferences(expected, actual);
+	}
+
+	@Test
+	public void testSharedExecutor() throws Exception {
+		ModelCollection models = getModels();
+		String rules = createRules(100);
+
+		RuleFileImpl expected = parse(rules);
+		List<NRLError> expectedErrors = new AntlrModelResolver(models).resolve(expected);
+
+		// Resolvers share a pool, and keep using it for later runs
+		ExecutorService executor = ThreadUtilities.newSharedPool(THREADS, "test");
+		for (int i = 0; i < 2; i++) {
+			AntlrModelResolver resolver = new AntlrModelResolver(models);
+			resolver.setResolutionThreads(THREADS);
+			resolver.setExecutor(executor);
+			for (int run = 0; run < 2; run++) {
+				RuleFileImpl actual = parse(rules);
+				assertEquals(expectedErrors.toString(), resolver.resolve(actual).toString());
+				assertSameReferences(expected, actual);
+			}
+		}
+	}
+
+	/*
+	 * Subclasses that override the hooks without a cache still see every declaration when
+	 * resolving on one thread.
+	 */
+	@Test
+	public void testSequentialHooks() throws Exception {
+		final List<IAction> actions = new ArrayList<IAction>();
+		AntlrModelResolver resolver = new AntlrModelResolver(getModels()) {
+			@Override
+			protected void resolveAction(IAction action, IClassifier context,
+					Map<String, IVariableDeclaration> globalVariables, List<Variable> variables,
+					List<NRLError> errors) {
+				actions.add(action);
+				super.resolveAction(action, context, globalVariables, variables, errors);
+			}
+		};
+		String rules = createRules(100);
+
+		RuleFileImpl expected = parse(rules);
+		List<NRLError> expectedErrors = new AntlrModelResolver(getModels()).resolve(expected);
+		RuleFileImpl actual = parse(rules);
+		assertEquals(expectedErrors.toString(), resolver.resolve(actual).toString());
+		assertEquals(100, actions.size());
+		assertSameReferences(expected, actual);
+
+		// The parallel path resolves through the overloads with a cache
+		actions.clear();
+		resolver.setResolutionThreads(THREADS);
+		resolver.resolve(parse(rules));
+		assertEquals(0, actions.size());
+	}
+
+	@Test
+	public void testFewDeclarations() throws Exception {
+		AntlrModelResolver resolver = new AntlrModelResolver(getModels());
+		resolver.setResolutionThreads(THREADS);
+		RuleFileImpl ruleFile = parse(createRules(1));
+		assertEquals(0, resolver.resolve(ruleFile).size());
+	}
+
+	/*
+	 * Many parallel resolvers share a freshly loaded model, whose attribute tables have not been
+	 * built yet.
+	 */
+	@Test
+	public void stressConcurrentReads() throws Exception {
+		final ModelCollection models = new ModelCollection();
+		models.addModelPackage(new UML2ModelLoader().load(getResourceForFile(new File(
+				"src/test/resources/uml/basicmodel.uml"))));
+		final String rules = createRules(RULES / 4);
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<RuleFileImpl> ruleFiles = new ArrayList<RuleFileImpl>();
+			List<Future<List<NRLError>>> errors = new ArrayList<Future<List<NRLError>>>();
+			for (int i = 0; i < STRESS_RUNS; i++) {
+				final RuleFileImpl ruleFile = parse(rules);
+				ruleFiles.add(ruleFile);
+				errors.add(executor.submit(new Callable<List<NRLError>>() {
+					public List<NRLError> call() {
+						AntlrModelResolver resolver = new AntlrModelResolver(models);
+						resolver.setResolutionThreads(THREADS);
+						return resolver.resolve(ruleFile);
+					}
+				}));
+			}
+
+			RuleFileImpl expected = parse(rules);
+			List<NRLError> expectedErrors = new AntlrModelResolver(models).resolve(expected);
+			for (int i = 0; i < STRESS_RUNS; i++) {
+				assertEquals(expectedErrors.toString(), errors.get(i).get().toString());
+				assertSameReferences(expected, ruleFiles.get(i));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	ModelCollection getModels() throws Exception {
+		ModelCollection models = new ModelCollection();
+		models.addModelPackage(getBasicModel());
+		models.addModelPackage(getSimpleModel());
+		return models;
+	}
+
+	/*
+	 * Validation and action rules, every tenth of which has an unknown attribute.
+	 */
+	String createRules(int count) {
+		StringBuffer content = new StringBuffer("Model \"basicmodel.uml2\"\n");
+		for (int i = 0; i < count; i++) {
+			String attribute = i % 10 == 9 ? "unknown" + i : "tradeDate";
+			content.append("Context: Trade Validation Rule \"r" + i + "\" ");
+			content.append("If " + attribute + " of tradeHeader is present then ");
+			content.append("tradeDate of tradeHeader is before '2005-12-30' else ");
+			content.append("there is no tradeHeader where tradeDate = '2005-12-30'\n");
+			content.append("Context: TradeHeader Action Rule \"a" + i + "\" ");
+			content.append("Set the tradeDate to '2005-12-30'\n");
+		}
+		return content.toString();
+	}
+
+	RuleFileImpl parse(String content) throws Exception {
+		NRLActionParser parser = new NRLActionParser(new CompactTokenStream(content));
+		parser.setTreeAdaptor(new Antlr3NRLTreeAdaptor());
+		RuleFileImpl ruleFile = (RuleFileImpl) parser.fileBody().getTree();
+		assertEquals(0, parser.getSyntaxErrors().size());
+		assertEquals(0, new ActionAstResolver().resolve(ruleFile).size());
+		return ruleFile;
+	}
+
+	private void assertSameReferences(RuleFileImpl expected, RuleFileImpl actual) {
+		List<ModelReferenceImpl> expectedRefs = getReferences(expected);
+		List<ModelReferenceImpl> actualRefs = getReferences(actual);
+		assertEquals(expectedRefs.size(), actualRefs.size());
+
+		for (int i = 0; i < expectedRefs.size(); i++) {
+			ModelReferenceImpl expectedRef = expectedRefs.get(i);
+			ModelReferenceImpl actualRef = actualRefs.get(i);
+			String name = expectedRef.getOriginalString();
+
+			assertEquals(name, expectedRef.getOriginalString(), actualRef.getOriginalString());
+			assertSame(name, expectedRef.getInitialStep(), actualRef.getInitialStep());
+			assertEquals(name, expectedRef.getRemainingSteps(), actualRef.getRemainingSteps());
+			assertEquals(name, expectedRef.getReferenceType(), actualRef.getReferenceType());
+		}
+	}
+
+	private List<ModelReferenceImpl> getReferences(RuleFileImpl ruleFile) {
+		final List<ModelReferenceImpl> result = new ArrayList<ModelReferenceImpl>();
+		ruleFile.accept(new AntlrAstVisitor() {
+			@Override
+			protected boolean visitBefore(Antlr3NRLBaseAst node) {
+				if (node instanceof ModelReferenceImpl)
+					result.add((ModelReferenceImpl) node);
+				return true;
+			}
+		});
+		return result;
+	}
+}
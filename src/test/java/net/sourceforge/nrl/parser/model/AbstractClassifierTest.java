@@ -0,0 +1,151 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.List;
+
+import net.sourceforge.nrl.parser.model.xsd.XSDAttribute;
+import net.sourceforge.nrl.parser.model.xsd.XSDClassifier;
+
+import org.junit.Test;
+
+/**
+ * Test the inherited attribute tables of the AbstractClassifier class.
+ */
+public class AbstractClassifierTest {
+
+	private XSDAttribute attribute(AbstractClassifier owner, String name) {
+		XSDAttribute attr = new XSDAttribute(name);
+		attr.setOwner(owner);
+		owner.addAttribute(attr);
+		return attr;
+	}
+
+	@Test
+	public void testInheritedAttributes() {
+		XSDClassifier base = new XSDClassifier("Base", null);
+		XSDClassifier sub = new XSDClassifier("Sub", null);
+		sub.setParent(base);
+
+		IAttribute a = attribute(base, "a");
+		IAttribute b = attribute(sub, "b");
+
+		assertEquals(2, sub.getAttributes(true).size());
+		assertSame(a, sub.getAttributes(true).get(0));
+		assertSame(b, sub.getAttributes(true).get(1));
+		assertEquals(sub.getAttributes(true), sub.getFlattenedAttributes());
+		assertSame(sub.getFlattenedAttributes(), sub.getFlattenedAttributes());
+		assertEquals(1, sub.getAttributes(false).size());
+
+		assertSame(a, sub.getAttributeByName("a", true));
+		assertNull(sub.getAttributeByName("a", false));
+		assertSame(b, sub.getAttributeByName("b", true));
+	}
+
+	@Test
+	public void testOverriddenAttribute() {
+		XSDClassifier base = new XSDClassifier("Base", null);
+		XSDClassifier sub = new XSDClassifier("Sub", null);
+		sub.setParent(base);
+
+		attribute(base, "a");
+		IAttribute overridden = attribute(sub, "a");
+
+		assertSame(overridden, sub.getAttributeByName("a", true));
+	}
+
+	@Test
+	public void testInvalidation() {
+		XSDClassifier base = new XSDClassifier("Base", null);
+		XSDClassifier middle = new XSDClassifier("Middle", null);
+		XSDClassifier sub = new XSDClassifier("Sub", null);
+		middle.setParent(base);
+		sub.setParent(middle);
+
+		assertEquals(0, sub.getAttributes(true).size());
+
+		// Adding to an ancestor is seen by descendants
+		IAttribute a = attribute(base, "a");
+		assertEquals(1, sub.getAttributes(true).size());
+		assertSame(a, sub.getAttributeByName("a", true));
+
+		// Removing
+		base.removeAttribute(a);
+		base.removeAttributeNameMapping("a");
+		assertEquals(0, sub.getAttributes(true).size());
+		assertNull(sub.getAttributeByName("a", true));
+
+		// Changing the parent
+		XSDClassifier other = new XSDClassifier("Other", null);
+		IAttribute c = attribute(other, "c");
+		middle.setParent(other);
+		assertSame(c, sub.getAttributeByName("c", true));
+		assertEquals(1, sub.getAttributes(true).size());
+
+		// Modifying the raw list
+		middle.getAttributes().add(a);
+		assertEquals(2, sub.getAttributes(true).size());
+	}
+
+	@Test
+	public void testTablesAreKept() {
+		XSDClassifier base = new XSDClassifier("Base", null);
+		XSDClassifier sub = new XSDClassifier("Sub", null);
+		sub.setParent(base);
+		attribute(base, "a");
+
+		// Reading the raw list, or changing an unrelated classifier, keeps the table
+		List<IAttribute> table = sub.getFlattenedAttributes();
+		base.getAttributes();
+		sub.getAttributes();
+		XSDClassifier other = new XSDClassifier("Other", null);
+		attribute(other, "b");
+		other.setParent(base);
+		assertSame(table, sub.getFlattenedAttributes());
+
+		// Replacing an attribute in an ancestor's raw list does not
+		IAttribute c = new XSDAttribute("c");
+		base.getAttributes().set(0, c);
+		assertNotSame(table, sub.getFlattenedAttributes());
+		assertSame(c, sub.getFlattenedAttributes().get(0));
+	}
+
+	@Test
+	public void testInheritedListIsCopied() {
+		XSDClassifier base = new XSDClassifier("Base", null);
+		XSDClassifier sub = new XSDClassifier("Sub", null);
+		sub.setParent(base);
+		attribute(base, "a");
+
+		// Callers may change the result without affecting the classifier
+		List<IAttribute> attributes = sub.getAttributes(true);
+		attributes.add(new XSDAttribute("b"));
+		Collections.reverse(attributes);
+		assertEquals(1, sub.getAttributes(true).size());
+		assertEquals(1, sub.getFlattenedAttributes().size());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testFlattenedListIsUnmodifiable() {
+		XSDClassifier classifier = new XSDClassifier("Type", null);
+		classifier.getFlattenedAttributes().add(new XSDAttribute("a"));
+	}
+}
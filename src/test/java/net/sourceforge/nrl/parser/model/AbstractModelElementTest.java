@@ -0,0 +1,81 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import net.sourceforge.nrl.parser.model.xsd.XSDClassifier;
+import net.sourceforge.nrl.parser.model.xsd.XSDPackage;
+
+import org.junit.Test;
+
+/**
+ * Test the cached qualified names of the AbstractModelElement class.
+ */
+public class AbstractModelElementTest {
+
+	@Test
+	public void testQualifiedNameCached() {
+		XSDPackage root = new XSDPackage("root", null);
+		XSDClassifier classifier = new XSDClassifier("Type", root);
+		root.addElement(classifier);
+
+		String name = classifier.getQualifiedName();
+		assertEquals("root::Type", name);
+		assertSame(name, classifier.getQualifiedName());
+
+		classifier.setName("Renamed");
+		assertEquals("root::Renamed", classifier.getQualifiedName());
+	}
+
+	@Test
+	public void testContainerRename() {
+		XSDPackage root = new XSDPackage("root", null);
+		XSDPackage sub = new XSDPackage("sub", root);
+		root.addElement(sub);
+		XSDClassifier classifier = new XSDClassifier("Type", sub);
+		sub.addElement(classifier);
+
+		String name = classifier.getQualifiedName();
+		assertEquals("root::sub::Type", name);
+
+		sub.setName("renamed");
+		assertEquals("root::renamed", sub.getQualifiedName());
+		assertEquals("root::renamed::Type", classifier.getQualifiedName());
+		assertNotSame(name, classifier.getQualifiedName());
+
+		root.setName("top");
+		assertEquals("top::renamed", sub.getQualifiedName());
+		assertEquals("top::renamed::Type", classifier.getQualifiedName());
+	}
+
+	@Test
+	public void testUnrelatedRename() {
+		XSDPackage first = new XSDPackage("first", null);
+		XSDClassifier a = new XSDClassifier("A", first);
+		first.addElement(a);
+		XSDPackage second = new XSDPackage("second", null);
+		XSDClassifier b = new XSDClassifier("B", second);
+		second.addElement(b);
+
+		String name = a.getQualifiedName();
+		b.setName("C");
+		second.setName("other");
+
+		assertSame(name, a.getQualifiedName());
+		assertEquals("other::C", b.getQualifiedName());
+	}
+}
@@ -85,4 +85,41 @@ public class ModelCollectionTest extends NRLParserTestSupport {
 		assertEquals("Main", models.getElementByQualifiedName("BasicModel::Main").getName());
 	}
 
+	@Test
+	public void testIndexMatchesPackageSearch() throws Exception {
+		ModelCollection models = new ModelCollection();
+		models.addModelPackage(getBasicModel());
+		models.addModelPackage(getSimpleModel());
+
+		for (IPackage pack : models.getModelPackages()) {
+			for (IModelElement element : pack.getContents(true)) {
+				String name = element.getName();
+
+				IModelElement expected = null;
+				for (IPackage search : models.getModelPackages()) {
+					expected = search.getElementByName(name, true);
+					if (expected != null)
+						break;
+				}
+				assertSame(expected, models.getElementByName(name));
+
+				IModelElement qualified = models.getElementByQualifiedName(element
+						.getQualifiedName());
+				assertNotNull(qualified);
+				assertEquals(name, qualified.getName());
+			}
+		}
+	}
+
+	@Test
+	public void testClear() throws Exception {
+		ModelCollection models = new ModelCollection();
+		models.addModelPackage(getBasicModel());
+		models.clear();
+
+		assertEquals(0, models.size());
+		assertNull(models.getElementByName("IRSwap"));
+		assertNull(models.getModelPackageByName("BasicModel"));
+		assertNull(models.getElementByQualifiedName("BasicModel::Main::Trade"));
+	}
 }
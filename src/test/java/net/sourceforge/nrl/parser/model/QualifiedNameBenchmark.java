@@ -0,0 +1,214 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.nrl.parser.NRLParser;
+import net.sourceforge.nrl.parser.ast.IRuleFile;
+import net.sourceforge.nrl.parser.ast.NRLDataType;
+import net.sourceforge.nrl.parser.model.xsd.XSDAttribute;
+import net.sourceforge.nrl.parser.model.xsd.XSDClassifier;
+import net.sourceforge.nrl.parser.model.xsd.XSDDataType;
+import net.sourceforge.nrl.parser.model.xsd.XSDPackage;
+import net.sourceforge.nrl.parser.type.ConstraintTypeChecker;
+import net.sourceforge.nrl.parser.type.TypeMapping;
+
+import org.junit.Test;
+
+/**
+ * Measures type checking a large rule file against a large generated model, once with qualified
+ * names cached on the model elements and once with model elements that compute their qualified
+ * name on every call. Run with the <code>benchmarks</code> profile.
+ */
+public class QualifiedNameBenchmark {
+
+	private static final int PACKAGE_DEPTH = 6;
+
+	private static final int CLASSIFIERS = 2000;
+
+	private static final int PASSES = 5;
+
+	@Test
+	public void benchmarkTypeCheck() throws Exception {
+		String rules = createRules();
+		IPackage cachedModel = createModel(true);
+		IPackage uncachedModel = createModel(false);
+
+		ConstraintTypeChecker checker = new ConstraintTypeChecker();
+		TypeMapping mapping = new TypeMapping();
+		String leaf = getLeafPackage(cachedModel).getQualifiedName();
+		mapping.addMapping(leaf, "decimal", NRLDataType.DECIMAL);
+		mapping.addMapping(leaf, "Date", NRLDataType.DATE);
+		checker.addTypeMapping(mapping);
+
+		// Warm up
+		check(checker, createRuleFiles(rules, uncachedModel, 1));
+		check(checker, createRuleFiles(rules, cachedModel, 1));
+
+		List<IRuleFile> files = createRuleFiles(rules, uncachedModel, PASSES);
+		long start = System.nanoTime();
+		int uncachedErrors = check(checker, files);
+		long uncached = System.nanoTime() - start;
+
+		files = createRuleFiles(rules, cachedModel, PASSES);
+		start = System.nanoTime();
+		int cachedErrors = check(checker, files);
+		long cached = System.nanoTime() - start;
+
+		assertEquals(0, uncachedErrors);
+		assertEquals(0, cachedErrors);
+		System.out.println(String.format("Checked %d rules %d times: uncached %d ms, cached "
+				+ "%d ms, speedup %.2fx", CLASSIFIERS, PASSES, uncached / 1000000,
+				cached / 1000000, (double) uncached / cached));
+	}
+
+	/*
+	 * Check each rule file, returning the total number of errors.
+	 */
+	private int check(ConstraintTypeChecker checker, List<IRuleFile> files) {
+		int errors = 0;
+		for (IRuleFile file : files) {
+			errors += checker.check(file).size();
+		}
+		return errors;
+	}
+
+	/*
+	 * One rule per classifier, navigating to its attributes and those of the next classifier.
+	 */
+	private String createRules() {
+		StringBuffer content = new StringBuffer("Model \"generated.xsd\"\n");
+		for (int i = 0; i < CLASSIFIERS; i++) {
+			content.append("Context: Type" + i + " Validation Rule \"r" + i + "\" ");
+			content.append("amount > 5 and next.amount < 10 and date is before next.date\n");
+		}
+		return content.toString();
+	}
+
+	/*
+	 * Parse the rules a number of times, resolving them against a model.
+	 */
+	private List<IRuleFile> createRuleFiles(String rules, IPackage model, int count)
+			throws Exception {
+		ModelCollection models = new ModelCollection();
+		models.addModelPackage(model);
+
+		List<IRuleFile> result = new ArrayList<IRuleFile>();
+		for (int i = 0; i < count; i++) {
+			NRLParser parser = new NRLParser();
+			IRuleFile ruleFile = parser.parse(new StringReader(rules));
+			parser.resolveModelReferences(ruleFile, models);
+			assertEquals(0, parser.getErrors().size());
+			result.add(ruleFile);
+		}
+		return result;
+	}
+
+	/*
+	 * A chain of nested packages, the innermost of which holds the data types and classifiers.
+	 * Every classifier has two data type attributes and refers to the next classifier.
+	 */
+	private IPackage createModel(boolean cached) {
+		XSDPackage root = new XSDPackage("root", null);
+		XSDPackage leaf = root;
+		for (int i = 0; i < PACKAGE_DEPTH; i++) {
+			XSDPackage child = new XSDPackage("package" + i, leaf);
+			leaf.addElement(child);
+			leaf = child;
+		}
+
+		XSDDataType decimal = cached ? new XSDDataType("decimal", leaf) : new UncachedDataType(
+				"decimal", leaf);
+		XSDDataType date = cached ? new XSDDataType("Date", leaf) : new UncachedDataType("Date",
+				leaf);
+		leaf.addElement(decimal);
+		leaf.addElement(date);
+
+		List<XSDClassifier> classifiers = new ArrayList<XSDClassifier>();
+		for (int i = 0; i < CLASSIFIERS; i++) {
+			XSDClassifier classifier = cached ? new XSDClassifier("Type" + i, leaf)
+					: new UncachedClassifier("Type" + i, leaf);
+			leaf.addElement(classifier);
+			classifiers.add(classifier);
+		}
+
+		for (int i = 0; i < CLASSIFIERS; i++) {
+			XSDClassifier classifier = classifiers.get(i);
+			addAttribute(classifier, "amount", decimal);
+			addAttribute(classifier, "date", date);
+			addAttribute(classifier, "next", classifiers.get((i + 1) % CLASSIFIERS));
+		}
+		return root;
+	}
+
+	private void addAttribute(XSDClassifier owner, String name, IModelElement type) {
+		XSDAttribute attribute = new XSDAttribute(name);
+		attribute.setType(type);
+		attribute.setOwner(owner);
+		owner.addAttribute(attribute);
+	}
+
+	private IPackage getLeafPackage(IPackage root) {
+		IPackage current = root;
+		for (int i = 0; i < PACKAGE_DEPTH; i++) {
+			current = (IPackage) current.getElementByName("package" + i, false);
+		}
+		return current;
+	}
+
+	/*
+	 * Compute a qualified name on every call, as model elements did before it was cached.
+	 */
+	private static String computeQualifiedName(IModelElement element) {
+		StringBuffer result = new StringBuffer();
+		result.append(element.getName());
+
+		IPackage current = element.getContainingPackage();
+		while (current != null) {
+			result.insert(0, current.getName() + "::");
+			current = current.getContainingPackage();
+		}
+		return result.toString();
+	}
+
+	private static class UncachedClassifier extends XSDClassifier {
+
+		UncachedClassifier(String name, IPackage container) {
+			super(name, container);
+		}
+
+		@Override
+		public String getQualifiedName() {
+			return computeQualifiedName(this);
+		}
+	}
+
+	private static class UncachedDataType extends XSDDataType {
+
+		UncachedDataType(String name, IPackage container) {
+			super(name, container);
+		}
+
+		@Override
+		public String getQualifiedName() {
+			return computeQualifiedName(this);
+		}
+	}
+}
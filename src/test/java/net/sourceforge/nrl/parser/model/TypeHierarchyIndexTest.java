@@ -0,0 +1,142 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import net.sourceforge.nrl.parser.NRLParserTestSupport;
+import net.sourceforge.nrl.parser.model.xsd.XSDClassifier;
+import net.sourceforge.nrl.parser.model.xsd.XSDPackage;
+
+import org.junit.Test;
+
+/**
+ * Test the TypeHierarchyIndex class.
+ */
+public class TypeHierarchyIndexTest extends NRLParserTestSupport {
+
+	@Test
+	public void testSubtypes() {
+		XSDPackage pkg = new XSDPackage("test", null);
+		XSDClassifier base = classifier(pkg, "Base", null);
+		XSDClassifier left = classifier(pkg, "Left", base);
+		XSDClassifier right = classifier(pkg, "Right", base);
+		XSDClassifier leaf = classifier(pkg, "Leaf", left);
+
+		TypeHierarchyIndex index = new TypeHierarchyIndex(Arrays.asList((IPackage) pkg));
+
+		assertTrue(index.isAssignableFrom(base, leaf));
+		assertTrue(index.isAssignableFrom(left, leaf));
+		assertTrue(index.isAssignableFrom(leaf, leaf));
+		assertTrue(index.isAssignableFrom(leaf, null));
+		assertTrue(index.isAssignableFrom(IModelElement.OBJECT, leaf));
+		assertFalse(index.isAssignableFrom(right, leaf));
+		assertFalse(index.isAssignableFrom(leaf, base));
+
+		List<IModelElement> descendants = index.getDescendants(base);
+		assertEquals(3, descendants.size());
+		assertEquals(new HashSet<IModelElement>(Arrays.asList(left, right, leaf)),
+				new HashSet<IModelElement>(descendants));
+		assertEquals(0, index.getDescendants(leaf).size());
+	}
+
+	/*
+	 * Transitive descendants are answered from the index, in the order of the child lists, until
+	 * the hierarchy changes.
+	 */
+	@Test
+	public void testDescendantQueries() {
+		XSDPackage pkg = new XSDPackage("test", null);
+		XSDClassifier base = classifier(pkg, "Base", null);
+		XSDClassifier left = classifier(pkg, "Left", base);
+		XSDClassifier right = classifier(pkg, "Right", base);
+		XSDClassifier leaf = classifier(pkg, "Leaf", left);
+
+		// A subtype outside the indexed packages
+		XSDPackage other = new XSDPackage("other", null);
+		XSDClassifier outside = classifier(other, "Outside", right);
+
+		new TypeHierarchyIndex(Arrays.asList((IPackage) pkg));
+		assertEquals(Arrays.asList(left, leaf, right, outside), base.getDescendants(true));
+		assertEquals(Arrays.asList(leaf), left.getDescendants(true));
+
+		// The result is a copy, as without the index
+		left.getDescendants(true).clear();
+		assertEquals(Arrays.asList(leaf), left.getDescendants(true));
+
+		XSDClassifier deep = classifier(pkg, "Deep", leaf);
+		assertEquals(Arrays.asList(leaf, deep), left.getDescendants(true));
+		assertEquals(Arrays.asList(left, leaf, deep, right, outside), base.getDescendants(true));
+	}
+
+	@Test
+	public void testCycleFallsBack() {
+		XSDPackage pkg = new XSDPackage("test", null);
+		XSDClassifier a = classifier(pkg, "A", null);
+		XSDClassifier b = classifier(pkg, "B", a);
+		XSDClassifier c = classifier(pkg, "C", null);
+		a.setParent(b);
+
+		TypeHierarchyIndex index = new TypeHierarchyIndex(Arrays.asList((IPackage) pkg));
+		assertFalse(index.isIndexed(a));
+		assertFalse(index.isIndexed(b));
+		assertTrue(index.isIndexed(c));
+	}
+
+	@Test
+	public void testMatchesModel() throws Exception {
+		ModelCollection models = new ModelCollection();
+		models.addModelPackage(getBasicModel());
+		models.addModelPackage(getSimpleModel());
+
+		List<IModelElement> elements = new ArrayList<IModelElement>();
+		List<List<IModelElement>> descendants = new ArrayList<List<IModelElement>>();
+		for (IPackage pkg : models.getModelPackages()) {
+			for (IModelElement element : pkg.getContents(true)) {
+				if (!(element instanceof IPackage)) {
+					elements.add(element);
+					descendants.add(element.getDescendants(true));
+				}
+			}
+		}
+
+		TypeHierarchyIndex index = new TypeHierarchyIndex(models);
+
+		for (int i = 0; i < elements.size(); i++) {
+			IModelElement type = elements.get(i);
+			assertEquals(descendants.get(i), type.getDescendants(true));
+			for (IModelElement other : elements) {
+				assertEquals(type.isAssignableFrom(other), index.isAssignableFrom(type, other));
+			}
+		}
+	}
+
+	private XSDClassifier classifier(XSDPackage pkg, String name, IModelElement parent) {
+		XSDClassifier classifier = new XSDClassifier(name, pkg);
+		if (parent != null) {
+			classifier.setParent(parent);
+			((AbstractModelElement) parent).addChild(classifier);
+		}
+		pkg.addElement(classifier);
+		return classifier;
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.model;
+
+import static net.sourceforge.nrl.parser.model.VariableContextTest.variable;
+
+import org.junit.Test;
+
+/**
+ * Measure binding and looking up variables in deeply nested frames. Run with the
+ * <code>benchmarks</code> profile.
+ */
+public class VariableContextBenchmark {
+
+	private static final int DEPTH = 5000;
+
+	@Test
+	public void benchmarkNesting() {
+		long start = System.nanoTime();
+		VariableContext context = new VariableContext();
+		for (int i = 0; i < DEPTH; i++) {
+			context.pushFrame();
+			context.bindToCurrentFrame(variable("v" + i));
+			for (int j = 0; j <= i; j += 100) {
+				context.isAlreadyDeclared("v" + j);
+				context.lookup("v" + j);
+			}
+		}
+		for (int i = 0; i < DEPTH; i++) {
+			context.popFrame();
+		}
+
+		System.out.println(String.format("%d nested frames: %d ms", DEPTH,
+				(System.nanoTime() - start) / 1000000));
+	}
+}
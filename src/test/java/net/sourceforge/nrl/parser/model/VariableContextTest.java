@@ -0,0 +1,98 @@
+package net.sourceforge.nrl.parser.model;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import net.sourceforge.nrl.parser.ast.IVariable;
+import net.sourceforge.nrl.parser.ast.Variable;
+
+import org.junit.Test;
+
+public class VariableContextTest {
+
+	private static final int DEPTH = 5000;
+
+	@Test
+	public void testLookup() {
+		VariableContext context = new VariableContext();
+		IVariable x = variable("x");
+		context.bindToCurrentFrame(x);
+
+		assertTrue(context.isAlreadyDeclared("x"));
+		assertFalse(context.isAlreadyDeclared("y"));
+		assertSame(x, context.lookup("x"));
+		assertNull(context.lookup("y"));
+	}
+
+	@Test
+	public void testShadowing() {
+		VariableContext context = new VariableContext();
+		IVariable outer = variable("x");
+		context.bindToCurrentFrame(outer);
+
+		context.pushFrame();
+		IVariable inner = variable("x");
+		IVariable y = variable("y");
+		context.bindToCurrentFrame(inner);
+		context.bindToCurrentFrame(y);
+		assertSame(inner, context.lookup("x"));
+		assertSame(y, context.lookup("y"));
+
+		context.popFrame();
+		assertSame(outer, context.lookup("x"));
+		assertNull(context.lookup("y"));
+		assertFalse(context.isAlreadyDeclared("y"));
+
+		// Frames are reused
+		context.pushFrame();
+		assertNull(context.lookup("y"));
+		assertSame(outer, context.lookup("x"));
+	}
+
+	@Test
+	public void testDuplicateInFrame() {
+		VariableContext context = new VariableContext();
+		context.pushFrame();
+		IVariable first = variable("x");
+		context.bindToCurrentFrame(first);
+		context.bindToCurrentFrame(variable("x"));
+
+		// The first binding in a frame wins
+		assertSame(first, context.lookup("x"));
+		context.popFrame();
+		assertFalse(context.isAlreadyDeclared("x"));
+	}
+
+	@Test
+	public void testPopOutermostFrame() {
+		VariableContext context = new VariableContext();
+		IVariable x = variable("x");
+		context.bindToCurrentFrame(x);
+
+		context.popFrame();
+		assertSame(x, context.lookup("x"));
+	}
+
+	@Test
+	public void testDeepNesting() {
+		VariableContext context = new VariableContext();
+		for (int i = 0; i < DEPTH; i++) {
+			context.pushFrame();
+			context.bindToCurrentFrame(variable("v" + i));
+			for (int j = 0; j <= i; j += 100) {
+				assertTrue(context.isAlreadyDeclared("v" + j));
+				context.lookup("v" + j);
+			}
+		}
+		for (int i = 0; i < DEPTH; i++) {
+			context.popFrame();
+		}
+		assertFalse(context.isAlreadyDeclared("v0"));
+	}
+
+	static IVariable variable(String name) {
+		return new Variable(name, (IModelElement) null);
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.model.loader;
+
+import static net.sourceforge.nrl.parser.model.loader.StandaloneModelLoaderConcurrencyTest.REQUESTS_PER_SCHEMA;
+import static net.sourceforge.nrl.parser.model.loader.StandaloneModelLoaderConcurrencyTest.THREADS;
+import static net.sourceforge.nrl.parser.model.loader.StandaloneModelLoaderConcurrencyTest.getSchemaURIs;
+import static org.junit.Assert.assertEquals;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sourceforge.nrl.parser.model.IPackage;
+
+import org.junit.Test;
+
+/**
+ * Measures whether unrelated schemas loaded through one {@link StandaloneModelLoader} are
+ * serialised behind each other. Run with the <code>benchmarks</code> profile.
+ */
+public class StandaloneModelLoaderConcurrencyBenchmark {
+
+	@Test
+	public void parallelLoadingSpeedup() throws Exception {
+		List<URI> uris = getSchemaURIs();
+
+		// Warm up class loading and EMF registries
+		loadSequentially(new StandaloneModelLoader(), uris);
+
+		long start = System.nanoTime();
+		loadSequentially(new StandaloneModelLoader(), uris);
+		long sequential = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		int loaded = loadInParallel(new StandaloneModelLoader(), uris);
+		long parallel = System.nanoTime() - start;
+
+		assertEquals(uris.size(), loaded);
+		System.out.println(String.format(
+				"Loaded %d schemas: sequential %d ms, parallel (%d threads) %d ms, speedup %.2fx",
+				uris.size(), sequential / 1000000, THREADS, parallel / 1000000,
+				(double) sequential / parallel));
+	}
+
+	private void loadSequentially(StandaloneModelLoader loader, List<URI> uris)
+			throws ModelLoadingException {
+		for (URI uri : uris) {
+			loader.loadModel(uri);
+		}
+	}
+
+	private int loadInParallel(final StandaloneModelLoader loader, List<URI> uris)
+			throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<IPackage>> results = new ArrayList<Future<IPackage>>();
+			for (int i = 0; i < REQUESTS_PER_SCHEMA; i++) {
+				for (final URI uri : uris) {
+					results.add(executor.submit(new Callable<IPackage>() {
+						public IPackage call() throws Exception {
+							return loader.loadModel(uri);
+						}
+					}));
+				}
+			}
+
+			List<IPackage> distinct = new ArrayList<IPackage>();
+			for (Future<IPackage> result : results) {
+				IPackage model = result.get();
+				if (!distinct.contains(model)) {
+					distinct.add(model);
+				}
+			}
+			return distinct.size();
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package net.sourceforge.nrl.parser.model.loader;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sourceforge.nrl.parser.model.IPackage;
+
+import org.junit.Test;
+
+/**
+ * Loads several schemas from many threads through one {@link StandaloneModelLoader}, and checks
+ * that every URI is loaded exactly once.
+ */
+public class StandaloneModelLoaderConcurrencyTest {
+
+	private static final String[] SCHEMAS = new String[] { "complextypes.xsd",
+			"simpletypes.xsd", "substitution.xsd", "globalelements.xsd", "attributegroup.xsd",
+			"groups.xsd", "xsdany.xsd", "metadata.xsd" };
+
+	static final int THREADS = 16;
+
+	static final int REQUESTS_PER_SCHEMA = 8;
+
+	static List<URI> getSchemaURIs() {
+		File dir = new File(StandaloneModelLoaderTest.TEST_DIR.getAbsolutePath(),
+				"src/test/resources/schema");
+		List<URI> result = new ArrayList<URI>();
+		for (String schema : SCHEMAS) {
+			result.add(new File(dir, schema).toURI());
+		}
+		return result;
+	}
+
+	@Test
+	public void concurrentLoadsReturnOneModelPerURI() throws Exception {
+		final StandaloneModelLoader loader = new StandaloneModelLoader();
+		List<URI> uris = getSchemaURIs();
+
+		List<Future<IPackage>> results = new ArrayList<Future<IPackage>>();
+		List<URI> requested = new ArrayList<URI>();
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			for (int i = 0; i < REQUESTS_PER_SCHEMA; i++) {
+				for (final URI uri : uris) {
+					requested.add(uri);
+					results.add(executor.submit(new Callable<IPackage>() {
+						public IPackage call() throws Exception {
+							return loader.loadModel(uri);
+						}
+					}));
+				}
+			}
+
+			for (int i = 0; i < results.size(); i++) {
+				IPackage model = results.get(i).get();
+				assertNotNull(model);
+				assertSame(loader.loadModel(requested.get(i)), model);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void failedLoadIsRetried() throws Exception {
+		StandaloneModelLoader loader = new StandaloneModelLoader();
+		URI missing = new File(StandaloneModelLoaderTest.TEST_DIR.getAbsolutePath(),
+				"src/test/resources/schema/missing.xsd").toURI();
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				loader.loadModel(missing);
+			} catch (ModelLoadingException e) {
+				continue;
+			}
+			throw new AssertionError("Expected ModelLoadingException");
+		}
+	}
+}
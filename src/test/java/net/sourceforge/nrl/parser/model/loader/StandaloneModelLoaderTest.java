@@ -3,8 +3,12 @@ package net.sourceforge.nrl.parser.model.loader;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 
@@ -183,6 +187,101 @@ public class StandaloneModelLoaderTest {
 		assertEquals(model1, model2);
 	}
 
+	@Test
+	public void loadXSDThroughModelCache() throws Exception {
+		File cacheDir = createTempDirectory();
+		try {
+			File baseFile = new File(TEST_DIR.getAbsolutePath(), "src/test/resources/rulefile.nrl");
+
+			StandaloneModelLoader writingLoader = new StandaloneModelLoader();
+			writingLoader.setModelCacheDirectory(cacheDir);
+			IPackage model1 = writingLoader.loadModel(getAbsoluteURIForFile(baseFile), new URI(
+					"xsd/duplicate-elements.xsd"));
+			assertEquals(1, cacheDir.listFiles().length);
+
+			StandaloneModelLoader readingLoader = new StandaloneModelLoader();
+			readingLoader.setModelCacheDirectory(cacheDir);
+			IPackage model2 = readingLoader.loadModel(getAbsoluteURIForFile(baseFile), new URI(
+					"xsd/duplicate-elements.xsd"));
+
+			assertNotNull(model2);
+			assertTrue(model1 != model2);
+			assertEquals(model1.getContents(true).size(), model2.getContents(true).size());
+			assertNotNull(model2.getElementByName("Dave", true));
+		} finally {
+			for (File file : cacheDir.listFiles()) {
+				file.delete();
+			}
+			cacheDir.delete();
+		}
+	}
+
+	@Test
+	public void corruptModelCacheEntryIsIgnored() throws Exception {
+		File cacheDir = createTempDirectory();
+		try {
+			File baseFile = new File(TEST_DIR.getAbsolutePath(), "src/test/resources/rulefile.nrl");
+			URI modelURI = getAbsoluteURIForFile(new File(baseFile.getParentFile(),
+					"xsd/duplicate-elements.xsd"));
+
+			XSDModelCache cache = new XSDModelCache(cacheDir, getClass().getClassLoader());
+			FileWriter writer = new FileWriter(cache.getCacheFile(modelURI));
+			writer.write("not a model");
+			writer.close();
+
+			StandaloneModelLoader loader = new StandaloneModelLoader();
+			loader.setModelCacheDirectory(cacheDir);
+			IPackage model = loader.loadModel(modelURI);
+			assertNotNull(model.getElementByName("Dave", true));
+		} finally {
+			for (File file : cacheDir.listFiles()) {
+				file.delete();
+			}
+			cacheDir.delete();
+		}
+	}
+
+	@Test
+	public void modelCacheUsesURIMap() throws Exception {
+		File cacheDir = createTempDirectory();
+		try {
+			File schemaDir = new File(TEST_DIR.getAbsolutePath(), "src/test/resources/xsd");
+			org.eclipse.emf.common.util.URI mapped = org.eclipse.emf.common.util.URI
+					.createURI("file:/nrl-mapped/");
+			org.eclipse.emf.common.util.URI actual = org.eclipse.emf.common.util.URI
+					.createFileURI(schemaDir.getAbsolutePath()).appendSegment("");
+			URI modelURI = new URI("file:/nrl-mapped/duplicate-elements.xsd");
+
+			// The schema files are only found, and their digests only computed, through the map
+			ConfigurableModelLoader writingLoader = new ConfigurableModelLoader();
+			writingLoader.setModelCacheDirectory(cacheDir);
+			writingLoader.addResourceMapEntry(mapped, actual);
+			assertNotNull(writingLoader.loadModel(modelURI).getElementByName("Dave", true));
+			assertEquals(1, cacheDir.listFiles().length);
+
+			XSDModelCache cache = writingLoader.getModelCache();
+			assertEquals(actual, cache.getURIMap().get(mapped));
+			assertNotNull(cache.read(modelURI));
+
+			// Entries are keyed on the URI map
+			XSDModelCache unmapped = new XSDModelCache(cacheDir, getClass().getClassLoader());
+			assertFalse(unmapped.getCacheFile(modelURI).equals(cache.getCacheFile(modelURI)));
+			assertNull(unmapped.read(modelURI));
+		} finally {
+			for (File file : cacheDir.listFiles()) {
+				file.delete();
+			}
+			cacheDir.delete();
+		}
+	}
+
+	private File createTempDirectory() throws IOException {
+		File dir = File.createTempFile("nrlcache", "");
+		dir.delete();
+		dir.mkdirs();
+		return dir;
+	}
+
 	private URI getAbsoluteURIForFile(File baseFile) throws URISyntaxException {
 		return new URI(String.format("file:/%s", baseFile.getAbsolutePath().replace('\\', '/')));
 	}
@@ -0,0 +1,89 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.model.xsd;
+
+import static net.sourceforge.nrl.parser.model.xsd.XSDModelAssert.assertSameModel;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+import net.sourceforge.nrl.parser.model.IModelElement;
+import net.sourceforge.nrl.parser.model.IPackage;
+
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.xsd.util.XSDResourceFactoryImpl;
+
+/**
+ * Test sharing converted schemas between model loads.
+ */
+public class XSDFragmentCacheTest extends TestCase {
+
+	@SuppressWarnings("deprecation")
+	private IPackage load(String file, XSDFragmentCache cache) throws Exception {
+		Resource.Factory.Registry.INSTANCE.getExtensionToFactoryMap().put("xsd",
+				new XSDResourceFactoryImpl());
+		XSDModelLoader loader = new XSDModelLoader();
+		loader.setFragmentCache(cache);
+		return loader.load(new File(file));
+	}
+
+	public void testSharedImports() throws Exception {
+		XSDFragmentCache cache = new XSDFragmentCache();
+
+		// Both schemas import complextypes-includes1.xsd and complextypes-includes2.xsd
+		IPackage first = load("src/test/resources/schema/complextypes.xsd", cache);
+		assertEquals(0, cache.getHits());
+		int stored = cache.size();
+		assertTrue(stored >= 2);
+
+		IPackage second = load("src/test/resources/schema/name with spaces.xsd", cache);
+		assertEquals(2, cache.getHits());
+
+		assertSameModel(load("src/test/resources/schema/name with spaces.xsd", null), second,
+				false);
+		assertSameModel(load("src/test/resources/schema/complextypes.xsd", null), first, false);
+	}
+
+	public void testReloadSameSchema() throws Exception {
+		XSDFragmentCache cache = new XSDFragmentCache();
+
+		load("src/test/resources/schema/global elements.xsd", cache);
+		IPackage cached = load("src/test/resources/schema/global elements.xsd", cache);
+		assertTrue(cache.getHits() > 0);
+
+		assertSameModel(load("src/test/resources/schema/global elements.xsd", null), cached,
+				false);
+	}
+
+	public void testFragmentsAreNotShared() throws Exception {
+		XSDFragmentCache cache = new XSDFragmentCache();
+
+		IPackage first = load("src/test/resources/schema/complextypes.xsd", cache);
+		IPackage second = load("src/test/resources/schema/complextypes.xsd", cache);
+
+		for (IModelElement element : second.getContents(true)) {
+			assertFalse(first.getContents(true).contains(element));
+		}
+	}
+
+	public void testClear() throws Exception {
+		XSDFragmentCache cache = new XSDFragmentCache();
+		load("src/test/resources/schema/complextypes.xsd", cache);
+		assertTrue(cache.size() > 0);
+
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.model.xsd;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+
+import java.util.List;
+
+import net.sourceforge.nrl.parser.model.IAttribute;
+import net.sourceforge.nrl.parser.model.IClassifier;
+import net.sourceforge.nrl.parser.model.IModelElement;
+import net.sourceforge.nrl.parser.model.IPackage;
+
+/**
+ * Assertions comparing two XSD models element by element, used to check models that were copied
+ * or rebuilt from cached data against freshly loaded ones.
+ */
+public class XSDModelAssert {
+
+	/**
+	 * Assert that two models contain the same elements, in the same order, with the same names,
+	 * parents, descendants and attributes. Elements are compared by qualified name, and the
+	 * attributes of the actual model must be owned by its own classifiers.
+	 * 
+	 * @param expected the expected model
+	 * @param actual the actual model
+	 * @param compareUserData also compare the XSD user data of elements and attributes
+	 */
+	public static void assertSameModel(IPackage expected, IPackage actual,
+			boolean compareUserData) {
+		List<IModelElement> expectedContents = expected.getContents(true);
+		List<IModelElement> actualContents = actual.getContents(true);
+		assertEquals(expectedContents.size(), actualContents.size());
+
+		for (int i = 0; i < expectedContents.size(); i++) {
+			IModelElement e = expectedContents.get(i);
+			IModelElement a = actualContents.get(i);
+
+			assertEquals(e.getClass(), a.getClass());
+			assertEquals(e.getQualifiedName(), a.getQualifiedName());
+			assertEquals(e.getOriginalName(), a.getOriginalName());
+			assertEquals(e.getElementType(), a.getElementType());
+			assertEquals(e.getDescendants(false).size(), a.getDescendants(false).size());
+			if (compareUserData) {
+				assertUserData(e.getUserData(IXSDUserData.NAMESPACE), a
+						.getUserData(IXSDUserData.NAMESPACE));
+				assertUserData(e.getUserData(IXSDUserData.CONTAINING_TYPE), a
+						.getUserData(IXSDUserData.CONTAINING_TYPE));
+				assertUserData(e.getUserData(IXSDUserData.XSD_GLOBAL_ELEMENT), a
+						.getUserData(IXSDUserData.XSD_GLOBAL_ELEMENT));
+			}
+
+			if (e.getParent() == null) {
+				assertNull(a.getParent());
+			} else {
+				assertEquals(e.getParent().getQualifiedName(), a.getParent().getQualifiedName());
+			}
+
+			if (e instanceof IClassifier) {
+				assertSameAttributes((IClassifier) e, (IClassifier) a, compareUserData);
+			}
+		}
+	}
+
+	private static void assertSameAttributes(IClassifier expected, IClassifier actual,
+			boolean compareUserData) {
+		List<IAttribute> expectedAttrs = expected.getAttributes(false);
+		List<IAttribute> actualAttrs = actual.getAttributes(false);
+		assertEquals(expectedAttrs.size(), actualAttrs.size());
+
+		for (int j = 0; j < expectedAttrs.size(); j++) {
+			IAttribute ea = expectedAttrs.get(j);
+			IAttribute aa = actualAttrs.get(j);
+
+			assertEquals(ea.getName(), aa.getName());
+			assertEquals(ea.getOriginalName(), aa.getOriginalName());
+			assertEquals(ea.getMinOccurs(), aa.getMinOccurs());
+			assertEquals(ea.getMaxOccurs(), aa.getMaxOccurs());
+			assertEquals(ea.isStatic(), aa.isStatic());
+			assertSame(actual, aa.getOwner());
+			if (ea.getType() == null) {
+				assertNull(aa.getType());
+			} else {
+				assertEquals(ea.getType().getQualifiedName(), aa.getType().getQualifiedName());
+			}
+			if (compareUserData) {
+				assertUserData(ea.getUserData(IXSDUserData.ATTRIBUTE_KIND), aa
+						.getUserData(IXSDUserData.ATTRIBUTE_KIND));
+				assertUserData(ea.getUserData(IXSDUserData.JAXB_FLATTENED_PROPERTY), aa
+						.getUserData(IXSDUserData.JAXB_FLATTENED_PROPERTY));
+				assertUserData(ea.getUserData(IXSDUserData.RENAMED_AMBIGUOUS_ATTRIBUTE), aa
+						.getUserData(IXSDUserData.RENAMED_AMBIGUOUS_ATTRIBUTE));
+			}
+		}
+	}
+
+	/*
+	 * Model elements in user data are compared by qualified name, anything else by value.
+	 */
+	private static void assertUserData(Object expected, Object actual) {
+		if (expected instanceof IModelElement) {
+			assertEquals(((IModelElement) expected).getQualifiedName(), ((IModelElement) actual)
+					.getQualifiedName());
+		} else {
+			assertEquals(expected, actual);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.model.xsd;
+
+import static net.sourceforge.nrl.parser.model.xsd.XSDModelAssert.assertSameModel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import net.sourceforge.nrl.parser.model.IAttribute;
+import net.sourceforge.nrl.parser.model.IClassifier;
+import net.sourceforge.nrl.parser.model.IModelElement;
+
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.xsd.util.XSDResourceFactoryImpl;
+
+/**
+ * Test writing and reading models in the binary model format.
+ */
+public class XSDModelSerializerTest extends TestCase {
+
+	@SuppressWarnings("deprecation")
+	private XSDPackage load(String file) throws Exception {
+		Resource.Factory.Registry.INSTANCE.getExtensionToFactoryMap().put("xsd",
+				new XSDResourceFactoryImpl());
+		return (XSDPackage) new XSDModelLoader().load(new File(file));
+	}
+
+	private XSDPackage roundTrip(XSDPackage model) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new XSDModelSerializer().write(model, new DataOutputStream(bytes));
+
+		return new XSDModelSerializer().read(new DataInputStream(new ByteArrayInputStream(bytes
+				.toByteArray())));
+	}
+
+	public void testComplexTypes() throws Exception {
+		XSDPackage model = load("src/test/resources/schema/complextypes.xsd");
+		assertSameModel(model, roundTrip(model), true);
+	}
+
+	public void testSubstitutionGroups() throws Exception {
+		XSDPackage model = load("src/test/resources/schema/substitution.xsd");
+		XSDPackage copy = roundTrip(model);
+		assertSameModel(model, copy, true);
+
+		// Attribute references in user data must point into the copy
+		for (IModelElement element : copy.getContents(true)) {
+			if (!(element instanceof IClassifier))
+				continue;
+			for (IAttribute attr : ((IClassifier) element).getAttributes(false)) {
+				Object target = attr.getUserData(IXSDUserData.SUBSTITUTION_FOR);
+				if (target != null) {
+					assertSame(element, ((IAttribute) target).getOwner());
+				}
+			}
+		}
+	}
+
+	public void testDuplicateElements() throws Exception {
+		XSDPackage model = load("src/test/resources/schema/duplicate-elements.xsd");
+		assertSameModel(model, roundTrip(model), true);
+	}
+
+	public void testIllegalData() throws Exception {
+		try {
+			new XSDModelSerializer().read(new DataInputStream(new ByteArrayInputStream(new byte[] {
+					1, 2, 3, 4 })));
+			fail("Expected exception");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	public void testUnsupportedUserData() throws Exception {
+		XSDPackage model = new XSDPackage("test", null);
+		model.setUserData("key", new Object());
+
+		try {
+			new XSDModelSerializer().write(model, new DataOutputStream(
+					new ByteArrayOutputStream()));
+			fail("Expected exception");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+}
@@ -20,6 +20,8 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
 
@@ -148,6 +150,36 @@ public class XmlOperatorPersistenceTest extends NRLParserTestSupport {
 		assertNull(opB.getPurpose());
 	}
 
+	@Test
+	public void testLoadEncodings() throws Exception {
+		assertEquals("Gr\u00fc\u00dfe", loadDocumentation("ISO-8859-1"));
+		assertEquals("Gr\u00fc\u00dfe", loadDocumentation("UTF-16"));
+		assertEquals("Gr\u00fc\u00dfe", loadDocumentation("UTF-8"));
+	}
+
+	// Load an operator file in an encoding declared in its prolog, returning its documentation
+	private String loadDocumentation(String encoding) throws Exception {
+		String content = "<?xml version=\"1.0\" encoding=\"" + encoding + "\"?>"
+				+ "<operators xmlns=\"urn:net:sourceforge:nrl:1.5\" version=\"1.5.0\">"
+				+ "<documentation>Gr\u00fc\u00dfe</documentation></operators>";
+
+		File file = File.createTempFile("operators", ".xml");
+		try {
+			OutputStream stream = new FileOutputStream(file);
+			try {
+				stream.write(content.getBytes(encoding));
+			} finally {
+				stream.close();
+			}
+
+			XmlOperatorPersistence loader = new XmlOperatorPersistence();
+			assertEquals(LoadedVersion.Version15, loader.load(file));
+			return loader.getOperators().getDocumentation();
+		} finally {
+			file.delete();
+		}
+	}
+
 	@Test
 	public void testResolve_PrimitiveTypes() throws Exception {
 		ModelCollection models = new ModelCollection();
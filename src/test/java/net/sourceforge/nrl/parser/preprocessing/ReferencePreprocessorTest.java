@@ -1,5 +1,8 @@
 package net.sourceforge.nrl.parser.preprocessing;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import junit.framework.TestCase;
 
 /**
@@ -47,6 +50,65 @@ public class ReferencePreprocessorTest extends TestCase {
 				result);
 	}
 
+	/**
+	 * Check multiple and overlapping fragment names.
+	 */
+	public void testProcess_Overlapping() {
+		ReferencePreprocessor processor = new ReferencePreprocessor();
+
+		// Two fragments, used next to each other
+		String result = processor.process("If ab and cd then cdab", new String[] { "ab", "cd" });
+		assertEquals("If {ab} and {cd} then {cd}{ab}", result);
+
+		// The longest name starting at a position wins, in any order
+		result = processor.process("x this is a test", new String[] { "is a test",
+				"this is a test" });
+		assertEquals("x {this is a test}", result);
+		result = processor.process("x this is a test", new String[] { "this is a test",
+				"is a test" });
+		assertEquals("x {this is a test}", result);
+
+		// Names inside a declaration or existing reference are left alone
+		result = processor.process("Validation Fragment \"this is a test\" {this is a test}",
+				new String[] { "this is a test", "a test" });
+		assertEquals("Validation Fragment \"this is a test\" {this is a test}", result);
+
+		// Empty names are ignored
+		result = processor.process("x abc", new String[] { "", "abc" });
+		assertEquals("x {abc}", result);
+	}
+
+	/**
+	 * Process growing files with growing numbers of fragments.
+	 */
+	public void testProcess_Scaling() {
+		ReferencePreprocessor processor = new ReferencePreprocessor();
+
+		for (int fragments = 10; fragments <= 1000; fragments *= 10) {
+			for (int kilobytes = 20; kilobytes <= 2000; kilobytes *= 10) {
+				StringBuffer input = new StringBuffer();
+				for (int i = 0; i < fragments; i++) {
+					input.append("Validation Fragment \"fragment number " + i
+							+ " holds\" 'a' = 'b'\n");
+				}
+
+				int references = 0;
+				while (input.length() < kilobytes * 1024) {
+					input.append("Validation Rule \"r\" If fragment number ");
+					input.append(references % fragments);
+					input.append(" holds then 'a' = 'b'\n");
+					references++;
+				}
+
+				String[] names = processor.getFragmentNames(input.toString());
+				String result = processor.process(input.toString(), names);
+
+				assertEquals(fragments, names.length);
+				assertEquals(input.length() + 2 * references, result.length());
+			}
+		}
+	}
+
 	/**
 	 * Check if fragment name lookup works.
 	 */
@@ -109,4 +171,35 @@ public class ReferencePreprocessorTest extends TestCase {
 
 	}
 
+	/**
+	 * Subclasses overriding the String signatures still see String input.
+	 */
+	public void testStringOverrides() {
+		final List<String> calls = new ArrayList<String>();
+		ReferencePreprocessor processor = new ReferencePreprocessor() {
+			@Override
+			public String[] getFragmentNames(String input) {
+				calls.add("getFragmentNames");
+				return super.getFragmentNames(input);
+			}
+
+			@Override
+			protected boolean isQuotedLine(String input, int pos) {
+				calls.add("isQuotedLine");
+				return true;
+			}
+		};
+
+		String input = "Validation Fragment \"abc\" If abc then do that";
+		assertEquals(input, processor.process(input));
+		assertEquals(2, calls.size());
+		assertEquals("getFragmentNames", calls.get(0));
+		assertEquals("isQuotedLine", calls.get(1));
+
+		// Other character sequences use the new signatures
+		calls.clear();
+		assertEquals("Validation Fragment \"abc\" If {abc} then do that", processor.process(
+				new StringBuilder(input)).toString());
+		assertEquals(0, calls.size());
+	}
 }
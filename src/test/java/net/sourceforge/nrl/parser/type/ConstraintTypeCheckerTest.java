@@ -21,6 +21,7 @@ import static org.junit.Assert.assertTrue;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.StringReader;
+import java.util.Arrays;
 import java.util.List;
 
 import net.sourceforge.nrl.parser.IStatusCode;
@@ -42,6 +43,7 @@ import net.sourceforge.nrl.parser.ast.constraints.IOperatorInvocation;
 import net.sourceforge.nrl.parser.ast.constraints.IValidationFragmentDeclaration;
 import net.sourceforge.nrl.parser.ast.constraints.IVariableDeclaration;
 import net.sourceforge.nrl.parser.model.ModelCollection;
+import net.sourceforge.nrl.parser.model.TypeHierarchyIndex;
 import net.sourceforge.nrl.parser.operators.IOperator;
 import net.sourceforge.nrl.parser.operators.IOperators;
 import net.sourceforge.nrl.parser.operators.XmlOperatorPersistence;
@@ -656,6 +658,53 @@ public class ConstraintTypeCheckerTest extends NRLParserTestSupport {
 				.getStatusCode());
 	}
 
+	@Test
+	public void testCheck_SubtypesWithTypeHierarchy() throws Exception {
+		ConstraintTypeChecker typeChecker = new ConstraintTypeChecker();
+		typeChecker.setTypeHierarchy(new TypeHierarchyIndex(Arrays.asList(getBasicModel())));
+
+		XmlTypeMapping mapping = new XmlTypeMapping();
+		mapping.load(new File("src/test/resources/type/default-mapping.xml"));
+		typeChecker.addTypeMapping(mapping);
+
+		List<NRLError> errors = typeChecker.check(createTestFile("the IRSwap is a kind of IRSwap"));
+		assertEquals(0, errors.size());
+
+		errors = typeChecker.check(createTestFile("tradeDate is a kind of IRSwap"));
+		assertEquals(1, errors.size());
+		assertEquals(IStatusCode.CAST_REQUIRES_SUBTYPE, errors.get(0).getStatusCode());
+
+		errors = typeChecker.check(createTestFile("\"x\" represents the Trade as a Trade, "
+				+ "x.tradeDate = '2005-12-12'"));
+		assertEquals(0, errors.size());
+
+		errors = typeChecker.check(createTestFile("\"x\" represents the tradeDate as a Trade, "
+				+ "x.tradeDate = '2005-12-12'"));
+		assertEquals(1, errors.size());
+		assertEquals(IStatusCode.CAST_REQUIRES_SUBTYPE, errors.get(0).getStatusCode());
+	}
+
+	@Test
+	public void testCheck_TypeCache() throws Exception {
+		ConstraintTypeChecker typeChecker = new ConstraintTypeChecker();
+
+		XmlTypeMapping mapping = new XmlTypeMapping();
+		mapping.load(new File("src/test/resources/type/default-mapping.xml"));
+		typeChecker.addTypeMapping(mapping);
+
+		IRuleFile file = createTestFile("tradeDate = tradeDate and tradeDate = tradeDate");
+		assertEquals(0, typeChecker.check(file).size());
+		int hits = typeChecker.getTypeCacheHits();
+		int misses = typeChecker.getTypeCacheMisses();
+		assertTrue(hits > 0);
+		assertTrue(misses > 0);
+
+		// Counters are per check
+		assertEquals(0, typeChecker.check(file).size());
+		assertEquals(hits, typeChecker.getTypeCacheHits());
+		assertEquals(misses, typeChecker.getTypeCacheMisses());
+	}
+
 	@Test
 	public void testCheck_ModelElement() throws Exception {
 		ConstraintTypeChecker typeChecker = new ConstraintTypeChecker();
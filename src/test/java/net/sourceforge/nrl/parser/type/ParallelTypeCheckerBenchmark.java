@@ -0,0 +1,57 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.type;
+
+import static net.sourceforge.nrl.parser.type.ParallelTypeCheckerTest.RULES;
+import static net.sourceforge.nrl.parser.type.ParallelTypeCheckerTest.THREADS;
+
+import net.sourceforge.nrl.parser.ast.IRuleFile;
+
+import org.junit.Test;
+
+/**
+ * Measure the speedup of type checking a large rule file in parallel. Run with the
+ * <code>benchmarks</code> profile.
+ */
+public class ParallelTypeCheckerBenchmark {
+
+	private static final int BENCHMARK_RULES = 20000;
+
+	private final ParallelTypeCheckerTest support = new ParallelTypeCheckerTest();
+
+	@Test
+	public void benchmarkCheck() throws Exception {
+		String rules = support.createRules(BENCHMARK_RULES, false);
+		ConstraintTypeChecker checker = support.createChecker(new ConstraintTypeChecker());
+
+		// Warm up
+		checker.check(support.createTestFile(support.createRules(RULES, false)));
+
+		IRuleFile ruleFile = support.createTestFile(rules);
+		long start = System.nanoTime();
+		checker.check(ruleFile);
+		long sequential = System.nanoTime() - start;
+
+		checker.setCheckThreads(THREADS);
+		ruleFile = support.createTestFile(rules);
+		start = System.nanoTime();
+		checker.check(ruleFile);
+		long parallel = System.nanoTime() - start;
+
+		System.out.println(String.format("Checked %d rules: sequential %d ms, parallel "
+				+ "(%d threads) %d ms, speedup %.2fx", BENCHMARK_RULES, sequential / 1000000,
+				THREADS, parallel / 1000000, (double) sequential / parallel));
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * The contents of this file are subject to the Mozilla Public License Version 1.1 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis, WITHOUT WARRANTY OF
+ * ANY KIND, either express or implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ *
+ * The Original Code is the NRL Parser, released 28 April 2006, Copyright (c) Christian Nentwich.
+ * The Initial Developer of the Original Code is Christian Nentwich. Portions created by
+ * contributors identified in the NOTICES file are Copyright (c) the contributors. All Rights
+ * Reserved.
+ */
+package net.sourceforge.nrl.parser.type;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.sourceforge.nrl.parser.IStatusCode;
+import net.sourceforge.nrl.parser.NRLError;
+import net.sourceforge.nrl.parser.NRLParserTestSupport;
+import net.sourceforge.nrl.parser.ast.IDeclaration;
+import net.sourceforge.nrl.parser.ast.IRuleFile;
+import net.sourceforge.nrl.parser.ast.NRLDataType;
+import net.sourceforge.nrl.parser.ast.constraints.IValidationFragmentDeclaration;
+
+import org.junit.Test;
+
+/**
+ * Test that checking in parallel gives the same errors, in the same order, and the same fragment
+ * types as checking on one thread.
+ */
+public class ParallelTypeCheckerTest extends NRLParserTestSupport {
+
+	static final int THREADS = 4;
+
+	private static final int FRAGMENTS = 20;
+
+	static final int RULES = 500;
+
+	@Test
+	public void testSameErrors() throws Exception {
+		String rules = createRules(RULES, false);
+
+		IRuleFile expectedFile = createTestFile(rules);
+		ConstraintTypeChecker checker = createChecker(new ConstraintTypeChecker());
+		List<NRLError> expected = new ArrayList<NRLError>(checker.check(expectedFile));
+		assertTrue(expected.size() > 0);
+
+		for (int threads = 2; threads <= THREADS; threads++) {
+			checker.setCheckThreads(threads);
+			assertEquals(threads, checker.getCheckThreads());
+
+			IRuleFile ruleFile = createTestFile(rules);
+			assertEquals(expected.toString(), checker.check(ruleFile).toString());
+			assertSameFragmentTypes(expectedFile, ruleFile);
+		}
+	}
+
+	@Test
+	public void testFragmentLevels() throws Exception {
+		ConstraintTypeChecker checker = createChecker(new ConstraintTypeChecker());
+		checker.setCheckThreads(THREADS);
+
+		// The rule can only be checked once the type of both fragments is known
+		IRuleFile ruleFile = createTestFile("{the check} IRSwap = 5\n"
+				+ "Context: IRSwap (\"swap\") Validation Fragment \"the check\" {the date} swap\n"
+				+ "Context: IRSwap (\"swap\") Validation Fragment \"the date\" swap.tradeDate");
+		List<NRLError> errors = checker.check(ruleFile);
+		assertEquals(1, errors.size());
+		assertEquals(IStatusCode.BINARY_PREDICATE_ARGUMENT_INCOMPATIBLE, errors.get(0)
+				.getStatusCode());
+		assertEquals(NRLDataType.DATE, ((IValidationFragmentDeclaration) ruleFile
+				.getDeclarations().get(1)).getNRLDataType());
+	}
+
+	@Test
+	public void testActionRules() throws Exception {
+		String rules = createRules(RULES, true);
+
+		ConstraintTypeChecker checker = createChecker(new ActionTypeChecker());
+		List<NRLError> expected = new ArrayList<NRLError>(checker.check(createTestFile(rules)));
+
+		// Constraints and actions mixed in the default rule set
+		assertEquals(IStatusCode.RULESET_MIXES_RULETYPES, expected.get(expected.size() - 1)
+				.getStatusCode());
+
+		checker.setCheckThreads(THREADS);
+		assertEquals(expected.toString(), checker.check(createTestFile(rules)).toString());
+	}
+
+	@Test
+	public void testSharedExecutor() throws Exception {
+		String rules = createRules(RULES, false);
+		ConstraintTypeChecker checker = createChecker(new ConstraintTypeChecker());
+		String expected = checker.check(createTestFile(rules)).toString();
+
+		// The pool is not shut down by a check, so it is reused by later checks and checkers
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			for (int i = 0; i < 3; i++) {
+				ConstraintTypeChecker parallel = createChecker(new ConstraintTypeChecker());
+				parallel.setCheckThreads(THREADS);
+				parallel.setExecutor(executor);
+				assertEquals(expected, parallel.check(createTestFile(rules)).toString());
+				assertEquals(expected, parallel.check(createTestFile(rules)).toString());
+				assertFalse(executor.isShutdown());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/*
+	 * Subclasses that do not create their own workers are checked on the calling thread.
+	 */
+	@Test
+	public void testWorkerNotOverridden() throws Exception {
+		final List<IDeclaration> checked = new ArrayList<IDeclaration>();
+		ConstraintTypeChecker checker = createChecker(new ConstraintTypeChecker() {
+			@Override
+			protected void checkDeclaration(IDeclaration decl) {
+				checked.add(decl);
+				super.checkDeclaration(decl);
+			}
+		});
+		String rules = createRules(FRAGMENTS, false);
+		String expected = checker.check(createTestFile(rules)).toString();
+		int expectedChecked = checked.size();
+		assertTrue(expectedChecked > 0);
+
+		checked.clear();
+		checker.setCheckThreads(THREADS);
+		assertEquals(expected, checker.check(createTestFile(rules)).toString());
+		assertEquals(expectedChecked, checked.size());
+	}
+
+	ConstraintTypeChecker createChecker(ConstraintTypeChecker checker) {
+		TypeMapping mapping = new TypeMapping();
+		mapping.addMapping("*", "decimal", NRLDataType.DECIMAL);
+		mapping.addMapping("*", "String", NRLDataType.STRING);
+		mapping.addMapping("*", "Date", NRLDataType.DATE);
+		checker.addTypeMapping(mapping);
+		return checker;
+	}
+
+	/*
+	 * Two levels of fragments, and rules that apply them, every tenth of which compares a date
+	 * to a number. Rules are followed by the fragments, as the test file starts with a rule.
+	 */
+	String createRules(int count, boolean actions) {
+		StringBuffer content = new StringBuffer("'a' = 'a'\n");
+		for (int i = 0; i < count; i++) {
+			int fragment = i % FRAGMENTS;
+			content.append("Context: IRSwap Validation Rule \"r" + i + "\" ");
+			if (i % 10 == 9)
+				content.append("{date " + fragment + "} IRSwap = 5\n");
+			else
+				content.append("{check " + fragment + "} IRSwap\n");
+
+			if (actions) {
+				content.append("Context: IRSwap Action Rule \"a" + i + "\" ");
+				content.append("Set the tradeDate to '2005-12-30'\n");
+			}
+		}
+		for (int i = 0; i < FRAGMENTS; i++) {
+			content.append("Context: IRSwap (\"swap\") Validation Fragment \"check " + i
+					+ "\" {date " + i + "} swap is before '2005-12-12'\n");
+			content.append("Context: IRSwap (\"swap\") Validation Fragment \"date " + i
+					+ "\" swap.tradeDate\n");
+		}
+		return content.toString();
+	}
+
+	private void assertSameFragmentTypes(IRuleFile expected, IRuleFile actual) {
+		for (int i = 0; i < expected.getDeclarations().size(); i++) {
+			IDeclaration decl = expected.getDeclarations().get(i);
+			if (decl instanceof IValidationFragmentDeclaration) {
+				assertEquals(decl.getId(), ((IValidationFragmentDeclaration) decl)
+						.getNRLDataType(), ((IValidationFragmentDeclaration) actual
+						.getDeclarations().get(i)).getNRLDataType());
+			}
+		}
+	}
+}
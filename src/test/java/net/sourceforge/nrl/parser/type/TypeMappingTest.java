@@ -16,6 +16,7 @@ package net.sourceforge.nrl.parser.type;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import net.sourceforge.nrl.parser.NRLParserTestSupport;
 import net.sourceforge.nrl.parser.ast.NRLDataType;
 import net.sourceforge.nrl.parser.model.IModelElement;
@@ -66,5 +67,9 @@ public class TypeMappingTest extends NRLParserTestSupport {
 		assertEquals(NRLDataType.DATE, mapping.getType(date));
 		assertEquals(NRLDataType.DECIMAL, mapping.getType(swap));
 		assertEquals(NRLDataType.UNKNOWN, mapping.getType(header));
+
+		// Lookups share the interned instances
+		assertSame(NRLDataType.DATE, mapping.getType(date));
+		assertSame(mapping.getType(swap), mapping.getType(swap));
 	}
 }
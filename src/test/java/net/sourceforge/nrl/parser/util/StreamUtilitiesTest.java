@@ -0,0 +1,153 @@
+package net.sourceforge.nrl.parser.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+import junit.framework.TestCase;
+
+public class StreamUtilitiesTest extends TestCase {
+
+	/**
+	 * An input stream that returns at most a few bytes per read, and never
+	 * reports bytes as available, like a slow network stream.
+	 */
+	public static class SlowInputStream extends FilterInputStream {
+
+		private final int chunkSize;
+
+		public SlowInputStream(InputStream in, int chunkSize) {
+			super(in);
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		public int available() {
+			return 0;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			return super.read(buffer, offset, Math.min(length, chunkSize));
+		}
+	}
+
+	/**
+	 * A reader that returns at most one character per read, and is never
+	 * ready.
+	 */
+	private static class SlowReader extends Reader {
+
+		private final Reader in;
+
+		SlowReader(Reader in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length) throws IOException {
+			return in.read(buffer, offset, length == 0 ? 0 : 1);
+		}
+
+		@Override
+		public boolean ready() {
+			return false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	public void testReadSlowReader() throws Exception {
+		String content = createContent(50000);
+
+		assertEquals(content, StreamUtilities.read(new SlowReader(new StringReader(content)))
+				.toString());
+		assertEquals("", StreamUtilities.read(new SlowReader(new StringReader(""))).toString());
+	}
+
+	public void testReadChunkedStream() throws Exception {
+		String content = createContent(50000) + " çãüäö 日本語";
+
+		// Chunk sizes that split multi-byte characters
+		for (int chunkSize = 1; chunkSize <= 7; chunkSize++) {
+			InputStream stream = new SlowInputStream(new ByteArrayInputStream(content
+					.getBytes("UTF-8")), chunkSize);
+			assertEquals(content, StreamUtilities.read(stream, null).toString());
+		}
+
+		InputStream stream = new SlowInputStream(new ByteArrayInputStream(content
+				.getBytes("UTF-16")), 3);
+		assertEquals(content, StreamUtilities.read(stream,
+				Charset.forName("UTF-16")).toString());
+	}
+
+	public void testNewReader() throws Exception {
+		String content = createContent(20000);
+		CharBuffer buffer = StreamUtilities.read(new StringReader(content));
+		StringBuffer stringBuffer = new StringBuffer(content);
+
+		assertEquals(content, StreamUtilities.read(StreamUtilities.newReader(content)).toString());
+		assertEquals(content, StreamUtilities.read(StreamUtilities.newReader(buffer)).toString());
+		assertEquals(content, StreamUtilities.read(StreamUtilities.newReader(stringBuffer))
+				.toString());
+
+		// The source is not consumed
+		assertEquals(content.length(), buffer.length());
+	}
+
+	public void testIndexOf() {
+		CharBuffer buffer = CharBuffer.wrap("abc urn:x abc urn:x");
+
+		assertEquals(4, StreamUtilities.indexOf(buffer, "urn:x", 0));
+		assertEquals(14, StreamUtilities.indexOf(buffer, "urn:x", 5));
+		assertEquals(-1, StreamUtilities.indexOf(buffer, "urn:x", 15));
+		assertEquals(-1, StreamUtilities.indexOf(buffer, "urn:y", 0));
+		assertEquals(0, StreamUtilities.indexOf(buffer, "", 0));
+	}
+
+	public void testReadBytes() throws Exception {
+		byte[] content = createContent(50000).getBytes("UTF-8");
+
+		ByteBuffer buffer = StreamUtilities.readBytes(new SlowInputStream(
+				new ByteArrayInputStream(content), 3));
+		assertEquals(ByteBuffer.wrap(content), buffer);
+		assertEquals(0, StreamUtilities.readBytes(new ByteArrayInputStream(new byte[0]))
+				.remaining());
+
+		// The stream covers the content only, not the rest of the buffer
+		InputStream stream = StreamUtilities.newInputStream(buffer);
+		assertEquals(content.length, stream.available());
+		assertEquals(ByteBuffer.wrap(content), StreamUtilities.readBytes(stream));
+	}
+
+	public void testIndexOfBytes() throws Exception {
+		ByteBuffer buffer = ByteBuffer.wrap("abc urn:x abc urn:x".getBytes("US-ASCII"));
+		byte[] namespace = "urn:x".getBytes("US-ASCII");
+
+		assertEquals(4, StreamUtilities.indexOf(buffer, namespace, 0));
+		assertEquals(14, StreamUtilities.indexOf(buffer, namespace, 5));
+		assertEquals(-1, StreamUtilities.indexOf(buffer, namespace, 15));
+		assertEquals(-1, StreamUtilities.indexOf(buffer, "urn:y".getBytes("US-ASCII"), 0));
+
+		// Relative to the buffer position
+		buffer.position(10);
+		assertEquals(4, StreamUtilities.indexOf(buffer, namespace, 0));
+	}
+
+	private String createContent(int length) {
+		StringBuffer result = new StringBuffer(length);
+		for (int i = 0; result.length() < length; i++) {
+			result.append("line ").append(i).append('\n');
+		}
+		return result.toString();
+	}
+}